@@ -0,0 +1,26 @@
+package de.gamedevbaden.crucified;
+
+import de.gamedevbaden.crucified.net.shard.ShardCoordinator;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.io.IOException;
+
+/**
+ * Runs the {@link ShardCoordinator} of a region sharded island. It doesn't need a jME application,
+ * it only routes clients and tells the {@link ShardServer}s about each other.
+ * <p>
+ * Usage: <code>CoordinatorServer [port]</code>
+ */
+public class CoordinatorServer {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : GameConstants.DEFAULT_COORDINATOR_PORT;
+
+        ShardCoordinator coordinator = new ShardCoordinator(port);
+        coordinator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(coordinator::close));
+        while (coordinator.isRunning()) {
+            Thread.sleep(1000);
+        }
+    }
+}
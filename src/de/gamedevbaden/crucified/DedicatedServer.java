@@ -0,0 +1,49 @@
+package de.gamedevbaden.crucified;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AppState;
+import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import de.gamedevbaden.crucified.appstates.DedicatedGame;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+/**
+ * Runs a game server without rendering, gui and audio on a headless context.
+ * The server runs with a fixed frame rate of {@link GameConstants#SERVER_TICK_RATE}.
+ * <p>
+ * Usage: <code>DedicatedServer [port] [players per game] [max matches]</code>
+ */
+public class DedicatedServer extends SimpleApplication {
+
+    private int port;
+    private int playersPerGame;
+    private int maxMatches;
+
+    public DedicatedServer(int port, int playersPerGame, int maxMatches) {
+        super(new AppState[0]); // we don't need any of the default states (fly cam, stats, ...)
+        this.port = port;
+        this.playersPerGame = playersPerGame;
+        this.maxMatches = maxMatches;
+    }
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : GameConstants.DEFAULT_PORT;
+        int playersPerGame = args.length > 1 ? Integer.parseInt(args[1]) : GameConstants.PLAYERS_PER_GAME;
+        int maxMatches = args.length > 2 ? Integer.parseInt(args[2]) : GameConstants.MAX_MATCHES_PER_SERVER;
+
+        AppSettings settings = new AppSettings(true);
+        settings.setFrameRate(GameConstants.SERVER_TICK_RATE); // the headless context sleeps to keep this rate
+        settings.setAudioRenderer(null);
+
+        DedicatedServer server = new DedicatedServer(port, playersPerGame, maxMatches);
+        server.setSettings(settings);
+        server.setShowSettings(false);
+        server.setPauseOnLostFocus(false);
+        server.start(JmeContext.Type.Headless);
+    }
+
+    @Override
+    public void simpleInitApp() {
+        stateManager.attach(new DedicatedGame(port, playersPerGame, maxMatches));
+    }
+}
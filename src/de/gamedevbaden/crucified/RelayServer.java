@@ -0,0 +1,55 @@
+package de.gamedevbaden.crucified;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AppState;
+import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import de.gamedevbaden.crucified.net.messages.SpectateMessage;
+import de.gamedevbaden.crucified.net.relay.SpectatorRelay;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+/**
+ * Runs a {@link SpectatorRelay} without rendering, gui and audio on a headless context.
+ * It stops once the connection to the game server is gone, e.g. because the match has ended.
+ * <p>
+ * Usage: <code>RelayServer [server address] [server port] [relay port] [match id]</code>,
+ * without a match id the relay watches the first match which has started.
+ */
+public class RelayServer extends SimpleApplication {
+
+    private SpectatorRelay relay;
+
+    public RelayServer(SpectatorRelay relay) {
+        super(new AppState[0]); // we don't need any of the default states (fly cam, stats, ...)
+        this.relay = relay;
+    }
+
+    public static void main(String[] args) {
+        String serverAddress = args.length > 0 ? args[0] : "localhost";
+        int serverPort = args.length > 1 ? Integer.parseInt(args[1]) : GameConstants.DEFAULT_PORT;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : GameConstants.DEFAULT_RELAY_PORT;
+        int matchId = args.length > 3 ? Integer.parseInt(args[3]) : SpectateMessage.ANY_MATCH;
+
+        AppSettings settings = new AppSettings(true);
+        settings.setFrameRate(GameConstants.SERVER_TICK_RATE); // the headless context sleeps to keep this rate
+        settings.setAudioRenderer(null);
+
+        RelayServer server = new RelayServer(new SpectatorRelay(serverAddress, serverPort, port, matchId));
+        server.setSettings(settings);
+        server.setShowSettings(false);
+        server.setPauseOnLostFocus(false);
+        server.start(JmeContext.Type.Headless);
+    }
+
+    @Override
+    public void simpleInitApp() {
+        stateManager.attach(relay);
+    }
+
+    @Override
+    public void simpleUpdate(float tpf) {
+        if (relay.isInitialized() && !relay.isConnected()) {
+            stop();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package de.gamedevbaden.crucified;
 import com.jme3.network.Client;
 import com.jme3.network.ClientStateListener;
 import com.jme3.network.ErrorListener;
+import com.jme3.network.MessageListener;
 import com.simsilica.es.EntityData;
 import de.gamedevbaden.crucified.appstates.AbstractGame;
 import de.gamedevbaden.crucified.appstates.EntityDataState;
@@ -16,13 +17,19 @@ import de.gamedevbaden.crucified.appstates.view.ArtifactHiderAppState;
 import de.gamedevbaden.crucified.game.GameSession;
 import de.gamedevbaden.crucified.net.client.GameClient;
 import de.gamedevbaden.crucified.net.messages.ReadyForGameStartMessage;
+import de.gamedevbaden.crucified.net.messages.ShardRedirectMessage;
 import de.gamedevbaden.crucified.utils.GameInitializer;
 
+import java.util.function.BooleanSupplier;
+
 public class RemoteGame extends AbstractGame {
 
     private GameClient client;
     private GameCommanderAppState commander;
     private GameSession gameSession;
+    private ErrorListener<Client> errorListener;
+    private ClientStateListener clientStateListener;
+    private MessageListener<Client> redirectListener;
 
     public RemoteGame(GameClient client) {
         this.client = client;
@@ -36,15 +43,19 @@ public class RemoteGame extends AbstractGame {
     @Override
     public void setupGame() {
         // add error listener to client so we close everything properly
-        this.client.getClient().addErrorListener(new ErrorListener<Client>() {
+        this.errorListener = new ErrorListener<Client>() {
             @Override
             public void handleError(Client source, Throwable t) {
+                if (client.canReconnect()) {
+                    reconnect();
+                    return;
+                }
                 stateManager.getState(MainGameAppState.class).closeExistingGame();
                 client.getClient().close();
             }
-        });
+        };
 
-        this.client.getClient().addClientStateListener(new ClientStateListener() {
+        this.clientStateListener = new ClientStateListener() {
             @Override
             public void clientConnected(Client c) {
                 NiftyAppState niftyAppState = stateManager.getState(NiftyAppState.class);
@@ -57,7 +68,15 @@ public class RemoteGame extends AbstractGame {
             public void clientDisconnected(Client c, DisconnectInfo info) {
                 stateManager.getState(MainGameAppState.class).closeExistingGame();
             }
-        });
+        };
+        addClientListeners();
+
+        // a region shard sends us to the shard our player has moved to
+        this.redirectListener = (source, m) -> {
+            ShardRedirectMessage redirect = (ShardRedirectMessage) m;
+            reconnect(() -> client.redirect(redirect.getAddress(), redirect.getPort()));
+        };
+        client.addMessageListener(redirectListener, ShardRedirectMessage.class);
 
         stateManager.attach(commander);
 
@@ -83,6 +102,37 @@ public class RemoteGame extends AbstractGame {
         client.sendMessage(new ReadyForGameStartMessage(true));
     }
 
+    private void addClientListeners() {
+        this.client.getClient().addErrorListener(errorListener);
+        this.client.getClient().addClientStateListener(clientStateListener);
+    }
+
+    /**
+     * The connection has dropped, we try to get our player back. The game goes on meanwhile,
+     * the entities just don't change until we are connected again.
+     */
+    private void reconnect() {
+        reconnect(client::reconnect);
+    }
+
+    private void reconnect(BooleanSupplier connect) {
+        // closing the lost client must not close the game
+        Client lostClient = client.getClient();
+        lostClient.removeErrorListener(errorListener);
+        lostClient.removeClientStateListener(clientStateListener);
+
+        new Thread(() -> {
+            boolean reconnected = connect.getAsBoolean();
+            stateManager.getApplication().enqueue(() -> {
+                if (reconnected) {
+                    addClientListeners();
+                } else {
+                    stateManager.getState(MainGameAppState.class).closeExistingGame();
+                }
+            });
+        }, "Reconnect").start();
+    }
+
     @Override
     public void onGameStart() {
         GameInitializer.initSoundAppStates(stateManager);
@@ -107,6 +157,7 @@ public class RemoteGame extends AbstractGame {
 
     @Override
     public void cleanup() {
+        client.removeMessageListener(redirectListener, ShardRedirectMessage.class);
         stateManager.detach(client);
         stateManager.detach(stateManager.getState(GameCommanderAppState.class));
         stateManager.detach(stateManager.getState(ArtifactHiderAppState.class));
@@ -0,0 +1,59 @@
+package de.gamedevbaden.crucified;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AppState;
+import com.jme3.math.Vector3f;
+import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import de.gamedevbaden.crucified.appstates.ShardGame;
+import de.gamedevbaden.crucified.net.server.RegionShard;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+/**
+ * Runs one region shard of the island without rendering, gui and audio on a headless context (see {@link RegionShard}).
+ * The {@link CoordinatorServer} has to run as well, the shards find each other through it.
+ * <p>
+ * Usage: <code>ShardServer [region] [regions] [port] [address] [coordinator address] [coordinator port] [spawn x y z]</code>,
+ * the address is the one clients and the other shards reach this shard at. Shards on the same machine need their own
+ * ports. Without a spawn location players spawn at a start position in the region.
+ */
+public class ShardServer extends SimpleApplication {
+
+    private int port;
+    private RegionShard shard;
+
+    public ShardServer(int port, RegionShard shard) {
+        super(new AppState[0]); // we don't need any of the default states (fly cam, stats, ...)
+        this.port = port;
+        this.shard = shard;
+    }
+
+    public static void main(String[] args) {
+        int region = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int regions = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : GameConstants.DEFAULT_PORT;
+        String address = args.length > 3 ? args[3] : "localhost";
+        String coordinatorAddress = args.length > 4 ? args[4] : "localhost";
+        int coordinatorPort = args.length > 5 ? Integer.parseInt(args[5]) : GameConstants.DEFAULT_COORDINATOR_PORT;
+
+        RegionShard shard = new RegionShard(region, regions, address, coordinatorAddress, coordinatorPort);
+        if (args.length > 8) {
+            shard.setSpawnLocation(new Vector3f(Float.parseFloat(args[6]), Float.parseFloat(args[7]), Float.parseFloat(args[8])));
+        }
+
+        AppSettings settings = new AppSettings(true);
+        settings.setFrameRate(GameConstants.SERVER_TICK_RATE); // the headless context sleeps to keep this rate
+        settings.setAudioRenderer(null);
+
+        ShardServer server = new ShardServer(port, shard);
+        server.setSettings(settings);
+        server.setShowSettings(false);
+        server.setPauseOnLostFocus(false);
+        server.start(JmeContext.Type.Headless);
+    }
+
+    @Override
+    public void simpleInitApp() {
+        stateManager.attach(new ShardGame(port, shard));
+    }
+}
@@ -9,95 +9,98 @@ import com.simsilica.es.*;
 import de.gamedevbaden.crucified.es.components.ChildOf;
 import de.gamedevbaden.crucified.es.components.Transform;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-
 /**
- * NOTE: This app state might have some bugs. Furthermore it is not really used yet....
+ * Handles entities which are attached to another entity (see {@link ChildOf}).
+ * <p>
+ * The Transform of a child is only set once when it is attached, it doesn't follow its parent on server side.
+ * The clients get the {@link ChildOf} component and place the model relative to the parent's model themselves
+ * (see {@link de.gamedevbaden.crucified.appstates.view.AttachmentViewAppState}), so a moving parent doesn't cause
+ * a Transform update for each of its children. Systems which need the current world transform of a child
+ * can calculate it with {@link #getWorldTransform(EntityId)}.
  * Created by Domenic on 12.05.2017.
  */
 public class AttachmentAppState extends AbstractAppState {
 
+    private static final int MAX_DEPTH = 8; // guards against cyclic attachments
+
     private EntitySet attachedEntities;
     private EntityData entityData;
 
-    private HashMap<EntityId, ArrayList<EntityId>> parentChildMap;
-    private HashMap<EntityId, EntityId> childParentMap;
-    private ArrayList<WatchedEntity> parents; // to look for changes
-
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
         this.entityData = stateManager.getState(EntityDataState.class).getEntityData();
-        this.attachedEntities = entityData.getEntities(ChildOf.class, Transform.class);
+        this.attachedEntities = entityData.getEntities(ChildOf.class);
 
-        this.parentChildMap = new HashMap<>();
-        this.childParentMap = new HashMap<>();
-        this.parents = new ArrayList<>();
+        for (Entity entity : attachedEntities) {
+            setInitialTransform(entity);
+        }
 
         super.initialize(stateManager, app);
     }
 
     @Override
     public void update(float tpf) {
-
         if (attachedEntities.applyChanges()) {
-
             for (Entity entity : attachedEntities.getAddedEntities()) {
-
-                ChildOf childOf = entity.get(ChildOf.class);
-
-                if (!parentChildMap.containsKey(childOf.getParentId())) {
-                    parentChildMap.put(childOf.getParentId(), new ArrayList<>());
-
-                    WatchedEntity watchedEntity = entityData.watchEntity(childOf.getParentId(), Transform.class);
-                    parents.add(watchedEntity);
-                }
-                parentChildMap.get(childOf.getParentId()).add(entity.getId());
-                childParentMap.put(entity.getId(), childOf.getParentId());
+                setInitialTransform(entity);
+            }
+            for (Entity entity : attachedEntities.getChangedEntities()) {
+                setInitialTransform(entity);
             }
-
             for (Entity entity : attachedEntities.getRemovedEntities()) {
-//                ChildOf childOf = entity.get(ChildOf.class);
-//                ArrayList<EntityId> children = parentChildMap.get(childOf.getParentId());
-//                children.remove(entity.getId());
-                EntityId childId = entity.getId();
-                EntityId parentId = childParentMap.remove(childId);
-                ArrayList<EntityId> children = parentChildMap.get(parentId);
-                children.remove(childId);
-
-                if (children.isEmpty()) {
-                    WatchedEntity parentEntity = null;
-                    for (WatchedEntity parent : parents) {
-                        if (parent.getId().equals(parentId)) {
-                            parent.release();
-                            parentEntity = parent;
-                            break;
-                        }
-                    }
-                    if (parentEntity != null) {
-                        parents.remove(parentEntity);
-                    }
-                }
+                setDetachedTransform(entity);
             }
         }
+    }
 
-        for (WatchedEntity parent : parents) {
-            if (parent.applyChanges()) {
+    /**
+     * A detached child stays where it has been shown last, unless it has been removed completely.
+     */
+    private void setDetachedTransform(Entity entity) {
+        if (entityData.getComponent(entity.getId(), Transform.class) == null) {
+            return;
+        }
+        Transform parentTransform = getWorldTransform(entity.get(ChildOf.class).getParentId());
+        if (parentTransform != null) {
+            entityData.setComponent(entity.getId(), combineWithParent(parentTransform, entity.get(ChildOf.class)));
+        }
+    }
 
-                if (!parent.isComplete()) continue; // if the parent has been removed we don't need to change anything.
+    /**
+     * The child gets the transform it has when being attached. It's used until the child is detached again,
+     * e.g. to decide which clients are near it.
+     */
+    private void setInitialTransform(Entity entity) {
+        Transform transform = getWorldTransform(entity.getId());
+        if (transform != null) {
+            entityData.setComponent(entity.getId(), transform);
+        }
+    }
 
-                for (EntityId child : parentChildMap.get(parent.getId())) {
-                    Entity childEntity = attachedEntities.getEntity(child);
-                    Transform parentTransform = parent.get(Transform.class);
-                    ChildOf childOf = childEntity.get(ChildOf.class);
-                    Transform newChildTransform = combineWithParent(parentTransform, childOf);
-                    childEntity.set(newChildTransform);
-                }
-            }
+    /**
+     * Calculates the current world transform of an entity. For attached entities it's combined
+     * with the transforms of their parents.
+     *
+     * @param entityId the entity
+     * @return the world transform or null if the entity or one of its parents has no transform
+     */
+    public Transform getWorldTransform(EntityId entityId) {
+        return getWorldTransform(entityId, 0);
+    }
+
+    private Transform getWorldTransform(EntityId entityId, int depth) {
+        ChildOf childOf = entityData.getComponent(entityId, ChildOf.class);
+        if (childOf == null || depth > MAX_DEPTH) {
+            return entityData.getComponent(entityId, Transform.class);
         }
+        Transform parentTransform = getWorldTransform(childOf.getParentId(), depth + 1);
+        return parentTransform != null ? combineWithParent(parentTransform, childOf) : null;
     }
 
-    private Transform combineWithParent(Transform parentTransform, ChildOf childOf) {
+    /**
+     * @return the world transform of the child of that parent
+     */
+    public static Transform combineWithParent(Transform parentTransform, ChildOf childOf) {
         Vector3f translation = childOf.getOffsetTranslation().clone();
         Quaternion rotation = new Quaternion();
 
@@ -114,15 +117,6 @@ public class AttachmentAppState extends AbstractAppState {
         this.attachedEntities.clear();
         this.attachedEntities = null;
 
-        for (WatchedEntity entity : parents) {
-            entity.release();
-        }
-        this.parents.clear();
-        this.parents = null;
-
-        this.parentChildMap.clear();
-        this.parentChildMap = null;
-
         super.cleanup();
     }
 }
@@ -26,9 +26,10 @@ public class CraftingAppState extends AbstractAppState {
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
-        this.entityData = stateManager.getState(EntityDataState.class).getEntityData();
-        this.itemsToCraft = entityData.getEntities(NeedToBeCrafted.class);
-        this.items = entityData.getEntities(ItemComponent.class);
+        EntityDataState entityDataState = stateManager.getState(EntityDataState.class);
+        this.entityData = entityDataState.getEntityData();
+        this.itemsToCraft = entityDataState.getEntities(NeedToBeCrafted.class);
+        this.items = entityDataState.getEntities(ItemComponent.class);
         super.initialize(stateManager, app);
     }
 
@@ -0,0 +1,53 @@
+package de.gamedevbaden.crucified.appstates;
+
+import de.gamedevbaden.crucified.appstates.net.NetworkStatsAppState;
+import de.gamedevbaden.crucified.net.server.GameServer;
+import de.gamedevbaden.crucified.net.server.MatchManager;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.util.logging.Logger;
+
+/**
+ * A game which only runs the server side: game logic, physics and networking.
+ * Unlike the {@link HostedGame} nobody plays on this machine, so there are no view, sound, input or gui states.
+ * <p>
+ * The server runs several matches at once, see {@link MatchManager}. Each match starts as soon as
+ * enough players have joined it.
+ */
+public class DedicatedGame extends AbstractGame {
+
+    private static final Logger log = Logger.getLogger(DedicatedGame.class.getName());
+
+    private int port;
+    private int playersPerGame;
+    private int maxMatches;
+
+    public DedicatedGame(int port, int playersPerGame, int maxMatches) {
+        this.port = port;
+        this.playersPerGame = playersPerGame;
+        this.maxMatches = maxMatches;
+    }
+
+    @Override
+    public void setupGame() {
+        // there is no entity data state here, every match creates its own one
+        stateManager.attach(new GameServer(port));
+        stateManager.attach(new MatchManager(playersPerGame, maxMatches));
+        stateManager.attach(new NetworkStatsAppState(false, GameConstants.NETWORK_STATS_LOG_INTERVAL));
+
+        log.info("Dedicated server started on port " + port + ", " + playersPerGame + " players per match, up to " + maxMatches + " matches");
+    }
+
+    @Override
+    public void onGameStart() {
+        // the matches start on their own
+    }
+
+    @Override
+    public void cleanup() {
+        stateManager.detach(stateManager.getState(NetworkStatsAppState.class));
+        stateManager.detach(stateManager.getState(MatchManager.class));
+        stateManager.detach(stateManager.getState(GameServer.class));
+        super.cleanup();
+    }
+}
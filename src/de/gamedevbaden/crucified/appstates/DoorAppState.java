@@ -3,9 +3,9 @@ package de.gamedevbaden.crucified.appstates;
 import com.jme3.app.Application;
 import com.jme3.app.state.AbstractAppState;
 import com.jme3.app.state.AppStateManager;
-import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
+import de.gamedevbaden.crucified.appstates.game.GameSessionManager;
 import de.gamedevbaden.crucified.appstates.listeners.DoorStateListener;
 import de.gamedevbaden.crucified.es.components.OpenedClosedState;
 
@@ -14,6 +14,8 @@ import java.util.ArrayList;
 /**
  * This app state allows to change the {@link OpenedClosedState} component.
  * This can be used to open or close doors for example.
+ * The new state is stamped with the server time, the swing itself is evaluated locally
+ * by {@link PhysicalDoorAppState} and the views.
  *
  * @author Domenic
  */
@@ -21,11 +23,12 @@ public class DoorAppState extends AbstractAppState {
 
     private EntitySet doors;
     private ArrayList<DoorStateListener> listeners = new ArrayList<>();
+    private GameSessionManager sessionManager;
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
-        EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
-        this.doors = entityData.getEntities(OpenedClosedState.class);
+        this.doors = stateManager.getState(EntityDataState.class).getEntities(OpenedClosedState.class);
+        this.sessionManager = stateManager.getState(GameSessionManager.class);
         super.initialize(stateManager, app);
     }
 
@@ -36,10 +39,9 @@ public class DoorAppState extends AbstractAppState {
     public void changeState(EntityId entityId) {
         doors.applyChanges();
         if (doors.containsId(entityId)) {
-            OpenedClosedState state = doors.getEntity(entityId).get(OpenedClosedState.class);
-            boolean open = !state.isOpened();
-            doors.getEntity(entityId).set(new OpenedClosedState(open));
-            callListeners(entityId, open);
+            OpenedClosedState state = doors.getEntity(entityId).get(OpenedClosedState.class).toggle(getServerTime());
+            doors.getEntity(entityId).set(state);
+            callListeners(entityId, state.isOpened());
         }
     }
 
@@ -49,15 +51,33 @@ public class DoorAppState extends AbstractAppState {
             OpenedClosedState state = doors.getEntity(entityId).get(OpenedClosedState.class);
             if (state.isOpened() != open) {
                 // we apply the new state only if the value has changed
-                doors.getEntity(entityId).set(new OpenedClosedState(open));
+                doors.getEntity(entityId).set(state.toggle(getServerTime()));
                 callListeners(entityId, open);
             }
         }
     }
 
+    /**
+     * @return the current server time in milliseconds
+     */
+    public long getServerTime() {
+        return sessionManager != null ? sessionManager.getServerTime() : System.nanoTime() / 1000000;
+    }
+
     private void callListeners(EntityId entityId, boolean open) {
         for (DoorStateListener l : listeners) {
             l.onStateChanged(entityId, open);
         }
     }
+
+    @Override
+    public void cleanup() {
+        this.doors.release();
+        this.doors.clear();
+        this.doors = null;
+
+        this.listeners.clear();
+        this.sessionManager = null;
+        super.cleanup();
+    }
 }
@@ -1,34 +1,68 @@
 package de.gamedevbaden.crucified.appstates;
 
 import com.jme3.app.state.AbstractAppState;
+import com.simsilica.es.ComponentFilter;
 import com.simsilica.es.EntityData;
+import com.simsilica.es.EntitySet;
 import com.simsilica.es.base.DefaultEntityData;
+import de.gamedevbaden.crucified.es.utils.EntitySetRegistry;
 
 /**
  * This app state just stores or creates an {@link EntityData} object.
+ * States which query common component types should get their sets from here, they are shared (see {@link EntitySetRegistry}).
  * Created by Domenic on 11.04.2017.
  */
 public class EntityDataState extends AbstractAppState {
 
     private EntityData entityData;
+    private EntitySetRegistry entitySets;
 
     public EntityDataState() {
-        this.entityData = new DefaultEntityData();
+        this(new DefaultEntityData());
     }
 
     public EntityDataState(EntityData entityData) {
         this.entityData = entityData;
+        this.entitySets = new EntitySetRegistry(entityData);
     }
 
     public EntityData getEntityData() {
         return entityData;
     }
 
+    /**
+     * Returns a shared set of the entities with those components.
+     *
+     * @param types the component types
+     * @return a view of the shared set, it has to be released like any other set
+     */
+    public EntitySet getEntities(Class... types) {
+        return entitySets.getEntities(types);
+    }
+
+    /**
+     * Returns a shared set of the entities with those components which match the filter.
+     *
+     * @param filter the filter, only field filters can be shared
+     * @param types  the component types
+     * @return a view of the shared set, it has to be released like any other set
+     */
+    public EntitySet getEntities(ComponentFilter filter, Class... types) {
+        return entitySets.getEntities(filter, types);
+    }
+
+    @Override
+    public void update(float tpf) {
+        // this state is attached first, so the shared sets are updated before the states which use them
+        entitySets.update();
+    }
+
     @Override
     public void cleanup() {
         if (entityData == null) {
             return;
         }
+        entitySets.close();
         entityData.close();
         entityData = null;
         super.cleanup();
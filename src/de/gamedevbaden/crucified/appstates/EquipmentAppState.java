@@ -36,10 +36,11 @@ public class EquipmentAppState extends AbstractAppState {
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
-        this.entityData = stateManager.getState(EntityDataState.class).getEntityData();
-        this.equipables = entityData.getEntities(Equipable.class);
+        EntityDataState entityDataState = stateManager.getState(EntityDataState.class);
+        this.entityData = entityDataState.getEntityData();
+        this.equipables = entityDataState.getEntities(Equipable.class);
         this.equippedEntities = entityData.getEntities(EquippedBy.class);
-        this.containers = entityData.getEntities(Container.class);
+        this.containers = entityDataState.getEntities(Container.class);
         this.itemStoreAppState = stateManager.getState(ItemStoreAppState.class);
         super.initialize(stateManager, app);
     }
@@ -6,6 +6,7 @@ import de.gamedevbaden.crucified.game.GameCommander;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Set;
 
 /**
  * This state holds a map of {@link GameCommander}s with their playerId as key.
@@ -28,6 +29,10 @@ public class GameCommanderHolder extends AbstractAppState {
         return map.values();
     }
 
+    public Set<EntityId> getPlayers() {
+        return map.keySet();
+    }
+
     @Override
     public void cleanup() {
         this.map.clear();
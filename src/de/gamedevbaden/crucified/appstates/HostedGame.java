@@ -62,6 +62,9 @@ public class HostedGame extends AbstractGame {
         GameInitializer.initEssentialAppStates(stateManager);
         GameInitializer.initGameSessionRelatedAppStates(stateManager, gameSession);
 
+        // the local player gets the sounds and hits directly, the other one over the network
+        stateManager.getState(TransientEventAppState.class).addListener(event -> server.getEntityDataService().broadcastEvent(entityData, event));
+
         // GameInitializer.initThirdPersonCameraView(stateManager);
 
 
@@ -101,7 +104,10 @@ public class HostedGame extends AbstractGame {
                 }
             }
 
-            stateManager.getState(SceneEntityLoader.class).createEntitiesFromScene(sceneToLoad);
+            SceneEntityLoader sceneEntityLoader = stateManager.getState(SceneEntityLoader.class);
+            sceneEntityLoader.createEntitiesFromScene(sceneToLoad);
+            stateManager.getState(GameServer.class).getEntityDataService().setSceneDefaults(
+                    stateManager.getState(EntityDataState.class).getEntityData(), sceneEntityLoader.getSceneDefaults());
 
             stateManager.attach(new Loader2());
         }
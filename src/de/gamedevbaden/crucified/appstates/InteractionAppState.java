@@ -13,7 +13,6 @@ import de.gamedevbaden.crucified.enums.Sound;
 import de.gamedevbaden.crucified.es.components.InteractionComponent;
 import de.gamedevbaden.crucified.es.components.NeedToBeCrafted;
 import de.gamedevbaden.crucified.es.components.ReadableScript;
-import de.gamedevbaden.crucified.es.utils.EntityFactory;
 import de.gamedevbaden.crucified.game.GameCommander;
 
 import java.util.ArrayList;
@@ -31,6 +30,7 @@ public class InteractionAppState extends AbstractAppState {
 
     private DoorAppState doorAppState;
     private FireAppState fireAppState;
+    private TransientEventAppState transientEvents;
 
     private ArrayList<InteractionListener> listeners = new ArrayList<>();
 
@@ -39,6 +39,7 @@ public class InteractionAppState extends AbstractAppState {
         this.commanderHolder = stateManager.getState(GameCommanderHolder.class);
         this.doorAppState = stateManager.getState(DoorAppState.class);
         this.fireAppState = stateManager.getState(FireAppState.class);
+        this.transientEvents = stateManager.getState(TransientEventAppState.class);
         this.entityData = stateManager.getState(EntityDataState.class).getEntityData();
         this.interactables = entityData.getEntities(InteractionComponent.class);
         super.initialize(stateManager, app);
@@ -72,7 +73,7 @@ public class InteractionAppState extends AbstractAppState {
             switch (type) {
 
                 case PlayTestSound:
-                    EntityFactory.createSoundEffect(entityData, Sound.Miss, false, null);
+                    transientEvents.playSound(Sound.Miss, null);
                     break;
 
                 case ReadText:
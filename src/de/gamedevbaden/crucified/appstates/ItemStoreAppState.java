@@ -31,11 +31,12 @@ public class ItemStoreAppState extends AbstractAppState {
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
-        this.entityData = stateManager.getState(EntityDataState.class).getEntityData();
-        this.pickables = entityData.getEntities(Pickable.class);
-        this.containers = entityData.getEntities(Container.class);
-        this.storedEntities = entityData.getEntities(StoredIn.class);
-        this.itemTypeEntities = entityData.getEntities(ItemComponent.class);
+        EntityDataState entityDataState = stateManager.getState(EntityDataState.class);
+        this.entityData = entityDataState.getEntityData();
+        this.pickables = entityDataState.getEntities(Pickable.class);
+        this.containers = entityDataState.getEntities(Container.class);
+        this.storedEntities = entityDataState.getEntities(StoredIn.class);
+        this.itemTypeEntities = entityDataState.getEntities(ItemComponent.class);
         super.initialize(stateManager, app);
     }
 
@@ -8,6 +8,7 @@ import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
 import de.gamedevbaden.crucified.es.components.Name;
+import de.gamedevbaden.crucified.es.utils.StringIds;
 
 public class NameAppState extends AbstractAppState {
 
@@ -32,10 +33,12 @@ public class NameAppState extends AbstractAppState {
      * @return the first found entity with the specified name
      */
     public EntityId findEntityByName(String name) {
-        if (name != null) {
+        // a name which has never been interned can't belong to any entity
+        int nameId = StringIds.findId(name);
+        if (name != null && nameId != -1) {
             for (Entity entity : namedEntities) {
                 Name nameComponent = entity.get(Name.class);
-                if (nameComponent.getName().equals(name)) {
+                if (nameComponent.getNameId() == nameId) {
                     return entity.getId();
                 }
             }
@@ -34,6 +34,7 @@ public class NewTriggerAppState extends AbstractAppState implements InteractionL
     private Map<EntityId, ArrayList<EntityId>> groupEvents;
 
     private DoorAppState doorAppState;
+    private TransientEventAppState transientEvents;
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
@@ -44,6 +45,7 @@ public class NewTriggerAppState extends AbstractAppState implements InteractionL
         this.groupEvents = new HashMap<>();
 
         this.doorAppState = stateManager.getState(DoorAppState.class);
+        this.transientEvents = stateManager.getState(TransientEventAppState.class);
 
         this.entityData = stateManager.getState(EntityDataState.class).getEntityData();
         this.eventGroups = entityData.getEntities(EventGroup.class);
@@ -197,11 +199,7 @@ public class NewTriggerAppState extends AbstractAppState implements InteractionL
             EntityId targetId = ((OpenCloseEvent) eventType).getEntityId();
             doorAppState.changeState(targetId);
         } else if (eventType instanceof PlaySoundEventType) {
-            EntityId sound = entityData.createEntity();
-            entityData.setComponents(sound,
-                    new SoundComponent(Sound.Miss, false, false),
-                    new Decay((long) (Sound.Miss.getDurationInMillis() * 1000))
-            );
+            transientEvents.playSound(Sound.Miss, null);
         }
     }
 
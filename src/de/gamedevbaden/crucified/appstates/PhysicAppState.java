@@ -4,6 +4,8 @@ import com.jme3.app.Application;
 import com.jme3.app.state.AbstractAppState;
 import com.jme3.app.state.AppStateManager;
 import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
 import com.jme3.bullet.collision.PhysicsCollisionEvent;
 import com.jme3.bullet.collision.PhysicsCollisionListener;
 import com.jme3.bullet.collision.shapes.CollisionShape;
@@ -11,6 +13,7 @@ import com.jme3.bullet.collision.shapes.HeightfieldCollisionShape;
 import com.jme3.bullet.control.PhysicsControl;
 import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.bullet.util.CollisionShapeFactory;
+import com.jme3.math.FastMath;
 import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
@@ -20,11 +23,17 @@ import com.simsilica.es.Entity;
 import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
+import de.gamedevbaden.crucified.appstates.game.GameSessionManager;
 import de.gamedevbaden.crucified.appstates.view.ModelLoaderAppState;
 import de.gamedevbaden.crucified.es.components.*;
 import de.gamedevbaden.crucified.es.utils.physics.CollisionShapeType;
+import de.gamedevbaden.crucified.game.ProcessedInput;
+import de.gamedevbaden.crucified.game.TransientEvent;
+import de.gamedevbaden.crucified.physics.CollisionShapeCache;
 import de.gamedevbaden.crucified.physics.CustomCharacterControl;
+import de.gamedevbaden.crucified.physics.LagCompensator;
 import de.gamedevbaden.crucified.physics.PhysicConstants;
+import de.gamedevbaden.crucified.utils.GameConstants;
 import de.gamedevbaden.crucified.utils.GameOptions;
 
 import java.util.ArrayList;
@@ -37,11 +46,21 @@ import java.util.Map;
  * Currently there is RigidBody and CharacterControl support (most things are handled with those two)
  * This state will set new {@link Transform} components when physics position and rotation changes.
  *
+ * Dynamic rigid bodies (e.g. fireballs) are dead reckoned instead: they get a {@link Velocity} the clients
+ * extrapolate them with, a new one and a new Transform are only set if that prediction is too far off.
+ *
  * Note that Terrain is handled a little different: Even though terrain shapes are added by a RigidBodyControl
  * it uses its "own" component: PhysicsTerrain. The reason terrain has a separate component is that
  * we want be able to modify the terrain while scene composing and thus we don't want the terrain to be stored
  * in an own j3o file.
  *
+ * Fireball hits are lag compensated: a fireball hits a character if it touches the character where the shooter
+ * saw it, i.e. the position it had the view delay of the shooter ago (see {@link LagCompensator}).
+ *
+ * For players with a game session we remember which input command each physics step has simulated and for how long.
+ * After the step the session manager gets the state of the player for this command, which is sent to its client
+ * (see {@link ProcessedInput}).
+ *
  * Created by Domenic on 13.04.2017.
  */
 public class PhysicAppState extends AbstractAppState {
@@ -58,10 +77,20 @@ public class PhysicAppState extends AbstractAppState {
     private HashMap<EntityId, Integer> movingEntities; // contains all entities who are moving right now
     // the integer value is used to make some steps until the
     // entity is removed from the list
+    private HashMap<EntityId, Velocity> predictions = new HashMap<>(); // the last velocity of each dead reckoned body
+    private HashMap<EntityId, InputStep> inputSteps = new HashMap<>(); // the simulated input commands of the players
+    private InputStepListener inputStepListener = new InputStepListener();
+    private PhysicsPlayerMovementAppState playerMovement; // knows which command the walk direction comes from
 
     private ArrayList<RigidBodyControl> staticPhysicalObjects;
 
     private FireballCollisionListener fireballListener = new FireballCollisionListener();
+    private LagCompensator lagCompensator = new LagCompensator(GameConstants.NETWORK_MAX_REWIND);
+    private GameSessionManager sessionManager; // knows how old the view of each player is
+    private TransientEventAppState transientEvents;
+    private final Vector3f tempLocation = new Vector3f();
+    private final Vector3f tempVelocity = new Vector3f();
+    private final Quaternion tempRotation = new Quaternion();
 
     private AppStateManager stateManager;
     private BulletAppState bulletAppState;
@@ -72,12 +101,16 @@ public class PhysicAppState extends AbstractAppState {
         this.stateManager = stateManager;
         this.modelLoader = stateManager.getState(ModelLoaderAppState.class);
         this.entityData = stateManager.getState(EntityDataState.class).getEntityData();
+        this.sessionManager = stateManager.getState(GameSessionManager.class);
+        this.transientEvents = stateManager.getState(TransientEventAppState.class);
 
         this.bulletAppState = new BulletAppState();
         this.bulletAppState.setThreadingType(BulletAppState.ThreadingType.PARALLEL);
         this.bulletAppState.setDebugEnabled(GameOptions.ENABLE_PHYSICS_DEBUG);
         this.stateManager.attach(bulletAppState);
         this.bulletAppState.getPhysicsSpace().addCollisionListener(fireballListener);
+        this.bulletAppState.getPhysicsSpace().addTickListener(inputStepListener);
+        CollisionShapeCache.hold();
 
         this.characterControls = new HashMap<>();
         this.rigidBodyControls = new HashMap<>();
@@ -192,26 +225,59 @@ public class PhysicAppState extends AbstractAppState {
         }
 
         // apply new transforms for rigid bodies
+        long serverTime = sessionManager != null ? sessionManager.getServerTime() : System.nanoTime() / 1000000;
         for (Entity entity : rigidBodies) {
             com.jme3.bullet.objects.PhysicsRigidBody rigidBody = rigidBodyControls.get(entity.getId());
             if (!entity.get(PhysicsRigidBody.class).isKinematic()) {
                 Vector3f location = rigidBody.getPhysicsLocation();
                 Quaternion rotation = rigidBody.getPhysicsRotation();
                 Vector3f scale = entity.get(Transform.class).getScale();
-                applyNewChanges(entity, location, rotation, scale);
+                if (rigidBody.getMass() > 0) {
+                    applyDeadReckoning(entity, rigidBody, location, rotation, scale, serverTime);
+                } else {
+                    applyNewChanges(entity, location, rotation, scale);
+                }
             }
         }
 
 
         // apply new transforms for characters
+        long now = System.nanoTime() / 1000000;
+        if (playerMovement == null) {
+            playerMovement = stateManager.getState(PhysicsPlayerMovementAppState.class);
+        }
         for (Entity entity : characters) {
             CustomCharacterControl characterControl = characterControls.get(entity.getId());
             Vector3f location = characterControl.getPhysicsRigidBody().getPhysicsLocation();
             Quaternion rotation = characterControl.getCharacterRotation(); //ToDo: Shall that be changed? PlayerControlled Rotation is just a thing of the view, so how could we implement this instantly
             Vector3f scale = entity.get(Transform.class).getScale();
             applyNewChanges(entity, location, rotation, scale);
+            lagCompensator.record(entity.getId(), now, location);
+            updateInputStep(entity.getId(), characterControl, location);
         }
 
+        // check if the fireballs have hit a character where their shooters see it
+        fireballListener.checkRewoundHits(now);
+
+    }
+
+    /**
+     * Hands the state after the last step to the session manager and remembers which input command the next step
+     * simulates. The walk direction of the character has just been applied, so it's the one of that command.
+     */
+    private void updateInputStep(EntityId entityId, CustomCharacterControl characterControl, Vector3f location) {
+        if (sessionManager == null || playerMovement == null || sessionManager.getGameSession(entityId) == null) {
+            return;
+        }
+        InputStep step = inputSteps.get(entityId);
+        if (step == null) {
+            step = new InputStep();
+            inputSteps.put(entityId, step);
+        } else if (step.simulatedSequence != 0) {
+            characterControl.getPhysicsRigidBody().getLinearVelocity(tempVelocity);
+            sessionManager.setProcessedInput(entityId, new ProcessedInput(step.simulatedSequence, step.time, location, tempVelocity));
+        }
+        step.sequence = playerMovement.getInputSequence(entityId);
     }
 
     /**
@@ -252,6 +318,35 @@ public class PhysicAppState extends AbstractAppState {
 
     }
 
+    /**
+     * Sets a new velocity and transform for a dynamic rigid body if the clients would extrapolate
+     * it too far off its real location or rotation.
+     *
+     * @param entity     the entity of the rigid body
+     * @param rigidBody  the rigid body
+     * @param location   the latest physic location
+     * @param rotation   the latest physic rotation
+     * @param scale      the scale
+     * @param serverTime the current server time in milliseconds
+     */
+    private void applyDeadReckoning(Entity entity, com.jme3.bullet.objects.PhysicsRigidBody rigidBody, Vector3f location, Quaternion rotation, Vector3f scale, long serverTime) {
+        Velocity prediction = predictions.get(entity.getId());
+        if (prediction != null
+                && prediction.predictLocation(serverTime, tempLocation).distanceSquared(location) <= GameConstants.NETWORK_DEAD_RECKONING_THRESHOLD * GameConstants.NETWORK_DEAD_RECKONING_THRESHOLD
+                && FastMath.abs(prediction.predictRotation(serverTime, tempRotation).dot(rotation)) >= GameConstants.NETWORK_DEAD_RECKONING_MIN_DOT) {
+            return; // the clients are close enough
+        }
+
+        prediction = new Velocity(location, rotation, rigidBody.getLinearVelocity(), rigidBody.getAngularVelocity(), serverTime);
+        predictions.put(entity.getId(), prediction);
+        entityData.setComponent(entity.getId(), prediction);
+
+        Transform currentTransform = entity.get(Transform.class);
+        if (!location.equals(currentTransform.getTranslation()) || !rotation.equals(currentTransform.getRotation())) {
+            entity.set(new Transform(location, rotation, scale));
+        }
+    }
+
     /**
      * Creates a static rigid body control of that specified object and adds it to physics space.
      * You can define which kind of shall be used for that.
@@ -259,12 +354,15 @@ public class PhysicAppState extends AbstractAppState {
      * @param collisionShapeType the type of the collision shape
      */
     void addStaticPhysicalObject(Spatial object, int collisionShapeType) {
-        CollisionShape shape = null;
-        if (collisionShapeType == CollisionShapeType.BOX_COLLISION_SHAPE) {
-            shape = CollisionShapeFactory.createBoxShape(object);
-        } else if (collisionShapeType == CollisionShapeType.MESH_COLLISION_SHAPE) {
-            shape = CollisionShapeFactory.createMeshShape(object);
-        }
+        // the shape is cached, so other matches with the same scene can use it as well
+        CollisionShape shape = CollisionShapeCache.getCollisionShape(CollisionShapeCache.createKey(collisionShapeType, object), () -> {
+            if (collisionShapeType == CollisionShapeType.BOX_COLLISION_SHAPE) {
+                return CollisionShapeFactory.createBoxShape(object);
+            } else if (collisionShapeType == CollisionShapeType.MESH_COLLISION_SHAPE) {
+                return CollisionShapeFactory.createMeshShape(object);
+            }
+            return null;
+        });
         // create rigid body control and set translation and rotation
         RigidBodyControl rigidBodyControl = new RigidBodyControl(shape, 0);
         rigidBodyControl.setPhysicsLocation(object.getWorldTranslation());
@@ -331,6 +429,8 @@ public class PhysicAppState extends AbstractAppState {
     }
 
     private void removeCharacterControl(Entity entity) {
+        lagCompensator.remove(entity.getId());
+        inputSteps.remove(entity.getId());
         CustomCharacterControl cc = characterControls.remove(entity.getId());
         removePhysicsControl(cc.getPhysicsRigidBody());
     }
@@ -349,6 +449,7 @@ public class PhysicAppState extends AbstractAppState {
     }
 
     private void removeRigidBodyControl(Entity entity) {
+        predictions.remove(entity.getId());
         RigidBodyControl body = rigidBodyControls.remove(entity.getId());
         removePhysicsControl(body);
     }
@@ -364,61 +465,160 @@ public class PhysicAppState extends AbstractAppState {
     private void fireFireball(Entity entity) {
         RigidBodyControl rigidBody = getRigidBodyControl(entity.getId());
         rigidBody.setGravity(new Vector3f(0, 0, 0));
-        rigidBody.setLinearVelocity(entity.get(Fireball.class).getDirection().normalize().multLocal(25));
-        fireballListener.flyingFireballs.put(entity.getId(), rigidBody);
+        rigidBody.setLinearVelocity(entity.get(Fireball.class).getDirection().normalize().multLocal(PhysicConstants.FIREBALL_SPEED));
+
+        // the view delay is taken when the fireball is shot, that's when the shooter aimed
+        EntityId shooter = entity.get(Fireball.class).getShooter();
+        long rewind = shooter != null && sessionManager != null ? lagCompensator.clampRewind(sessionManager.getViewDelay(shooter)) : 0;
+        fireballListener.flyingFireballs.put(entity.getId(), new FlyingFireball(rigidBody, shooter, rewind));
     }
 
     private void removeFireball(Entity entity) {
         fireballListener.flyingFireballs.remove(entity.getId());
     }
 
+    /**
+     * Sets how far hit tests can go back in time. A higher value is fairer for players with a high ping,
+     * but others can be hit although they have already taken cover on their screen.
+     *
+     * @param maxRewind the time in milliseconds
+     */
+    public void setMaxRewind(long maxRewind) {
+        lagCompensator.setMaxRewind(maxRewind);
+    }
+
+    public long getMaxRewind() {
+        return lagCompensator.getMaxRewind();
+    }
+
+    /**
+     * The input command of a player which the physics simulates.
+     */
+    private static class InputStep {
+        int sequence; // the command for the next step, set on the update thread
+        int simulatedSequence; // the command of the last step
+        float time; // how long the last command has been simulated so far
+    }
+
+    /**
+     * Counts the time each input command is simulated. The internal steps of the physics have a fixed length,
+     * so the time a frame simulates differs from its tpf.
+     */
+    private class InputStepListener implements PhysicsTickListener {
+
+        @Override
+        public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+            // called on the physics thread, but the update thread waits for the physics to finish
+            for (InputStep step : inputSteps.values()) {
+                if (step.sequence != step.simulatedSequence) {
+                    step.simulatedSequence = step.sequence;
+                    step.time = 0;
+                }
+                step.time += timeStep;
+            }
+        }
+
+        @Override
+        public void physicsTick(PhysicsSpace space, float timeStep) {
+        }
+    }
+
+    private static class FlyingFireball {
+        final RigidBodyControl rigidBody;
+        final EntityId shooter;
+        final long rewind; // how far the shooter sees in the past
+        final Vector3f lastLocation;
+
+        FlyingFireball(RigidBodyControl rigidBody, EntityId shooter, long rewind) {
+            this.rigidBody = rigidBody;
+            this.shooter = shooter;
+            this.rewind = rewind;
+            this.lastLocation = rigidBody.getPhysicsLocation();
+        }
+    }
+
     private class FireballCollisionListener implements PhysicsCollisionListener {
 
         private List<EntityId> entitiesToRemove = new ArrayList<>();
-        private HashMap<EntityId, RigidBodyControl> flyingFireballs = new HashMap<>();
+        private HashMap<EntityId, FlyingFireball> flyingFireballs = new HashMap<>();
+
+        /**
+         * Tests the way each fireball has flown since the last frame against the rewound characters.
+         * This finds the hits on characters which are somewhere else on the server by now.
+         *
+         * @param now the current time in milliseconds
+         */
+        void checkRewoundHits(long now) {
+            for (Map.Entry<EntityId, FlyingFireball> e : flyingFireballs.entrySet()) {
+                FlyingFireball fireball = e.getValue();
+                Vector3f location = fireball.rigidBody.getPhysicsLocation(tempLocation);
+                for (Entity entity : nonFireballResistentEntities) {
+                    if (entity.getId().equals(fireball.shooter)) {
+                        continue;
+                    }
+                    if (lagCompensator.sweepTest(entity.getId(), now, fireball.rewind, fireball.lastLocation, location, PhysicConstants.FIREBALL_RADIUS)) {
+                        entityData.removeEntity(e.getKey());
+                        entitiesToRemove.add(e.getKey());
+                        hitCharacter(entity, location);
+                        break;
+                    }
+                }
+                fireball.lastLocation.set(location);
+            }
+            removeFireballs();
+        }
 
         @Override
         public void collision(PhysicsCollisionEvent event) {
-            for (Map.Entry<EntityId, RigidBodyControl> e : flyingFireballs.entrySet()) {
-                if (event.getObjectA().equals(e.getValue()) || event.getObjectB().equals(e.getValue())) {
+            long now = System.nanoTime() / 1000000;
+            for (Map.Entry<EntityId, FlyingFireball> e : flyingFireballs.entrySet()) {
+                FlyingFireball fireball = e.getValue();
+                if (event.getObjectA().equals(fireball.rigidBody) || event.getObjectB().equals(fireball.rigidBody)) {
                     entityData.removeEntity(e.getKey());
                     entitiesToRemove.add(e.getKey());
 
-                    boolean hitPlayer = false;
+                    Entity hitCharacter = null;
                     for (Entity entity : nonFireballResistentEntities) {
                         CustomCharacterControl ccc = getCharacterControl(entity.getId());
                         com.jme3.bullet.objects.PhysicsRigidBody physicsRigidBody = ccc.getPhysicsRigidBody();
                         if (event.getObjectA().equals(physicsRigidBody) || event.getObjectB().equals(physicsRigidBody)) {
-                            AliveComponent healthComp = nonFireballResistentEntities.getEntity(entity.getId()).get(AliveComponent.class);
-                            int newHealth = healthComp.getHealth() - 40;
-                            if (newHealth <= 0) {
-                                entityData.removeComponent(entity.getId(), AliveComponent.class);
-                            } else {
-                                entityData.setComponent(entity.getId(), new AliveComponent(newHealth));
-                            }
-                            hitPlayer = true;
+                            hitCharacter = entity;
                             break;
                         }
                     }
-                    if (!hitPlayer) {
+
+                    if (hitCharacter == null) {
                         // if no player was hit we create a little fire effect
                         EntityId fire = entityData.createEntity();
                         entityData.setComponents(fire,
                                 new FireState(true),
                                 new Transform(event.getPositionWorldOnA()),
-                                new Decay(20000),
-                                new HitComponent(HitComponent.HIT_GROUND));
-                    } else {
-                        // if a player was hit we create a sound
-                        EntityId hit = entityData.createEntity();
-                        entityData.setComponents(hit,
-                                new Transform(event.getPositionWorldOnA()),
-                                new HitComponent(HitComponent.HIT_PLAYER),
-                                new Decay(5000));
+                                new Decay(20000));
+                        transientEvents.hit(TransientEvent.HIT_GROUND, event.getPositionWorldOnA());
+                    } else if (fireball.rewind == 0 || lagCompensator.sweepTest(hitCharacter.getId(), now, fireball.rewind,
+                            fireball.lastLocation, fireball.rigidBody.getPhysicsLocation(tempLocation), PhysicConstants.FIREBALL_RADIUS)) {
+                        hitCharacter(hitCharacter, event.getPositionWorldOnA());
                     }
-
+                    // else the shooter didn't see the character there, the fireball is gone but nobody is damaged
                 }
             }
+            removeFireballs();
+        }
+
+        private void hitCharacter(Entity entity, Vector3f location) {
+            AliveComponent healthComp = nonFireballResistentEntities.getEntity(entity.getId()).get(AliveComponent.class);
+            int newHealth = healthComp.getHealth() - 40;
+            if (newHealth <= 0) {
+                entityData.removeComponent(entity.getId(), AliveComponent.class);
+            } else {
+                entityData.setComponent(entity.getId(), new AliveComponent(newHealth));
+            }
+
+            // if a player was hit we create a sound
+            transientEvents.hit(TransientEvent.HIT_PLAYER, location);
+        }
+
+        private void removeFireballs() {
             for (EntityId entityId : entitiesToRemove) {
                 flyingFireballs.remove(entityId);
             }
@@ -427,6 +627,11 @@ public class PhysicAppState extends AbstractAppState {
     }
 
     private CollisionShape getCollisionShape(int type, String modelPath, Vector3f scale) {
+        return CollisionShapeCache.getCollisionShape(CollisionShapeCache.createKey(type, modelPath, scale),
+                () -> createCollisionShape(type, modelPath, scale));
+    }
+
+    private CollisionShape createCollisionShape(int type, String modelPath, Vector3f scale) {
         if (type == CollisionShapeType.BOX_COLLISION_SHAPE) {
             Spatial model = modelLoader.loadModel(modelPath);
             model.setLocalScale(scale);
@@ -467,6 +672,9 @@ public class PhysicAppState extends AbstractAppState {
         }
         this.characterControls.clear();
         this.rigidBodyControls.clear();
+        this.lagCompensator.clear();
+        this.predictions.clear();
+        this.inputSteps.clear();
         this.characterControls = null;
         this.rigidBodyControls = null;
 
@@ -483,6 +691,8 @@ public class PhysicAppState extends AbstractAppState {
         }
         staticPhysicalObjects.clear();
 
+        bulletAppState.getPhysicsSpace().removeTickListener(inputStepListener);
+        CollisionShapeCache.release(); // the shapes are dropped when the last match has closed
         if (stateManager.hasState(bulletAppState)) {
             stateManager.detach(bulletAppState);
         }
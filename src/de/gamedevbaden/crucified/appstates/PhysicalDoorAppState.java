@@ -3,115 +3,81 @@ package de.gamedevbaden.crucified.appstates;
 import com.jme3.app.Application;
 import com.jme3.app.state.AbstractAppState;
 import com.jme3.app.state.AppStateManager;
-import com.jme3.math.FastMath;
+import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.math.Quaternion;
-import com.jme3.math.Vector3f;
 import com.simsilica.es.Entity;
 import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
 import com.simsilica.es.filter.FieldFilter;
-import de.gamedevbaden.crucified.appstates.listeners.DoorStateListener;
 import de.gamedevbaden.crucified.es.components.OpenedClosedState;
 import de.gamedevbaden.crucified.es.components.PhysicsRigidBody;
 import de.gamedevbaden.crucified.es.components.Transform;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
-public class PhysicalDoorAppState extends AbstractAppState implements DoorStateListener {
-
-    private static final Quaternion FINAL_OPENED_ROTATION = new Quaternion().fromAngleAxis(FastMath.HALF_PI, Vector3f.UNIT_Y );
-    private static final float FACTOR = 0.05f;
+/**
+ * Rotates the kinematic rigid bodies of swinging doors.
+ * <p>
+ * The {@link Transform} of a door always keeps its closed rotation, so a swing costs only the change
+ * of its {@link OpenedClosedState}. The rotation is evaluated from that state every frame until the swing is done.
+ */
+public class PhysicalDoorAppState extends AbstractAppState {
 
     private EntitySet doors;
+    private PhysicAppState physicAppState;
+    private DoorAppState doorAppState;
 
     private ArrayList<EntityId> doorsToUpdate = new ArrayList<>();
-    private ArrayList<EntityId> doorsToRemoveFromUpdate = new ArrayList<>();
-
-    private HashMap<EntityId, Quaternion> initRotations = new HashMap<>();
-    private HashMap<EntityId, Quaternion> finalRot = new HashMap<>();
-
+    private final Quaternion rotation = new Quaternion();
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
         EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
         this.doors = entityData.getEntities(new FieldFilter<>(PhysicsRigidBody.class, "kinematic", true), Transform.class, OpenedClosedState.class, PhysicsRigidBody.class);
+        this.physicAppState = stateManager.getState(PhysicAppState.class);
+        this.doorAppState = stateManager.getState(DoorAppState.class);
 
-        // add this listener
-        stateManager.getState(DoorAppState.class).addListener(this);
-
-        for (Entity entity : doors) {
-            addDoor(entity);
-        }
+        doorsToUpdate.addAll(doors.getEntityIds());
         super.initialize(stateManager, app);
     }
 
-    @Override
-    public void onStateChanged(EntityId entityId, boolean open) {
-        if (!doors.containsId(entityId)) {
-            return;
-        }
-
-        Quaternion initRot = initRotations.get(entityId);
-        Quaternion finalDoorRotation = initRot.clone();
-        if (open) {
-            finalDoorRotation.multLocal(FINAL_OPENED_ROTATION);
-        }
-        finalRot.put(entityId, finalDoorRotation);
-        doorsToUpdate.add(entityId);
-    }
-
     @Override
     public void update(float tpf) {
         if (doors.applyChanges()) {
             for (Entity entity : doors.getAddedEntities()) {
-                addDoor(entity);
+                doorsToUpdate.add(entity.getId());
             }
-        }
-
-        // update all doors whose state has been changed
-        for (EntityId entityId : doorsToUpdate) {
-            Transform t = doors.getEntity(entityId).get(Transform.class);
-            Quaternion currentRotation = t.getRotation();
-            Quaternion finalRotation = finalRot.get(entityId);
-
-            currentRotation.slerp(finalRotation, tpf / FACTOR);
-            currentRotation.normalizeLocal();
-
-            // if we are near the final rotation we want
-            // the current door not being updated anymore
-            if (isCloseEnough(currentRotation, finalRotation)) {
-                doorsToRemoveFromUpdate.add(entityId);
-                currentRotation.set(finalRotation);
-                currentRotation.normalizeLocal();
+            for (Entity entity : doors.getChangedEntities()) {
+                if (!doorsToUpdate.contains(entity.getId())) {
+                    doorsToUpdate.add(entity.getId());
+                }
+            }
+            for (Entity entity : doors.getRemovedEntities()) {
+                doorsToUpdate.remove(entity.getId());
             }
-            // apply new rotation
-            doors.getEntity(entityId).set(new Transform(t.getTranslation(), currentRotation.clone(), t.getScale()));
         }
 
-        doorsToUpdate.removeAll(doorsToRemoveFromUpdate);
-        doorsToRemoveFromUpdate.clear();
-    }
-
-    private boolean isCloseEnough(Quaternion q1, Quaternion q2) {
-        float[] angles = new float[3];
-        q1.toAngles(angles);
-        float v1 = angles[1];
-
-        q2.toAngles(angles);
-        float v2 = angles[1];
+        if (doorsToUpdate.isEmpty()) {
+            return;
+        }
 
-        v1 *= FastMath.RAD_TO_DEG;
-        v2 *= FastMath.RAD_TO_DEG;
+        // update all doors which are swinging
+        long time = doorAppState.getServerTime();
+        for (int i = doorsToUpdate.size() - 1; i >= 0; i--) {
+            Entity entity = doors.getEntity(doorsToUpdate.get(i));
+            RigidBodyControl rigidBodyControl = physicAppState.getRigidBodyControl(entity.getId());
+            if (rigidBodyControl == null) {
+                continue; // the physics state adds it with its next update
+            }
 
-        // return true if diff is 0.1 degrees
-        return v1 >= v2 ? (v1-v2 <= 0.1f) : (v2-v1 <= 0.1f);
-    }
+            OpenedClosedState state = entity.get(OpenedClosedState.class);
+            rigidBodyControl.setPhysicsRotation(state.getRotation(entity.get(Transform.class).getRotation(), time, rotation));
 
-    private void addDoor(Entity entity) {
-        Quaternion currentRot = entity.get(Transform.class).getRotation().clone();
-        initRotations.put(entity.getId(), currentRot);
+            if (!state.isMoving(time)) {
+                doorsToUpdate.remove(i); // the final rotation has been applied
+            }
+        }
     }
 
     @Override
@@ -121,6 +87,8 @@ public class PhysicalDoorAppState extends AbstractAppState implements DoorStateL
         this.doors = null;
 
         this.doorsToUpdate.clear();
+        this.physicAppState = null;
+        this.doorAppState = null;
         super.cleanup();
     }
 
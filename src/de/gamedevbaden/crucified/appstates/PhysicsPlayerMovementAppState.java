@@ -8,21 +8,28 @@ import com.simsilica.es.Entity;
 import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
+import de.gamedevbaden.crucified.appstates.game.GameSessionManager;
 import de.gamedevbaden.crucified.es.components.CharacterMovementState;
 import de.gamedevbaden.crucified.es.components.PhysicsCharacterControl;
 import de.gamedevbaden.crucified.es.components.WalkComponent;
 
+import java.util.HashMap;
+
 /**
  * This AppState turns the state of {@link CharacterMovementState} into a walk direction for physic control.
  * It is also possible to set the view direction of the character control in here.
+ * For players with a game session it remembers which input command the current walk direction comes from.
  * Created by Domenic on 01.05.2017.
  */
 public class PhysicsPlayerMovementAppState extends AbstractAppState {
 
     private EntitySet physicalPlayers;
+    private GameSessionManager sessionManager;
+    private HashMap<EntityId, Integer> inputSequences = new HashMap<>();
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
+        this.sessionManager = stateManager.getState(GameSessionManager.class);
         EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
         // get all physical player controlled entities
         this.physicalPlayers = entityData.getEntities(PhysicsCharacterControl.class, CharacterMovementState.class, WalkComponent.class);
@@ -42,9 +49,35 @@ public class PhysicsPlayerMovementAppState extends AbstractAppState {
             for (Entity entity : physicalPlayers.getChangedEntities()) {
                 updateEntity(entity);
             }
+
+            for (Entity entity : physicalPlayers.getRemovedEntities()) {
+                inputSequences.remove(entity.getId());
+            }
+        }
+
+        // the walk directions contain all commands the session manager has applied so far,
+        // their changes are in our set as soon as they are applied
+        if (sessionManager != null) {
+            for (Entity entity : physicalPlayers) {
+                int sequence = sessionManager.getAppliedInputSequence(entity.getId());
+                if (sequence != 0) {
+                    inputSequences.put(entity.getId(), sequence);
+                }
+            }
         }
     }
 
+    /**
+     * Returns the input command the current walk direction of that player has been calculated from.
+     *
+     * @param entityId the player entity
+     * @return the sequence number of the command or 0 if it's not known
+     */
+    public int getInputSequence(EntityId entityId) {
+        Integer sequence = inputSequences.get(entityId);
+        return sequence != null ? sequence : 0;
+    }
+
     public void setViewDirection(EntityId entityId, Vector3f viewDirection) {
         if (entityId == null || viewDirection == null) {
             return;
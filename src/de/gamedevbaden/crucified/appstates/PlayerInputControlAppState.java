@@ -4,7 +4,6 @@ import com.jme3.app.Application;
 import com.jme3.app.state.AbstractAppState;
 import com.jme3.app.state.AppStateManager;
 import com.simsilica.es.Entity;
-import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
 import de.gamedevbaden.crucified.appstates.listeners.InputChangeListener;
@@ -28,8 +27,7 @@ public class PlayerInputControlAppState extends AbstractAppState {
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
-        EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
-        this.playerControlledEntities = entityData.getEntities(PlayerControlled.class);
+        this.playerControlledEntities = stateManager.getState(EntityDataState.class).getEntities(PlayerControlled.class);
 
         for (Entity entity : playerControlledEntities) {
             addInputCollector(entity);
@@ -64,12 +64,13 @@ public class PlayerInteractionState extends AbstractAppState implements ActionLi
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
-        EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
+        EntityDataState entityDataState = stateManager.getState(EntityDataState.class);
+        EntityData entityData = entityDataState.getEntityData();
         this.interactableEntities = entityData.getEntities(InteractionComponent.class, Model.class);
-        this.pickables = entityData.getEntities(Pickable.class);
-        this.equipables = entityData.getEntities(Equipable.class);
-        this.entitiesToCraft = entityData.getEntities(NeedToBeCrafted.class);
-        this.containers = entityData.getEntities(Container.class);
+        this.pickables = entityDataState.getEntities(Pickable.class);
+        this.equipables = entityDataState.getEntities(Equipable.class);
+        this.entitiesToCraft = entityDataState.getEntities(NeedToBeCrafted.class);
+        this.containers = entityDataState.getEntities(Container.class);
         this.player = entityData.watchEntity(stateManager.getState(GameSessionAppState.class).getGameSession().getPlayer(), ActionGroupComponent.class);
 
         this.cam = app.getCamera();
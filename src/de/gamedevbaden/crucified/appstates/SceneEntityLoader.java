@@ -16,6 +16,7 @@ import de.gamedevbaden.crucified.enums.*;
 import de.gamedevbaden.crucified.es.components.*;
 import de.gamedevbaden.crucified.es.triggersystem.OnEnterTrigger;
 import de.gamedevbaden.crucified.es.triggersystem.PlaySoundEventType;
+import de.gamedevbaden.crucified.es.utils.SceneDefaults;
 import de.gamedevbaden.crucified.es.utils.physics.CollisionShapeType;
 import de.gamedevbaden.crucified.userdata.CoopTaskUserData;
 import de.gamedevbaden.crucified.userdata.EntityType;
@@ -27,7 +28,6 @@ import de.gamedevbaden.crucified.userdata.triggers.OnEnterTriggerUserData;
 import de.gamedevbaden.crucified.userdata.triggers.OnInteractionTriggerUserData;
 import de.gamedevbaden.crucified.utils.GameConstants;
 
-import java.util.HashMap;
 import java.util.logging.Logger;
 
 /**
@@ -35,6 +35,9 @@ import java.util.logging.Logger;
  * For that it looks for spatials with the user data "type" on them and then creates the right entity object out of
  * that visual representation.
  * <p>
+ * The entities and their components only depend on the scene (see {@link #createSceneDefaults(Node)}),
+ * clients with a local entity data create them the same way when they load the scene.
+ * <p>
  * Created by Domenic on 25.04.2017.
  */
 public class SceneEntityLoader extends AbstractAppState {
@@ -45,6 +48,7 @@ public class SceneEntityLoader extends AbstractAppState {
     private AppStateManager stateManager;
     private AssetManager assetManager;
     private PhysicAppState physicAppState;
+    private SceneDefaults sceneDefaults;
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
@@ -60,8 +64,9 @@ public class SceneEntityLoader extends AbstractAppState {
      * and will create the specific entity object for that model.
      *
      * @param scene the scene which shall be searched for entities
+     * @return the loaded scene
      */
-    public void createEntitiesFromScene(Scene scene) {
+    public Node createEntitiesFromScene(Scene scene) {
         // The initialization is done in several steps:
 
         Node gameWorld;
@@ -72,22 +77,22 @@ public class SceneEntityLoader extends AbstractAppState {
             gameWorld = (Node) assetManager.loadModel(scene.getScenePath());
         }
 
-        // 1. Create a HashMap to store the reference of a spatial (with entity data)
-        // this map is filled when calling initEntities()
-        HashMap<Spatial, EntityId> spatialEntities = new HashMap<>();
-
       //  initTerrain(scene, gameWorld);
 
         initStaticPhysicalObjects(gameWorld);
 
-        // 2. Search for entities in the scene graph and create "real" entity objects
-        initEntities(gameWorld, spatialEntities);
+        // 1. Search for entities in the scene graph and create "real" entity objects
+        // the scene defaults also know the entity of each spatial
+        this.sceneDefaults = createSceneDefaults(gameWorld);
+        this.sceneDefaults.applyTo(entityData);
 
-        // 3. Search for trigger entities
+        // 2. Search for trigger entities
         // because trigger might depend on other entities we initialize the triggers after the "normal" entities
-        initTriggers(gameWorld, spatialEntities);
+        initTriggers(gameWorld, sceneDefaults);
 
-        initCoopTasks(gameWorld, spatialEntities);
+        initCoopTasks(gameWorld, sceneDefaults);
+
+        return gameWorld;
     }
 
     /**
@@ -130,13 +135,41 @@ public class SceneEntityLoader extends AbstractAppState {
         });
     }
 
-    private void initEntities(Node rootNode, HashMap<Spatial, EntityId> entities) {
+    /**
+     * @return the scene entities of the last call of {@link #createEntitiesFromScene(Scene)} or null
+     */
+    public SceneDefaults getSceneDefaults() {
+        return sceneDefaults;
+    }
+
+    /**
+     * Derives the entities and their components from the spatials with the user data "type" on them.
+     * The result only depends on the scene, so it's the same on the server and the clients.
+     *
+     * @param rootNode the scene
+     * @return the scene entities
+     */
+    public static SceneDefaults createSceneDefaults(Node rootNode) {
+        SceneDefaults defaults = new SceneDefaults();
+        initEntities(rootNode, defaults);
+
+        // doors of coop tasks can't be opened like any other door
+        rootNode.depthFirstTraversal(spatial -> {
+            EntityId doorId = getCoopDoor(spatial, defaults);
+            if (doorId != null) {
+                defaults.removeComponent(doorId, InteractionComponent.class);
+            }
+        });
+        return defaults;
+    }
+
+    private static void initEntities(Node rootNode, SceneDefaults entityData) {
         rootNode.depthFirstTraversal(spatial -> {
 
             EntityType t = spatial.getUserData(GameConstants.USER_DATA_ENTITY_TYPE);
             if (t != null) {
 
-                EntityId entityId = entityData.createEntity();
+                EntityId entityId = entityData.addEntity(spatial);
 
                 // NOTE: WE ADD THE MODEL COMPONENT HERE !!! No need to add it in switch case later
                 // all models should have been added with an AssetLinkNode
@@ -148,11 +181,11 @@ public class SceneEntityLoader extends AbstractAppState {
                     //    if (modelType == null)
                     //      log.log(Level.SEVERE, "The model type for " + key.getName() + " has not been added yet!");
                     //    entityData.setComponent(entityId, new Model(ModelType.getModelType(key.getName())));
-                    entityData.setComponent(entityId, new Model(path));
+                    entityData.setComponents(entityId, new Model(path));
                 }
 
                 // we also add the transform component to the entity
-                entityData.setComponent(entityId, createTransform(spatial));
+                entityData.setComponents(entityId, createTransform(spatial));
 
                 switch (t.getType()) {
 
@@ -191,8 +224,7 @@ public class SceneEntityLoader extends AbstractAppState {
                         entityData.setComponents(entityId,
                                 new PhysicsRigidBody(0, true, CollisionShapeType.BOX_COLLISION_SHAPE),
                                 new InteractionComponent(InteractionType.OpenDoor),
-                                new OpenedClosedState(),
-                                new OnMovement());
+                                new OpenedClosedState());
 
                         break;
                     case PickupableItem:
@@ -250,14 +282,12 @@ public class SceneEntityLoader extends AbstractAppState {
 
                 }
 
-                entities.put(spatial, entityId);
-
             }
 
         });
     }
 
-    private void initTriggers(Node scene, HashMap<Spatial, EntityId> spatialEntities) {
+    private void initTriggers(Node scene, SceneDefaults spatialEntities) {
         scene.depthFirstTraversal(spatial -> {
             //----------- TRIGGERS AND EVENTS --------------------------//
 
@@ -330,7 +360,7 @@ public class SceneEntityLoader extends AbstractAppState {
 //                            OpenCloseEventUserData openCloseEvent = (OpenCloseEventUserData) event;
 //                            String spatialName = openCloseEvent.getSpatialName();
 //                            Spatial target = ((Node) spatial).getChild(spatialName);
-//                            EntityId targetId = spatialEntities.get(target);
+//                            EntityId targetId = spatialEntities.getEntityId(target);
 //
 //                            EntityId eventEntity = entityData.createEntity();
 //                            entityData.setComponents(eventEntity,
@@ -344,7 +374,7 @@ public class SceneEntityLoader extends AbstractAppState {
         });
     }
 
-    private void initCoopTasks(Node gameWorld, HashMap<Spatial, EntityId> spatialEntities) {
+    private void initCoopTasks(Node gameWorld, SceneDefaults spatialEntities) {
         gameWorld.depthFirstTraversal(spatial -> {
             CoopTaskUserData userData;
             if (spatial instanceof Node && (userData = spatial.getUserData(GameConstants.USER_DATA_COOP_TAKS)) != null) {
@@ -359,19 +389,12 @@ public class SceneEntityLoader extends AbstractAppState {
                         BoundingVolume volumeOne = triggersNode.getChild("TriggerBox1").getWorldBound();
                         BoundingVolume volumeTwo = triggersNode.getChild("TriggerBox2").getWorldBound();
 
-                        // search door
-                        root.getChild(1).depthFirstTraversal(child -> {
-                            EntityType entityType;
-                            if ((entityType = child.getUserData(GameConstants.USER_DATA_ENTITY_TYPE)) != null && entityType.getType().equals(Type.Door)) {
-                                EntityId doorId = spatialEntities.get(child);
-
-                                EntityId coopTask = entityData.createEntity();
-                                entityData.setComponent(coopTask, new CoopDoorTask(volumeOne, volumeTwo, doorId));
-
-                                // remove interaction component, so the player can't open it like any other door
-                                entityData.removeComponent(doorId, InteractionComponent.class);
-                            }
-                        });
+                        // the door has no interaction component, so the player can't open it like any other door
+                        EntityId doorId = getCoopDoor(spatial, spatialEntities);
+                        if (doorId != null) {
+                            EntityId coopTask = entityData.createEntity();
+                            entityData.setComponent(coopTask, new CoopDoorTask(volumeOne, volumeTwo, doorId));
+                        }
                         break;
                 }
             }
@@ -379,7 +402,28 @@ public class SceneEntityLoader extends AbstractAppState {
 
     }
 
-    private Transform createTransform(Spatial spatial) {
+    /**
+     * @return the door entity of the coop door task of that spatial or null if it isn't one
+     */
+    private static EntityId getCoopDoor(Spatial spatial, SceneDefaults spatialEntities) {
+        CoopTaskUserData userData;
+        if (!(spatial instanceof Node) || (userData = spatial.getUserData(GameConstants.USER_DATA_COOP_TAKS)) == null
+                || userData.getType() != CoopTaskType.CoopDoorTask) {
+            return null;
+        }
+
+        // search door
+        EntityId[] doorId = new EntityId[1];
+        ((Node) spatial).getChild(1).depthFirstTraversal(child -> {
+            EntityType entityType;
+            if ((entityType = child.getUserData(GameConstants.USER_DATA_ENTITY_TYPE)) != null && entityType.getType().equals(Type.Door)) {
+                doorId[0] = spatialEntities.getEntityId(child);
+            }
+        });
+        return doorId[0];
+    }
+
+    private static Transform createTransform(Spatial spatial) {
         return new Transform(spatial.getWorldTranslation(), spatial.getWorldRotation(), spatial.getWorldScale());
     }
 
@@ -0,0 +1,51 @@
+package de.gamedevbaden.crucified.appstates;
+
+import de.gamedevbaden.crucified.appstates.net.NetworkStatsAppState;
+import de.gamedevbaden.crucified.net.server.GameServer;
+import de.gamedevbaden.crucified.net.server.MatchManager;
+import de.gamedevbaden.crucified.net.server.RegionShard;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.util.logging.Logger;
+
+/**
+ * A game which runs one region of the island on a dedicated server, see {@link RegionShard}.
+ * Like the {@link DedicatedGame} it only runs the server side, but there is just one match which never ends.
+ */
+public class ShardGame extends AbstractGame {
+
+    private static final Logger log = Logger.getLogger(ShardGame.class.getName());
+
+    private int port;
+    private RegionShard shard;
+
+    public ShardGame(int port, RegionShard shard) {
+        this.port = port;
+        this.shard = shard;
+    }
+
+    @Override
+    public void setupGame() {
+        stateManager.attach(new GameServer(port));
+        // the shard creates the only match, the manager runs it
+        stateManager.attach(new MatchManager(0, 1));
+        stateManager.attach(shard);
+        stateManager.attach(new NetworkStatsAppState(false, GameConstants.NETWORK_STATS_LOG_INTERVAL));
+
+        log.info("Shard of region " + shard.getRegion() + " started on port " + port);
+    }
+
+    @Override
+    public void onGameStart() {
+        // the match starts on its own
+    }
+
+    @Override
+    public void cleanup() {
+        stateManager.detach(stateManager.getState(NetworkStatsAppState.class));
+        stateManager.detach(shard);
+        stateManager.detach(stateManager.getState(MatchManager.class));
+        stateManager.detach(stateManager.getState(GameServer.class));
+        super.cleanup();
+    }
+}
@@ -0,0 +1,112 @@
+package de.gamedevbaden.crucified.appstates;
+
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.math.Vector3f;
+import de.gamedevbaden.crucified.enums.Sound;
+import de.gamedevbaden.crucified.game.TransientEvent;
+import de.gamedevbaden.crucified.game.TransientEventListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A fire-and-forget channel for short-lived things like sounds and hits, so they don't need an entity
+ * which has to be created, replicated, decayed and removed again.
+ * <p>
+ * Events are collected during the frame and passed to the listeners at the end of it. Afterwards the event objects
+ * go back into a pool and are reused. The server registers a listener which sends the events to the clients
+ * they are relevant for (see {@link de.gamedevbaden.crucified.net.server.GameEntityDataHostedService#broadcastEvent}),
+ * clients post the received events into their own channel. Those are read on the network thread, so they are passed
+ * on as they are and don't go into the pool. Events are lost if a client doesn't get them in time,
+ * that's fine for things which are over after a moment anyway.
+ * <p>
+ * All methods have to be called on the render thread.
+ */
+public class TransientEventAppState extends AbstractAppState {
+
+    private final ArrayDeque<TransientEvent> pool = new ArrayDeque<>();
+    private final List<TransientEvent> queuedEvents = new ArrayList<>();
+    private final List<TransientEvent> postedEvents = new ArrayList<>(); // not taken from the pool
+    private final List<TransientEventListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Plays the sound once.
+     *
+     * @param sound    the sound
+     * @param location where the sound is played or null if everyone shall hear it the same
+     */
+    public void playSound(Sound sound, Vector3f location) {
+        queuedEvents.add(obtain().setSound(sound, location));
+    }
+
+    /**
+     * Lets everyone near the location know that something has been hit there.
+     *
+     * @param hitType  what has been hit, {@link TransientEvent#HIT_PLAYER} or {@link TransientEvent#HIT_GROUND}
+     * @param location where it has been hit
+     */
+    public void hit(int hitType, Vector3f location) {
+        queuedEvents.add(obtain().setHit(hitType, location));
+    }
+
+    /**
+     * Queues the event itself, e.g. one which has been received from the server. It isn't put into the pool,
+     * so it must not be changed afterwards.
+     *
+     * @param event the event
+     */
+    public void post(TransientEvent event) {
+        postedEvents.add(event);
+    }
+
+    public void addListener(TransientEventListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(TransientEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    private TransientEvent obtain() {
+        TransientEvent event = pool.poll();
+        return event != null ? event : new TransientEvent();
+    }
+
+    @Override
+    public void postRender() {
+        if (!postedEvents.isEmpty()) {
+            int count = postedEvents.size();
+            for (int i = 0; i < count; i++) {
+                TransientEvent event = postedEvents.get(i);
+                for (TransientEventListener listener : listeners) {
+                    listener.onEvent(event);
+                }
+            }
+            postedEvents.subList(0, count).clear();
+        }
+        if (queuedEvents.isEmpty()) {
+            return;
+        }
+        // listeners might post new events, those are passed on in the next frame
+        int count = queuedEvents.size();
+        for (int i = 0; i < count; i++) {
+            TransientEvent event = queuedEvents.get(i);
+            for (TransientEventListener listener : listeners) {
+                listener.onEvent(event);
+            }
+            pool.add(event);
+        }
+        queuedEvents.subList(0, count).clear();
+    }
+
+    @Override
+    public void cleanup() {
+        queuedEvents.clear();
+        postedEvents.clear();
+        listeners.clear();
+        pool.clear();
+        super.cleanup();
+    }
+}
@@ -10,11 +10,13 @@ import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
 import com.simsilica.es.filter.FieldFilter;
 import de.gamedevbaden.crucified.appstates.EntityDataState;
+import de.gamedevbaden.crucified.appstates.TransientEventAppState;
 import de.gamedevbaden.crucified.enums.ActionType;
 import de.gamedevbaden.crucified.enums.ModelType;
 import de.gamedevbaden.crucified.enums.Sound;
 import de.gamedevbaden.crucified.es.components.*;
 import de.gamedevbaden.crucified.es.utils.physics.CollisionShapeType;
+import de.gamedevbaden.crucified.physics.PhysicConstants;
 
 /**
  * This app state handles the single actions
@@ -26,6 +28,7 @@ public class ActionHandlerAppState extends AbstractAppState {
     private EntitySet attackingEntities;
     private EntitySet alivePlayers;
     private EntitySet showPlayerEntities;
+    private TransientEventAppState transientEvents;
 
     private AppStateManager stateManager;
 
@@ -33,6 +36,7 @@ public class ActionHandlerAppState extends AbstractAppState {
     public void initialize(AppStateManager stateManager, Application app) {
         this.stateManager = stateManager;
         this.entityData = stateManager.getState(EntityDataState.class).getEntityData();
+        this.transientEvents = stateManager.getState(TransientEventAppState.class);
         this.screamingEntities = entityData.getEntities(new FieldFilter<>(ActionComponent.class, "action", ActionType.Scream), ActionComponent.class, Transform.class);
         this.attackingEntities = entityData.getEntities(new FieldFilter<>(ActionComponent.class, "action", ActionType.ShootFireball), ActionComponent.class, PhysicsCharacterControl.class, Transform.class);
         this.showPlayerEntities = entityData.getEntities(new FieldFilter<>(ActionComponent.class, "action", ActionType.ShowPlayer), ActionComponent.class);
@@ -92,12 +96,7 @@ public class ActionHandlerAppState extends AbstractAppState {
     }
 
     private void createScream(Vector3f translation) {
-        EntityId scream = entityData.createEntity();
-        entityData.setComponents(scream,
-                new Transform(translation),
-                new SoundComponent(Sound.Miss, false, true),
-                new Decay(5000)
-        );
+        transientEvents.playSound(Sound.Miss, translation);
     }
 
     private void createFireball(EntityId creator) {
@@ -105,13 +104,14 @@ public class ActionHandlerAppState extends AbstractAppState {
         PhysicsCharacterControl charControl = e.get(PhysicsCharacterControl.class);
         Transform t = e.get(Transform.class);
 
+        int spawnId = e.get(ActionComponent.class).getSpawnId(); // the shooter's client might show it already
+
         EntityId fireball = entityData.createEntity();
         entityData.setComponents(fireball,
-                new Transform(t.getTranslation().add(0, 1.7f, 0).add(charControl.getViewDirection())),
-                new Fireball(charControl.getViewDirection()),
+                new Transform(t.getTranslation().add(0, PhysicConstants.FIREBALL_SPAWN_HEIGHT, 0).add(charControl.getViewDirection())),
+                new Fireball(charControl.getViewDirection(), creator, spawnId),
                 new PhysicsRigidBody(1, false, CollisionShapeType.BOX_COLLISION_SHAPE),
                 new Model(ModelType.Fireball),
-                new OnMovement(),
                 new Decay(10000));
     }
 
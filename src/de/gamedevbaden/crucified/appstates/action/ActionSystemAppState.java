@@ -55,13 +55,23 @@ public class ActionSystemAppState extends AbstractAppState {
         }
     }
 
-    public void performAction(EntityId performerId, ActionType actionType) {
+    /**
+     * Lets the entity perform the action if it has that action and doesn't perform another one.
+     *
+     * @param performerId the entity
+     * @param actionType  the action
+     * @param spawnId     the id the client of the performer has given the entity it predicts for this action, 0 if none
+     * @return true if the action is performed, false if it has been rejected
+     */
+    public boolean performAction(EntityId performerId, ActionType actionType, int spawnId) {
         updateSets();
         // we check if the player can even perform this action
         // and if so we apply the action to this entity
         if (canPerformAction(performerId, actionType)) {
-            applyAction(performerId, actionType);
+            applyAction(performerId, actionType, spawnId);
+            return true;
         }
+        return false;
     }
 
     private boolean canPerformAction(EntityId performerId, ActionType type) {
@@ -77,8 +87,8 @@ public class ActionSystemAppState extends AbstractAppState {
         return false;
     }
 
-    private void applyAction(EntityId performerId, ActionType actionType) {
-        entityData.setComponent(performerId, new ActionComponent(actionType));
+    private void applyAction(EntityId performerId, ActionType actionType, int spawnId) {
+        entityData.setComponent(performerId, new ActionComponent(actionType, spawnId));
         this.delayMap.put(performerId, actionType.getDelay());
     }
 
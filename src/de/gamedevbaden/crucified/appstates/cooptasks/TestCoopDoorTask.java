@@ -29,10 +29,11 @@ public class TestCoopDoorTask extends AbstractAppState {
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
-        EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
+        EntityDataState entityDataState = stateManager.getState(EntityDataState.class);
+        EntityData entityData = entityDataState.getEntityData();
         this.coopDoorTasks = entityData.getEntities(CoopDoorTask.class);
         this.players = entityData.getEntities(Transform.class, PlayerControlled.class);
-        this.doors = entityData.getEntities(OpenedClosedState.class);
+        this.doors = entityDataState.getEntities(OpenedClosedState.class);
 
         this.doorAppState = stateManager.getState(DoorAppState.class);
 
@@ -19,10 +19,13 @@ import com.jme3.scene.Spatial;
 import com.jme3.terrain.geomipmap.TerrainLodControl;
 import com.jme3.terrain.geomipmap.TerrainQuad;
 import de.gamedevbaden.crucified.appstates.CameraAppState;
+import de.gamedevbaden.crucified.appstates.EntityDataState;
 import de.gamedevbaden.crucified.appstates.PlayerInteractionState;
+import de.gamedevbaden.crucified.appstates.SceneEntityLoader;
 import de.gamedevbaden.crucified.appstates.ScenePreloader;
 import de.gamedevbaden.crucified.appstates.gui.HudAppState;
 import de.gamedevbaden.crucified.appstates.gui.NiftyAppState;
+import de.gamedevbaden.crucified.appstates.net.FireballPredictionAppState;
 import de.gamedevbaden.crucified.appstates.net.PredictionAppState;
 import de.gamedevbaden.crucified.appstates.paging.GameWorldPagingManager;
 import de.gamedevbaden.crucified.appstates.paging.WorldChunk;
@@ -32,6 +35,8 @@ import de.gamedevbaden.crucified.enums.GameDecisionType;
 import de.gamedevbaden.crucified.enums.PaperScript;
 import de.gamedevbaden.crucified.enums.Scene;
 import de.gamedevbaden.crucified.game.GameCommander;
+import de.gamedevbaden.crucified.net.client.ClientEntityData;
+import de.gamedevbaden.crucified.net.server.GameServer;
 import de.gamedevbaden.crucified.userdata.EntityType;
 import de.gamedevbaden.crucified.userdata.PagingOptionsUserData;
 import de.gamedevbaden.crucified.utils.GameConstants;
@@ -41,6 +46,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Properties;
+import java.util.logging.Logger;
 
 /**
  * This class implements the {@link GameCommander} interface.
@@ -48,6 +54,8 @@ import java.util.Properties;
  */
 public class GameCommanderAppState extends AbstractAppState implements GameCommander {
 
+    private static final Logger log = Logger.getLogger(GameCommanderAppState.class.getName());
+
     private final Node mainWorldNode = new Node("MainSceneNode");
     private AssetManager assetManager;
     private Node rootNode;
@@ -119,6 +127,15 @@ public class GameCommanderAppState extends AbstractAppState implements GameComma
         } else {
             world = (Node) assetManager.loadModel(scene.getScenePath());
         }
+
+        // a client with a local entity data creates the scene entities itself, the server only sends what differs
+        // the transforms are taken before the world is attached, like on the server
+        EntityDataState entityDataState = stateManager.getState(EntityDataState.class);
+        if (entityDataState != null && entityDataState.getEntityData() instanceof ClientEntityData) {
+            int applied = ((ClientEntityData) entityDataState.getEntityData()).applySceneDefaults(SceneEntityLoader.createSceneDefaults(world));
+            log.fine("Created " + applied + " scene components");
+        }
+
         this.mainWorldNode.attachChild(world);
         // we want all objects (nodes, geometry) with an EntityType user data
         // to be removed because they will
@@ -210,9 +227,15 @@ public class GameCommanderAppState extends AbstractAppState implements GameComma
         }
 
         // create chunks for game world
-        List<WorldChunk> chunks = stateManager.getState(GameWorldPagingManager.class).createChunksForGameWorld(world, 7, assetManager);
+        List<WorldChunk> chunks = stateManager.getState(GameWorldPagingManager.class).createChunksForGameWorld(world, GameConstants.AMOUNT_OF_CHUNKS_PER_ROW, assetManager);
         stateManager.getState(GameWorldPagingManager.class).setChunks(chunks);
 
+        // if we host the game, the server filters entity updates with the same chunks
+        GameServer gameServer = stateManager.getState(GameServer.class);
+        if (gameServer != null) {
+            gameServer.setChunkGrid(stateManager.getState(GameWorldPagingManager.class).getChunkGrid());
+        }
+
 
 
         // create fog
@@ -281,6 +304,14 @@ public class GameCommanderAppState extends AbstractAppState implements GameComma
         }
     }
 
+    @Override
+    public void onSpawnRejected(int spawnId) {
+        FireballPredictionAppState fireballPrediction = stateManager.getState(FireballPredictionAppState.class);
+        if (fireballPrediction != null) {
+            fireballPrediction.rejectSpawn(spawnId);
+        }
+    }
+
     public Node getMainWorldNode() {
         return mainWorldNode;
     }
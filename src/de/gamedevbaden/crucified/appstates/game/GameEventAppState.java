@@ -9,14 +9,19 @@ import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 import com.simsilica.es.EntityId;
 import de.gamedevbaden.crucified.appstates.PlayerInteractionState;
+import de.gamedevbaden.crucified.appstates.net.FireballPredictionAppState;
+import de.gamedevbaden.crucified.appstates.net.MovementInterpolator;
+import de.gamedevbaden.crucified.appstates.net.PredictionAppState;
 import de.gamedevbaden.crucified.enums.ActionType;
 import de.gamedevbaden.crucified.enums.InputCommand;
 import de.gamedevbaden.crucified.game.GameSession;
+import de.gamedevbaden.crucified.utils.GameConstants;
 
 
 /**
  * This app state listens for game events, mainly input changes.
  * It basically calls the methods of GameSession
+ * Inputs and view direction are sent together as sequence numbered input commands.
  * <p>
  * Created by Domenic on 02.05.2017.
  */
@@ -26,14 +31,23 @@ public class GameEventAppState extends AbstractAppState implements ActionListene
     private InputManager inputManager;
     private Camera cam;
 
+    private PredictionAppState predictionAppState;
+    private FireballPredictionAppState fireballPrediction;
+    private MovementInterpolator movementInterpolator;
+
     private Vector3f lastCamDirection = new Vector3f();
-    private float camUpdateTime;
+    private float commandTime;
+    private int inputSequence;
+    private int pressedInputs;
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
         this.gameSession = stateManager.getState(GameSessionAppState.class).getGameSession();
         this.inputManager = app.getInputManager();
         this.cam = app.getCamera();
+        this.predictionAppState = stateManager.getState(PredictionAppState.class); // only on remote clients
+        this.fireballPrediction = stateManager.getState(FireballPredictionAppState.class); // only on remote clients
+        this.movementInterpolator = stateManager.getState(MovementInterpolator.class);
 
         // init listener for input events
         for (InputCommand input : InputCommand.values()) {
@@ -52,24 +66,37 @@ public class GameEventAppState extends AbstractAppState implements ActionListene
 
     @Override
     public void update(float tpf) {
-        // check for camera change
-
-        if ((camUpdateTime += tpf) >= 0.05f && !lastCamDirection.equals(cam.getDirection())) { // we send 50 updates per second
-
-            lastCamDirection.set(cam.getDirection());
-            // when the camera has rotated we call the update method
+        // while the player moves or the camera rotates we send the input state regularly
+        if ((commandTime += tpf) >= 1f / GameConstants.INPUT_COMMAND_RATE && (pressedInputs != 0 || !lastCamDirection.equals(cam.getDirection()))) {
             // the player rotation is updated by the camera rotation
             // there might be the possibility that the player doesn't rotate when cam is moving, for example when player is controlling a car
             // this case isn't handled yet...
-
-            gameSession.applyViewDirection(cam.getDirection());
+            sendInputCommand();
         }
     }
 
     // listen for player input
     @Override
     public void onAction(String name, boolean isPressed, float tpf) {
-        gameSession.applyInput(name, isPressed);
+        int bit = 1 << InputCommand.valueOf(name).ordinal();
+        int pressedInputs = isPressed ? this.pressedInputs | bit : this.pressedInputs & ~bit;
+        if (pressedInputs != this.pressedInputs) {
+            this.pressedInputs = pressedInputs;
+            sendInputCommand(); // changes are sent right away
+        }
+    }
+
+    private void sendInputCommand() {
+        commandTime = 0;
+        lastCamDirection.set(cam.getDirection());
+        // the newest server tick we know tells the server how old our view of the world is
+        long ackedTick = movementInterpolator != null ? movementInterpolator.getLatestServerTime() : 0;
+        gameSession.applyInputCommand(++inputSequence, pressedInputs, cam.getDirection(), ackedTick);
+
+        // the prediction moves the player with this command and remembers it for replays
+        if (predictionAppState != null) {
+            predictionAppState.onInputCommandSent(inputSequence, pressedInputs, cam.getDirection());
+        }
     }
 
     @Override
@@ -114,7 +141,9 @@ public class GameEventAppState extends AbstractAppState implements ActionListene
 
     @Override
     public void onPerformAction(ActionType type) {
-        gameSession.performAction(type);
+        // our own fireballs are shown right away, the server confirms or rejects them
+        int spawnId = type == ActionType.ShootFireball && fireballPrediction != null ? fireballPrediction.predictFireball() : 0;
+        gameSession.performAction(type, spawnId);
     }
 
     @Override
@@ -9,6 +9,7 @@ import de.gamedevbaden.crucified.appstates.*;
 import de.gamedevbaden.crucified.appstates.action.ActionSystemAppState;
 import de.gamedevbaden.crucified.appstates.gamelogic.ArtifactContainerAppState;
 import de.gamedevbaden.crucified.enums.ActionType;
+import de.gamedevbaden.crucified.game.GameCommander;
 import de.gamedevbaden.crucified.game.GameEventListener;
 
 /**
@@ -30,6 +31,7 @@ public class GameEventHandler extends AbstractAppState implements GameEventListe
     private ArtifactContainerAppState artifactContainerAppState;
     private ActionSystemAppState actionSystemAppState;
     private CurseEmitterAppState curseEmitterAppState;
+    private GameCommanderHolder commanderHolder;
 
     public GameEventHandler(GameSessionManager gameSession) {
         gameSession.addGameEventListener(this);
@@ -47,6 +49,7 @@ public class GameEventHandler extends AbstractAppState implements GameEventListe
         this.artifactContainerAppState = stateManager.getState(ArtifactContainerAppState.class);
         this.actionSystemAppState = stateManager.getState(ActionSystemAppState.class);
         this.curseEmitterAppState = stateManager.getState(CurseEmitterAppState.class);
+        this.commanderHolder = stateManager.getState(GameCommanderHolder.class);
         super.initialize(stateManager, app);
     }
 
@@ -107,8 +110,14 @@ public class GameEventHandler extends AbstractAppState implements GameEventListe
     }
 
     @Override
-    public void onPerformAction(EntityId performerId, ActionType actionType) {
-        actionSystemAppState.performAction(performerId, actionType);
+    public void onPerformAction(EntityId performerId, ActionType actionType, int spawnId) {
+        if (!actionSystemAppState.performAction(performerId, actionType, spawnId) && spawnId != 0) {
+            // the client of the performer shows the entity of this action already, it has to remove it again
+            GameCommander commander = commanderHolder.get(performerId);
+            if (commander != null) {
+                commander.onSpawnRejected(spawnId);
+            }
+        }
     }
 
     @Override
@@ -4,21 +4,34 @@ import com.jme3.app.state.AbstractAppState;
 import com.jme3.math.Vector3f;
 import com.simsilica.es.EntityId;
 import de.gamedevbaden.crucified.enums.ActionType;
+import de.gamedevbaden.crucified.enums.InputCommand;
 import de.gamedevbaden.crucified.game.GameEventListener;
 import de.gamedevbaden.crucified.game.GameSession;
+import de.gamedevbaden.crucified.game.ProcessedInput;
+import de.gamedevbaden.crucified.game.SessionCommand;
+import de.gamedevbaden.crucified.utils.GameConstants;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
 
 /**
  * Holds and creates GameSessions and informs all added listeners about in game events.
+ * <p>
+ * Input commands can arrive on the network thread, the newest one of each session is applied on the next update,
+ * so the physics knows which command it simulates (see {@link #getAppliedInputSequence(EntityId)}).
  *
  * Created by Domenic on 01.05.2017.
  */
 public class GameSessionManager extends AbstractAppState {
 
-    private ArrayList<GameEventListener> listeners = new ArrayList<>();
-    private HashMap<EntityId, GameSession> sessionHashMap = new HashMap<>();
+    private static final InputCommand[] INPUTS = InputCommand.values();
+
+    private List<GameEventListener> listeners = new CopyOnWriteArrayList<>(); // sessions call them on the network thread
+    private Map<EntityId, GameSession> sessionHashMap = new ConcurrentHashMap<>(); // sessions are created on the network thread
+    private volatile LongSupplier serverClock; // the clock of the acked ticks, only set on a server
 
     public GameSessionManager() {
     }
@@ -47,6 +60,99 @@ public class GameSessionManager extends AbstractAppState {
         return sessionHashMap.get(entityId);
     }
 
+    /**
+     * Removes the GameSession of the specified player, e.g. because the player has left for another match.
+     *
+     * @param playerId the entity id of the player
+     */
+    public void removeSession(EntityId playerId) {
+        if (playerId != null) {
+            sessionHashMap.remove(playerId);
+        }
+    }
+
+    @Override
+    public void update(float tpf) {
+        for (GameSession session : sessionHashMap.values()) {
+            ((GameSessionImplementation) session).applyPendingCommand();
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last input command whose inputs and view direction have been handed
+     * to the listeners. Call it on the update thread.
+     *
+     * @param playerId the player entity
+     * @return the sequence number or 0 if there was no command yet
+     */
+    public int getAppliedInputSequence(EntityId playerId) {
+        GameSession session = sessionHashMap.get(playerId);
+        return session != null ? ((GameSessionImplementation) session).appliedSequence : 0;
+    }
+
+    /**
+     * Sets the state of the player after the last physics step, see {@link ProcessedInput}.
+     *
+     * @param playerId       the player entity
+     * @param processedInput the state after the step
+     */
+    public void setProcessedInput(EntityId playerId, ProcessedInput processedInput) {
+        GameSession session = sessionHashMap.get(playerId);
+        if (session != null) {
+            ((GameSessionImplementation) session).processedInput = processedInput;
+        }
+    }
+
+    /**
+     * @param playerId the player entity
+     * @return the state of the player after the last physics step or null if no command has been simulated yet
+     */
+    public ProcessedInput getProcessedInput(EntityId playerId) {
+        GameSession session = sessionHashMap.get(playerId);
+        return session != null ? ((GameSessionImplementation) session).processedInput : null;
+    }
+
+    /**
+     * Releases all pressed inputs of the player, e.g. because its client has lost the connection.
+     *
+     * @param playerId the player entity
+     */
+    public void releaseInputs(EntityId playerId) {
+        GameSession session = sessionHashMap.get(playerId);
+        if (session != null) {
+            ((GameSessionImplementation) session).releaseInputs();
+        }
+    }
+
+    /**
+     * Sets the clock the clients stamp their updates with, the acked ticks of the input commands are compared with it.
+     *
+     * @param serverClock returns the current server time in milliseconds
+     */
+    public void setServerClock(LongSupplier serverClock) {
+        this.serverClock = serverClock;
+    }
+
+    /**
+     * @return the current server time in milliseconds, the local time if no server clock has been set (yet)
+     */
+    public long getServerTime() {
+        LongSupplier clock = serverClock;
+        return clock != null ? clock.getAsLong() : System.nanoTime() / 1000000;
+    }
+
+    /**
+     * Estimates how far in the past the player sees the other entities: the age of the newest update
+     * the client had received when it sent its last input command, plus the interpolation delay.
+     *
+     * @param playerId the player entity
+     * @return the time in milliseconds or 0 if it isn't known (e.g. for a local player)
+     */
+    public long getViewDelay(EntityId playerId) {
+        GameSession session = sessionHashMap.get(playerId);
+        return session != null ? ((GameSessionImplementation) session).getViewDelay() : 0;
+    }
+
     /**
      * Adds the specified listener. This listener will be informed about in game events
      * @param listener the listener to add
@@ -55,6 +161,10 @@ public class GameSessionManager extends AbstractAppState {
         this.listeners.add(listener);
     }
 
+    public void removeGameEventListener(GameEventListener listener) {
+        this.listeners.remove(listener);
+    }
+
     @Override
     public void cleanup() {
         this.sessionHashMap.clear();
@@ -67,6 +177,20 @@ public class GameSessionManager extends AbstractAppState {
     private class GameSessionImplementation implements GameSession {
 
         private EntityId playerId;
+        private volatile long viewDelay;
+        private volatile ProcessedInput processedInput;
+        private int lastCommandSequence;
+
+        // the newest command which has arrived, guarded by this session
+        private int lastInputSequence;
+        private int pendingInputs;
+        private final Vector3f pendingViewDirection = new Vector3f();
+        private boolean commandPending;
+
+        // the command the listeners know about, only used on the update thread
+        private int appliedSequence;
+        private int pressedInputs;
+        private Vector3f viewDirection = new Vector3f();
 
         GameSessionImplementation(EntityId playerId) {
             this.playerId = playerId;
@@ -106,20 +230,74 @@ public class GameSessionManager extends AbstractAppState {
         }
 
         @Override
-        public void applyInput(String mappingName, boolean isPressed) {
-            for (GameEventListener listener : listeners) {
-                listener.onInputChange(playerId, mappingName, isPressed);
+        public synchronized void applyInputCommand(int sequence, int pressedInputs, Vector3f viewDirection, long ackedTick) {
+            if (sequence <= lastInputSequence) {
+                return; // this command arrived after a newer one
+            }
+            this.lastInputSequence = sequence;
+            this.pendingInputs = pressedInputs;
+            if (viewDirection != null) {
+                this.pendingViewDirection.set(viewDirection);
+            }
+            this.commandPending = true;
+
+            // we measure the delay when the command arrives, so it doesn't grow while the player doesn't send commands
+            LongSupplier clock = serverClock;
+            if (clock != null && ackedTick > 0) {
+                this.viewDelay = Math.max(0, clock.getAsLong() - ackedTick) + GameConstants.NETWORK_INTERPOLATION_DELAY;
             }
         }
 
+        /**
+         * Hands the newest command to the listeners, commands which have been replaced before are skipped.
+         */
+        void applyPendingCommand() {
+            int sequence;
+            int pressedInputs;
+            Vector3f viewDirection;
+            synchronized (this) {
+                if (!commandPending) {
+                    return;
+                }
+                commandPending = false;
+                sequence = lastInputSequence;
+                pressedInputs = pendingInputs;
+                viewDirection = pendingViewDirection.clone();
+            }
+            this.appliedSequence = sequence;
 
-        @Override
-        public void applyViewDirection(Vector3f viewDirection) {
-            for (GameEventListener listener : listeners) {
-                listener.onViewDirectionChange(getPlayer(), viewDirection);
+            // inform listeners only about inputs which have changed
+            int changedInputs = pressedInputs ^ this.pressedInputs;
+            this.pressedInputs = pressedInputs;
+            for (InputCommand input : INPUTS) {
+                int bit = 1 << input.ordinal();
+                if ((changedInputs & bit) != 0) {
+                    for (GameEventListener listener : listeners) {
+                        listener.onInputChange(playerId, input.name(), (pressedInputs & bit) != 0);
+                    }
+                }
+            }
+
+            if (!viewDirection.equals(Vector3f.ZERO) && !viewDirection.equals(this.viewDirection)) {
+                this.viewDirection.set(viewDirection);
+                for (GameEventListener listener : listeners) {
+                    listener.onViewDirectionChange(playerId, viewDirection);
+                }
             }
         }
 
+        /**
+         * The inputs are released on the next update, like a command without any pressed input.
+         */
+        synchronized void releaseInputs() {
+            this.pendingInputs = 0;
+            this.commandPending = true;
+        }
+
+        long getViewDelay() {
+            return viewDelay;
+        }
+
         @Override
         public void interactWithEntity(EntityId interactedEntity) {
             for (GameEventListener listener : listeners) {
@@ -149,9 +327,9 @@ public class GameSessionManager extends AbstractAppState {
         }
 
         @Override
-        public void performAction(ActionType actionType) {
+        public void performAction(ActionType actionType, int spawnId) {
             for (GameEventListener listener : listeners) {
-                listener.onPerformAction(getPlayer(), actionType);
+                listener.onPerformAction(getPlayer(), actionType, spawnId);
             }
         }
 
@@ -162,5 +340,18 @@ public class GameSessionManager extends AbstractAppState {
             }
         }
 
+        @Override
+        public synchronized int executeCommands(int firstSequence, SessionCommand[] commands) {
+            for (int i = 0; i < commands.length; i++) {
+                int sequence = firstSequence + i;
+                if (sequence <= lastCommandSequence) {
+                    continue; // executed before, the client has sent it again
+                }
+                this.lastCommandSequence = sequence;
+                commands[i].execute(this);
+            }
+            return lastCommandSequence;
+        }
+
     }
 }
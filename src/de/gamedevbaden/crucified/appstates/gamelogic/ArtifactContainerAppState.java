@@ -9,6 +9,7 @@ import com.simsilica.es.EntitySet;
 import com.simsilica.es.filter.FieldFilter;
 import de.gamedevbaden.crucified.appstates.EntityDataState;
 import de.gamedevbaden.crucified.appstates.ItemStoreAppState;
+import de.gamedevbaden.crucified.appstates.TransientEventAppState;
 import de.gamedevbaden.crucified.enums.InteractionType;
 import de.gamedevbaden.crucified.enums.Sound;
 import de.gamedevbaden.crucified.es.components.*;
@@ -20,11 +21,13 @@ public class ArtifactContainerAppState extends AbstractAppState {
     private EntitySet artifacts;
 
     private ItemStoreAppState itemStoreAppState;
+    private TransientEventAppState transientEvents;
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
         super.initialize(stateManager, app);
         this.entityData = stateManager.getState(EntityDataState.class).getEntityData();
+        this.transientEvents = stateManager.getState(TransientEventAppState.class);
         this.containers = entityData.getEntities(new FieldFilter<>(InteractionComponent.class, "type", InteractionType.ThrowArtifactIntoContainer), Container.class, InteractionComponent.class);
         this.artifacts = entityData.getEntities(ArtifactComponent.class);
 
@@ -52,10 +55,7 @@ public class ArtifactContainerAppState extends AbstractAppState {
                     new FireState(true));
 
             // we also want to create a sound
-            EntityId sound = entityData.createEntity();
-            entityData.setComponents(sound,
-                    new SoundComponent(Sound.CosmicHit, false, false),
-                    new Decay(10000));
+            transientEvents.playSound(Sound.CosmicHit, null);
         }
     }
 
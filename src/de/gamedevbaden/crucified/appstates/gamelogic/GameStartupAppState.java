@@ -17,6 +17,16 @@ import java.util.Random;
 
 public class GameStartupAppState extends AbstractAppState {
 
+    /**
+     * Pairs of start positions for the survivor and the demon.
+     */
+    public static final Vector3f[][] START_POSITIONS = new Vector3f[][] {
+            {new Vector3f(-19.920132f, 12.266039f, 52.698334f), new Vector3f(-4.485677f, 12.948147f, -130.6954f)},
+            {new Vector3f(15.484093f, 12.042202f, 158.9679f), new Vector3f(-153.5913f, 10.669474f, -91.215935f)},
+            {new Vector3f(100.89399f, 24.614304f, 69.54313f), new Vector3f(37.130386f, 50.90343f, -82.32215f)},
+            {new Vector3f(150.73814f, 21.07069f, -122.06702f), new Vector3f(-77.181366f, 13.087656f, -23.556862f)}
+    };
+
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
         super.initialize(stateManager, app);
@@ -46,12 +56,7 @@ public class GameStartupAppState extends AbstractAppState {
         }
 
         // Todo: set start position for players...
-          Vector3f[][] startPositions = new Vector3f[][] {
-                {new Vector3f(-19.920132f, 12.266039f, 52.698334f), new Vector3f(-4.485677f, 12.948147f, -130.6954f)},
-                {new Vector3f(15.484093f, 12.042202f, 158.9679f), new Vector3f(-153.5913f, 10.669474f, -91.215935f)},
-                {new Vector3f(100.89399f, 24.614304f, 69.54313f), new Vector3f(37.130386f, 50.90343f, -82.32215f)},
-                {new Vector3f(150.73814f, 21.07069f, -122.06702f),	new Vector3f(-77.181366f, 13.087656f, -23.556862f)}
-        };
+        Vector3f[][] startPositions = START_POSITIONS;
 /*
         Vector3f[][] startPositions = new Vector3f[][] {
                 {new Vector3f(0,8,0), new Vector3f(5, 5, 0)},
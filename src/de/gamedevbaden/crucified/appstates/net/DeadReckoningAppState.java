@@ -0,0 +1,128 @@
+package de.gamedevbaden.crucified.appstates.net;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+import com.simsilica.es.Entity;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.EntitySet;
+import de.gamedevbaden.crucified.appstates.EntityDataState;
+import de.gamedevbaden.crucified.appstates.view.ModelViewAppState;
+import de.gamedevbaden.crucified.es.components.Model;
+import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.es.components.Velocity;
+
+import java.util.HashMap;
+
+/**
+ * Moves the models of entities with a {@link Velocity} by extrapolating them from their last velocity (dead reckoning).
+ * <p>
+ * The entities are shown at the same time as the interpolated ones. A correction from the server usually arrives
+ * before that time is reached, so the previous velocity is used until then and the model doesn't jump back.
+ * As long as there is no estimate of the server clock, the extrapolation starts when a velocity has been received.
+ */
+public class DeadReckoningAppState extends AbstractAppState {
+
+    private EntitySet movingEntities;
+    private ModelViewAppState modelViewAppState;
+    private ViewClock viewClock;
+
+    private HashMap<EntityId, Velocity> previousVelocities = new HashMap<>();
+    private HashMap<EntityId, Long> receiveTimes = new HashMap<>(); // local time the velocity has been received at
+
+    private final Vector3f location = new Vector3f();
+    private final Quaternion rotation = new Quaternion();
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        this.modelViewAppState = stateManager.getState(ModelViewAppState.class);
+        this.viewClock = new ViewClock(stateManager);
+
+        EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
+        this.movingEntities = entityData.getEntities(Velocity.class, Transform.class, Model.class);
+
+        long localTime = getLocalTime();
+        for (Entity entity : movingEntities) {
+            addEntity(entity, localTime);
+        }
+        super.initialize(stateManager, app);
+    }
+
+    @Override
+    public void update(float tpf) {
+        long localTime = getLocalTime();
+
+        if (movingEntities.applyChanges()) {
+            for (Entity entity : movingEntities.getAddedEntities()) {
+                addEntity(entity, localTime);
+            }
+            for (Entity entity : movingEntities.getRemovedEntities()) {
+                previousVelocities.remove(entity.getId());
+                receiveTimes.remove(entity.getId());
+            }
+        }
+
+        boolean clockAvailable = viewClock.isAvailable();
+        long viewTime = clockAvailable ? viewClock.getTime() : 0;
+
+        for (Entity entity : movingEntities) {
+            Spatial spatial = modelViewAppState.getSpatial(entity.getId());
+            if (spatial == null || modelViewAppState.isExcludedFromUpdate(entity.getId())) {
+                continue;
+            }
+
+            Velocity velocity = entity.get(Velocity.class);
+            Velocity previous = previousVelocities.get(entity.getId());
+            if (previous != velocity && previous != null && previous.getTime() >= velocity.getTime()) {
+                previous = null; // replaced by an older one, e.g. by a snapshot
+            }
+
+            long time;
+            if (clockAvailable) {
+                time = viewTime;
+                if (time >= velocity.getTime() || previous == null) {
+                    previousVelocities.put(entity.getId(), velocity);
+                } else {
+                    velocity = previous; // the correction isn't shown yet
+                }
+            } else {
+                Long receiveTime = receiveTimes.get(entity.getId());
+                if (receiveTime == null || previous != velocity) {
+                    receiveTime = localTime;
+                    receiveTimes.put(entity.getId(), receiveTime);
+                    previousVelocities.put(entity.getId(), velocity);
+                }
+                time = velocity.getTime() + localTime - receiveTime;
+            }
+
+            spatial.setLocalTranslation(velocity.predictLocation(time, location));
+            spatial.setLocalRotation(velocity.predictRotation(time, rotation));
+        }
+    }
+
+    private void addEntity(Entity entity, long localTime) {
+        previousVelocities.remove(entity.getId());
+        receiveTimes.put(entity.getId(), localTime);
+    }
+
+    private static long getLocalTime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    @Override
+    public void cleanup() {
+        this.movingEntities.release();
+        this.movingEntities.clear();
+        this.movingEntities = null;
+
+        this.previousVelocities.clear();
+        this.receiveTimes.clear();
+        this.modelViewAppState = null;
+        this.viewClock = null;
+        super.cleanup();
+    }
+}
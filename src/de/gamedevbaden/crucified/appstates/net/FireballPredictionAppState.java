@@ -0,0 +1,236 @@
+package de.gamedevbaden.crucified.appstates.net;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Spatial;
+import com.simsilica.es.Entity;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.EntitySet;
+import de.gamedevbaden.crucified.appstates.EntityDataState;
+import de.gamedevbaden.crucified.appstates.view.ModelLoaderAppState;
+import de.gamedevbaden.crucified.appstates.view.ModelViewAppState;
+import de.gamedevbaden.crucified.enums.ActionType;
+import de.gamedevbaden.crucified.enums.ModelType;
+import de.gamedevbaden.crucified.es.components.Fireball;
+import de.gamedevbaden.crucified.es.components.Model;
+import de.gamedevbaden.crucified.es.components.Velocity;
+import de.gamedevbaden.crucified.net.client.ClockOffsetEstimator;
+import de.gamedevbaden.crucified.physics.PhysicConstants;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Shows the fireballs of the own player as soon as they are shot instead of a round trip later.
+ * <p>
+ * A predicted fireball is only a spatial which flies the way the server fireball will fly. It has a spawn id which
+ * is sent with the action, the server fireball carries it in its {@link Fireball} component. When the server fireball
+ * arrives it takes over: its spatial is put where the predicted one is and is then moved along the server path, but
+ * as far ahead as the predicted one was, so the own fireball stays in the present like the own player.
+ * The remaining (sideways) difference is blended out within {@link GameConstants#NETWORK_SPAWN_HANDOVER_TIME}.
+ * <p>
+ * A predicted fireball is removed if the server rejects the shot or hasn't confirmed it in time.
+ */
+public class FireballPredictionAppState extends AbstractAppState {
+
+    private final EntityId playerId;
+
+    private ModelViewAppState modelViewAppState;
+    private ModelLoaderAppState modelLoader;
+    private ClockOffsetEstimator clock;
+    private Camera cam;
+    private EntitySet fireballs;
+
+    private final Map<Integer, PredictedFireball> predictedFireballs = new HashMap<>();
+    private final Map<EntityId, HandedOverFireball> handedOverFireballs = new HashMap<>();
+    private int nextSpawnId = 1;
+    private long lastShotTime;
+
+    private final Vector3f location = new Vector3f();
+    private final Quaternion rotation = new Quaternion();
+
+    public FireballPredictionAppState(EntityId playerId) {
+        this.playerId = playerId;
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        this.modelViewAppState = stateManager.getState(ModelViewAppState.class);
+        this.modelLoader = stateManager.getState(ModelLoaderAppState.class);
+        this.clock = stateManager.getState(MovementInterpolator.class).getClock();
+        this.cam = app.getCamera();
+        this.fireballs = stateManager.getState(EntityDataState.class).getEntities(Fireball.class, Velocity.class, Model.class);
+        super.initialize(stateManager, app);
+    }
+
+    /**
+     * Shows a fireball the player is shooting right now.
+     *
+     * @return the spawn id of the predicted fireball or 0 if it isn't predicted, e.g. because the player can't shoot yet
+     */
+    public int predictFireball() {
+        long localTime = getLocalTime();
+        Spatial playerModel = modelViewAppState.getSpatial(playerId);
+        if (playerModel == null || !clock.hasSamples() || localTime - lastShotTime < ActionType.ShootFireball.getDelay() * 1000) {
+            return 0; // the server will reject it or we can't tell where it flies, so we wait for the server fireball
+        }
+        Spatial spatial = modelLoader.loadModel(ModelType.Fireball);
+        if (spatial == null) {
+            return 0;
+        }
+        this.lastShotTime = localTime;
+
+        // the server spawns it the same way (see ActionHandlerAppState)
+        Vector3f direction = cam.getDirection();
+        Vector3f origin = playerModel.getLocalTranslation().add(0, PhysicConstants.FIREBALL_SPAWN_HEIGHT, 0).addLocal(direction);
+        Vector3f velocity = direction.normalize().multLocal(PhysicConstants.FIREBALL_SPEED);
+
+        spatial.setLocalTranslation(origin);
+        modelViewAppState.attachSpatial(spatial);
+
+        int spawnId = nextSpawnId++;
+        predictedFireballs.put(spawnId, new PredictedFireball(spatial, origin, velocity, localTime));
+        return spawnId;
+    }
+
+    /**
+     * Removes the predicted fireball, the server has rejected the shot.
+     *
+     * @param spawnId the spawn id of the fireball
+     */
+    public void rejectSpawn(int spawnId) {
+        PredictedFireball predicted = predictedFireballs.remove(spawnId);
+        if (predicted != null) {
+            predicted.spatial.removeFromParent();
+            this.lastShotTime = 0;
+        }
+    }
+
+    @Override
+    public void update(float tpf) {
+        long localTime = getLocalTime();
+        long serverTime = clock.toServerTime(localTime);
+
+        if (fireballs.applyChanges()) {
+            for (Entity entity : fireballs.getAddedEntities()) {
+                Fireball fireball = entity.get(Fireball.class);
+                if (fireball.getSpawnId() != 0 && playerId.equals(fireball.getShooter())) {
+                    PredictedFireball predicted = predictedFireballs.remove(fireball.getSpawnId());
+                    if (predicted != null) {
+                        handOver(entity, predicted, localTime, serverTime);
+                    }
+                }
+            }
+            for (Entity entity : fireballs.getRemovedEntities()) {
+                handedOverFireballs.remove(entity.getId()); // the model view state removes its spatial
+            }
+        }
+
+        // predicted fireballs fly straight until the server fireball arrives
+        for (Iterator<PredictedFireball> it = predictedFireballs.values().iterator(); it.hasNext(); ) {
+            PredictedFireball predicted = it.next();
+            if (localTime - predicted.startTime > GameConstants.NETWORK_PREDICTED_SPAWN_TIMEOUT) {
+                predicted.spatial.removeFromParent(); // lost or already gone on the server
+                it.remove();
+            } else {
+                predicted.spatial.setLocalTranslation(predicted.getLocation(localTime, location));
+            }
+        }
+
+        for (Map.Entry<EntityId, HandedOverFireball> e : handedOverFireballs.entrySet()) {
+            Spatial spatial = modelViewAppState.getSpatial(e.getKey());
+            Entity entity = fireballs.getEntity(e.getKey());
+            if (spatial == null || entity == null) {
+                continue;
+            }
+
+            HandedOverFireball handedOver = e.getValue();
+            Velocity velocity = entity.get(Velocity.class);
+            long time = serverTime + handedOver.timeShift;
+            velocity.predictLocation(time, location);
+            float remaining = 1f - (localTime - handedOver.handOverTime) / (float) GameConstants.NETWORK_SPAWN_HANDOVER_TIME;
+            if (remaining > 0) {
+                location.addLocal(handedOver.offset.x * remaining, handedOver.offset.y * remaining, handedOver.offset.z * remaining);
+            }
+            spatial.setLocalTranslation(location);
+            spatial.setLocalRotation(velocity.predictRotation(time, rotation));
+        }
+    }
+
+    private void handOver(Entity entity, PredictedFireball predicted, long localTime, long serverTime) {
+        Velocity velocity = entity.get(Velocity.class);
+        Vector3f predictedLocation = predicted.getLocation(localTime, new Vector3f());
+
+        // how far the predicted fireball is ahead on the server path, that's about a round trip
+        float speedSquared = velocity.getLinear().lengthSquared();
+        long timeShift = 0;
+        if (speedSquared > FastMath.ZERO_TOLERANCE) {
+            Vector3f ahead = predictedLocation.subtract(velocity.predictLocation(serverTime, new Vector3f()));
+            timeShift = (long) (ahead.dot(velocity.getLinear()) / speedSquared * 1000);
+            timeShift = Math.max(0, Math.min(timeShift, GameConstants.NETWORK_PREDICTED_SPAWN_TIMEOUT));
+        }
+
+        Vector3f offset = predictedLocation.subtractLocal(velocity.predictLocation(serverTime + timeShift, new Vector3f()));
+        handedOverFireballs.put(entity.getId(), new HandedOverFireball(timeShift, offset, localTime));
+
+        // from now on we move the server fireball
+        modelViewAppState.setExcludedFromUpdate(entity.getId(), true);
+        predicted.spatial.removeFromParent();
+    }
+
+    private static long getLocalTime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    @Override
+    public void cleanup() {
+        for (PredictedFireball predicted : predictedFireballs.values()) {
+            predicted.spatial.removeFromParent();
+        }
+        predictedFireballs.clear();
+        handedOverFireballs.clear();
+
+        this.fireballs.release();
+        this.fireballs = null;
+        this.modelViewAppState = null;
+        this.modelLoader = null;
+        super.cleanup();
+    }
+
+    private static class PredictedFireball {
+        final Spatial spatial;
+        final Vector3f origin;
+        final Vector3f velocity;
+        final long startTime; // local time the fireball has been shot at
+
+        PredictedFireball(Spatial spatial, Vector3f origin, Vector3f velocity, long startTime) {
+            this.spatial = spatial;
+            this.origin = origin;
+            this.velocity = velocity;
+            this.startTime = startTime;
+        }
+
+        Vector3f getLocation(long localTime, Vector3f store) {
+            return store.set(velocity).multLocal((localTime - startTime) / 1000f).addLocal(origin);
+        }
+    }
+
+    private static class HandedOverFireball {
+        final long timeShift; // how far ahead of the server the fireball is shown
+        final Vector3f offset; // the difference to the predicted location when the server fireball took over
+        final long handOverTime;
+
+        HandedOverFireball(long timeShift, Vector3f offset, long handOverTime) {
+            this.timeShift = timeShift;
+            this.offset = offset;
+            this.handOverTime = handOverTime;
+        }
+    }
+}
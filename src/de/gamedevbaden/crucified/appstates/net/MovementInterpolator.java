@@ -15,20 +15,38 @@ import de.gamedevbaden.crucified.appstates.view.ModelViewAppState;
 import de.gamedevbaden.crucified.es.components.Model;
 import de.gamedevbaden.crucified.es.components.OnMovement;
 import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.net.client.ClockOffsetEstimator;
+import de.gamedevbaden.crucified.utils.GameConstants;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /**
  * This class is used on client side to interpolate between positions of dynamic objects
  * <p>
+ * Every transform update of a moving entity is stored with the server time it was sent at (see {@link Transform#getTime()}).
+ * The entities are shown at the current server time minus the interpolation delay, so usually there is an update
+ * before and after that time to interpolate between. If updates are late, the position is extrapolated for a limited time.
+ * <p>
  * Created by Domenic on 26.04.2017.
  */
 public class MovementInterpolator extends AbstractAppState {
 
+    private static final int SNAPSHOTS_PER_ENTITY = 16;
+
     private EntitySet movingEntities;
     private ModelViewAppState modelViewAppState;
-    private HashMap<EntityId, TransformComparator> transforms = new HashMap<>();
+    private HashMap<EntityId, SnapshotBuffer> snapshots = new HashMap<>();
+    private ArrayList<SnapshotBuffer> unusedBuffers = new ArrayList<>();
 
+    private ClockOffsetEstimator clock = new ClockOffsetEstimator();
+    private long interpolationDelay = GameConstants.NETWORK_INTERPOLATION_DELAY;
+    private long maxExtrapolation = GameConstants.NETWORK_MAX_EXTRAPOLATION;
+    private long renderTime;
+    private long latestServerTime;
+
+    private final Vector3f location = new Vector3f();
+    private final Quaternion rotation = new Quaternion();
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
@@ -37,11 +55,9 @@ public class MovementInterpolator extends AbstractAppState {
         EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
         movingEntities = entityData.getEntities(OnMovement.class, Transform.class, Model.class);
 
+        long localTime = getLocalTime();
         for (Entity entity : movingEntities) {
-            Transform oldTransform = modelViewAppState.getOldTransform(entity.getId());
-            Transform newTransform = entity.get(Transform.class);
-
-            transforms.put(entity.getId(), new TransformComparator(oldTransform.getTranslation(), oldTransform.getRotation(), newTransform.getTranslation(), newTransform.getRotation()));
+            addEntity(entity, localTime);
         }
 
         super.initialize(stateManager, app);
@@ -50,124 +66,129 @@ public class MovementInterpolator extends AbstractAppState {
 
     @Override
     public void update(float tpf) {
+        long localTime = getLocalTime();
 
         if (movingEntities.applyChanges()) {
 
             for (Entity entity : movingEntities.getAddedEntities()) {
-                Transform oldTransform = modelViewAppState.getOldTransform(entity.getId());
-                Transform newTransform = entity.get(Transform.class);
-
-                transforms.put(entity.getId(), new TransformComparator(oldTransform.getTranslation(), oldTransform.getRotation(), newTransform.getTranslation(), newTransform.getRotation()));
+                addEntity(entity, localTime);
             }
 
             for (Entity entity : movingEntities.getChangedEntities()) {
-                TransformComparator tc = transforms.get(entity.getId());
-
-                Transform oldTransform = modelViewAppState.getOldTransform(entity.getId());
-                Transform newTransform = entity.get(Transform.class); // the updated transform is the new one
-
-                tc.setOldTranslation(oldTransform.getTranslation());
-                tc.setOldRotation(oldTransform.getRotation());
-
-                tc.setNewTranslation(newTransform.getTranslation());
-                tc.setNewRotation(newTransform.getRotation());
+                addSnapshot(entity, snapshots.get(entity.getId()), localTime);
             }
 
             for (Entity entity : movingEntities.getRemovedEntities()) {
-                transforms.remove(entity.getId());
+                SnapshotBuffer buffer = snapshots.remove(entity.getId());
+                if (buffer != null) {
+                    unusedBuffers.add(buffer);
+                }
             }
 
         }
 
+        this.renderTime = clock.toServerTime(localTime) - interpolationDelay;
+
         // interpolate for all moving entities
         for (Entity entity : movingEntities) {
+            if (modelViewAppState.isExcludedFromUpdate(entity.getId())) {
+                continue; // another system (e.g. the prediction) moves it
+            }
 
             Spatial model = modelViewAppState.getSpatial(entity.getId());
-            TransformComparator tc = transforms.get(entity.getId());
-
-            Vector3f oldTranslation = tc.getOldTranslation();
-            Vector3f newTranslation = tc.getNewTranslation();
-
-            Quaternion oldRotation = tc.getOldRotation();
-            Quaternion newRotation = tc.getNewRotation();
-
-            Vector3f interpolatedTranslation = oldTranslation.interpolateLocal(newTranslation, tpf / 0.1f);
-            Quaternion interpolatedRotation = oldRotation.slerp(oldRotation, newRotation, tpf / 0.1f);
-            interpolatedRotation.normalizeLocal(); // we need to normalize it otherwise this would cause weird artifacts
+            SnapshotBuffer buffer = snapshots.get(entity.getId());
+            if (model == null || !buffer.sample(renderTime, maxExtrapolation, location, rotation)) {
+                continue;
+            }
 
             // apply interpolation to model
-            model.setLocalTranslation(interpolatedTranslation);
-            model.setLocalRotation(interpolatedRotation);
-
-            // save interpolated values as "old" values, so they can be used in next frame
-            tc.setOldTranslation(interpolatedTranslation);
-            tc.setOldRotation(interpolatedRotation);
+            model.setLocalTranslation(location);
+            model.setLocalRotation(rotation);
         }
 
     }
 
+    private void addEntity(Entity entity, long localTime) {
+        SnapshotBuffer buffer = unusedBuffers.isEmpty() ? new SnapshotBuffer(SNAPSHOTS_PER_ENTITY) : unusedBuffers.remove(unusedBuffers.size() - 1);
+        buffer.clear();
+        snapshots.put(entity.getId(), buffer);
+        addSnapshot(entity, buffer, localTime);
+    }
 
-    @Override
-    public void cleanup() {
-        movingEntities.release();
-        movingEntities.clear();
-        movingEntities = null;
-
-        transforms.clear();
-        transforms = null;
-        modelViewAppState = null;
+    private void addSnapshot(Entity entity, SnapshotBuffer buffer, long localTime) {
+        Transform transform = entity.get(Transform.class);
+        long time = transform.getTime();
+        if (time != 0) {
+            clock.addSample(time, localTime);
+            latestServerTime = Math.max(latestServerTime, time);
+        } else {
+            // the initial values of an entity are not stamped, we just take the current time
+            time = clock.toServerTime(localTime);
+        }
+        buffer.add(time, transform.getTranslation(), transform.getRotation());
+    }
 
-        super.cleanup();
+    private static long getLocalTime() {
+        return System.nanoTime() / 1000000;
     }
 
     /**
-     * This class holds old and new Translation as well as Rotation for interpolation.
+     * Sets how far in the past remote entities are shown. A higher delay hides more jitter
+     * but entities lag further behind.
+     *
+     * @param interpolationDelay the delay in milliseconds
      */
-    private class TransformComparator {
-
-        private Vector3f oldTranslation = new Vector3f();
-        private Quaternion oldRotation = new Quaternion();
-
-        private Vector3f newTranslation = new Vector3f();
-        private Quaternion newRotation = new Quaternion();
+    public void setInterpolationDelay(long interpolationDelay) {
+        this.interpolationDelay = interpolationDelay;
+    }
 
-        TransformComparator(Vector3f oldTranslation, Quaternion oldRotation, Vector3f newTranslation, Quaternion newRotation) {
-            setOldTranslation(oldTranslation);
-            setOldRotation(oldRotation);
-            setNewTranslation(newTranslation);
-            setNewRotation(newRotation);
-        }
+    public long getInterpolationDelay() {
+        return interpolationDelay;
+    }
 
-        Vector3f getOldTranslation() {
-            return oldTranslation;
-        }
+    /**
+     * Sets how long the position of an entity is extrapolated if no new updates arrive.
+     *
+     * @param maxExtrapolation the time in milliseconds
+     */
+    public void setMaxExtrapolation(long maxExtrapolation) {
+        this.maxExtrapolation = maxExtrapolation;
+    }
 
-        void setOldTranslation(Vector3f oldTranslation) {
-            this.oldTranslation.set(oldTranslation);
-        }
+    public long getMaxExtrapolation() {
+        return maxExtrapolation;
+    }
 
-        Quaternion getOldRotation() {
-            return oldRotation;
-        }
+    /**
+     * @return the server time the remote entities are currently shown at
+     */
+    public long getRenderTime() {
+        return renderTime;
+    }
 
-        void setOldRotation(Quaternion oldRotation) {
-            this.oldRotation.set(oldRotation);
-        }
+    /**
+     * @return the server time of the newest transform update which has been received, 0 if there was none
+     */
+    public long getLatestServerTime() {
+        return latestServerTime;
+    }
 
-        Vector3f getNewTranslation() {
-            return newTranslation;
-        }
+    public ClockOffsetEstimator getClock() {
+        return clock;
+    }
 
-        void setNewTranslation(Vector3f newTranslation) {
-            this.newTranslation.set(newTranslation);
-        }
+    @Override
+    public void cleanup() {
+        movingEntities.release();
+        movingEntities.clear();
+        movingEntities = null;
 
-        Quaternion getNewRotation() {
-            return newRotation;
-        }
+        snapshots.clear();
+        unusedBuffers.clear();
+        clock.reset();
+        latestServerTime = 0;
+        modelViewAppState = null;
 
-        void setNewRotation(Quaternion newRotation) {
-            this.newRotation.set(newRotation);
-        }
+        super.cleanup();
     }
 }
@@ -0,0 +1,186 @@
+package de.gamedevbaden.crucified.appstates.net;
+
+import com.jme3.app.Application;
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.font.BitmapFont;
+import com.jme3.font.BitmapText;
+import com.jme3.network.Client;
+import com.jme3.network.HostedConnection;
+import com.jme3.network.Message;
+import com.jme3.network.MessageListener;
+import com.jme3.network.Server;
+import com.jme3.scene.Spatial;
+import de.gamedevbaden.crucified.net.client.GameClient;
+import de.gamedevbaden.crucified.net.messages.PingMessage;
+import de.gamedevbaden.crucified.net.server.GameServer;
+import de.gamedevbaden.crucified.net.stats.NetworkStats;
+
+import java.util.logging.Logger;
+
+/**
+ * Enables the {@link NetworkStats} and updates them once a second.
+ * It also measures the round trip time: on the server every connection gets a ping each second,
+ * on the client the server gets one.
+ * <p>
+ * The stats can be shown in an overlay (only for a {@link SimpleApplication}) and written to the log.
+ * Without either of them they can still be queried with the getters of {@link NetworkStats}.
+ */
+public class NetworkStatsAppState extends AbstractAppState {
+
+    private static final Logger log = Logger.getLogger(NetworkStatsAppState.class.getName());
+
+    private boolean showOverlay;
+    private float logInterval; // seconds, 0 means no logging
+
+    private Server server;
+    private GameClient gameClient;
+    private final ServerPingListener serverPingListener = new ServerPingListener();
+    private final ClientPingListener clientPingListener = new ClientPingListener();
+
+    private SimpleApplication simpleApp;
+    private BitmapText overlay;
+
+    private float secondTimer;
+    private float logTimer;
+
+    /**
+     * @param showOverlay true if the stats shall be shown on the screen
+     * @param logInterval the stats are logged every logInterval seconds, 0 to disable logging
+     */
+    public NetworkStatsAppState(boolean showOverlay, float logInterval) {
+        this.showOverlay = showOverlay;
+        this.logInterval = logInterval;
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        GameServer gameServer = stateManager.getState(GameServer.class);
+        if (gameServer != null && gameServer.getServer() != null) {
+            this.server = gameServer.getServer();
+            this.server.addMessageListener(serverPingListener, PingMessage.class);
+        }
+
+        GameClient gameClient = stateManager.getState(GameClient.class);
+        if (gameClient != null && gameClient.getClient() != null) {
+            this.gameClient = gameClient;
+            this.gameClient.addMessageListener(clientPingListener, PingMessage.class);
+        }
+
+        if (showOverlay && app instanceof SimpleApplication) {
+            this.simpleApp = (SimpleApplication) app;
+            BitmapFont font = app.getAssetManager().loadFont("Interface/Fonts/Default.fnt");
+            this.overlay = new BitmapText(font, false);
+            this.overlay.setSize(font.getCharSet().getRenderedSize() * 0.8f);
+            this.overlay.setLocalTranslation(5, app.getCamera().getHeight() - 5, 0);
+            this.simpleApp.getGuiNode().attachChild(overlay);
+        }
+
+        NetworkStats.setEnabled(true);
+        super.initialize(stateManager, app);
+    }
+
+    @Override
+    public void update(float tpf) {
+        if ((secondTimer += tpf) < 1f) {
+            return;
+        }
+        secondTimer = 0;
+
+        NetworkStats.nextSecond();
+        sendPings();
+
+        if (overlay != null) {
+            overlay.setText(NetworkStats.getSummary());
+        }
+
+        if (logInterval > 0 && (logTimer += 1f) >= logInterval) {
+            logTimer = 0;
+            log.info(NetworkStats.getSummary());
+        }
+    }
+
+    private void sendPings() {
+        long now = getTime();
+        if (server != null && server.isRunning()) {
+            for (HostedConnection conn : server.getConnections()) {
+                int previous = NetworkStats.beginSend(conn.getId());
+                conn.send(new PingMessage(now, false));
+                NetworkStats.endSend(previous);
+            }
+        }
+
+        Client client = gameClient != null ? gameClient.getClient() : null; // changes if the client reconnects
+        if (client != null && client.isConnected()) {
+            // on a hosted game the server counts its own messages for the known connections
+            if (server == null) {
+                NetworkStats.setDefaultConnection(client.getId());
+            }
+            client.send(new PingMessage(now, false));
+        }
+    }
+
+    private static long getTime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public void setShowOverlay(boolean showOverlay) {
+        this.showOverlay = showOverlay;
+        if (overlay != null) {
+            overlay.setCullHint(showOverlay ? Spatial.CullHint.Inherit : Spatial.CullHint.Always);
+        }
+    }
+
+    public boolean isShowOverlay() {
+        return showOverlay;
+    }
+
+    public void setLogInterval(float logInterval) {
+        this.logInterval = logInterval;
+    }
+
+    public float getLogInterval() {
+        return logInterval;
+    }
+
+    @Override
+    public void cleanup() {
+        NetworkStats.setEnabled(false);
+        NetworkStats.reset();
+
+        if (server != null) {
+            server.removeMessageListener(serverPingListener, PingMessage.class);
+            server = null;
+        }
+        if (gameClient != null) {
+            gameClient.removeMessageListener(clientPingListener, PingMessage.class);
+            gameClient = null;
+        }
+        if (overlay != null) {
+            overlay.removeFromParent();
+            overlay = null;
+        }
+        super.cleanup();
+    }
+
+    private class ServerPingListener implements MessageListener<HostedConnection> {
+        @Override
+        public void messageReceived(HostedConnection source, Message m) {
+            PingMessage ping = (PingMessage) m;
+            if (ping.isReply()) {
+                NetworkStats.recordRoundTripTime(source.getId(), getTime() - ping.getTime());
+            }
+        }
+    }
+
+    private class ClientPingListener implements MessageListener<Client> {
+        @Override
+        public void messageReceived(Client source, Message m) {
+            PingMessage ping = (PingMessage) m;
+            if (ping.isReply()) {
+                NetworkStats.recordRoundTripTime(source.getId(), getTime() - ping.getTime());
+            }
+        }
+    }
+}
@@ -4,13 +4,16 @@ import com.jme3.app.Application;
 import com.jme3.app.state.AbstractAppState;
 import com.jme3.app.state.AppStateManager;
 import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
 import com.jme3.bullet.collision.shapes.CollisionShape;
 import com.jme3.bullet.collision.shapes.HeightfieldCollisionShape;
 import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.bullet.util.CollisionShapeFactory;
-import com.jme3.input.InputManager;
-import com.jme3.input.controls.ActionListener;
 import com.jme3.math.Vector3f;
+import com.jme3.network.Client;
+import com.jme3.network.Message;
+import com.jme3.network.MessageListener;
 import com.jme3.renderer.Camera;
 import com.jme3.scene.AssetLinkNode;
 import com.jme3.scene.Node;
@@ -25,6 +28,8 @@ import de.gamedevbaden.crucified.controls.HeadRotatingControl;
 import de.gamedevbaden.crucified.enums.InputCommand;
 import de.gamedevbaden.crucified.es.components.*;
 import de.gamedevbaden.crucified.es.utils.physics.CollisionShapeType;
+import de.gamedevbaden.crucified.net.client.GameClient;
+import de.gamedevbaden.crucified.net.messages.PlayerStateMessage;
 import de.gamedevbaden.crucified.physics.CustomCharacterControl;
 import de.gamedevbaden.crucified.physics.PhysicConstants;
 import de.gamedevbaden.crucified.userdata.StaticPhysicsSceneObjectUserData;
@@ -34,19 +39,27 @@ import de.gamedevbaden.crucified.utils.PlayerInputCollector;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 
 /**
  * This AppState tries to predict the movement of the player.
  * The player moves with a CharacterControl so we need to run local physics but we only add static
  * rigid bodies to our local physic space.
  * <p>
+ * Every input command is stored with its walk direction and the time our physics has simulated it.
+ * The server answers with the player's state after its last physics step, the command this step has simulated
+ * and for how long. We put the player into this state and replay the rest of that command and all later ones
+ * in the fixed steps of the physics, so collisions and slopes after the acknowledged command are simulated again.
+ * The difference to the location we had predicted is hidden by moving the model smoothly.
+ * <p>
  * Created by Domenic on 05.05.2017.
  */
-public class PredictionAppState extends AbstractAppState implements ActionListener {
+public class PredictionAppState extends AbstractAppState implements MessageListener<Client>, PhysicsTickListener {
+
+    private static final int COMMAND_BUFFER_SIZE = 128; // needs to be a power of two
+    private static final float WARP_DISTANCE = 5f; // larger errors are not interpolated
+    private static final float CORRECTION_TIME = 0.1f; // time in seconds to apply a correction
 
     private BulletAppState bulletAppState;
-    private InputManager inputManager;
     private ModelViewAppState modelViewAppState;
     private ModelLoaderAppState modelLoader;
     private Camera cam;
@@ -65,17 +78,35 @@ public class PredictionAppState extends AbstractAppState implements ActionListen
     private WatchedEntity player;
     private EntityId playerId;
     private Spatial playerModel;
-    private PlayerInputCollector inputCollector;
     private CustomCharacterControl playerCharacterControl;
 
-    // this list will hold a collection of positions which are going to be needed
-    // to compare those with the incoming server updates and decide whether
-    // a correction is necessary or not
-    private List<Vector3f> positionList;
-
-    private Vector3f lastCamLocation = new Vector3f();
-    private Vector3f lastServerLocation = new Vector3f();
-    private boolean needToInterpolate;
+    // the walk direction of each input command and how long our physics has simulated it
+    // the commands the server hasn't simulated yet are replayed from its state
+    private final int[] commandSequences = new int[COMMAND_BUFFER_SIZE];
+    private final float[] walkDirections = new float[COMMAND_BUFFER_SIZE * 3];
+    private final float[] commandTimes = new float[COMMAND_BUFFER_SIZE];
+    private int inputSequence; // the command the player moves with
+    private int lastAckedSequence;
+    private float lastAckedTime;
+    private boolean replaying;
+
+    // the last player state received from the server (written on the network thread)
+    private final Object playerStateLock = new Object();
+    private final Vector3f receivedLocation = new Vector3f();
+    private final Vector3f receivedVelocity = new Vector3f();
+    private int receivedSequence;
+    private float receivedTime;
+    private boolean playerStateReceived;
+
+    private final Vector3f serverLocation = new Vector3f();
+    private final Vector3f serverVelocity = new Vector3f();
+    private final Vector3f predictedLocation = new Vector3f();
+    private final Vector3f currentLocation = new Vector3f();
+    private final Vector3f walkDirection = new Vector3f();
+    private final Vector3f correction = new Vector3f(); // the part of the last correction which isn't shown yet
+    private final HashMap<CustomCharacterControl, Vector3f[]> savedCharacterStates = new HashMap<>();
+
+    private GameClient gameClient;
 
     public PredictionAppState(EntityId playerId) {
         this.playerId = playerId;
@@ -83,17 +114,14 @@ public class PredictionAppState extends AbstractAppState implements ActionListen
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
-        this.positionList = new ArrayList<>();
-
         this.staticBodyControls = new HashMap<>();
         this.characterControlHashMap = new HashMap<>();
 
         this.cam = app.getCamera();
 
-        this.inputCollector = new PlayerInputCollector();
-
         this.bulletAppState = stateManager.getState(BulletAppState.class);
         this.bulletAppState.setDebugEnabled(GameOptions.ENABLE_PHYSICS_DEBUG);
+        this.bulletAppState.getPhysicsSpace().addTickListener(this);
 
         this.modelViewAppState = stateManager.getState(ModelViewAppState.class);
         this.playerModel = stateManager.getState(ModelViewAppState.class).getSpatial(playerId);
@@ -105,13 +133,13 @@ public class PredictionAppState extends AbstractAppState implements ActionListen
         this.terrains = entityData.getEntities(PhysicsTerrain.class, Transform.class);
 
 
-        // register input for walk direction apply
-        this.inputManager = app.getInputManager();
-        for (InputCommand input : InputCommand.values()) {
-            this.inputManager.addListener(this, input.name());
+        // the server tells us where our player is
+        GameClient gameClient = stateManager.getState(GameClient.class);
+        if (gameClient != null && gameClient.getClient() != null) {
+            this.gameClient = gameClient;
+            this.gameClient.addMessageListener(this, PlayerStateMessage.class);
         }
 
-
         super.initialize(stateManager, app);
     }
 
@@ -243,64 +271,39 @@ public class PredictionAppState extends AbstractAppState implements ActionListen
 
         if (player != null && playerModel != null) {
 
-            // if cam direction has changed we might need to refresh the walk direction vector
-            if (!lastCamLocation.equals(cam.getDirection())) {
-
-                playerCharacterControl.setViewDirection(cam.getDirection());
-                refreshWalkDirection(); // should be changed if rotating while walking
+            // the walk direction only changes with the input commands, the camera just rotates the player
+            playerCharacterControl.setViewDirection(cam.getDirection());
+
+            player.applyChanges();
+
+            // when we receive an update from the server we replay our later commands from its state
+            boolean received;
+            int ackedSequence;
+            float ackedTime;
+            synchronized (playerStateLock) {
+                received = playerStateReceived;
+                ackedSequence = receivedSequence;
+                ackedTime = receivedTime;
+                serverLocation.set(receivedLocation);
+                serverVelocity.set(receivedVelocity);
+                playerStateReceived = false;
             }
-
-            // store the current location in the global list
-            Vector3f currentLocation = playerCharacterControl.getPhysicsRigidBody().getPhysicsLocation();
-            positionList.add(currentLocation);
-
-
-            // when we receive an update from the server we need to check whether we are still
-            // in "sync" with the server or if we need to correct our position
-            if (player.applyChanges()) {
-
-                Transform serverTransform = player.get(Transform.class);
-                Vector3f serverLocation = serverTransform.getTranslation();
-                Vector3f closestLocalPosition = searchClosestLocalPosition(serverLocation);
-
-                this.lastServerLocation.set(serverLocation);
-
-                if (closestLocalPosition.distance(serverLocation) > 5f) {
-                    // we directly apply the server position because of too high de-synchronization
-                    playerCharacterControl.warp(serverLocation);
-
-                    // delete all local position entries
-                    positionList.clear();
-                    needToInterpolate = false;
-
-                } else if (closestLocalPosition.distance(serverLocation) >= 0.1f) {
-                    // slight difference we interpolate to the servers location
-                    removeAllPositionEntriesUpToSuppliedVector(closestLocalPosition);
-                    needToInterpolate = true;
-
-                } else { // we are close enough, no need for correction
-                    removeAllPositionEntriesUpToSuppliedVector(closestLocalPosition);
-                    needToInterpolate = false;
-                }
+            if (received) {
+                reconcile(ackedSequence, ackedTime);
             }
 
-            // if we are not "synced" with the server we need to correct our position
-            // we do this through interpolation
-            if (needToInterpolate) {
-
-                Vector3f interpolatedVector = currentLocation.interpolateLocal(lastServerLocation, tpf / 0.1f);
-                playerCharacterControl.getPhysicsRigidBody().setPhysicsLocation(interpolatedVector);
-
-                if (interpolatedVector.distance(lastServerLocation) <= 0.001f) {
-                    playerCharacterControl.getPhysicsRigidBody().setPhysicsLocation(lastServerLocation);
-                    needToInterpolate = false;
+            // the model doesn't jump to the corrected location but follows it within the correction time
+            if (!correction.equals(Vector3f.ZERO)) {
+                correction.multLocal(1f - Math.min(1f, tpf / CORRECTION_TIME));
+                if (correction.lengthSquared() < 0.000001f) {
+                    correction.set(Vector3f.ZERO);
                 }
-
             }
 
 
             // apply transform to players spatial
-            playerModel.setLocalTranslation(playerCharacterControl.getPhysicsRigidBody().getPhysicsLocation());
+            playerCharacterControl.getPhysicsRigidBody().getPhysicsLocation(currentLocation);
+            playerModel.setLocalTranslation(currentLocation.addLocal(correction));
             playerModel.setLocalRotation(playerCharacterControl.getCharacterRotation());
 
             // set head bone rotation
@@ -317,62 +320,132 @@ public class PredictionAppState extends AbstractAppState implements ActionListen
     }
 
 
-    private Vector3f searchClosestLocalPosition(Vector3f serverLocation) {
-        if (positionList.isEmpty()) {
-            return serverLocation;
+    /**
+     * Called when an input command has been sent to the server.
+     * The player moves with the command from now on and the command is stored, so it can be replayed
+     * once the server has simulated an earlier one.
+     *
+     * @param sequence      the sequence number of the command
+     * @param pressedInputs the bits of the pressed {@link InputCommand}s
+     * @param viewDirection the view direction of the command
+     */
+    public void onInputCommandSent(int sequence, int pressedInputs, Vector3f viewDirection) {
+        if (playerCharacterControl == null) {
+            return;
         }
+        PlayerInputCollector collector = new PlayerInputCollector();
+        collector.setForward(isPressed(pressedInputs, InputCommand.Forward));
+        collector.setBackward(isPressed(pressedInputs, InputCommand.Backward));
+        collector.setLeft(isPressed(pressedInputs, InputCommand.Left));
+        collector.setRight(isPressed(pressedInputs, InputCommand.Right));
+        collector.setRunning(isPressed(pressedInputs, InputCommand.Shift));
+
+        Vector3f walkDirection = calculateWalkDirection(calculateMovementState(collector), viewDirection.clone());
+        playerCharacterControl.setWalkDirection(walkDirection);
 
-        Vector3f closestVector = null;
-        for (Vector3f position : positionList) {
-            if (closestVector == null || serverLocation.distance(position) <= serverLocation.distance(closestVector)) {
-                closestVector = position;
-            }
+        int index = sequence & (COMMAND_BUFFER_SIZE - 1);
+        commandSequences[index] = sequence;
+        walkDirections[index * 3] = walkDirection.x;
+        walkDirections[index * 3 + 1] = walkDirection.y;
+        walkDirections[index * 3 + 2] = walkDirection.z;
+        commandTimes[index] = 0;
+        this.inputSequence = sequence;
+    }
+
+    private static boolean isPressed(int pressedInputs, InputCommand input) {
+        return (pressedInputs & (1 << input.ordinal())) != 0;
+    }
+
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+        // the steps of a replay have been counted before
+        if (!replaying && inputSequence != 0) {
+            commandTimes[inputSequence & (COMMAND_BUFFER_SIZE - 1)] += timeStep;
         }
-        return closestVector;
     }
 
-    private void removeAllPositionEntriesUpToSuppliedVector(Vector3f localPosition) {
-        ArrayList<Vector3f> positionsToRemove = new ArrayList<>();
+    @Override
+    public void physicsTick(PhysicsSpace space, float timeStep) {
+    }
 
-        for (Vector3f position : positionList) {
-            positionsToRemove.add(position);
-            if (localPosition == position) { // we check reference
-                break;
+    @Override
+    public void messageReceived(Client source, Message m) {
+        if (m instanceof PlayerStateMessage) {
+            PlayerStateMessage message = (PlayerStateMessage) m;
+            synchronized (playerStateLock) {
+                // messages are unreliable, older ones are ignored
+                if (message.getSequence() > receivedSequence || (message.getSequence() == receivedSequence && message.getTime() >= receivedTime)) {
+                    receivedSequence = message.getSequence();
+                    receivedTime = message.getTime();
+                    receivedLocation.set(message.getLocation());
+                    receivedVelocity.set(message.getVelocity());
+                    playerStateReceived = true;
+                }
             }
         }
+    }
 
-        positionList.removeAll(positionsToRemove);
+    /**
+     * Puts the player into the state the server has sent and replays the part of the acknowledged command
+     * the server hasn't simulated yet and all later commands. Every command is simulated for as many physics steps
+     * as it had been before. The other characters are not part of the replay, they are put back afterwards.
+     */
+    private void reconcile(int ackedSequence, float ackedTime) {
+        if (ackedSequence < lastAckedSequence || (ackedSequence == lastAckedSequence && ackedTime < lastAckedTime)) {
+            return; // we have replayed from a newer state before
+        }
+        this.lastAckedSequence = ackedSequence;
+        this.lastAckedTime = ackedTime;
 
-    }
+        playerCharacterControl.getPhysicsRigidBody().getPhysicsLocation(predictedLocation);
 
+        if (inputSequence - ackedSequence >= COMMAND_BUFFER_SIZE || ackedSequence > inputSequence
+                || commandSequences[ackedSequence & (COMMAND_BUFFER_SIZE - 1)] != ackedSequence) {
+            // the commands are not (all) stored anymore, we can only take the server state
+            playerCharacterControl.setPhysicsState(serverLocation, serverVelocity);
+            correction.set(Vector3f.ZERO);
+            return;
+        }
 
-    @Override
-    public void onAction(String name, boolean isPressed, float tpf) {
-        InputCommand input = InputCommand.valueOf(name);
-        input.setPressed(isPressed);
-
-        PlayerInputCollector collector = this.inputCollector;
-        if (input == InputCommand.Forward) {
-            collector.setForward(input.isPressed());
-        } else if (input == InputCommand.Backward) {
-            collector.setBackward(input.isPressed());
-        } else if (input == InputCommand.Left) {
-            collector.setLeft(input.isPressed());
-        } else if (input == InputCommand.Right) {
-            collector.setRight(input.isPressed());
-        } else if (input == InputCommand.Shift) {
-            collector.setRunning(input.isPressed());
+        // the other characters keep the state they got from the server
+        for (CustomCharacterControl control : characterControlHashMap.values()) {
+            savedCharacterStates.put(control, new Vector3f[]{
+                    control.getPhysicsRigidBody().getPhysicsLocation(),
+                    control.getPhysicsRigidBody().getLinearVelocity()});
         }
 
-        refreshWalkDirection();
+        this.replaying = true;
+        PhysicsSpace space = bulletAppState.getPhysicsSpace();
+        float stepTime = space.getAccuracy();
+        playerCharacterControl.setPhysicsState(serverLocation, serverVelocity);
+        for (int sequence = ackedSequence; sequence <= inputSequence; sequence++) {
+            int index = sequence & (COMMAND_BUFFER_SIZE - 1);
+            if (commandSequences[index] != sequence) {
+                continue; // this command has been sent before the prediction started
+            }
+            walkDirection.set(walkDirections[index * 3], walkDirections[index * 3 + 1], walkDirections[index * 3 + 2]);
+            playerCharacterControl.setWalkDirection(walkDirection);
 
-    }
+            float time = sequence == ackedSequence ? commandTimes[index] - ackedTime : commandTimes[index];
+            int steps = Math.round(time / stepTime);
+            for (int i = 0; i < steps; i++) {
+                space.update(stepTime, 1);
+            }
+        }
+        this.replaying = false;
 
-    private void refreshWalkDirection() {
-        if (playerCharacterControl == null) return;
-        int movementState = calculateMovementState(inputCollector);
-        Vector3f walkDirection = calculateWalkDirection(movementState);
-        playerCharacterControl.setWalkDirection(walkDirection);
+        for (CustomCharacterControl control : characterControlHashMap.values()) {
+            Vector3f[] state = savedCharacterStates.get(control);
+            control.setPhysicsState(state[0], state[1]);
+        }
+        savedCharacterStates.clear();
+
+        // the model is still shown where we had predicted the player and moves to the new location
+        playerCharacterControl.getPhysicsRigidBody().getPhysicsLocation(currentLocation);
+        correction.addLocal(predictedLocation).subtractLocal(currentLocation);
+        if (correction.length() > WARP_DISTANCE) {
+            correction.set(Vector3f.ZERO);
+        }
     }
 
 
@@ -427,8 +500,7 @@ public class PredictionAppState extends AbstractAppState implements ActionListen
     }
 
     // copy pasted from PhysicsPlayerMovementAppState
-    private Vector3f calculateWalkDirection(int movementState) {
-        Vector3f viewDirection = playerCharacterControl.getViewDirection();
+    private Vector3f calculateWalkDirection(int movementState, Vector3f viewDirection) {
         viewDirection.setY(0);
         viewDirection.normalizeLocal();
 
@@ -538,7 +610,11 @@ public class PredictionAppState extends AbstractAppState implements ActionListen
 
     @Override
     public void cleanup() {
-        this.inputManager.removeListener(this);
+        this.bulletAppState.getPhysicsSpace().removeTickListener(this);
+        if (gameClient != null) {
+            gameClient.removeMessageListener(this, PlayerStateMessage.class);
+            gameClient = null;
+        }
         for (RigidBodyControl rigidBodyControl : staticBodyControls.values()) {
             if (rigidBodyControl.getPhysicsSpace() != null) {
                 bulletAppState.getPhysicsSpace().remove(rigidBodyControl);
@@ -0,0 +1,227 @@
+package de.gamedevbaden.crucified.appstates.net;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.network.Client;
+import com.jme3.network.Message;
+import com.jme3.network.MessageListener;
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.base.DefaultEntityData;
+import de.gamedevbaden.crucified.game.GameEventListener;
+import de.gamedevbaden.crucified.net.replay.ReplayReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plays a recording of the {@link de.gamedevbaden.crucified.net.replay.MatchRecorder} into a local entity data,
+ * so a match can be watched and profiled without a server. Use {@link #getEntityData()} for the
+ * {@link de.gamedevbaden.crucified.appstates.EntityDataState} of the client states.
+ * <p>
+ * The replay can be paused, sped up and scrubbed. Jumping back rebuilds the entity data from the start of the
+ * recording, which only takes a moment since no game logic runs. While scrubbing messages and session
+ * commands are skipped, only the entities are updated.
+ */
+public class ReplayAppState extends AbstractAppState implements ReplayReader.ReplayHandler {
+
+    private static final Logger log = Logger.getLogger(ReplayAppState.class.getName());
+
+    private final ReplayReader reader;
+    private final DefaultEntityData entityData = new DefaultEntityData();
+    private final Set<EntityId> entities = new HashSet<>();
+    private final List<GameEventListener> listeners = new CopyOnWriteArrayList<>();
+    private MessageListener<Client> messageListener;
+    private EntityId viewedPlayer;
+
+    private final long duration;
+    private long time;
+    private float speed = 1f;
+    private boolean paused;
+    private boolean scrubbing;
+
+    /**
+     * Opens the recording. This has to happen before any other network class is used,
+     * because the serializers are registered as they were on the recording server.
+     *
+     * @param file the recording
+     * @throws IOException if the recording can't be read
+     */
+    public ReplayAppState(Path file) throws IOException {
+        this.reader = new ReplayReader(file);
+        this.duration = reader.skipToEnd();
+        this.reader.rewind();
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+        log.info("Replaying " + duration / 1000f + " seconds");
+    }
+
+    @Override
+    public void update(float tpf) {
+        if (!paused) {
+            playTo(time + (long) (tpf * 1000 * speed), false);
+        }
+    }
+
+    /**
+     * Jumps to the given time of the recording.
+     *
+     * @param time milliseconds since the start of the recording
+     */
+    public void seek(long time) {
+        time = Math.max(0, Math.min(time, duration));
+        if (time < reader.getTime()) {
+            // the entity data can't go back, so we start from scratch
+            for (EntityId entityId : entities) {
+                entityData.removeEntity(entityId);
+            }
+            entities.clear();
+            try {
+                reader.rewind();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Could not rewind replay", e);
+                return;
+            }
+        }
+        playTo(time, true);
+    }
+
+    private void playTo(long targetTime, boolean scrubbing) {
+        this.scrubbing = scrubbing;
+        try {
+            long nextTime;
+            while ((nextTime = reader.peekNextTime()) >= 0 && nextTime <= targetTime) {
+                reader.readTick(this);
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not read replay, pausing it", e);
+            paused = true;
+        } finally {
+            this.scrubbing = false;
+        }
+        this.time = Math.min(targetTime, duration);
+    }
+
+    @Override
+    public void onEntityChange(EntityChange change) {
+        EntityId entityId = change.getEntityId();
+        if (change.getComponent() != null) {
+            entities.add(entityId);
+            entityData.setComponent(entityId, change.getComponent());
+        } else {
+            entityData.removeComponent(entityId, change.getComponentType());
+        }
+    }
+
+    @Override
+    public void onSessionCommand(int command, Object[] args) {
+        if (scrubbing) {
+            return;
+        }
+        for (GameEventListener listener : listeners) {
+            ReplayReader.dispatchSessionCommand(command, args, listener);
+        }
+    }
+
+    @Override
+    public void onMessage(EntityId player, Message message) {
+        if (scrubbing || messageListener == null) {
+            return;
+        }
+        if (player == null || viewedPlayer == null || viewedPlayer.equals(player)) {
+            messageListener.messageReceived(null, message);
+        }
+    }
+
+    public EntityData getEntityData() {
+        return entityData;
+    }
+
+    /**
+     * Recorded session commands of the players are passed to the listener.
+     *
+     * @param listener the listener
+     */
+    public void addGameEventListener(GameEventListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeGameEventListener(GameEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets the listener which gets the recorded messages of the server, e.g. a
+     * {@link de.gamedevbaden.crucified.net.client.ClientMessageListener}. The client is always null.
+     *
+     * @param messageListener the listener
+     */
+    public void setMessageListener(MessageListener<Client> messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    /**
+     * Only the messages of this player are passed to the message listener.
+     *
+     * @param viewedPlayer the player or null for the messages of all players
+     */
+    public void setViewedPlayer(EntityId viewedPlayer) {
+        this.viewedPlayer = viewedPlayer;
+    }
+
+    public EntityId getViewedPlayer() {
+        return viewedPlayer;
+    }
+
+    /**
+     * @return the current time of the replay in milliseconds since the start of the recording
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the length of the recording in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setSpeed(float speed) {
+        this.speed = speed;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    @Override
+    public void cleanup() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not close replay", e);
+        }
+        entityData.close();
+        super.cleanup();
+    }
+}
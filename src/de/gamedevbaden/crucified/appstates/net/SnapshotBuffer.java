@@ -0,0 +1,133 @@
+package de.gamedevbaden.crucified.appstates.net;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * A ring buffer of the last received positions and rotations of one entity together with their server time.
+ * The values are stored in primitive arrays and sampling doesn't create any objects, because this is done
+ * for each moving entity every frame.
+ */
+class SnapshotBuffer {
+
+    // if an entity was not updated for this time we don't interpolate over this gap
+    private static final long MAX_GAP = 1000;
+
+    private final long[] times;
+    private final float[] locations; // x, y, z per snapshot
+    private final float[] rotations; // x, y, z, w per snapshot
+    private int newest = -1;
+    private int size;
+
+    private final Quaternion tempRotation1 = new Quaternion();
+    private final Quaternion tempRotation2 = new Quaternion();
+
+    SnapshotBuffer(int capacity) {
+        this.times = new long[capacity];
+        this.locations = new float[capacity * 3];
+        this.rotations = new float[capacity * 4];
+    }
+
+    /**
+     * Adds a snapshot. Snapshots are expected in order, an older one clears the buffer.
+     *
+     * @param time     the server time of the snapshot
+     * @param location the location
+     * @param rotation the rotation
+     */
+    void add(long time, Vector3f location, Quaternion rotation) {
+        if (size > 0) {
+            long newestTime = times[newest];
+            if (time == newestTime) {
+                set(newest, time, location, rotation); // a newer value of the same tick
+                return;
+            }
+            if (time < newestTime || time - newestTime > MAX_GAP) {
+                clear();
+            }
+        }
+
+        newest = (newest + 1) % times.length;
+        size = Math.min(size + 1, times.length);
+        set(newest, time, location, rotation);
+    }
+
+    /**
+     * Calculates location and rotation at the given time. If the time lies between two snapshots, the values
+     * are interpolated. If the time is after the newest snapshot, the location is extrapolated with the velocity
+     * of the last two snapshots, but not further than maxExtrapolation.
+     *
+     * @param time             the server time to sample
+     * @param maxExtrapolation the maximum time in milliseconds the location is extrapolated
+     * @param storeLocation    the sampled location is stored here
+     * @param storeRotation    the sampled rotation is stored here
+     * @return false if the buffer is empty
+     */
+    boolean sample(long time, long maxExtrapolation, Vector3f storeLocation, Quaternion storeRotation) {
+        if (size == 0) {
+            return false;
+        }
+
+        int capacity = times.length;
+        if (time >= times[newest]) {
+            getLocation(newest, storeLocation);
+            getRotation(newest, storeRotation);
+            if (size > 1) {
+                int previous = (newest - 1 + capacity) % capacity;
+                long extrapolation = Math.min(time - times[newest], maxExtrapolation);
+                float factor = extrapolation / (float) (times[newest] - times[previous]);
+                int n = newest * 3, p = previous * 3;
+                storeLocation.addLocal((locations[n] - locations[p]) * factor,
+                        (locations[n + 1] - locations[p + 1]) * factor,
+                        (locations[n + 2] - locations[p + 2]) * factor);
+            }
+            return true;
+        }
+
+        // walk back to the snapshot right before the time
+        int to = newest;
+        for (int i = 1; i < size; i++) {
+            int from = (newest - i + capacity) % capacity;
+            if (times[from] <= time) {
+                float factor = (time - times[from]) / (float) (times[to] - times[from]);
+                int f = from * 3, t = to * 3;
+                storeLocation.set(locations[f] + (locations[t] - locations[f]) * factor,
+                        locations[f + 1] + (locations[t + 1] - locations[f + 1]) * factor,
+                        locations[f + 2] + (locations[t + 2] - locations[f + 2]) * factor);
+                storeRotation.slerp(getRotation(from, tempRotation1), getRotation(to, tempRotation2), factor);
+                storeRotation.normalizeLocal(); // we need to normalize it otherwise this would cause weird artifacts
+                return true;
+            }
+            to = from;
+        }
+
+        // the time is before the oldest snapshot
+        getLocation(to, storeLocation);
+        getRotation(to, storeRotation);
+        return true;
+    }
+
+    void clear() {
+        newest = -1;
+        size = 0;
+    }
+
+    private void set(int index, long time, Vector3f location, Quaternion rotation) {
+        times[index] = time;
+        locations[index * 3] = location.x;
+        locations[index * 3 + 1] = location.y;
+        locations[index * 3 + 2] = location.z;
+        rotations[index * 4] = rotation.getX();
+        rotations[index * 4 + 1] = rotation.getY();
+        rotations[index * 4 + 2] = rotation.getZ();
+        rotations[index * 4 + 3] = rotation.getW();
+    }
+
+    private Vector3f getLocation(int index, Vector3f store) {
+        return store.set(locations[index * 3], locations[index * 3 + 1], locations[index * 3 + 2]);
+    }
+
+    private Quaternion getRotation(int index, Quaternion store) {
+        return store.set(rotations[index * 4], rotations[index * 4 + 1], rotations[index * 4 + 2], rotations[index * 4 + 3]);
+    }
+}
@@ -0,0 +1,35 @@
+package de.gamedevbaden.crucified.appstates.net;
+
+import com.jme3.app.state.AppStateManager;
+import de.gamedevbaden.crucified.appstates.game.GameSessionManager;
+
+/**
+ * The server time the views show the entities at. On a client that's the render time of the
+ * {@link MovementInterpolator}, on a host it's the server time itself.
+ */
+public class ViewClock {
+
+    private final MovementInterpolator movementInterpolator; // only on clients
+    private final GameSessionManager sessionManager; // only on a host
+
+    public ViewClock(AppStateManager stateManager) {
+        this.movementInterpolator = stateManager.getState(MovementInterpolator.class);
+        this.sessionManager = stateManager.getState(GameSessionManager.class);
+    }
+
+    /**
+     * A client can only estimate the server time after it has received the first stamped updates.
+     *
+     * @return true if {@link #getTime()} returns a server time
+     */
+    public boolean isAvailable() {
+        return sessionManager != null || (movementInterpolator != null && movementInterpolator.getClock().hasSamples());
+    }
+
+    /**
+     * @return the server time in milliseconds the views show the entities at, only valid if {@link #isAvailable()}
+     */
+    public long getTime() {
+        return sessionManager != null ? sessionManager.getServerTime() : movementInterpolator.getRenderTime();
+    }
+}
@@ -0,0 +1,59 @@
+package de.gamedevbaden.crucified.appstates.paging;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+/**
+ * Describes the grid the {@link WorldChunk}s are aligned in and maps world space positions
+ * to {@link ChunkPosition}s. Unlike the chunks themselves it does not need any scene data,
+ * so it can be used on server side as well.
+ */
+public class ChunkGrid {
+
+    private float originX; // world x of the left edge of chunk column 0
+    private float originZ; // world z of the upper edge of chunk row 0
+    private float chunkWidth;
+    private float chunkHeight;
+
+    public ChunkGrid(float originX, float originZ, float chunkWidth, float chunkHeight) {
+        this.originX = originX;
+        this.originZ = originZ;
+        this.chunkWidth = chunkWidth;
+        this.chunkHeight = chunkHeight;
+    }
+
+    public int getChunkX(float worldX) {
+        return (int) FastMath.floor((worldX - originX) / chunkWidth);
+    }
+
+    public int getChunkY(float worldZ) {
+        return (int) FastMath.floor((worldZ - originZ) / chunkHeight);
+    }
+
+    public ChunkPosition getChunkPosition(Vector3f location) {
+        return new ChunkPosition(getChunkX(location.x), getChunkY(location.z));
+    }
+
+    /**
+     * Checks whether the chunk (x2, y2) is the chunk (x1, y1) itself or one of its eight surrounding chunks.
+     */
+    public static boolean isNeighbour(int x1, int y1, int x2, int y2) {
+        return Math.abs(x1 - x2) <= 1 && Math.abs(y1 - y2) <= 1;
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginZ() {
+        return originZ;
+    }
+
+    public float getChunkWidth() {
+        return chunkWidth;
+    }
+
+    public float getChunkHeight() {
+        return chunkHeight;
+    }
+}
@@ -32,4 +32,22 @@ public class ChunkPosition {
     public void setY(int y) {
         this.y = y;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ChunkPosition)) return false;
+        ChunkPosition other = (ChunkPosition) o;
+        return x == other.x && y == other.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * x + y;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkPosition[" + x + ", " + y + "]";
+    }
 }
@@ -33,6 +33,7 @@ public class GameWorldPagingManager extends AbstractAppState {
     private HashMap<Vector2f, WorldChunk> chunks = new HashMap<>(); // all chunks are stored in this map
     private WorldChunk currentChunk; // the chunk the player is inside right now
     private List<WorldChunk> currentVisibleChunks = new ArrayList<>(); // the surrounding chunks of the 'currentChunk'
+    private ChunkGrid chunkGrid; // the grid of the last created chunks
 
     // used to look up entries in the chunk map, so we don't need to create a new vector object every time
     private Vector2f lookUpVector = new Vector2f();
@@ -160,6 +161,14 @@ public class GameWorldPagingManager extends AbstractAppState {
         this.chunks = chunkHashMap;
     }
 
+    /**
+     * @return the grid of the chunks created by <code>createChunksForGameWorld()</code> or null
+     * if no chunks have been created yet
+     */
+    public ChunkGrid getChunkGrid() {
+        return chunkGrid;
+    }
+
     private void loadChunks(List<WorldChunk> chunksToLoad) {
         for (WorldChunk chunk : chunksToLoad) {
             Node chunkRootNode = chunk.getChunkRootNode();
@@ -180,7 +189,7 @@ public class GameWorldPagingManager extends AbstractAppState {
         List<WorldChunk> chunkList = new ArrayList<>();
 
         // we divide our level in chunks based on the bounding box of the level
-        BoundingBox gameWorldBoundingBox = (BoundingBox) gameWorld.getWorldBound();
+        BoundingBox gameWorldBoundingBox = getGameWorldBounds(gameWorld);
 
         // for debugging
      //   gameWorld.attachChild(visualizeBoundingBox(gameWorldBoundingBox, assetManager, ColorRGBA.Red));
@@ -189,22 +198,6 @@ public class GameWorldPagingManager extends AbstractAppState {
         float worldSizeZ = gameWorldBoundingBox.getZExtent() * 2;
         float worldSizeY = gameWorldBoundingBox.getYExtent() * 2;
 
-        if (worldSizeX == Float.POSITIVE_INFINITY || worldSizeZ == Float.POSITIVE_INFINITY) {
-            // sometimes it happens that the world bounding box is infinite
-            // this is infinite due to some scene objects (probably audio nodes?)
-            // we take the bounding box of the terrain instead
-            for (Spatial child : gameWorld.getChildren()) {
-                if (child instanceof TerrainQuad) {
-                    BoundingBox boundingBox = (BoundingBox) child.getWorldBound();
-                    worldSizeX = boundingBox.getXExtent() * 2;
-                    worldSizeZ = boundingBox.getZExtent() * 2;
-                    worldSizeY = boundingBox.getYExtent() * 2;
-                    gameWorldBoundingBox = boundingBox;
-                    break;
-                }
-            }
-        }
-
         float halfWorldSizeX = worldSizeX / 2f;
         float halfWorldSizeZ = worldSizeZ / 2f;
         float halfWorldSizeY = worldSizeY / 2f;
@@ -215,6 +208,9 @@ public class GameWorldPagingManager extends AbstractAppState {
         float halfWidthOfChunk = widthOfOneChunk / 2f;
         float halfHeightOfChunk = heightOfOneChunk / 2f;
 
+        this.chunkGrid = new ChunkGrid(gameWorldBoundingBox.getCenter().x - halfWorldSizeX,
+                gameWorldBoundingBox.getCenter().z - halfWorldSizeZ, widthOfOneChunk, heightOfOneChunk);
+
         int yPos = 0; // represents the y ChunkPosition
         int xPos = 0; // represents the x ChunkPosition
 
@@ -293,6 +289,36 @@ public class GameWorldPagingManager extends AbstractAppState {
         return chunkList;
     }
 
+    /**
+     * Creates the grid <code>createChunksForGameWorld()</code> would create for this game world, but without
+     * creating the chunks themselves. This is used by the server which does not need any chunk nodes.
+     *
+     * @param gameWorld            the game world (level)
+     * @param amountOfChunksPerRow chunks per row and column
+     * @return the chunk grid of the game world
+     */
+    public static ChunkGrid createChunkGrid(Node gameWorld, int amountOfChunksPerRow) {
+        BoundingBox bounds = getGameWorldBounds(gameWorld);
+        return new ChunkGrid(bounds.getCenter().x - bounds.getXExtent(), bounds.getCenter().z - bounds.getZExtent(),
+                bounds.getXExtent() * 2 / amountOfChunksPerRow, bounds.getZExtent() * 2 / amountOfChunksPerRow);
+    }
+
+    private static BoundingBox getGameWorldBounds(Node gameWorld) {
+        BoundingBox gameWorldBoundingBox = (BoundingBox) gameWorld.getWorldBound();
+
+        if (gameWorldBoundingBox.getXExtent() == Float.POSITIVE_INFINITY || gameWorldBoundingBox.getZExtent() == Float.POSITIVE_INFINITY) {
+            // sometimes it happens that the world bounding box is infinite
+            // this is infinite due to some scene objects (probably audio nodes?)
+            // we take the bounding box of the terrain instead
+            for (Spatial child : gameWorld.getChildren()) {
+                if (child instanceof TerrainQuad) {
+                    return (BoundingBox) child.getWorldBound();
+                }
+            }
+        }
+        return gameWorldBoundingBox;
+    }
+
     private Geometry visualizeBoundingBox(BoundingBox boundingBox, AssetManager assetManager, ColorRGBA color) {
         Geometry box = WireBox.makeGeometry(boundingBox);
         Material mat = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
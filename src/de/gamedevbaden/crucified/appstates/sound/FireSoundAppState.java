@@ -8,7 +8,6 @@ import com.jme3.audio.AudioData;
 import com.jme3.audio.AudioNode;
 import com.jme3.scene.Node;
 import com.simsilica.es.Entity;
-import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
 import de.gamedevbaden.crucified.appstates.EntityDataState;
@@ -34,9 +33,7 @@ public class FireSoundAppState extends AbstractAppState {
         this.audios = new HashMap<>();
         this.assetManager = app.getAssetManager();
         this.gameNode = stateManager.getState(GameCommanderAppState.class).getMainWorldNode();
-
-        EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
-        this.entitiesOnFire = entityData.getEntities(FireState.class, Transform.class);
+        this.entitiesOnFire = stateManager.getState(EntityDataState.class).getEntities(FireState.class, Transform.class);
 
         for (Entity entity : entitiesOnFire) {
             addAudio(entity);
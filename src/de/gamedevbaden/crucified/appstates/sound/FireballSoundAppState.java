@@ -7,12 +7,14 @@ import com.jme3.asset.AssetManager;
 import com.jme3.audio.AudioData;
 import com.jme3.audio.AudioNode;
 import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
 import com.simsilica.es.Entity;
 import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
 import de.gamedevbaden.crucified.appstates.EntityDataState;
 import de.gamedevbaden.crucified.appstates.game.GameCommanderAppState;
+import de.gamedevbaden.crucified.appstates.view.ModelViewAppState;
 import de.gamedevbaden.crucified.es.components.Fireball;
 import de.gamedevbaden.crucified.es.components.Transform;
 
@@ -24,11 +26,13 @@ public class FireballSoundAppState extends AbstractAppState {
     private HashMap<EntityId, AudioNode> sounds = new HashMap<>();
     private AssetManager assetManager;
     private Node fireballNode = new Node("FireballSounds");
+    private ModelViewAppState modelViewAppState;
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
         stateManager.getState(GameCommanderAppState.class).getMainWorldNode().attachChild(fireballNode);
         this.assetManager = app.getAssetManager();
+        this.modelViewAppState = stateManager.getState(ModelViewAppState.class);
         EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
         this.fireballs = entityData.getEntities(Transform.class, Fireball.class);
         super.initialize(stateManager, app);
@@ -53,6 +57,16 @@ public class FireballSoundAppState extends AbstractAppState {
 
         }
 
+        // fireballs are dead reckoned, their transforms are only updated on corrections
+        if (modelViewAppState != null) {
+            for (Entity entity : fireballs) {
+                Spatial spatial = modelViewAppState.getSpatial(entity.getId());
+                if (spatial != null) {
+                    sounds.get(entity.getId()).setLocalTranslation(spatial.getLocalTranslation());
+                }
+            }
+        }
+
     }
 
     private void addFireballSound(Entity entity) {
@@ -90,6 +104,7 @@ public class FireballSoundAppState extends AbstractAppState {
         this.fireballs = null;
 
         this.sounds.clear();
+        this.modelViewAppState = null;
         this.fireballNode.removeFromParent();
         super.cleanup();
     }
@@ -6,22 +6,24 @@ import com.jme3.app.state.AppStateManager;
 import com.jme3.asset.AssetManager;
 import com.jme3.audio.AudioData;
 import com.jme3.audio.AudioNode;
+import com.jme3.audio.AudioSource;
 import com.jme3.scene.Node;
-import com.simsilica.es.Entity;
-import com.simsilica.es.EntityData;
-import com.simsilica.es.EntityId;
-import com.simsilica.es.EntitySet;
-import de.gamedevbaden.crucified.appstates.EntityDataState;
+import de.gamedevbaden.crucified.appstates.TransientEventAppState;
 import de.gamedevbaden.crucified.appstates.game.GameCommanderAppState;
-import de.gamedevbaden.crucified.es.components.HitComponent;
-import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.game.TransientEvent;
+import de.gamedevbaden.crucified.game.TransientEventListener;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
-public class HitSoundAppState extends AbstractAppState {
+/**
+ * Plays a sound for every hit event (see {@link TransientEventAppState}).
+ */
+public class HitSoundAppState extends AbstractAppState implements TransientEventListener {
 
-    private HashMap<EntityId, AudioNode> sounds = new HashMap<>();
-    private EntitySet hitEntities;
+    private List<AudioNode> sounds = new ArrayList<>();
+    private TransientEventAppState transientEvents;
 
     private AssetManager assetManager;
     private Node hitNode = new Node("HitSoundNode");
@@ -30,8 +32,8 @@ public class HitSoundAppState extends AbstractAppState {
     public void initialize(AppStateManager stateManager, Application app) {
         this.assetManager = app.getAssetManager();
 
-        EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
-        this.hitEntities = entityData.getEntities(Transform.class, HitComponent.class);
+        this.transientEvents = stateManager.getState(TransientEventAppState.class);
+        this.transientEvents.addListener(this);
 
         stateManager.getState(GameCommanderAppState.class).getMainWorldNode().attachChild(hitNode);
 
@@ -40,55 +42,47 @@ public class HitSoundAppState extends AbstractAppState {
 
     @Override
     public void update(float tpf) {
-        if (hitEntities.applyChanges()) {
-
-            for (Entity entity : hitEntities.getAddedEntities()) {
-                addHitSound(entity);
-            }
-
-            for (Entity entity : hitEntities.getRemovedEntities()) {
-                removeHitSound(entity);
+        for (Iterator<AudioNode> it = sounds.iterator(); it.hasNext(); ) {
+            AudioNode audioNode = it.next();
+            if (audioNode.getStatus() == AudioSource.Status.Stopped) {
+                audioNode.removeFromParent();
+                it.remove();
             }
         }
     }
 
-    private void addHitSound(Entity entity) {
-        Transform t = entity.get(Transform.class);
-        HitComponent hit = entity.get(HitComponent.class);
+    @Override
+    public void onEvent(TransientEvent event) {
+        if (event.getType() != TransientEvent.Type.Hit) {
+            return;
+        }
         String soundPath = "Sounds/SoundEffects/";
-        switch (hit.getHitType()) {
-            case HitComponent.HIT_PLAYER: soundPath += "player_hit.WAV"; break;
-            case HitComponent.HIT_GROUND: soundPath += "ground_hit.WAV"; break;
+        switch (event.getHitType()) {
+            case TransientEvent.HIT_PLAYER: soundPath += "player_hit.WAV"; break;
+            case TransientEvent.HIT_GROUND: soundPath += "ground_hit.WAV"; break;
             default: soundPath += "ground_hit.WAV";
         }
 
         AudioNode audioNode = new AudioNode(assetManager, soundPath, AudioData.DataType.Buffer);
         audioNode.setVolume(0.4f);
         audioNode.setPositional(true);
-        audioNode.setLocalTranslation(t.getTranslation());
+        audioNode.setLocalTranslation(event.getLocation());
         audioNode.setRefDistance(2f);
         audioNode.setLooping(false);
         hitNode.attachChild(audioNode);
         audioNode.play();
-        sounds.put(entity.getId(), audioNode);
-    }
-
-    private void removeHitSound(Entity entity) {
-        AudioNode audioNode = sounds.remove(entity.getId());
-        audioNode.stop();
-        audioNode.removeFromParent();
+        sounds.add(audioNode);
     }
 
     @Override
     public void cleanup() {
-        for (Entity entity : hitEntities) {
-            removeHitSound(entity);
-        }
-
-        this.hitEntities.release();
-        this.hitEntities.clear();
-        this.hitEntities = null;
+        this.transientEvents.removeListener(this);
+        this.transientEvents = null;
 
+        for (AudioNode audioNode : sounds) {
+            audioNode.stop();
+        }
+        this.hitNode.detachAllChildren();
         this.hitNode.removeFromParent();
         this.sounds.clear();
 
@@ -6,6 +6,7 @@ import com.jme3.app.state.AbstractAppState;
 import com.jme3.app.state.AppStateManager;
 import com.jme3.asset.AssetManager;
 import com.jme3.audio.AudioNode;
+import com.jme3.audio.AudioSource;
 import com.jme3.scene.Node;
 import com.simsilica.es.Entity;
 import com.simsilica.es.EntityData;
@@ -13,22 +14,31 @@ import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
 import com.simsilica.es.filter.FieldFilter;
 import de.gamedevbaden.crucified.appstates.EntityDataState;
+import de.gamedevbaden.crucified.appstates.TransientEventAppState;
 import de.gamedevbaden.crucified.es.components.SoundComponent;
 import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.game.TransientEvent;
+import de.gamedevbaden.crucified.game.TransientEventListener;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 
 /**
- * IMPORTANT: This class is not really used yet because Sounds are not really game objects...
- * Yet, the only usage for this class is for trigger events but even those could be handled without this class.
+ * Plays the sounds of entities with a {@link SoundComponent} as long as the entity has it.
+ * Sounds which are only played once are no entities, they come as sound events
+ * (see {@link TransientEventAppState}) and are removed once they have been played.
  * Created by Domenic on 12.05.2017.
  */
-public class SoundAppState extends AbstractAppState {
+public class SoundAppState extends AbstractAppState implements TransientEventListener {
 
     private EntitySet positionalSoundEntities;
     private EntitySet globalSoundEntities;
 
     private HashMap<EntityId, AudioNode> audios;
+    private final List<AudioNode> eventAudios = new ArrayList<>();
+    private TransientEventAppState transientEvents;
 
     private Node audioNode;
     private AssetManager assetManager;
@@ -43,6 +53,9 @@ public class SoundAppState extends AbstractAppState {
 
         this.audios = new HashMap<>();
 
+        this.transientEvents = stateManager.getState(TransientEventAppState.class);
+        this.transientEvents.addListener(this);
+
         Node rootNode = ((SimpleApplication) app).getRootNode();
         audioNode = new Node("AudioNode");
         rootNode.attachChild(audioNode);
@@ -82,6 +95,13 @@ public class SoundAppState extends AbstractAppState {
 
         }
 
+        for (Iterator<AudioNode> it = eventAudios.iterator(); it.hasNext(); ) {
+            AudioNode audio = it.next();
+            if (audio.getStatus() == AudioSource.Status.Stopped) {
+                audio.removeFromParent();
+                it.remove();
+            }
+        }
 
     }
 
@@ -112,6 +132,22 @@ public class SoundAppState extends AbstractAppState {
         return audio;
     }
 
+    @Override
+    public void onEvent(TransientEvent event) {
+        if (event.getType() != TransientEvent.Type.Sound) {
+            return;
+        }
+        AudioNode audio = new AudioNode(assetManager, event.getSound().getAudioPath(), event.getSound().getDataType());
+        audio.setLooping(false);
+        audio.setPositional(event.isPositional());
+        if (event.isPositional()) {
+            audio.setLocalTranslation(event.getLocation());
+        }
+        audioNode.attachChild(audio);
+        audio.play();
+        eventAudios.add(audio);
+    }
+
     private void removeAudio(Entity entity) {
         if (audios.containsKey(entity.getId())) {
             AudioNode audio = audios.remove(entity.getId());
@@ -121,6 +157,10 @@ public class SoundAppState extends AbstractAppState {
 
     @Override
     public void cleanup() {
+        this.transientEvents.removeListener(this);
+        this.transientEvents = null;
+        this.eventAudios.clear();
+
         this.positionalSoundEntities.release();
         this.positionalSoundEntities.clear();
         this.positionalSoundEntities = null;
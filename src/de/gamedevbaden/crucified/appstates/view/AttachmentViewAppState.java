@@ -0,0 +1,85 @@
+package de.gamedevbaden.crucified.appstates.view;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+import com.simsilica.es.Entity;
+import com.simsilica.es.EntitySet;
+import de.gamedevbaden.crucified.appstates.EntityDataState;
+import de.gamedevbaden.crucified.es.components.ChildOf;
+import de.gamedevbaden.crucified.es.components.Model;
+
+/**
+ * Places the models of attached entities (see {@link ChildOf}) relative to the model of their parent every frame.
+ * The server doesn't update the Transform of a child when its parent moves, so the child follows the parent
+ * as it is shown here, including interpolation and prediction.
+ * <p>
+ * The spatials of the children are excluded from the Transform updates of the {@link ModelViewAppState}
+ * as long as they are attached.
+ */
+public class AttachmentViewAppState extends AbstractAppState {
+
+    private EntitySet attachedEntities;
+    private ModelViewAppState modelViewAppState;
+
+    private final Vector3f translation = new Vector3f();
+    private final Quaternion rotation = new Quaternion();
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        this.modelViewAppState = stateManager.getState(ModelViewAppState.class);
+        this.attachedEntities = stateManager.getState(EntityDataState.class).getEntityData().getEntities(ChildOf.class, Model.class);
+        super.initialize(stateManager, app);
+    }
+
+    @Override
+    public void update(float tpf) {
+        if (attachedEntities.applyChanges()) {
+            for (Entity entity : attachedEntities.getRemovedEntities()) {
+                if (modelViewAppState.getSpatial(entity.getId()) != null) {
+                    modelViewAppState.setExcludedFromUpdate(entity.getId(), false);
+                }
+            }
+        }
+
+        for (Entity entity : attachedEntities) {
+            ChildOf childOf = entity.get(ChildOf.class);
+            Spatial parent = modelViewAppState.getSpatial(childOf.getParentId());
+            Spatial child = modelViewAppState.getSpatial(entity.getId());
+            if (parent == null || child == null) {
+                continue;
+            }
+            if (!modelViewAppState.isExcludedFromUpdate(entity.getId())) {
+                modelViewAppState.setExcludedFromUpdate(entity.getId(), true);
+            }
+
+            // same as AttachmentAppState.combineWithParent(), without creating a Transform each frame
+            parent.getLocalRotation().mult(childOf.getOffsetRotation(), rotation);
+            translation.set(childOf.getOffsetTranslation()).multLocal(parent.getLocalScale());
+            parent.getLocalRotation().multLocal(translation).addLocal(parent.getLocalTranslation());
+
+            child.setLocalTranslation(translation);
+            child.setLocalRotation(rotation);
+            child.setLocalScale(parent.getLocalScale());
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        if (modelViewAppState.isInitialized()) {
+            for (Entity entity : attachedEntities) {
+                if (modelViewAppState.getSpatial(entity.getId()) != null) {
+                    modelViewAppState.setExcludedFromUpdate(entity.getId(), false);
+                }
+            }
+        }
+        this.attachedEntities.release();
+        this.attachedEntities = null;
+        this.modelViewAppState = null;
+
+        super.cleanup();
+    }
+}
@@ -0,0 +1,126 @@
+package de.gamedevbaden.crucified.appstates.view;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.math.Quaternion;
+import com.jme3.scene.Spatial;
+import com.simsilica.es.Entity;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.EntitySet;
+import de.gamedevbaden.crucified.appstates.EntityDataState;
+import de.gamedevbaden.crucified.appstates.net.ViewClock;
+import de.gamedevbaden.crucified.es.components.Model;
+import de.gamedevbaden.crucified.es.components.OpenedClosedState;
+import de.gamedevbaden.crucified.es.components.Transform;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Animates the models of swinging doors.
+ * <p>
+ * The server only sends the new {@link OpenedClosedState} of a door, stamped with the server time the swing started at.
+ * The rotation is evaluated locally at the time the other remote entities are shown at. As long as there is no
+ * estimate of the server clock, a swing is shown from the moment its state has been received.
+ */
+public class DoorAnimationAppState extends AbstractAppState {
+
+    private EntitySet doors;
+    private ModelViewAppState modelViewAppState;
+    private ViewClock viewClock;
+
+    private ArrayList<EntityId> doorsToUpdate = new ArrayList<>();
+    private HashMap<EntityId, Long> receiveTimes = new HashMap<>(); // local time the state of a door has been received at
+    private final Quaternion rotation = new Quaternion();
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        this.modelViewAppState = stateManager.getState(ModelViewAppState.class);
+        this.viewClock = new ViewClock(stateManager);
+
+        EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
+        this.doors = entityData.getEntities(OpenedClosedState.class, Transform.class, Model.class);
+
+        long localTime = getLocalTime();
+        for (Entity entity : doors) {
+            addDoor(entity, localTime);
+        }
+        super.initialize(stateManager, app);
+    }
+
+    @Override
+    public void update(float tpf) {
+        long localTime = getLocalTime();
+
+        if (doors.applyChanges()) {
+            for (Entity entity : doors.getAddedEntities()) {
+                addDoor(entity, localTime);
+            }
+            for (Entity entity : doors.getChangedEntities()) {
+                receiveTimes.remove(entity.getId());
+                addDoor(entity, localTime); // the transform might have been reset by the model view
+            }
+            for (Entity entity : doors.getRemovedEntities()) {
+                doorsToUpdate.remove(entity.getId());
+                receiveTimes.remove(entity.getId());
+            }
+        }
+
+        if (doorsToUpdate.isEmpty()) {
+            return;
+        }
+
+        for (int i = doorsToUpdate.size() - 1; i >= 0; i--) {
+            Entity entity = doors.getEntity(doorsToUpdate.get(i));
+            Spatial spatial = modelViewAppState.getSpatial(entity.getId());
+            if (spatial == null) {
+                continue; // the model view adds it with its next update
+            }
+
+            OpenedClosedState state = entity.get(OpenedClosedState.class);
+            long time = getServerTime(entity, state, localTime);
+            spatial.setLocalRotation(state.getRotation(entity.get(Transform.class).getRotation(), time, rotation));
+
+            if (!state.isMoving(time)) {
+                doorsToUpdate.remove(i);
+                receiveTimes.remove(entity.getId());
+            }
+        }
+    }
+
+    private void addDoor(Entity entity, long localTime) {
+        if (!doorsToUpdate.contains(entity.getId())) {
+            doorsToUpdate.add(entity.getId());
+        }
+        if (!viewClock.isAvailable()) {
+            receiveTimes.put(entity.getId(), localTime);
+        }
+    }
+
+    private long getServerTime(Entity entity, OpenedClosedState state, long localTime) {
+        if (viewClock.isAvailable()) {
+            return viewClock.getTime();
+        }
+        Long receiveTime = receiveTimes.get(entity.getId());
+        return state.getChangeTime() + (receiveTime != null ? localTime - receiveTime : 0);
+    }
+
+    private static long getLocalTime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    @Override
+    public void cleanup() {
+        this.doors.release();
+        this.doors.clear();
+        this.doors = null;
+
+        this.doorsToUpdate.clear();
+        this.receiveTimes.clear();
+        this.modelViewAppState = null;
+        this.viewClock = null;
+        super.cleanup();
+    }
+}
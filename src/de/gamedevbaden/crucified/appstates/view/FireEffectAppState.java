@@ -7,7 +7,6 @@ import com.jme3.asset.AssetManager;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
 import com.simsilica.es.Entity;
-import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
 import de.gamedevbaden.crucified.appstates.EntityDataState;
@@ -39,9 +38,7 @@ public class FireEffectAppState extends AbstractAppState {
 
         this.fireEffectNode = new Node("FireEffectNode");
         stateManager.getState(GameCommanderAppState.class).getMainWorldNode().attachChild(fireEffectNode);
-
-        EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
-        this.campFires = entityData.getEntities(FireState.class, Transform.class);
+        this.campFires = stateManager.getState(EntityDataState.class).getEntities(FireState.class, Transform.class);
 
         for (Entity entity : campFires) {
             addCampfireEffect(entity);
@@ -7,7 +7,6 @@ import com.jme3.light.PointLight;
 import com.jme3.math.ColorRGBA;
 import com.jme3.scene.Node;
 import com.simsilica.es.Entity;
-import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
 import de.gamedevbaden.crucified.appstates.EntityDataState;
@@ -29,9 +28,7 @@ public class FireLightAppState extends AbstractAppState {
     public void initialize(AppStateManager stateManager, Application app) {
         this.lightingDistanceAppState = stateManager.getState(LightingDistanceAppState.class);
         this.gameNode = stateManager.getState(GameCommanderAppState.class).getMainWorldNode();
-
-        EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
-        this.fireEntities = entityData.getEntities(FireState.class, Transform.class);
+        this.fireEntities = stateManager.getState(EntityDataState.class).getEntities(FireState.class, Transform.class);
         for (Entity entity : fireEntities) {
             addFireLight(entity);
         }
@@ -186,6 +186,10 @@ public class ModelViewAppState extends AbstractAppState {
         lastTransforms.put(entity.getId(), new Transform(location, rotation, scale));
     }
 
+    public boolean isExcludedFromUpdate(EntityId entityId) {
+        return excludedFromUpdate.contains(entityId);
+    }
+
     /**
      * Returns the Transform before the last update.
      * This can be used for interpolation between two positions for example.
@@ -198,6 +202,7 @@ public class ModelViewAppState extends AbstractAppState {
     }
 
     private void removeSpatial(Entity entity) {
+        excludedFromUpdate.remove(entity.getId());
         Spatial spatial = spatials.remove(entity.getId());
         rootNode.detachChild(spatial);
     }
@@ -18,6 +18,7 @@ import de.gamedevbaden.crucified.enums.SkeletonType;
 import de.gamedevbaden.crucified.es.components.EquippedBy;
 import de.gamedevbaden.crucified.es.components.Model;
 import de.gamedevbaden.crucified.es.components.SkeletonComponent;
+import de.gamedevbaden.crucified.es.utils.StringIds;
 
 /**
  * This app state watches equipped items and make them be positioned in their right position.
@@ -26,6 +27,8 @@ import de.gamedevbaden.crucified.es.components.SkeletonComponent;
  */
 public class VisualEquipmentAppState extends AbstractAppState {
 
+    private static final int HEADLAMP = StringIds.getId(ModelType.Headlamp);
+
     private EntitySet equipables;
     private EntitySet players;
 
@@ -84,7 +87,7 @@ public class VisualEquipmentAppState extends AbstractAppState {
 
             Model modelType = equipables.getEntity(itemToEquip).get(Model.class);
 
-            if (modelType.getPath().equals(ModelType.Headlamp)) {
+            if (modelType.getAssetId() == HEADLAMP) {
 
                 // attach to head
                 Node attachmentNode = playerModel.getControl(SkeletonControl.class).getAttachmentsNode("Head");
@@ -6,7 +6,6 @@ import com.jme3.app.state.AppStateManager;
 import com.jme3.scene.Spatial;
 import com.jme3.scene.Spatial.CullHint;
 import com.simsilica.es.Entity;
-import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
 import de.gamedevbaden.crucified.appstates.EntityDataState;
@@ -23,8 +22,7 @@ public class VisualStoringAppState extends AbstractAppState {
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
-        EntityData entityData = stateManager.getState(EntityDataState.class).getEntityData();
-        this.storedEntities = entityData.getEntities(StoredIn.class);
+        this.storedEntities = stateManager.getState(EntityDataState.class).getEntities(StoredIn.class);
         this.modelViewAppState = stateManager.getState(ModelViewAppState.class);
         super.initialize(stateManager, app);
     }
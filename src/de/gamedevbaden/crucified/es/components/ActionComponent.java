@@ -12,15 +12,32 @@ import de.gamedevbaden.crucified.enums.ActionType;
 public class ActionComponent implements EntityComponent {
 
     private ActionType action;
+    private int spawnId;
 
     public ActionComponent() {
     }
 
     public ActionComponent(ActionType action) {
+        this(action, 0);
+    }
+
+    /**
+     * @param action  the action
+     * @param spawnId the id the client of the performer has given the entity it predicts for this action, 0 if none
+     */
+    public ActionComponent(ActionType action, int spawnId) {
         this.action = action;
+        this.spawnId = spawnId;
     }
 
     public ActionType getAction() {
         return action;
     }
+
+    /**
+     * @return the id of the entity the client of the performer predicts for this action, 0 if none
+     */
+    public int getSpawnId() {
+        return spawnId;
+    }
 }
@@ -3,20 +3,55 @@ package de.gamedevbaden.crucified.es.components;
 import com.jme3.math.Vector3f;
 import com.jme3.network.serializing.Serializable;
 import com.simsilica.es.EntityComponent;
+import com.simsilica.es.EntityId;
 
 @Serializable
 public class Fireball implements EntityComponent {
 
     private Vector3f direction;
+    private EntityId shooter;
+    private int spawnId;
 
     public Fireball() {
     }
 
     public Fireball(Vector3f direction) {
+        this(direction, null);
+    }
+
+    public Fireball(Vector3f direction, EntityId shooter) {
+        this(direction, shooter, 0);
+    }
+
+    /**
+     * @param direction the direction the fireball flies in
+     * @param shooter   the character which has shot the fireball
+     * @param spawnId   the id the client of the shooter has given its predicted fireball, 0 if none
+     */
+    public Fireball(Vector3f direction, EntityId shooter, int spawnId) {
         this.direction = direction;
+        this.shooter = shooter;
+        this.spawnId = spawnId;
     }
 
     public Vector3f getDirection() {
         return direction;
     }
+
+    /**
+     * @return the character which has shot the fireball or null if unknown
+     */
+    public EntityId getShooter() {
+        return shooter;
+    }
+
+    /**
+     * The client of the shooter shows a predicted fireball until this one arrives, the spawn id tells
+     * which one it replaces (see FireballPredictionAppState).
+     *
+     * @return the spawn id of the predicted fireball or 0 if there is none
+     */
+    public int getSpawnId() {
+        return spawnId;
+    }
 }
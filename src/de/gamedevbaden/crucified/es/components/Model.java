@@ -2,9 +2,11 @@ package de.gamedevbaden.crucified.es.components;
 
 import com.jme3.network.serializing.Serializable;
 import com.simsilica.es.EntityComponent;
+import de.gamedevbaden.crucified.es.utils.StringIds;
 
 /**
  * Tells the ES what model the entity has.
+ * The path is interned, the component only keeps its id (see {@link StringIds}).
  * Created by Domenic on 11.04.2017.
  */
 @Serializable
@@ -12,7 +14,7 @@ public class Model implements EntityComponent {
 
     //  private ModelType modelType;
 
-    private String path;
+    private int assetId;
 
     /**
      * Do not use!
@@ -22,11 +24,22 @@ public class Model implements EntityComponent {
     }
 
     public Model(String path) {
-        this.path = path;
+        this.assetId = StringIds.getId(path);
+    }
+
+    public Model(int assetId) {
+        this.assetId = assetId;
     }
 
     public String getPath() {
-        return path;
+        return StringIds.getString(assetId);
+    }
+
+    /**
+     * @return the id of the path, compare it with {@link StringIds#getId(String)} instead of comparing paths
+     */
+    public int getAssetId() {
+        return assetId;
     }
 
     //
@@ -1,20 +1,30 @@
 package de.gamedevbaden.crucified.es.components;
 
 import com.simsilica.es.EntityComponent;
+import de.gamedevbaden.crucified.es.utils.StringIds;
 
 /**
  * Gives the entity a name.
  * Might be used as a unique identifier to later find entities by their name instead of their id.
+ * The name is interned, the component only keeps its id (see {@link StringIds}).
  */
 public class Name implements EntityComponent {
 
-    private String name;
+    private int nameId;
 
     public Name(String name) {
-        this.name = name;
+        this.nameId = StringIds.getId(name);
+    }
+
+    public Name(int nameId) {
+        this.nameId = nameId;
     }
 
     public String getName() {
-        return name;
+        return StringIds.getString(nameId);
+    }
+
+    public int getNameId() {
+        return nameId;
     }
 }
@@ -1,14 +1,26 @@
 package de.gamedevbaden.crucified.es.components;
 
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializable;
 import com.simsilica.es.EntityComponent;
+import de.gamedevbaden.crucified.utils.GameConstants;
 
 /**
  * This component stores information about the opening state.
+ * <p>
+ * Doors don't stream their rotation while they swing. The state stores the server time the swing started at instead,
+ * so the server physics and the client views can evaluate the same rotation curve locally.
  * Created by Domenic on 13.05.2017.
  */
+@Serializable
 public class OpenedClosedState implements EntityComponent {
 
+    private static final float OPENED_ANGLE = FastMath.HALF_PI;
+
     private boolean opened;
+    private long changeTime;
 
     public OpenedClosedState() {
     }
@@ -17,7 +29,68 @@ public class OpenedClosedState implements EntityComponent {
         this.opened = opened;
     }
 
+    /**
+     * @param opened     true if the door is opening (or opened)
+     * @param changeTime the server time in milliseconds the swing started at
+     */
+    public OpenedClosedState(boolean opened, long changeTime) {
+        this.opened = opened;
+        this.changeTime = changeTime;
+    }
+
+    /**
+     * Creates the state for a door which swings the other way from where it is at the given time.
+     * The start time is shifted, so a door which is reversed in the middle of a swing doesn't jump.
+     *
+     * @param time the current server time in milliseconds
+     * @return the new state
+     */
+    public OpenedClosedState toggle(long time) {
+        float openness = getOpenness(time);
+        float traveled = opened ? 1f - openness : openness; // part of the new swing which is already done
+        return new OpenedClosedState(!opened, time - (long) (traveled * GameConstants.DOOR_SWING_DURATION));
+    }
+
+    /**
+     * @param time the server time in milliseconds
+     * @return true if the door still swings at the given time
+     */
+    public boolean isMoving(long time) {
+        return changeTime != 0 && time - changeTime < GameConstants.DOOR_SWING_DURATION;
+    }
+
+    /**
+     * @param time the server time in milliseconds
+     * @return how far the door is opened at the given time, from 0 (closed) to 1 (opened)
+     */
+    public float getOpenness(long time) {
+        float progress = changeTime == 0 ? 1f : FastMath.clamp((time - changeTime) / (float) GameConstants.DOOR_SWING_DURATION, 0f, 1f);
+        return opened ? progress : 1f - progress;
+    }
+
+    /**
+     * Evaluates the rotation of the door at the given time.
+     *
+     * @param closedRotation the rotation of the closed door
+     * @param time           the server time in milliseconds
+     * @param store          the quaternion to store the result in
+     * @return the store
+     */
+    public Quaternion getRotation(Quaternion closedRotation, long time, Quaternion store) {
+        float openness = getOpenness(time);
+        float eased = openness * openness * (3f - 2f * openness); // starts and stops smoothly
+        store.fromAngleNormalAxis(eased * OPENED_ANGLE, Vector3f.UNIT_Y);
+        return closedRotation.mult(store, store);
+    }
+
     public boolean isOpened() {
         return opened;
     }
+
+    /**
+     * @return the server time in milliseconds the last swing started at, 0 if the door never moved
+     */
+    public long getChangeTime() {
+        return changeTime;
+    }
 }
@@ -17,6 +17,7 @@ public class Transform implements EntityComponent {
     private Vector3f location;
     private Quaternion quaternion;
     private Vector3f scale;
+    private long time; // server time of the update, only known on client side
 
     public Transform() {
     }
@@ -33,6 +34,11 @@ public class Transform implements EntityComponent {
         this.scale = scale;
     }
 
+    public Transform(Vector3f location, Quaternion quaternion, Vector3f scale, long time) {
+        this(location, quaternion, scale);
+        this.time = time;
+    }
+
     public Vector3f getTranslation() {
         return location;
     }
@@ -45,6 +51,16 @@ public class Transform implements EntityComponent {
         return scale;
     }
 
+    /**
+     * Returns the server time (in milliseconds) of the network tick this transform was sent in.
+     * This is only set for transforms which were received from a server.
+     *
+     * @return the server time or 0 if unknown
+     */
+    public long getTime() {
+        return time;
+    }
+
     @Override
     public String toString() {
         return "Transform{" +
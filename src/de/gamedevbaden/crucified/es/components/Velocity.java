@@ -0,0 +1,102 @@
+package de.gamedevbaden.crucified.es.components;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializable;
+import com.simsilica.es.EntityComponent;
+
+/**
+ * The linear and angular velocity of a physical entity, together with the location and rotation it had at a server time.
+ * <p>
+ * Clients extrapolate the entity from these values (dead reckoning), so its {@link Transform} doesn't need to be
+ * sent while it moves. The server only sets a new velocity if the prediction is too far off.
+ */
+@Serializable
+public class Velocity implements EntityComponent {
+
+    private Vector3f location;
+    private Quaternion rotation;
+    private Vector3f linear;
+    private Vector3f angular;
+    private long time;
+
+    public Velocity() {
+    }
+
+    /**
+     * @param location the location at the given time
+     * @param rotation the rotation at the given time
+     * @param linear   the linear velocity in units per second
+     * @param angular  the angular velocity in world space in radians per second
+     * @param time     the server time in milliseconds
+     */
+    public Velocity(Vector3f location, Quaternion rotation, Vector3f linear, Vector3f angular, long time) {
+        this.location = location;
+        this.rotation = rotation;
+        this.linear = linear;
+        this.angular = angular;
+        this.time = time;
+    }
+
+    /**
+     * Predicts the location at the given time. Times before the time of this velocity are clamped.
+     *
+     * @param time  the server time in milliseconds
+     * @param store the vector to store the result in
+     * @return the store
+     */
+    public Vector3f predictLocation(long time, Vector3f store) {
+        float seconds = Math.max(0, time - this.time) / 1000f;
+        return store.set(linear).multLocal(seconds).addLocal(location);
+    }
+
+    /**
+     * Predicts the rotation at the given time. Times before the time of this velocity are clamped.
+     *
+     * @param time  the server time in milliseconds
+     * @param store the quaternion to store the result in
+     * @return the store
+     */
+    public Quaternion predictRotation(long time, Quaternion store) {
+        float speed = angular.length();
+        if (speed == 0) {
+            return store.set(rotation);
+        }
+        float seconds = Math.max(0, time - this.time) / 1000f;
+        store.fromAngleNormalAxis(speed * seconds, angular.divide(speed));
+        return store.multLocal(rotation);
+    }
+
+    public Vector3f getLocation() {
+        return location;
+    }
+
+    public Quaternion getRotation() {
+        return rotation;
+    }
+
+    public Vector3f getLinear() {
+        return linear;
+    }
+
+    public Vector3f getAngular() {
+        return angular;
+    }
+
+    /**
+     * @return the server time in milliseconds the location and rotation belong to
+     */
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "Velocity{" +
+                "location=" + location +
+                ", linear=" + linear +
+                ", angular=" + angular +
+                ", time=" + time +
+                '}';
+    }
+}
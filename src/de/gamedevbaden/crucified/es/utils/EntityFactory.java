@@ -16,21 +16,6 @@ import de.gamedevbaden.crucified.es.utils.physics.CollisionShapeType;
 public class EntityFactory {
 
 
-    public static EntityId createSoundEffect(EntityData entityData, Sound sound, boolean positional, Vector3f location) {
-
-        EntityId soundEffect = entityData.createEntity();
-        entityData.setComponents(soundEffect,
-                new SoundComponent(sound, false, positional),
-                new Decay((long) sound.getDurationInMillis()));
-
-        if (positional) {
-            entityData.setComponent(soundEffect, new Transform(location, new Quaternion(), new Vector3f(1, 1, 1)));
-        }
-
-        return soundEffect;
-
-    }
-
     public static EntityId createPlayer(EntityData entityData, EntityId player, Vector3f startPos) {
         entityData.setComponents(player,
                 new SkeletonComponent(SkeletonType.HUMAN),
@@ -0,0 +1,213 @@
+package de.gamedevbaden.crucified.es.utils;
+
+import com.simsilica.es.ComponentFilter;
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntitySet;
+import com.simsilica.es.filter.FieldFilter;
+
+import java.util.*;
+
+/**
+ * Hands out shared entity sets. All sets with the same component types and filter are views of a single
+ * {@link EntitySet}, so the entity data only tracks (and on a client only requests from the server) one set per query.
+ * <p>
+ * The shared sets are updated once per frame by {@link #update()}, which has to be called before the states
+ * which use the views are updated. The changes are handed to all views of the query and each view still has
+ * its own added, changed and removed entities for its next {@link EntitySet#applyChanges()}. A shared set is
+ * released as soon as all of its views have been released.
+ * <p>
+ * Only queries without a filter or with a {@link FieldFilter} can be shared, other filters can't be compared.
+ * A view whose filter is reset moves to the shared set of the new query, with any other filter it gets a set of its own.
+ */
+public class EntitySetRegistry {
+
+    private final EntityData entityData;
+    private final Map<QueryKey, SharedQuery> queries = new HashMap<>();
+
+    public EntitySetRegistry(EntityData entityData) {
+        this.entityData = entityData;
+    }
+
+    public EntitySet getEntities(Class... types) {
+        return getEntities(null, types);
+    }
+
+    /**
+     * Returns a view of the shared set for that query. Release it like any other entity set.
+     *
+     * @param filter the filter of the set, can be null
+     * @param types  the component types
+     * @return a new view of the shared set
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized EntitySet getEntities(ComponentFilter filter, Class... types) {
+        if (filter != null && !(filter instanceof FieldFilter)) {
+            return entityData.getEntities(filter, types);
+        }
+
+        return getQuery(filter, types).createView();
+    }
+
+    private SharedQuery getQuery(ComponentFilter filter, Class... types) {
+        QueryKey key = new QueryKey(filter, types);
+        SharedQuery query = queries.get(key);
+        if (query == null) {
+            query = new SharedQuery(key, types, entityData.getEntities(filter, types));
+            queries.put(key, query);
+        }
+        return query;
+    }
+
+    /**
+     * Moves a view to the set of the same types with another filter.
+     */
+    private synchronized void resetFilter(SharedQuery query, SharedEntitySet view, ComponentFilter filter) {
+        SharedQuery next = getQuery(filter, query.types);
+        if (next == query) {
+            return;
+        }
+        // both sets stay as they are while the view compares them and moves from one to the other
+        synchronized (query) {
+            synchronized (next) {
+                query.views.remove(view);
+                next.views.add(view);
+                view.moveTo(next, next.set);
+            }
+        }
+        release(query, view); // only releases the old set if it has no views left
+    }
+
+    /**
+     * Applies the changes of all shared sets and hands them to their views.
+     */
+    public void update() {
+        SharedQuery[] current;
+        synchronized (this) {
+            current = queries.values().toArray(new SharedQuery[queries.size()]);
+        }
+        for (SharedQuery query : current) {
+            query.update();
+        }
+    }
+
+    /**
+     * @return the amount of shared sets
+     */
+    public synchronized int getSharedSetCount() {
+        return queries.size();
+    }
+
+    private synchronized void release(SharedQuery query, SharedEntitySet view) {
+        synchronized (query) {
+            query.views.remove(view);
+            if (query.views.isEmpty() && queries.remove(query.key) != null) {
+                query.set.release();
+            }
+        }
+    }
+
+    /**
+     * Releases all shared sets, the views must not be used afterwards.
+     */
+    public synchronized void close() {
+        for (SharedQuery query : queries.values()) {
+            synchronized (query) {
+                query.views.clear();
+                query.set.release();
+            }
+        }
+        queries.clear();
+    }
+
+    /**
+     * The shared set of a query and its views.
+     */
+    class SharedQuery {
+
+        private final QueryKey key;
+        private final Class[] types;
+        private final EntitySet set;
+        private final List<SharedEntitySet> views = new ArrayList<>();
+        private final Set<EntityChange> updates = new HashSet<>();
+
+        private SharedQuery(QueryKey key, Class[] types, EntitySet set) {
+            this.key = key;
+            this.types = types;
+            this.set = set;
+        }
+
+        private synchronized SharedEntitySet createView() {
+            SharedEntitySet view = new SharedEntitySet(this, set);
+            views.add(view);
+            return view;
+        }
+
+        /**
+         * Applies the changes of the shared set and hands them to all views.
+         */
+        @SuppressWarnings("deprecation")
+        synchronized void update() {
+            // the entity changes are only collected if a view asks for them
+            boolean collectUpdates = false;
+            for (SharedEntitySet view : views) {
+                collectUpdates |= view.isCollectingUpdates();
+            }
+            if (!set.applyChanges(collectUpdates ? updates : null)) {
+                return;
+            }
+            for (SharedEntitySet view : views) {
+                view.addChanges(set.getAddedEntities(), set.getChangedEntities(), set.getRemovedEntities(), updates);
+            }
+            set.clearChangeSets();
+            updates.clear();
+        }
+
+        void release(SharedEntitySet view) {
+            EntitySetRegistry.this.release(this, view);
+        }
+
+        void resetFilter(SharedEntitySet view, ComponentFilter filter) {
+            EntitySetRegistry.this.resetFilter(this, view, filter);
+        }
+    }
+
+    /**
+     * The component types (in any order) and the field filter of a query.
+     * Queries with any other filter get a key which only equals itself, so they are never shared.
+     */
+    private static class QueryKey {
+
+        private final Set<Class> types;
+        private final boolean shared;
+        private final Class filterType;
+        private final String filterField;
+        private final Object filterValue;
+
+        private QueryKey(ComponentFilter filter, Class... types) {
+            FieldFilter fieldFilter = filter instanceof FieldFilter ? (FieldFilter) filter : null;
+            this.types = new HashSet<>(Arrays.asList(types));
+            this.shared = filter == null || fieldFilter != null;
+            this.filterType = fieldFilter != null ? fieldFilter.getComponentType() : null;
+            this.filterField = fieldFilter != null ? fieldFilter.getFieldName() : null;
+            this.filterValue = fieldFilter != null ? fieldFilter.getValue() : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof QueryKey)) return false;
+            QueryKey other = (QueryKey) o;
+            return shared && other.shared
+                    && types.equals(other.types)
+                    && Objects.equals(filterType, other.filterType)
+                    && Objects.equals(filterField, other.filterField)
+                    && Objects.equals(filterValue, other.filterValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(types, filterType, filterField, filterValue);
+        }
+    }
+}
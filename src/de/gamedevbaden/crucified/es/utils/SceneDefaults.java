@@ -0,0 +1,106 @@
+package de.gamedevbaden.crucified.es.utils;
+
+import com.jme3.scene.Spatial;
+import com.simsilica.es.EntityComponent;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The entities of a scene with the components they start with. They are only derived from the scene graph
+ * (see {@link de.gamedevbaden.crucified.appstates.SceneEntityLoader#createSceneDefaults}), so the server and
+ * the clients get the same entities with the same ids from the same scene.
+ * <p>
+ * The ids start at {@link GameConstants#SCENE_ENTITY_ID_BASE}, the entity data creates all other entities below.
+ * Components are immutable, so a component of a scene entity is still the default one as long as it is the same
+ * object (see {@link #isDefault(EntityId, EntityComponent)}).
+ */
+public class SceneDefaults {
+
+    private final Map<EntityId, Map<Class, EntityComponent>> entities = new LinkedHashMap<>();
+    private final Map<Spatial, EntityId> spatialEntities = new HashMap<>();
+
+    /**
+     * Adds the entity of the next spatial of the scene.
+     *
+     * @param spatial the spatial the entity has been derived from
+     * @return the id of the new entity
+     */
+    public EntityId addEntity(Spatial spatial) {
+        EntityId entityId = new EntityId(GameConstants.SCENE_ENTITY_ID_BASE + entities.size());
+        entities.put(entityId, new LinkedHashMap<>());
+        spatialEntities.put(spatial, entityId);
+        return entityId;
+    }
+
+    /**
+     * Sets default components of the entity, replacing the ones of the same type.
+     */
+    public void setComponents(EntityId entityId, EntityComponent... components) {
+        Map<Class, EntityComponent> entityComponents = entities.get(entityId);
+        for (EntityComponent component : components) {
+            entityComponents.put(component.getClass(), component);
+        }
+    }
+
+    public void removeComponent(EntityId entityId, Class type) {
+        entities.get(entityId).remove(type);
+    }
+
+    /**
+     * Creates all entities with their default components.
+     *
+     * @param entityData the entity data of the server
+     */
+    public void applyTo(EntityData entityData) {
+        for (Map.Entry<EntityId, Map<Class, EntityComponent>> entry : entities.entrySet()) {
+            Collection<EntityComponent> components = entry.getValue().values();
+            entityData.setComponents(entry.getKey(), components.toArray(new EntityComponent[components.size()]));
+        }
+    }
+
+    /**
+     * @return true if the component is the default component of this scene entity
+     */
+    public boolean isDefault(EntityId entityId, EntityComponent component) {
+        Map<Class, EntityComponent> entityComponents = entities.get(entityId);
+        return entityComponents != null && entityComponents.get(component.getClass()) == component;
+    }
+
+    /**
+     * @return the default component of that type or null if the entity has none or isn't a scene entity
+     */
+    public EntityComponent getComponent(EntityId entityId, Class type) {
+        Map<Class, EntityComponent> entityComponents = entities.get(entityId);
+        return entityComponents != null ? entityComponents.get(type) : null;
+    }
+
+    public Set<EntityId> getEntityIds() {
+        return Collections.unmodifiableSet(entities.keySet());
+    }
+
+    public Collection<EntityComponent> getComponents(EntityId entityId) {
+        return Collections.unmodifiableCollection(entities.get(entityId).values());
+    }
+
+    /**
+     * @return the entity of that spatial or null if it has none
+     */
+    public EntityId getEntityId(Spatial spatial) {
+        return spatialEntities.get(spatial);
+    }
+
+    /**
+     * @return the number of scene entities
+     */
+    public int size() {
+        return entities.size();
+    }
+}
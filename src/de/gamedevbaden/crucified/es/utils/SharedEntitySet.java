@@ -0,0 +1,230 @@
+package de.gamedevbaden.crucified.es.utils;
+
+import com.simsilica.es.ComponentFilter;
+import com.simsilica.es.Entity;
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.EntitySet;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * A view of a shared entity set, see {@link EntitySetRegistry}.
+ * The entities are those of the shared set, the added, changed and removed entities are collected for each view.
+ * Views can't be modified. Resetting the filter moves the view to the shared set of the new query, the entities
+ * which are in only one of both sets show up as added or removed on the next {@link #applyChanges()}.
+ */
+class SharedEntitySet extends AbstractSet<Entity> implements EntitySet {
+
+    // both are only replaced while the registry is locked
+    private volatile EntitySetRegistry.SharedQuery query;
+    private volatile EntitySet set;
+
+    // changes of the shared set since the last call of applyChanges(), guarded by this view
+    private final Set<Entity> pendingAdded = new HashSet<>();
+    private final Set<Entity> pendingChanged = new HashSet<>();
+    private final Set<Entity> pendingRemoved = new HashSet<>();
+    private final Set<EntityChange> pendingUpdates = new HashSet<>();
+    private volatile boolean collectingUpdates; // set by the first call of applyChanges(Set)
+
+    private final Set<Entity> added = new HashSet<>();
+    private final Set<Entity> changed = new HashSet<>();
+    private final Set<Entity> removed = new HashSet<>();
+
+    private boolean released;
+
+    SharedEntitySet(EntitySetRegistry.SharedQuery query, EntitySet set) {
+        this.query = query;
+        this.set = set;
+    }
+
+    /**
+     * Called by the shared query while it is locked.
+     */
+    synchronized void addChanges(Set<Entity> addedEntities, Set<Entity> changedEntities, Set<Entity> removedEntities,
+                                 Set<EntityChange> updates) {
+        if (collectingUpdates) {
+            pendingUpdates.addAll(updates);
+        }
+        for (Entity entity : addedEntities) {
+            if (pendingRemoved.remove(entity)) {
+                pendingChanged.add(entity); // removed and added again since the last call
+            } else {
+                pendingAdded.add(entity);
+            }
+        }
+        for (Entity entity : changedEntities) {
+            if (!pendingAdded.contains(entity)) {
+                pendingChanged.add(entity);
+            }
+        }
+        for (Entity entity : removedEntities) {
+            if (!pendingAdded.remove(entity)) {
+                pendingChanged.remove(entity);
+                pendingRemoved.add(entity);
+            }
+        }
+    }
+
+    /**
+     * Called by the registry while the old and the new query are locked.
+     * The entities this view has reported so far are compared with the ones of the new set,
+     * the entities of both sets are reported as changed because they are other instances now.
+     */
+    synchronized void moveTo(EntitySetRegistry.SharedQuery query, EntitySet set) {
+        Set<Entity> reported = new HashSet<>(this.set);
+        reported.removeAll(pendingAdded);
+        reported.addAll(pendingRemoved);
+        pendingAdded.clear();
+        pendingChanged.clear();
+        pendingRemoved.clear();
+        pendingUpdates.clear();
+
+        for (Entity entity : set) {
+            if (reported.remove(entity)) {
+                pendingChanged.add(entity);
+            } else {
+                pendingAdded.add(entity);
+            }
+        }
+        pendingRemoved.addAll(reported);
+
+        this.query = query;
+        this.set = set;
+    }
+
+    boolean isCollectingUpdates() {
+        return collectingUpdates;
+    }
+
+    @Override
+    public boolean applyChanges() {
+        return applyChanges(null);
+    }
+
+    /**
+     * Like {@link #applyChanges()}, the component changes of entities which already were in the set are added to
+     * the updates. They are only collected from the first call of this method on.
+     */
+    @Override
+    @Deprecated
+    public boolean applyChanges(Set<EntityChange> updates) {
+        clearChangeSets();
+        if (released) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (updates != null) {
+                collectingUpdates = true;
+                updates.addAll(pendingUpdates);
+            }
+            added.addAll(pendingAdded);
+            changed.addAll(pendingChanged);
+            removed.addAll(pendingRemoved);
+            pendingAdded.clear();
+            pendingChanged.clear();
+            pendingRemoved.clear();
+            pendingUpdates.clear();
+        }
+        return hasChanges();
+    }
+
+    /**
+     * Moves this view to the shared set of the same component types with that filter.
+     */
+    @Override
+    public void resetFilter(ComponentFilter filter) {
+        if (!released) {
+            query.resetFilter(this, filter);
+        }
+    }
+
+    @Override
+    public boolean containsId(EntityId id) {
+        return set.containsId(id);
+    }
+
+    @Override
+    public Set<EntityId> getEntityIds() {
+        return set.getEntityIds();
+    }
+
+    @Override
+    public Entity getEntity(EntityId id) {
+        return set.getEntity(id);
+    }
+
+    @Override
+    public Set<Entity> getAddedEntities() {
+        return added;
+    }
+
+    @Override
+    public Set<Entity> getChangedEntities() {
+        return changed;
+    }
+
+    @Override
+    public Set<Entity> getRemovedEntities() {
+        return removed;
+    }
+
+    @Override
+    public void clearChangeSets() {
+        added.clear();
+        changed.clear();
+        removed.clear();
+    }
+
+    @Override
+    public boolean hasChanges() {
+        return !added.isEmpty() || !changed.isEmpty() || !removed.isEmpty();
+    }
+
+    @Override
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        query.release(this);
+    }
+
+    @Override
+    public boolean hasType(Class type) {
+        return set.hasType(type);
+    }
+
+    @Override
+    public Iterator<Entity> iterator() {
+        return Collections.unmodifiableSet(set).iterator();
+    }
+
+    @Override
+    public int size() {
+        return set.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return set.contains(o);
+    }
+
+    /**
+     * Only clears the change sets of this view, the shared set stays as it is.
+     */
+    @Override
+    public void clear() {
+        clearChangeSets();
+    }
+
+    @Override
+    public String toString() {
+        return "SharedEntitySet[" + set + "]";
+    }
+}
@@ -0,0 +1,73 @@
+package de.gamedevbaden.crucified.es.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Interns the strings of components (model paths, names) and hands out a small int id for each of them.
+ * Components only keep the id, so comparing them is cheap and the same path isn't stored again for every entity.
+ * The strings are only looked up where they are really needed, e.g. to load a model.
+ * <p>
+ * The ids are only valid in this process. Over the network they are mapped to ids of the connection
+ * (see {@link de.gamedevbaden.crucified.net.serializers.SessionStrings}).
+ * <p>
+ * Strings are never removed, so this is only meant for the limited set of asset paths and names of the game.
+ */
+public final class StringIds {
+
+    /**
+     * The id of null.
+     */
+    public static final int NONE = 0;
+
+    private static final HashMap<String, Integer> ids = new HashMap<>(); // guarded by the class
+    private static volatile String[] strings = new String[64];
+    private static int size = 1; // 0 is null
+
+    private StringIds() {
+    }
+
+    /**
+     * Returns the id of the string, a new one if the string hasn't been interned yet.
+     *
+     * @param string the string
+     * @return its id or {@link #NONE} for null
+     */
+    public static synchronized int getId(String string) {
+        if (string == null) {
+            return NONE;
+        }
+        Integer id = ids.get(string);
+        if (id != null) {
+            return id;
+        }
+
+        if (size == strings.length) {
+            strings = Arrays.copyOf(strings, size * 2);
+        }
+        strings[size] = string;
+        ids.put(string, size);
+        return size++;
+    }
+
+    /**
+     * Like {@link #getId(String)}, but doesn't intern unknown strings.
+     *
+     * @return the id of the string or -1 if it has never been interned
+     */
+    public static synchronized int findId(String string) {
+        if (string == null) {
+            return NONE;
+        }
+        Integer id = ids.get(string);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @param id the id of an interned string
+     * @return the string
+     */
+    public static String getString(int id) {
+        return strings[id];
+    }
+}
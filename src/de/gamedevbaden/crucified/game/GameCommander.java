@@ -29,4 +29,12 @@ public interface GameCommander {
      * @param decisionType tells who has won.
      */
     void onGameDecided(GameDecisionType decisionType);
+
+    /**
+     * The server has rejected an action the player's client has already shown the result of,
+     * e.g. a fireball which has been shot too early. The client removes the predicted entity again.
+     *
+     * @param spawnId the id the client has given the predicted entity
+     */
+    void onSpawnRejected(int spawnId);
 }
@@ -30,7 +30,12 @@ public interface GameEventListener {
 
     void onPutArtifactIntoContainer(EntityId containerId, EntityId artifactId);
 
-    void onPerformAction(EntityId performerId, ActionType actionType);
+    /**
+     * @param performerId the entity which wants to perform the action
+     * @param actionType  the action
+     * @param spawnId     the id the client of the performer has given the entity it predicts for this action, 0 if none
+     */
+    void onPerformAction(EntityId performerId, ActionType actionType, int spawnId);
 
     void onSettingCurse(EntityId player);
 }
@@ -45,16 +45,25 @@ public interface GameSession {
      */
     void dropItem(EntityId itemToDrop);
 
-    void applyInput(String mappingName, boolean isPressed);
-
     /**
-     * Applies the current view direction for the player entity
-     * In networked sessions this method is used with RMI, but since this
-     * is called very often it is unreliable (sent over UDP).
+     * Applies the current inputs and view direction for the player entity.
+     * Every command has a sequence number which is one higher than the one of the last command.
+     * The server sends the sequence number of the command its last physics step has simulated back together
+     * with the player's state after that step, so the client can replay its later commands from there
+     * (see PlayerStateMessage).
+     * In networked sessions this method is used with RMI, but since this is called very often it is
+     * unreliable (sent over UDP). Each command contains the full input state, so a lost command doesn't matter
+     * and commands which arrive after a newer one are ignored.
+     *
+     * @param sequence      the sequence number of this command
+     * @param pressedInputs the pressed inputs, bit n is set if the {@link de.gamedevbaden.crucified.enums.InputCommand}
+     *                      with the ordinal n is pressed
      * @param viewDirection the view direction of the player.
+     * @param ackedTick     the server time of the newest entity update the client has received, 0 if unknown.
+     *                      The server uses it to estimate what the player sees (see LagCompensator).
      */
     @Asynchronous(reliable = false)
-    void applyViewDirection(Vector3f viewDirection);
+    void applyInputCommand(int sequence, int pressedInputs, Vector3f viewDirection, long ackedTick);
 
     /**
      * Is called when the player triggers an InteractionTrigger, e.g.
@@ -93,8 +102,11 @@ public interface GameSession {
      * in the {@link de.gamedevbaden.crucified.es.components.ActionGroupComponent}
      *
      * @param actionType the action to perform
+     * @param spawnId    the id the client has given the entity it predicts for this action (e.g. a fireball), 0 if none.
+     *                   If the action is rejected the client is told to remove it again
+     *                   (see {@link GameCommander#onSpawnRejected(int)}).
      */
-    void performAction(ActionType actionType);
+    void performAction(ActionType actionType, int spawnId);
 
     /**
      * Sets a curse on the enemy (survivor)
@@ -102,4 +114,16 @@ public interface GameSession {
      */
     void setCurse();
 
+    /**
+     * Executes a batch of commands in their order. The commands have consecutive sequence numbers, starting
+     * with the given one. Commands with a sequence number which isn't higher than the one of the last executed
+     * command are skipped, so a client can send commands again if it doesn't know whether they have arrived.
+     * Networked clients send them with a SessionCommandMessage instead of a RMI call (see ClientGameSession).
+     *
+     * @param firstSequence the sequence number of the first command
+     * @param commands      the commands to execute
+     * @return the sequence number of the last executed command
+     */
+    int executeCommands(int firstSequence, SessionCommand[] commands);
+
 }
@@ -0,0 +1,45 @@
+package de.gamedevbaden.crucified.game;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * The state of a player after the server has simulated one of its input commands.
+ * The client replays its later commands from this state (see {@link GameSession#applyInputCommand}).
+ * Instances are immutable.
+ */
+public final class ProcessedInput {
+
+    private final int sequence;
+    private final float time;
+    private final Vector3f location;
+    private final Vector3f velocity;
+
+    /**
+     * @param sequence the sequence number of the input command the last physics step has simulated
+     * @param time     the time in seconds the physics has simulated this command so far
+     * @param location the location of the player after the step
+     * @param velocity the velocity of the player after the step
+     */
+    public ProcessedInput(int sequence, float time, Vector3f location, Vector3f velocity) {
+        this.sequence = sequence;
+        this.time = time;
+        this.location = location.clone();
+        this.velocity = velocity.clone();
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public float getTime() {
+        return time;
+    }
+
+    public Vector3f getLocation() {
+        return location.clone();
+    }
+
+    public Vector3f getVelocity() {
+        return velocity.clone();
+    }
+}
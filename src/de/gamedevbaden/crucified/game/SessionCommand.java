@@ -0,0 +1,153 @@
+package de.gamedevbaden.crucified.game;
+
+import com.simsilica.es.EntityId;
+import de.gamedevbaden.crucified.enums.ActionType;
+
+/**
+ * A call of one of the {@link GameSession} methods, so it can be queued and sent in a batch
+ * (see {@link GameSession#executeCommands(int, SessionCommand[])}).
+ * Input commands aren't session commands, they are sent unreliable on their own.
+ */
+public final class SessionCommand {
+
+    public enum Type {
+        PickUpItem,
+        EquipItem,
+        UnequipItem,
+        DropItem,
+        InteractWithEntity,
+        ToggleFlashLight,
+        PutArtifactIntoContainer,
+        PutItemToCraft,
+        PerformAction,
+        SetCurse
+    }
+
+    private final Type type;
+    private final EntityId first;
+    private final EntityId second;
+    private final ActionType actionType;
+    private final int spawnId;
+
+    public SessionCommand(Type type, EntityId first, EntityId second, ActionType actionType, int spawnId) {
+        this.type = type;
+        this.first = first;
+        this.second = second;
+        this.actionType = actionType;
+        this.spawnId = spawnId;
+    }
+
+    public static SessionCommand pickUpItem(EntityId itemToPickup) {
+        return new SessionCommand(Type.PickUpItem, itemToPickup, null, null, 0);
+    }
+
+    public static SessionCommand equipItem(EntityId itemToEquip) {
+        return new SessionCommand(Type.EquipItem, itemToEquip, null, null, 0);
+    }
+
+    public static SessionCommand unequipItem(EntityId itemToRemove, EntityId containerId) {
+        return new SessionCommand(Type.UnequipItem, itemToRemove, containerId, null, 0);
+    }
+
+    public static SessionCommand dropItem(EntityId itemToDrop) {
+        return new SessionCommand(Type.DropItem, itemToDrop, null, null, 0);
+    }
+
+    public static SessionCommand interactWithEntity(EntityId interactedEntity) {
+        return new SessionCommand(Type.InteractWithEntity, interactedEntity, null, null, 0);
+    }
+
+    public static SessionCommand toggleFlashLight(EntityId flashLightId) {
+        return new SessionCommand(Type.ToggleFlashLight, flashLightId, null, null, 0);
+    }
+
+    public static SessionCommand putArtifactIntoContainer(EntityId containerId, EntityId artifactId) {
+        return new SessionCommand(Type.PutArtifactIntoContainer, containerId, artifactId, null, 0);
+    }
+
+    public static SessionCommand putItemToCraft(EntityId itemToCraft, EntityId ingredient) {
+        return new SessionCommand(Type.PutItemToCraft, itemToCraft, ingredient, null, 0);
+    }
+
+    public static SessionCommand performAction(ActionType actionType, int spawnId) {
+        return new SessionCommand(Type.PerformAction, null, null, actionType, spawnId);
+    }
+
+    public static SessionCommand setCurse() {
+        return new SessionCommand(Type.SetCurse, null, null, null, 0);
+    }
+
+    /**
+     * Calls the method of the session this command stands for.
+     *
+     * @param session the session to call
+     */
+    public void execute(GameSession session) {
+        switch (type) {
+            case PickUpItem:
+                session.pickUpItem(first);
+                break;
+            case EquipItem:
+                session.equipItem(first);
+                break;
+            case UnequipItem:
+                session.unequipItem(first, second);
+                break;
+            case DropItem:
+                session.dropItem(first);
+                break;
+            case InteractWithEntity:
+                session.interactWithEntity(first);
+                break;
+            case ToggleFlashLight:
+                session.toggleFlashLight(first);
+                break;
+            case PutArtifactIntoContainer:
+                session.putArtifactIntoContainer(first, second);
+                break;
+            case PutItemToCraft:
+                session.putItemToCraft(first, second);
+                break;
+            case PerformAction:
+                session.performAction(actionType, spawnId);
+                break;
+            case SetCurse:
+                session.setCurse();
+                break;
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the first entity argument or null
+     */
+    public EntityId getFirst() {
+        return first;
+    }
+
+    /**
+     * @return the second entity argument or null
+     */
+    public EntityId getSecond() {
+        return second;
+    }
+
+    public ActionType getActionType() {
+        return actionType;
+    }
+
+    /**
+     * @return the spawn id of a {@link Type#PerformAction} command
+     */
+    public int getSpawnId() {
+        return spawnId;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionCommand[" + type + ", " + first + ", " + second + ", " + actionType + ", " + spawnId + "]";
+    }
+}
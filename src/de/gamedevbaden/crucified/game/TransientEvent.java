@@ -0,0 +1,122 @@
+package de.gamedevbaden.crucified.game;
+
+import com.jme3.math.Vector3f;
+import de.gamedevbaden.crucified.enums.Sound;
+
+/**
+ * Something short-lived which happens in the game world and is only shown or played once, like a sound or a hit.
+ * Unlike entities, events have no state which has to be kept or removed later.
+ * <p>
+ * Events are pooled and reused (see {@link de.gamedevbaden.crucified.appstates.TransientEventAppState}),
+ * so a listener must copy an event if it wants to keep it.
+ */
+public final class TransientEvent {
+
+    public enum Type {
+        Sound,
+        Hit
+    }
+
+    public static final int HIT_PLAYER = 0;
+    public static final int HIT_GROUND = 1;
+
+    private Type type;
+    private Sound sound;
+    private int hitType;
+    private boolean positional;
+    private final Vector3f location = new Vector3f();
+
+    public TransientEvent() {
+    }
+
+    /**
+     * Makes this a sound event.
+     *
+     * @param sound    the sound to play
+     * @param location where the sound is played or null if everyone shall hear it the same
+     * @return this event
+     */
+    public TransientEvent setSound(Sound sound, Vector3f location) {
+        this.type = Type.Sound;
+        this.sound = sound;
+        this.hitType = 0;
+        setLocation(location);
+        return this;
+    }
+
+    /**
+     * Makes this a hit event.
+     *
+     * @param hitType  what has been hit, {@link #HIT_PLAYER} or {@link #HIT_GROUND}
+     * @param location where it has been hit
+     * @return this event
+     */
+    public TransientEvent setHit(int hitType, Vector3f location) {
+        this.type = Type.Hit;
+        this.sound = null;
+        this.hitType = hitType;
+        setLocation(location);
+        return this;
+    }
+
+    /**
+     * Copies the values of the other event.
+     *
+     * @param other the event to copy
+     * @return this event
+     */
+    public TransientEvent set(TransientEvent other) {
+        this.type = other.type;
+        this.sound = other.sound;
+        this.hitType = other.hitType;
+        this.positional = other.positional;
+        this.location.set(other.location);
+        return this;
+    }
+
+    private void setLocation(Vector3f location) {
+        this.positional = location != null;
+        if (location != null) {
+            this.location.set(location);
+        } else {
+            this.location.set(0, 0, 0);
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the sound of a {@link Type#Sound} event
+     */
+    public Sound getSound() {
+        return sound;
+    }
+
+    /**
+     * @return the hit type of a {@link Type#Hit} event
+     */
+    public int getHitType() {
+        return hitType;
+    }
+
+    /**
+     * @return true if the event has a location, events without one are relevant for everybody
+     */
+    public boolean isPositional() {
+        return positional;
+    }
+
+    /**
+     * @return the location of the event, don't change it
+     */
+    public Vector3f getLocation() {
+        return location;
+    }
+
+    @Override
+    public String toString() {
+        return "TransientEvent[" + type + ", " + (type == Type.Sound ? sound : hitType) + ", " + (positional ? location : "global") + "]";
+    }
+}
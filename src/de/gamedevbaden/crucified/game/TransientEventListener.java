@@ -0,0 +1,15 @@
+package de.gamedevbaden.crucified.game;
+
+/**
+ * Gets the {@link TransientEvent}s of the game, see {@link de.gamedevbaden.crucified.appstates.TransientEventAppState}.
+ */
+public interface TransientEventListener {
+
+    /**
+     * Is called on the render thread for every event.
+     *
+     * @param event the event, it is reused after this call
+     */
+    void onEvent(TransientEvent event);
+
+}
@@ -1,56 +1,131 @@
 package de.gamedevbaden.crucified.net;
 
 
+import com.jme3.network.Message;
 import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.serializers.ArraySerializer;
 import com.jme3.network.serializing.serializers.EnumSerializer;
 import com.jme3.network.serializing.serializers.FieldSerializer;
+import com.simsilica.es.EntityComponent;
 import de.gamedevbaden.crucified.enums.*;
 import de.gamedevbaden.crucified.es.components.*;
 import de.gamedevbaden.crucified.net.messages.*;
+import de.gamedevbaden.crucified.net.serializers.GeneratedSerializer;
+import de.gamedevbaden.crucified.net.serializers.ModelSerializer;
+import de.gamedevbaden.crucified.net.serializers.NameSerializer;
+import de.gamedevbaden.crucified.net.serializers.SessionCommandSerializer;
+import de.gamedevbaden.crucified.net.serializers.TransformSerializer;
+import de.gamedevbaden.crucified.net.serializers.TransformUpdateSerializer;
+import de.gamedevbaden.crucified.net.serializers.TransientEventSerializer;
+import de.gamedevbaden.crucified.utils.GameOptions;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * This class provides util methods for networked game sessions.
+ * Components and messages without their own serializer get a {@link GeneratedSerializer},
+ * unless {@link GameOptions#GENERATED_SERIALIZERS} is disabled.
  * Created by Domenic on 17.04.2017.
  */
 public class NetworkUtils {
 
+    private static final Set<Class<? extends EntityComponent>> componentTypes = new LinkedHashSet<>();
+    private static final Set<Class<? extends EntityComponent>> handoffComponentTypes = new LinkedHashSet<>();
+
     /**
      * Serializes all Components
      */
     public static void initEntityDataSerializers() {
-        Serializer.registerClass(Transform.class);
-        Serializer.registerClass(Model.class);
-        Serializer.registerClass(OnMovement.class);
-        Serializer.registerClass(PhysicsRigidBody.class);
-        Serializer.registerClass(PhysicsCharacterControl.class);
-        Serializer.registerClass(CharacterMovementState.class);
-        Serializer.registerClass(PlayerControlled.class);
-        Serializer.registerClass(SoundComponent.class);
-        Serializer.registerClass(InteractionComponent.class);
-        Serializer.registerClass(Pickable.class);
-        Serializer.registerClass(Container.class);
-        Serializer.registerClass(StoredIn.class);
-        Serializer.registerClass(Equipable.class);
-        Serializer.registerClass(EquippedBy.class);
-        Serializer.registerClass(PhysicsTerrain.class);
-        Serializer.registerClass(FlashLight.class);
+        registerComponent(Transform.class, new TransformSerializer());
+        registerComponent(Model.class, new ModelSerializer());
+        registerComponent(OnMovement.class);
+        registerComponent(PhysicsRigidBody.class);
+        registerComponent(PhysicsCharacterControl.class);
+        registerComponent(CharacterMovementState.class);
+        registerComponent(PlayerControlled.class);
+        registerComponent(SoundComponent.class);
+        registerComponent(InteractionComponent.class);
+        registerComponent(Pickable.class);
+        registerComponent(Container.class);
+        registerComponent(StoredIn.class);
+        registerComponent(Equipable.class);
+        registerComponent(EquippedBy.class);
+        registerComponent(PhysicsTerrain.class);
+        registerComponent(FlashLight.class);
         Serializer.registerClass(Type.class, new EnumSerializer());
-        Serializer.registerClass(NeedToBeCrafted.class);
-        Serializer.registerClass(FireState.class);
+        registerComponent(NeedToBeCrafted.class);
+        registerComponent(FireState.class);
         Serializer.registerClass(ItemType.class, new EnumSerializer());
-        Serializer.registerClass(ItemComponent.class);
-        Serializer.registerClass(SkeletonComponent.class, new FieldSerializer());
-        Serializer.registerClass(FootstepEmitter.class);
+        registerComponent(ItemComponent.class);
+        registerComponent(SkeletonComponent.class, GameOptions.GENERATED_SERIALIZERS ? new GeneratedSerializer() : new FieldSerializer());
+        registerComponent(FootstepEmitter.class);
         Serializer.registerClass(ActionType.class, new EnumSerializer());
-        Serializer.registerClass(ActionGroupComponent.class);
-        Serializer.registerClass(ActionComponent.class);
-        Serializer.registerClass(DummyComponent.class);
-        Serializer.registerClass(AliveComponent.class);
-        Serializer.registerClass(Fireball.class);
-        Serializer.registerClass(HitComponent.class);
-        Serializer.registerClass(ArtifactComponent.class);
-        Serializer.registerClass(CantSeeArtifactComponent.class);
-        Serializer.registerClass(CurseComponent.class);
+        registerComponent(ActionGroupComponent.class);
+        registerComponent(ActionComponent.class);
+        registerComponent(DummyComponent.class);
+        registerComponent(AliveComponent.class);
+        registerComponent(Fireball.class);
+        registerComponent(ArtifactComponent.class);
+        registerComponent(CantSeeArtifactComponent.class);
+        registerComponent(CurseComponent.class);
+        registerComponent(OpenedClosedState.class);
+        registerComponent(Velocity.class);
+        registerComponent(ChildOf.class);
+
+        // these never leave the server, they are only handed off to another region shard with their entities
+        registerHandoffComponent(WalkComponent.class);
+        registerHandoffComponent(ExplosionImpactComponent.class);
+        registerHandoffComponent(CanPickupArtifactCompont.class);
+        registerHandoffComponent(CurseEmitterComponent.class);
+        registerHandoffComponent(Name.class, new NameSerializer());
+    }
+
+    private static void registerComponent(Class<? extends EntityComponent> type) {
+        if (GameOptions.GENERATED_SERIALIZERS) {
+            Serializer.registerClass(type, new GeneratedSerializer());
+        } else {
+            Serializer.registerClass(type);
+        }
+        componentTypes.add(type);
+    }
+
+    private static void registerComponent(Class<? extends EntityComponent> type, Serializer serializer) {
+        Serializer.registerClass(type, serializer);
+        componentTypes.add(type);
+    }
+
+    private static void registerHandoffComponent(Class<? extends EntityComponent> type) {
+        if (GameOptions.GENERATED_SERIALIZERS) {
+            Serializer.registerClass(type, new GeneratedSerializer());
+        } else {
+            Serializer.registerClass(type);
+        }
+        handoffComponentTypes.add(type);
+    }
+
+    private static void registerHandoffComponent(Class<? extends EntityComponent> type, Serializer serializer) {
+        Serializer.registerClass(type, serializer);
+        handoffComponentTypes.add(type);
+    }
+
+    /**
+     * @return all component types which are sent to clients, in the order they have been registered
+     */
+    public static List<Class<? extends EntityComponent>> getComponentTypes() {
+        return new ArrayList<>(componentTypes);
+    }
+
+    /**
+     * @return all component types an entity keeps when it is handed off to another region shard,
+     * the ones sent to clients first
+     */
+    public static List<Class<? extends EntityComponent>> getHandoffComponentTypes() {
+        List<Class<? extends EntityComponent>> types = new ArrayList<>(componentTypes);
+        types.addAll(handoffComponentTypes);
+        return types;
     }
 
     /**
@@ -58,13 +133,39 @@ public class NetworkUtils {
      */
     public static void initMessageSerializers() {
         Serializer.registerClass(Scene.class, new EnumSerializer());
-        Serializer.registerClass(LoadLevelMessage.class);
-        Serializer.registerClass(ReadyForGameStartMessage.class);
+        registerMessage(LoadLevelMessage.class);
+        registerMessage(ReadyForGameStartMessage.class);
         Serializer.registerClass(PaperScript.class, new EnumSerializer());
-        Serializer.registerClass(ReadNoteMessage.class);
+        registerMessage(ReadNoteMessage.class);
         Serializer.registerClass(GameDecisionType.class, new EnumSerializer());
-        Serializer.registerClass(GameDecidedMessage.class);
-        Serializer.registerClass(StartGameMessage.class);
+        registerMessage(GameDecidedMessage.class);
+        registerMessage(StartGameMessage.class);
+        registerMessage(PlayerStateMessage.class);
+        registerMessage(PingMessage.class);
+        Serializer.registerClass(TransformUpdateMessage.class, new TransformUpdateSerializer());
+        registerMessage(EntitySnapshotRequestMessage.class);
+        registerMessage(EntitySnapshotMessage.class);
+        registerMessage(ReconnectTokenMessage.class);
+        registerMessage(ReconnectMessage.class);
+        Serializer.registerClass(SessionCommandMessage.class, new SessionCommandSerializer());
+        registerMessage(SessionCommandAckMessage.class);
+        registerMessage(SpawnRejectedMessage.class);
+        Serializer.registerClass(TransientEventMessage.class, new TransientEventSerializer());
+        registerMessage(SpectateMessage.class);
+        registerMessage(ShardStatusMessage.class);
+        registerMessage(ShardRedirectMessage.class);
+        registerMessage(ShardLinkMessage.class);
+        registerMessage(EntityHandoffMessage.class);
+        Serializer.registerClass(long[].class, new ArraySerializer());
+        registerMessage(BorderUpdateMessage.class);
+    }
+
+    private static void registerMessage(Class<? extends Message> type) {
+        if (GameOptions.GENERATED_SERIALIZERS) {
+            Serializer.registerClass(type, new GeneratedSerializer());
+        } else {
+            Serializer.registerClass(type);
+        }
     }
 
 }
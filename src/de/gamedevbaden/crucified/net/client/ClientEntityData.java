@@ -0,0 +1,166 @@
+package de.gamedevbaden.crucified.net.client;
+
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityComponent;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.base.DefaultEntityData;
+import de.gamedevbaden.crucified.es.utils.SceneDefaults;
+import de.gamedevbaden.crucified.net.NetworkUtils;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The local copy of the server's entity data on a client. It is hydrated from a snapshot and kept up to date
+ * with the changes the server sends afterwards (see {@link GameRemoteEntityData}), so entity sets and watched
+ * entities are served locally without asking the server.
+ * <p>
+ * It outlives the connection: if the client reconnects, the new snapshot is applied on top and components
+ * which are not part of it anymore are removed. The client states keep their entity sets the whole time.
+ * <p>
+ * The entities of the scene are created locally when the scene is loaded (see {@link #applySceneDefaults(SceneDefaults)}),
+ * the server only sends their components which differ from the scene. A component the server has sent
+ * is never replaced by the default one afterwards.
+ */
+public class ClientEntityData extends DefaultEntityData {
+
+    private final Map<EntityId, Set<Class>> components = new HashMap<>(); // guarded by itself
+    private Map<EntityId, Set<Class>> snapshotComponents; // the components of the current snapshot, guarded by components
+    private final Map<EntityId, Set<Class>> overriddenSceneComponents = new HashMap<>(); // guarded by components
+    private SceneDefaults sceneDefaults; // guarded by components
+
+    /**
+     * Applies a change the server has sent.
+     *
+     * @param change the change
+     */
+    @SuppressWarnings("unchecked")
+    public void applyChange(EntityChange change) {
+        EntityId entityId = change.getEntityId();
+        synchronized (components) {
+            if (change.getComponent() != null) {
+                components.computeIfAbsent(entityId, id -> new HashSet<>()).add(change.getComponentType());
+                if (snapshotComponents != null) {
+                    snapshotComponents.computeIfAbsent(entityId, id -> new HashSet<>()).add(change.getComponentType());
+                }
+            } else {
+                Set<Class> types = components.get(entityId);
+                if (types != null && types.remove(change.getComponentType()) && types.isEmpty()) {
+                    components.remove(entityId);
+                }
+            }
+            if (entityId.getId() >= GameConstants.SCENE_ENTITY_ID_BASE) {
+                overriddenSceneComponents.computeIfAbsent(entityId, id -> new HashSet<>()).add(change.getComponentType());
+            }
+
+            // applied while holding the lock, so the scene defaults can't overwrite it
+            if (change.getComponent() != null) {
+                setComponent(entityId, change.getComponent());
+            } else {
+                removeComponent(entityId, change.getComponentType());
+            }
+        }
+    }
+
+    /**
+     * Creates the entities of the scene with their default components. Components the server has already sent
+     * are kept, components which are not sent over the network are left out.
+     *
+     * @param defaults the scene entities, derived from the same scene as on the server
+     * @return the number of applied components
+     */
+    @SuppressWarnings("unchecked")
+    public int applySceneDefaults(SceneDefaults defaults) {
+        int applied = 0;
+        List<Class<? extends EntityComponent>> types = NetworkUtils.getComponentTypes();
+        synchronized (components) {
+            this.sceneDefaults = defaults;
+            for (EntityId entityId : defaults.getEntityIds()) {
+                Set<Class> overridden = overriddenSceneComponents.get(entityId);
+                for (EntityComponent component : defaults.getComponents(entityId)) {
+                    if (types.contains(component.getClass())
+                            && (overridden == null || !overridden.contains(component.getClass()))) {
+                        setComponent(entityId, component);
+                        applied++;
+                    }
+                }
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Starts applying a snapshot. Everything which is not applied until {@link #endSnapshot()} is removed then.
+     */
+    public void beginSnapshot() {
+        synchronized (components) {
+            snapshotComponents = new HashMap<>();
+        }
+    }
+
+    /**
+     * Removes all components which have not been part of the snapshot.
+     *
+     * @return the number of removed components
+     */
+    public int endSnapshot() {
+        int removed = 0;
+        synchronized (components) {
+            Iterator<Map.Entry<EntityId, Set<Class>>> entries = components.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<EntityId, Set<Class>> entry = entries.next();
+                Set<Class> snapshotTypes = snapshotComponents.get(entry.getKey());
+                Iterator<Class> types = entry.getValue().iterator();
+                while (types.hasNext()) {
+                    Class type = types.next();
+                    if (snapshotTypes == null || !snapshotTypes.contains(type)) {
+                        types.remove();
+                        if (getSceneDefault(entry.getKey(), type) == null) {
+                            removeComponent(entry.getKey(), type);
+                            removed++;
+                        }
+                    }
+                }
+                if (entry.getValue().isEmpty()) {
+                    entries.remove();
+                }
+            }
+
+            // the server leaves out scene components which are the default ones again
+            for (Map.Entry<EntityId, Set<Class>> entry : overriddenSceneComponents.entrySet()) {
+                Set<Class> snapshotTypes = snapshotComponents.get(entry.getKey());
+                Iterator<Class> types = entry.getValue().iterator();
+                while (types.hasNext()) {
+                    Class type = types.next();
+                    EntityComponent defaultComponent = getSceneDefault(entry.getKey(), type);
+                    if (defaultComponent != null && (snapshotTypes == null || !snapshotTypes.contains(type))) {
+                        types.remove();
+                        setComponent(entry.getKey(), defaultComponent);
+                    }
+                }
+            }
+            snapshotComponents = null;
+        }
+        return removed;
+    }
+
+    private EntityComponent getSceneDefault(EntityId entityId, Class type) {
+        return sceneDefaults != null ? sceneDefaults.getComponent(entityId, type) : null;
+    }
+
+    @Override
+    public void close() {
+        synchronized (components) {
+            components.clear();
+            snapshotComponents = null;
+            overriddenSceneComponents.clear();
+            sceneDefaults = null;
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,208 @@
+package de.gamedevbaden.crucified.net.client;
+
+import com.jme3.app.Application;
+import com.jme3.math.Vector3f;
+import com.jme3.network.MessageConnection;
+import com.simsilica.es.EntityId;
+import de.gamedevbaden.crucified.enums.ActionType;
+import de.gamedevbaden.crucified.game.GameSession;
+import de.gamedevbaden.crucified.game.SessionCommand;
+import de.gamedevbaden.crucified.net.messages.SessionCommandAckMessage;
+import de.gamedevbaden.crucified.net.messages.SessionCommandMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The game session the client states use, so they can keep it when the client reconnects.
+ * <p>
+ * The session methods don't wait for the server. Each call is queued as a {@link SessionCommand} and all
+ * commands of a frame are sent together in one {@link SessionCommandMessage} when {@link #flush()} is called.
+ * The commands stay queued until the server has acknowledged them, then their callbacks are run on the render thread.
+ * While the client is reconnecting there is no connection and the commands wait; afterwards all commands the server
+ * hasn't acknowledged are sent again and the server skips the ones it has already executed.
+ * <p>
+ * Input commands are still sent with the remote session of the current connection (unreliable RMI calls).
+ */
+public class ClientGameSession implements GameSession {
+
+    private final EntityId player;
+    private final Application app;
+    private volatile GameSession session;
+    private volatile MessageConnection connection;
+
+    // commands the server hasn't acknowledged yet in the order they have been issued, guarded by this
+    private final ArrayDeque<QueuedCommand> queuedCommands = new ArrayDeque<>();
+    private int nextSequence = 1;
+    private int sentSequence; // the last sequence which has been sent with the current connection
+
+    /**
+     * @param session    the remote session of the current connection
+     * @param connection the current connection
+     * @param app        the application the callbacks are run on
+     */
+    public ClientGameSession(GameSession session, MessageConnection connection, Application app) {
+        this.session = session;
+        this.connection = connection;
+        this.app = app;
+        this.player = session.getPlayer(); // the player stays the same after a reconnect
+    }
+
+    /**
+     * @param session    the remote session of the new connection or null while there is none
+     * @param connection the new connection or null while there is none
+     */
+    synchronized void setSession(GameSession session, MessageConnection connection) {
+        this.session = session;
+        this.connection = connection;
+        this.sentSequence = 0; // the new connection gets all commands which haven't been acknowledged
+    }
+
+    /**
+     * Queues the command, it is sent with the next {@link #flush()}.
+     *
+     * @param command    the command
+     * @param onExecuted called on the render thread once the server has executed the command, can be null
+     */
+    public synchronized void execute(SessionCommand command, Runnable onExecuted) {
+        queuedCommands.add(new QueuedCommand(nextSequence++, command, onExecuted));
+    }
+
+    /**
+     * Sends all commands which have been queued since the last call in one message.
+     * This is called once per frame.
+     */
+    public synchronized void flush() {
+        MessageConnection connection = this.connection;
+        if (connection == null || queuedCommands.isEmpty() || queuedCommands.getLast().sequence <= sentSequence) {
+            return;
+        }
+
+        List<SessionCommand> commands = new ArrayList<>();
+        int firstSequence = 0;
+        for (QueuedCommand queued : queuedCommands) {
+            if (queued.sequence > sentSequence) {
+                if (commands.isEmpty()) {
+                    firstSequence = queued.sequence;
+                }
+                commands.add(queued.command);
+            }
+        }
+        connection.send(new SessionCommandMessage(firstSequence, commands.toArray(new SessionCommand[commands.size()])));
+        this.sentSequence = queuedCommands.getLast().sequence;
+    }
+
+    /**
+     * Removes the acknowledged commands and runs their callbacks on the render thread.
+     *
+     * @param ack the acknowledgement of the server
+     */
+    void onCommandsExecuted(SessionCommandAckMessage ack) {
+        List<Runnable> callbacks = new ArrayList<>();
+        synchronized (this) {
+            while (!queuedCommands.isEmpty() && queuedCommands.getFirst().sequence <= ack.getSequence()) {
+                QueuedCommand queued = queuedCommands.removeFirst();
+                if (queued.onExecuted != null) {
+                    callbacks.add(queued.onExecuted);
+                }
+            }
+        }
+        if (!callbacks.isEmpty()) {
+            app.enqueue(() -> callbacks.forEach(Runnable::run));
+        }
+    }
+
+    /**
+     * @return the number of commands the server hasn't acknowledged yet
+     */
+    public synchronized int getPendingCommandCount() {
+        return queuedCommands.size();
+    }
+
+    @Override
+    public EntityId getPlayer() {
+        return player;
+    }
+
+    @Override
+    public void pickUpItem(EntityId itemToPickup) {
+        execute(SessionCommand.pickUpItem(itemToPickup), null);
+    }
+
+    @Override
+    public void equipItem(EntityId itemToEquip) {
+        execute(SessionCommand.equipItem(itemToEquip), null);
+    }
+
+    @Override
+    public void unequipItem(EntityId itemToRemove, EntityId containerId) {
+        execute(SessionCommand.unequipItem(itemToRemove, containerId), null);
+    }
+
+    @Override
+    public void dropItem(EntityId itemToDrop) {
+        execute(SessionCommand.dropItem(itemToDrop), null);
+    }
+
+    @Override
+    public void applyInputCommand(int sequence, int pressedInputs, Vector3f viewDirection, long ackedTick) {
+        GameSession session = this.session;
+        if (session != null) {
+            session.applyInputCommand(sequence, pressedInputs, viewDirection, ackedTick);
+        }
+    }
+
+    @Override
+    public void interactWithEntity(EntityId interactedEntity) {
+        execute(SessionCommand.interactWithEntity(interactedEntity), null);
+    }
+
+    @Override
+    public void toggleFlashLight(EntityId flashLightId) {
+        execute(SessionCommand.toggleFlashLight(flashLightId), null);
+    }
+
+    @Override
+    public void putArtifactIntoContainer(EntityId containerId, EntityId artifactId) {
+        execute(SessionCommand.putArtifactIntoContainer(containerId, artifactId), null);
+    }
+
+    @Override
+    public void putItemToCraft(EntityId itemToCraft, EntityId ingredient) {
+        execute(SessionCommand.putItemToCraft(itemToCraft, ingredient), null);
+    }
+
+    @Override
+    public void performAction(ActionType actionType, int spawnId) {
+        execute(SessionCommand.performAction(actionType, spawnId), null);
+    }
+
+    @Override
+    public void setCurse() {
+        execute(SessionCommand.setCurse(), null);
+    }
+
+    /**
+     * Queues the commands, the returned sequence number is the one of the last queued command.
+     */
+    @Override
+    public synchronized int executeCommands(int firstSequence, SessionCommand[] commands) {
+        for (SessionCommand command : commands) {
+            execute(command, null);
+        }
+        return nextSequence - 1;
+    }
+
+    private static class QueuedCommand {
+        final int sequence;
+        final SessionCommand command;
+        final Runnable onExecuted;
+
+        QueuedCommand(int sequence, SessionCommand command, Runnable onExecuted) {
+            this.sequence = sequence;
+            this.command = command;
+            this.onExecuted = onExecuted;
+        }
+    }
+}
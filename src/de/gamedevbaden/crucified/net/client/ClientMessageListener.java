@@ -5,12 +5,17 @@ import com.jme3.network.Client;
 import com.jme3.network.Message;
 import com.jme3.network.MessageListener;
 import de.gamedevbaden.crucified.MainGameAppState;
+import de.gamedevbaden.crucified.appstates.TransientEventAppState;
 import de.gamedevbaden.crucified.appstates.gui.NiftyAppState;
 import de.gamedevbaden.crucified.game.GameCommander;
+import de.gamedevbaden.crucified.game.TransientEvent;
 import de.gamedevbaden.crucified.net.messages.GameDecidedMessage;
 import de.gamedevbaden.crucified.net.messages.LoadLevelMessage;
+import de.gamedevbaden.crucified.net.messages.PingMessage;
 import de.gamedevbaden.crucified.net.messages.ReadNoteMessage;
+import de.gamedevbaden.crucified.net.messages.SpawnRejectedMessage;
 import de.gamedevbaden.crucified.net.messages.StartGameMessage;
+import de.gamedevbaden.crucified.net.messages.TransientEventMessage;
 
 /**
  * Receives messages from the server and calls the relevant app states
@@ -30,6 +35,14 @@ public class ClientMessageListener implements MessageListener<Client> {
 
     @Override
     public void messageReceived(Client source, Message m) {
+        if (m instanceof PingMessage && !((PingMessage) m).isReply()) {
+            // we answer right away, so the server measures the network and not our frame rate
+            PingMessage reply = new PingMessage(((PingMessage) m).getTime(), true);
+            reply.setReliable(m.isReliable()); // so unreliable pings measure the loss as well
+            source.send(reply);
+            return;
+        }
+
         if (m instanceof LoadLevelMessage) {
             this.app.enqueue(() -> {
                 LoadLevelMessage lm = (LoadLevelMessage) m;
@@ -55,6 +68,25 @@ public class ClientMessageListener implements MessageListener<Client> {
             });
         }
 
+        if (m instanceof SpawnRejectedMessage) {
+            this.app.enqueue(() -> {
+                gameCommander.onSpawnRejected(((SpawnRejectedMessage) m).getSpawnId());
+                return null;
+            });
+        }
+
+        if (m instanceof TransientEventMessage) {
+            this.app.enqueue(() -> {
+                TransientEventAppState transientEvents = app.getStateManager().getState(TransientEventAppState.class);
+                if (transientEvents != null) {
+                    for (TransientEvent event : ((TransientEventMessage) m).getEvents()) {
+                        transientEvents.post(event);
+                    }
+                }
+                return null;
+            });
+        }
+
         if (m instanceof StartGameMessage) {
             this.app.enqueue(() -> {
                 app.getStateManager().getState(MainGameAppState.class).startGame();
@@ -0,0 +1,63 @@
+package de.gamedevbaden.crucified.net.client;
+
+/**
+ * Estimates the offset between the clock of the server and the local clock.
+ * <p>
+ * Every update from the server carries the server time it was sent at. Subtracting the local time it was received at
+ * gives the offset minus the delay of that update, so the largest sample is the best estimate: it belongs to the
+ * update with the least delay. Because the latency can also get worse, the estimate slowly decays and the next
+ * samples raise it to the right value again.
+ */
+public class ClockOffsetEstimator {
+
+    private static final double DECAY_PER_MILLISECOND = 0.01; // the estimate drops by 10 ms per second without better samples
+
+    private double offset;
+    private long lastLocalTime;
+    private boolean hasSamples;
+
+    /**
+     * Adds a sample.
+     *
+     * @param serverTime the server time of the received update in milliseconds
+     * @param localTime  the local time the update was received at in milliseconds
+     */
+    public void addSample(long serverTime, long localTime) {
+        long sample = serverTime - localTime;
+        if (!hasSamples) {
+            this.offset = sample;
+            this.hasSamples = true;
+        } else {
+            this.offset -= Math.max(0, localTime - lastLocalTime) * DECAY_PER_MILLISECOND;
+            this.offset = Math.max(offset, sample);
+        }
+        this.lastLocalTime = localTime;
+    }
+
+    /**
+     * @return the estimated offset in milliseconds you need to add to the local time to get the server time
+     */
+    public long getOffset() {
+        return (long) offset;
+    }
+
+    /**
+     * Converts a local time into the server time. If there are no samples yet, the local time is returned.
+     *
+     * @param localTime the local time in milliseconds
+     * @return the estimated server time in milliseconds
+     */
+    public long toServerTime(long localTime) {
+        return localTime + getOffset();
+    }
+
+    public boolean hasSamples() {
+        return hasSamples;
+    }
+
+    public void reset() {
+        this.offset = 0;
+        this.lastLocalTime = 0;
+        this.hasSamples = false;
+    }
+}
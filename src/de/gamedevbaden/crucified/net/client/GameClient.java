@@ -7,28 +7,57 @@ import com.jme3.network.*;
 import com.jme3.network.service.rmi.RmiClientService;
 import com.jme3.network.service.rpc.RpcClientService;
 import com.simsilica.es.EntityData;
-import com.simsilica.es.client.EntityDataClientService;
 import de.gamedevbaden.crucified.game.GameCommander;
 import de.gamedevbaden.crucified.game.GameSession;
+import de.gamedevbaden.crucified.net.messages.ReconnectMessage;
+import de.gamedevbaden.crucified.net.messages.ReconnectTokenMessage;
+import de.gamedevbaden.crucified.net.messages.SessionCommandAckMessage;
+import de.gamedevbaden.crucified.net.simulation.NetworkConditionProxy;
+import de.gamedevbaden.crucified.net.simulation.NetworkConditions;
+import de.gamedevbaden.crucified.utils.GameConstants;
+import de.gamedevbaden.crucified.utils.GameOptions;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * The default implementation of our game client.
+ * If the connection of a client drops during a match, it can connect again and go on with its player (see {@link #reconnect()}).
+ * The same way it follows its player to another server (see {@link #redirect(String, int)}).
  * Created by Domenic on 04.05.2017.
  */
 public class GameClient extends AbstractAppState implements ClientStateListener {
 
+    private static final Logger log = Logger.getLogger(GameClient.class.getName());
+
     private CountDownLatch startedSignal;
     private String address;
     private int port;
     private EntityData entityData;
+    private ClientEntityData localEntityData;
     private Client client;
     private RmiClientService rmiClientService;
-    private GameSession gameSession;
+    private ClientGameSession gameSession;
+    private NetworkConditions networkConditions;
+    private NetworkConditionProxy proxy;
+
+    private MessageListener<Client> clientMessageListener;
+    private final List<ListenerRegistration> messageListeners = new CopyOnWriteArrayList<>();
+    private final ReconnectListener reconnectListener = new ReconnectListener();
+    private final MessageListener<Client> commandAckListener = (source, m) -> {
+        ClientGameSession session = gameSession;
+        if (session != null) {
+            session.onCommandsExecuted((SessionCommandAckMessage) m);
+        }
+    };
+    private volatile long reconnectToken;
+    private volatile CountDownLatch reconnectSignal;
+    private volatile boolean reconnectAccepted;
 
     public GameClient() {
     }
@@ -39,33 +68,155 @@ public class GameClient extends AbstractAppState implements ClientStateListener
     }
 
     public boolean connect(String address, int port, Application app, GameCommander gameCommander) {
-        startedSignal = new CountDownLatch(1);
+        this.address = address;
+        this.port = port;
+        this.clientMessageListener = new ClientMessageListener(app, gameCommander);
+        if (GameOptions.ENTITY_SNAPSHOTS) {
+            this.localEntityData = new ClientEntityData();
+        }
+
         try {
+            startClient();
+
+            GameSession remoteSession = rmiClientService.getRemoteObject(GameSession.class);
+            this.gameSession = remoteSession != null ? new ClientGameSession(remoteSession, client, app) : null;
+            GameEntityDataClientService entityDataService = client.getServices().getService(GameEntityDataClientService.class);
+            this.entityData = entityDataService.getEntityData();
+            if (localEntityData != null) {
+                entityDataService.getRemoteEntityData().requestSnapshot();
+            }
+            return true;
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    private void startClient() throws IOException, InterruptedException {
+        startedSignal = new CountDownLatch(1);
+        if (networkConditions != null) {
+            // we connect through a local proxy which simulates the network conditions
+            this.proxy = new NetworkConditionProxy(networkConditions);
+            this.proxy.start(0, address, port);
+            this.client = Network.connectToServer("localhost", proxy.getLocalPort());
+        } else {
             this.client = Network.connectToServer(address, port);
-            this.client.addClientStateListener(this);
+        }
+        this.client.addClientStateListener(this);
 
-            this.rmiClientService = new RmiClientService();
-            this.client.getServices().addService(new RpcClientService());
-            this.client.getServices().addService(rmiClientService);
-            this.client.getServices().addService(new EntityDataClientService(MessageConnection.CHANNEL_DEFAULT_RELIABLE));
+        this.rmiClientService = new RmiClientService();
+        this.client.getServices().addService(new RpcClientService());
+        this.client.getServices().addService(rmiClientService);
+        this.client.getServices().addService(new GameEntityDataClientService(MessageConnection.CHANNEL_DEFAULT_RELIABLE, localEntityData));
+
+        this.client.addMessageListener(clientMessageListener);
+        this.client.addMessageListener(reconnectListener, ReconnectTokenMessage.class, ReconnectMessage.class);
+        this.client.addMessageListener(commandAckListener, SessionCommandAckMessage.class);
+        for (ListenerRegistration registration : messageListeners) {
+            this.client.addMessageListener(registration.listener, registration.types);
+        }
 
-            this.address = address;
-            this.port = port;
+        this.client.start();
+        this.startedSignal.await();
+    }
+
+    /**
+     * Connects to the server again and takes over the player this client had before its connection dropped.
+     * The entity data and the game session stay the same objects, so the client states can go on. The entity data
+     * is brought up to date with a new snapshot. This blocks until the server has answered.
+     * <p>
+     * This is only possible if the client has a local entity data (see {@link GameOptions#ENTITY_SNAPSHOTS})
+     * and the server has sent a reconnect token, which dedicated servers do once a client has joined a match.
+     *
+     * @return true if the client has its player again, false if the game can't go on
+     */
+    public boolean reconnect() {
+        long token = reconnectToken;
+        if (token == 0 || localEntityData == null || gameSession == null) {
+            return false;
+        }
 
-            this.client.addMessageListener(new ClientMessageListener(app, gameCommander));
+        gameSession.setSession(null, null);
+        closeClient();
+        try {
+            reconnectAccepted = false;
+            reconnectSignal = new CountDownLatch(1);
+            startClient();
 
-            this.client.start();
-            this.startedSignal.await();
+            client.send(new ReconnectMessage(token, false));
+            if (!reconnectSignal.await((long) (GameConstants.NETWORK_RECONNECT_TIMEOUT * 1000), TimeUnit.MILLISECONDS) || !reconnectAccepted) {
+                log.info("Server has not accepted the reconnect");
+                closeClient();
+                return false;
+            }
 
-            this.gameSession = rmiClientService.getRemoteObject(GameSession.class);
-            this.entityData = this.client.getServices().getService(EntityDataClientService.class).getEntityData();
+            // the server has shared our old game session again before it has answered
+            gameSession.setSession(rmiClientService.getRemoteObject(ReconnectMessage.SESSION_NAME, GameSession.class), client);
+            client.getServices().getService(GameEntityDataClientService.class).getRemoteEntityData().requestSnapshot();
+            log.info("Reconnected to " + address + ":" + port);
             return true;
         } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+            log.log(Level.WARNING, "Could not reconnect", e);
+        } finally {
+            reconnectSignal = null;
         }
+        closeClient();
         return false;
     }
 
+    /**
+     * Connects to another server of the same game and takes over the player there like {@link #reconnect()} does.
+     * A region shard sends its clients to the shard their player has moved to.
+     *
+     * @param address the address of the other server
+     * @param port    the port of the other server
+     * @return true if the client has its player again, false if the game can't go on
+     */
+    public boolean redirect(String address, int port) {
+        this.address = address;
+        this.port = port;
+        return reconnect();
+    }
+
+    @Override
+    public void postRender() {
+        // all states have been updated, so the session commands of this frame go out in one message
+        if (gameSession != null) {
+            gameSession.flush();
+        }
+    }
+
+    private void closeClient() {
+        if (client != null && client.isConnected()) {
+            client.close();
+        }
+        if (proxy != null) {
+            proxy.close();
+            proxy = null;
+        }
+    }
+
+    /**
+     * Adds a message listener to the client. Unlike listeners which are added to the client directly, it is
+     * added to the new client as well if this one reconnects.
+     *
+     * @param listener the listener
+     * @param types    the message types the listener gets
+     */
+    public void addMessageListener(MessageListener<? super Client> listener, Class... types) {
+        messageListeners.add(new ListenerRegistration(listener, types));
+        if (client != null) {
+            client.addMessageListener(listener, types);
+        }
+    }
+
+    public void removeMessageListener(MessageListener<? super Client> listener, Class... types) {
+        messageListeners.removeIf(registration -> registration.listener == listener);
+        if (client != null) {
+            client.removeMessageListener(listener, types);
+        }
+    }
+
     public EntityData getEntityData() {
         return entityData;
     }
@@ -82,10 +233,35 @@ public class GameClient extends AbstractAppState implements ClientStateListener
         return client;
     }
 
+    /**
+     * @return the game session, it stays the same if the client reconnects
+     */
     public GameSession getGameSession() {
         return gameSession;
     }
 
+    /**
+     * @return true if the server has sent a token, so the client can try to reconnect (see {@link #reconnect()})
+     */
+    public boolean canReconnect() {
+        return reconnectToken != 0 && localEntityData != null;
+    }
+
+    /**
+     * Lets the client connect through a {@link NetworkConditionProxy}, so we can test with a bad network.
+     * Must be set before {@link #connect(String, int, Application, GameCommander)} is called.
+     * The conditions can be changed while the client is connected.
+     *
+     * @param networkConditions the conditions to simulate or null to connect directly
+     */
+    public void setNetworkConditions(NetworkConditions networkConditions) {
+        this.networkConditions = networkConditions;
+    }
+
+    public NetworkConditions getNetworkConditions() {
+        return networkConditions;
+    }
+
     public void sendMessage(Message message) {
         if (client != null && client.isConnected() && message != null) {
             client.send(message);
@@ -106,9 +282,41 @@ public class GameClient extends AbstractAppState implements ClientStateListener
     @Override
     public void cleanup() {
         if (client != null && client.isConnected()) {
-            client.close();
-            Logger.getLogger(GameClient.class.getName()).log(Level.INFO, "Client is closing.");
+            log.log(Level.INFO, "Client is closing.");
+        }
+        closeClient();
+        if (localEntityData != null) {
+            localEntityData.close();
         }
+        messageListeners.clear();
         super.cleanup();
     }
+
+    private class ReconnectListener implements MessageListener<Client> {
+        @Override
+        public void messageReceived(Client source, Message m) {
+            if (m instanceof ReconnectTokenMessage) {
+                // while we reconnect, the server sends a token for the new connection before it takes over the old player
+                if (reconnectSignal == null) {
+                    reconnectToken = ((ReconnectTokenMessage) m).getToken();
+                }
+            } else {
+                CountDownLatch signal = reconnectSignal;
+                if (signal != null) {
+                    reconnectAccepted = ((ReconnectMessage) m).isAccepted();
+                    signal.countDown();
+                }
+            }
+        }
+    }
+
+    private static class ListenerRegistration {
+        final MessageListener<? super Client> listener;
+        final Class[] types;
+
+        ListenerRegistration(MessageListener<? super Client> listener, Class[] types) {
+            this.listener = listener;
+            this.types = types;
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package de.gamedevbaden.crucified.net.client;
+
+import com.jme3.network.service.AbstractClientService;
+import com.jme3.network.service.ClientServiceManager;
+import com.simsilica.es.EntityData;
+
+/**
+ * Our own version of the EntityDataClientService of Zay-ES, which provides a {@link GameRemoteEntityData}.
+ * <p>
+ * With a {@link ClientEntityData} the client uses that local entity data, it's filled from a snapshot the server sends
+ * when the client has started (see {@link GameRemoteEntityData#requestSnapshot()}).
+ */
+public class GameEntityDataClientService extends AbstractClientService {
+
+    private final int channel;
+    private final ClientEntityData localEntityData;
+    private GameRemoteEntityData entityData;
+
+    public GameEntityDataClientService(int channel) {
+        this(channel, null);
+    }
+
+    /**
+     * @param channel         the channel of the entity data service
+     * @param localEntityData the local entity data the client uses, or null to use remote entity sets
+     */
+    public GameEntityDataClientService(int channel, ClientEntityData localEntityData) {
+        this.channel = channel;
+        this.localEntityData = localEntityData;
+    }
+
+    /**
+     * @return the local entity data if there is one, the remote entity data otherwise
+     */
+    public EntityData getEntityData() {
+        return localEntityData != null ? localEntityData : entityData;
+    }
+
+    public GameRemoteEntityData getRemoteEntityData() {
+        return entityData;
+    }
+
+    @Override
+    protected void onInitialize(ClientServiceManager services) {
+        this.entityData = new GameRemoteEntityData(getClient(), channel, localEntityData);
+    }
+
+    @Override
+    public void terminate(ClientServiceManager services) {
+        // the local entity data is kept, the client might reconnect
+        entityData.close();
+        entityData = null;
+    }
+}
@@ -0,0 +1,174 @@
+package de.gamedevbaden.crucified.net.client;
+
+import com.jme3.network.Client;
+import com.jme3.network.Message;
+import com.jme3.network.MessageListener;
+import com.jme3.network.serializing.Serializer;
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.client.RemoteEntityData;
+import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.net.messages.EntitySnapshotMessage;
+import de.gamedevbaden.crucified.net.messages.EntitySnapshotRequestMessage;
+import de.gamedevbaden.crucified.net.messages.TransformUpdateMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The remote entity data of our client. Besides the reliable entity changes it applies the transforms
+ * of moving entities the server sends unreliable (see {@link TransformUpdateMessage}).
+ * <p>
+ * An unreliable transform is only applied if it is newer than the last one of that entity: its sequence number has
+ * to be higher than the last applied one and it must have been sent after the last reliable transform of the entity.
+ * Transforms of entities without a (reliable) transform are dropped, they might have been removed already.
+ * <p>
+ * If it has a {@link ClientEntityData}, all changes are applied to it instead of the remote entity sets. The client
+ * then uses the local entity data only, it is hydrated from the snapshot the server sends after
+ * {@link #requestSnapshot()}.
+ */
+public class GameRemoteEntityData extends RemoteEntityData implements MessageListener<Client> {
+
+    private static final Logger log = Logger.getLogger(GameRemoteEntityData.class.getName());
+
+    private final Client client;
+    private final ClientEntityData localEntityData;
+    private final HashMap<EntityId, TransformState> transformStates = new HashMap<>(); // guarded by itself
+    private final ByteArrayOutputStream snapshotData = new ByteArrayOutputStream();
+
+    public GameRemoteEntityData(Client client, int channel) {
+        this(client, channel, null);
+    }
+
+    /**
+     * @param client          the client
+     * @param channel         the channel of the entity data service
+     * @param localEntityData the local copy of the entity data all changes are applied to, or null to use remote entity sets
+     */
+    public GameRemoteEntityData(Client client, int channel, ClientEntityData localEntityData) {
+        super(client, channel);
+        this.client = client;
+        this.localEntityData = localEntityData;
+        client.addMessageListener(this, TransformUpdateMessage.class, EntitySnapshotMessage.class);
+    }
+
+    /**
+     * Asks the server for a snapshot of the entity data. Only possible with a local entity data.
+     */
+    public void requestSnapshot() {
+        if (localEntityData == null) {
+            throw new IllegalStateException("A snapshot needs a local entity data");
+        }
+        client.send(new EntitySnapshotRequestMessage());
+    }
+
+    @Override
+    protected void entityChange(EntityChange change) {
+        if (change.getComponentType() != Transform.class) {
+            applyChange(change);
+            return;
+        }
+
+        // changes are read on the reliable and the unreliable thread, so we keep them in order here
+        synchronized (transformStates) {
+            Transform transform = (Transform) change.getComponent();
+            if (transform == null) {
+                transformStates.remove(change.getEntityId());
+            } else {
+                TransformState state = transformStates.get(change.getEntityId());
+                if (state == null) {
+                    state = new TransformState();
+                    transformStates.put(change.getEntityId(), state);
+                }
+                state.reliableTime = Math.max(state.reliableTime, transform.getTime());
+            }
+            applyChange(change);
+        }
+    }
+
+    private void applyChange(EntityChange change) {
+        if (localEntityData != null) {
+            localEntityData.applyChange(change);
+        } else {
+            super.entityChange(change);
+        }
+    }
+
+    @Override
+    public void messageReceived(Client source, Message m) {
+        if (m instanceof EntitySnapshotMessage) {
+            receiveSnapshot((EntitySnapshotMessage) m);
+            return;
+        }
+
+        TransformUpdateMessage message = (TransformUpdateMessage) m;
+        synchronized (transformStates) {
+            for (int i = 0; i < message.size(); i++) {
+                EntityId entityId = new EntityId(message.getEntityId(i));
+                TransformState state = transformStates.get(entityId);
+                if (state == null || message.getSequence(i) <= state.sequence || message.getTime() <= state.reliableTime) {
+                    continue; // unknown entity or an old update
+                }
+                state.sequence = message.getSequence(i);
+                applyChange(new EntityChange(entityId, Transform.class, message.getTransform(i)));
+            }
+        }
+    }
+
+    /**
+     * Collects the chunks of a snapshot and applies it once it is complete. This runs on the thread which reads the
+     * reliable messages, so the transforms of the snapshot are the baselines of the following deltas.
+     */
+    private void receiveSnapshot(EntitySnapshotMessage message) {
+        if (localEntityData == null) {
+            return;
+        }
+        snapshotData.write(message.getData(), 0, message.getData().length);
+        if (!message.isLast()) {
+            return;
+        }
+
+        int count = 0;
+        localEntityData.beginSnapshot();
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(snapshotData.toByteArray()))) {
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+            byte[] bytes = new byte[8192];
+            int read;
+            while ((read = in.read(bytes)) > 0) {
+                inflated.write(bytes, 0, read);
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(inflated.toByteArray());
+            while (buffer.hasRemaining()) {
+                entityChange((EntityChange) Serializer.readClassAndObject(buffer));
+                count++;
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not read entity snapshot", e);
+        } finally {
+            int removed = localEntityData.endSnapshot();
+            snapshotData.reset();
+            log.info("Applied snapshot with " + count + " components, removed " + removed + " outdated components");
+        }
+    }
+
+    @Override
+    public void close() {
+        client.removeMessageListener(this, TransformUpdateMessage.class, EntitySnapshotMessage.class);
+        synchronized (transformStates) {
+            transformStates.clear();
+        }
+        super.close();
+    }
+
+    private static class TransformState {
+        int sequence; // of the last applied unreliable transform
+        long reliableTime; // server time of the last reliable transform
+    }
+}
@@ -0,0 +1,41 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+import com.simsilica.es.EntityChange;
+
+import java.util.ArrayList;
+
+/**
+ * Mirrors the entities near a border of a region shard to its neighbour. The neighbour keeps them as ghosts,
+ * so its clients see what happens right behind the border. Only the components clients need to show an entity
+ * are mirrored, the ghosts aren't simulated.
+ */
+@Serializable
+public class BorderUpdateMessage extends AbstractMessage {
+
+    private ArrayList<EntityChange> changes;
+    private long[] removed;
+
+    public BorderUpdateMessage() {
+    }
+
+    public BorderUpdateMessage(ArrayList<EntityChange> changes, long[] removed) {
+        this.changes = changes;
+        this.removed = removed;
+    }
+
+    /**
+     * @return the components which have changed since the last update
+     */
+    public ArrayList<EntityChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return the ids of the ghosts which have left the border zone or have been removed
+     */
+    public long[] getRemoved() {
+        return removed;
+    }
+}
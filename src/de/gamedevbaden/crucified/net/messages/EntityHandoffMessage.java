@@ -0,0 +1,43 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+import com.simsilica.es.EntityChange;
+
+import java.util.ArrayList;
+
+/**
+ * Moves an entity to the region shard of its new location. It contains all components of the entity and of the
+ * entities attached to it (e.g. the flashlight of a player), they keep their ids on the new shard.
+ * <p>
+ * If the entity is a player, the message also contains the reconnect token of its client. The new shard keeps
+ * the player until the client has connected with the token.
+ */
+@Serializable
+public class EntityHandoffMessage extends AbstractMessage {
+
+    private ArrayList<EntityChange> changes;
+    private long token;
+
+    public EntityHandoffMessage() {
+    }
+
+    public EntityHandoffMessage(ArrayList<EntityChange> changes, long token) {
+        this.changes = changes;
+        this.token = token;
+    }
+
+    /**
+     * @return one change per component, the first one belongs to the entity which is handed off
+     */
+    public ArrayList<EntityChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return the reconnect token of the player or 0 if the entity isn't a player
+     */
+    public long getToken() {
+        return token;
+    }
+}
@@ -0,0 +1,35 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * A chunk of a compressed entity snapshot. The chunks of a snapshot are sent in order over the reliable channel,
+ * the client inflates the snapshot once the last chunk has arrived. Together the chunks contain
+ * the entity changes of all relevant components, written like in a component change message.
+ */
+@Serializable
+public class EntitySnapshotMessage extends AbstractMessage {
+
+    private byte[] data;
+    private boolean last;
+
+    public EntitySnapshotMessage() {
+    }
+
+    public EntitySnapshotMessage(byte[] data, boolean last) {
+        this.data = data;
+        this.last = last;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return true if this is the last chunk of the snapshot
+     */
+    public boolean isLast() {
+        return last;
+    }
+}
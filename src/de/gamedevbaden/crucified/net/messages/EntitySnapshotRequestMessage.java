@@ -0,0 +1,13 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Sent by a client which keeps a local copy of the server's entity data. The server answers with
+ * the full relevant state in {@link EntitySnapshotMessage}s and sends all component changes afterwards,
+ * so the client doesn't need to request any entity sets.
+ */
+@Serializable
+public class EntitySnapshotRequestMessage extends AbstractMessage {
+}
@@ -0,0 +1,35 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Used to measure the round trip time. Both the server and the client answer a ping
+ * with a reply which carries the time of the ping, so the sender can compute the round trip time
+ * when the reply arrives.
+ */
+@Serializable
+public class PingMessage extends AbstractMessage {
+
+    private long time;
+    private boolean reply;
+
+    public PingMessage() {
+    }
+
+    public PingMessage(long time, boolean reply) {
+        this.time = time;
+        this.reply = reply;
+    }
+
+    /**
+     * @return the time the ping has been sent, in milliseconds of the sender's clock
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public boolean isReply() {
+        return reply;
+    }
+}
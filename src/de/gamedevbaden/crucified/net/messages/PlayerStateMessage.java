@@ -0,0 +1,47 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.math.Vector3f;
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * The server sends this message to a client with the state of its player after the last physics step and the
+ * sequence number of the input command this step has simulated, together with how long the command has been
+ * simulated so far. The client replays the rest of this command and all later ones from this state.
+ * This message is sent unreliable.
+ */
+@Serializable
+public class PlayerStateMessage extends AbstractMessage {
+
+    private int sequence;
+    private float time;
+    private Vector3f location;
+    private Vector3f velocity;
+
+    public PlayerStateMessage() {
+    }
+
+    public PlayerStateMessage(int sequence, float time, Vector3f location, Vector3f velocity) {
+        this.sequence = sequence;
+        this.time = time;
+        this.location = location;
+        this.velocity = velocity;
+        setReliable(false);
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public float getTime() {
+        return time;
+    }
+
+    public Vector3f getLocation() {
+        return location;
+    }
+
+    public Vector3f getVelocity() {
+        return velocity;
+    }
+}
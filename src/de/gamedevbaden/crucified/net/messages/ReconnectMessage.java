@@ -0,0 +1,37 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Sent by a client right after it has connected again, to take over the player it had before its connection dropped.
+ * The server answers with the same message and tells whether the token was accepted. If so, the game session of
+ * the player has been shared with the name {@link #SESSION_NAME} before the answer is sent.
+ */
+@Serializable
+public class ReconnectMessage extends AbstractMessage {
+
+    public static final String SESSION_NAME = "ReconnectedGameSession";
+
+    private long token;
+    private boolean accepted;
+
+    public ReconnectMessage() {
+    }
+
+    public ReconnectMessage(long token, boolean accepted) {
+        this.token = token;
+        this.accepted = accepted;
+    }
+
+    /**
+     * @return the token of the {@link ReconnectTokenMessage}
+     */
+    public long getToken() {
+        return token;
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+}
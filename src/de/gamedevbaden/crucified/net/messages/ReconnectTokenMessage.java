@@ -0,0 +1,25 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Tells a client the secret token it can use to take over its player again if its connection drops
+ * (see {@link ReconnectMessage}).
+ */
+@Serializable
+public class ReconnectTokenMessage extends AbstractMessage {
+
+    private long token;
+
+    public ReconnectTokenMessage() {
+    }
+
+    public ReconnectTokenMessage(long token) {
+        this.token = token;
+    }
+
+    public long getToken() {
+        return token;
+    }
+}
@@ -0,0 +1,25 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Tells a client up to which sequence number the server has executed its session commands
+ * (see {@link SessionCommandMessage}).
+ */
+@Serializable
+public class SessionCommandAckMessage extends AbstractMessage {
+
+    private int sequence;
+
+    public SessionCommandAckMessage() {
+    }
+
+    public SessionCommandAckMessage(int sequence) {
+        this.sequence = sequence;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+}
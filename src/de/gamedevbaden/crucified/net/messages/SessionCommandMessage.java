@@ -0,0 +1,37 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import de.gamedevbaden.crucified.game.SessionCommand;
+
+/**
+ * Carries the game session commands a client has issued since its last message, so the commands of one frame
+ * are sent in a single packet. The commands have consecutive sequence numbers; the server answers with a
+ * {@link SessionCommandAckMessage} once it has executed them.
+ * <p>
+ * It is written by the {@link de.gamedevbaden.crucified.net.serializers.SessionCommandSerializer}.
+ */
+public class SessionCommandMessage extends AbstractMessage {
+
+    private int firstSequence;
+    private SessionCommand[] commands;
+
+    public SessionCommandMessage() {
+    }
+
+    /**
+     * @param firstSequence the sequence number of the first command
+     * @param commands      the commands in the order they have been issued
+     */
+    public SessionCommandMessage(int firstSequence, SessionCommand[] commands) {
+        this.firstSequence = firstSequence;
+        this.commands = commands;
+    }
+
+    public int getFirstSequence() {
+        return firstSequence;
+    }
+
+    public SessionCommand[] getCommands() {
+        return commands;
+    }
+}
@@ -0,0 +1,28 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Sent by a region shard which has connected to its neighbour. The connection isn't a player,
+ * it carries the handoffs and border updates between both shards in both directions.
+ */
+@Serializable
+public class ShardLinkMessage extends AbstractMessage {
+
+    private int region;
+
+    public ShardLinkMessage() {
+    }
+
+    public ShardLinkMessage(int region) {
+        this.region = region;
+    }
+
+    /**
+     * @return the region of the shard which has connected
+     */
+    public int getRegion() {
+        return region;
+    }
+}
@@ -0,0 +1,37 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Tells a client which region shard to connect to.
+ * <p>
+ * A client sends an empty one to the shard coordinator, which answers with the shard that has the fewest players.
+ * A shard sends one to a client whose player has moved into the region of another shard, the client connects there
+ * and takes over its player again with its reconnect token (see {@link ReconnectMessage}).
+ */
+@Serializable
+public class ShardRedirectMessage extends AbstractMessage {
+
+    private String address;
+    private int port;
+
+    public ShardRedirectMessage() {
+    }
+
+    public ShardRedirectMessage(String address, int port) {
+        this.address = address;
+        this.port = port;
+    }
+
+    /**
+     * @return the address of the shard or null if there is no shard running
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+}
@@ -0,0 +1,54 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Sent by a region shard to the shard coordinator to tell where it can be reached and how many players it has.
+ * The coordinator passes it on to all other shards, so neighbours can connect to each other, and adds its epoch:
+ * all shards stamp their updates with the time since the same epoch, so a client which is handed off
+ * to another shard keeps a clock which fits.
+ */
+@Serializable
+public class ShardStatusMessage extends AbstractMessage {
+
+    private int region;
+    private String address;
+    private int port;
+    private int players;
+    private long epoch;
+
+    public ShardStatusMessage() {
+    }
+
+    public ShardStatusMessage(int region, String address, int port, int players, long epoch) {
+        this.region = region;
+        this.address = address;
+        this.port = port;
+        this.players = players;
+        this.epoch = epoch;
+    }
+
+    public int getRegion() {
+        return region;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getPlayers() {
+        return players;
+    }
+
+    /**
+     * @return the wall clock time in milliseconds the server times of all shards count from, 0 if sent by a shard
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+}
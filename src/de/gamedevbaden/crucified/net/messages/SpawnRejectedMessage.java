@@ -0,0 +1,25 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Tells a client that the server has rejected an action the client has already predicted the entity of,
+ * see {@link de.gamedevbaden.crucified.game.GameCommander#onSpawnRejected(int)}.
+ */
+@Serializable
+public class SpawnRejectedMessage extends AbstractMessage {
+
+    private int spawnId;
+
+    public SpawnRejectedMessage() {
+    }
+
+    public SpawnRejectedMessage(int spawnId) {
+        this.spawnId = spawnId;
+    }
+
+    public int getSpawnId() {
+        return spawnId;
+    }
+}
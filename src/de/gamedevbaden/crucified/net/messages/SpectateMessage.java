@@ -0,0 +1,56 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * Sent by a client which only wants to watch a match, e.g. a spectator relay.
+ * The connection leaves the match it has joined as a player and gets the entity updates of the requested match
+ * without controlling a player. The server answers with the same message and tells whether the request was accepted.
+ * <p>
+ * A spectator can name a viewer entity, then it only gets the movement updates near that entity like a player does.
+ */
+@Serializable
+public class SpectateMessage extends AbstractMessage {
+
+    /**
+     * Asks for the first match which has started.
+     */
+    public static final int ANY_MATCH = -1;
+
+    /**
+     * No viewer, all entities of the match are relevant.
+     */
+    public static final long NO_VIEWER = -1;
+
+    private int matchId;
+    private long viewer;
+    private boolean accepted;
+
+    public SpectateMessage() {
+    }
+
+    public SpectateMessage(int matchId, long viewer, boolean accepted) {
+        this.matchId = matchId;
+        this.viewer = viewer;
+        this.accepted = accepted;
+    }
+
+    /**
+     * @return the id of the match or {@link #ANY_MATCH}
+     */
+    public int getMatchId() {
+        return matchId;
+    }
+
+    /**
+     * @return the id of the viewer entity or {@link #NO_VIEWER}
+     */
+    public long getViewer() {
+        return viewer;
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+}
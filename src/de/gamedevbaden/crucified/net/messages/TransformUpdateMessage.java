@@ -0,0 +1,71 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import de.gamedevbaden.crucified.es.components.Transform;
+
+/**
+ * Carries the newest transforms of moving entities from the server to a client.
+ * This message is sent unreliable, so a lost update doesn't hold back the updates behind it.
+ * Each transform has a sequence number per entity; the client drops transforms which are older than the
+ * newest one it has applied (latest wins).
+ * <p>
+ * It is written by the {@link de.gamedevbaden.crucified.net.serializers.TransformUpdateSerializer}.
+ */
+public class TransformUpdateMessage extends AbstractMessage {
+
+    private long time;
+    private long[] entityIds;
+    private int[] sequences;
+    private Transform[] transforms;
+    private int size;
+
+    public TransformUpdateMessage() {
+        this(0, 0);
+    }
+
+    /**
+     * @param time     the server time of the tick the transforms are sent in
+     * @param capacity the maximum number of transforms in this message
+     */
+    public TransformUpdateMessage(long time, int capacity) {
+        this.time = time;
+        this.entityIds = new long[capacity];
+        this.sequences = new int[capacity];
+        this.transforms = new Transform[capacity];
+        setReliable(false);
+    }
+
+    public void add(long entityId, int sequence, Transform transform) {
+        entityIds[size] = entityId;
+        sequences[size] = sequence;
+        transforms[size] = transform;
+        size++;
+    }
+
+    public boolean isFull() {
+        return size == entityIds.length;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the number of transforms in this message
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getEntityId(int index) {
+        return entityIds[index];
+    }
+
+    public int getSequence(int index) {
+        return sequences[index];
+    }
+
+    public Transform getTransform(int index) {
+        return transforms[index];
+    }
+}
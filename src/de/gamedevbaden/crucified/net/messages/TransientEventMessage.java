@@ -0,0 +1,30 @@
+package de.gamedevbaden.crucified.net.messages;
+
+import com.jme3.network.AbstractMessage;
+import de.gamedevbaden.crucified.game.TransientEvent;
+
+import java.util.List;
+
+/**
+ * Carries the transient events (sounds, hits) which have happened near the player of a client since its last update.
+ * This message is sent unreliable, a lost event is not sent again.
+ * <p>
+ * The server reuses the events after the message has been sent, the message is serialized while sending.
+ * It is written by the {@link de.gamedevbaden.crucified.net.serializers.TransientEventSerializer}.
+ */
+public class TransientEventMessage extends AbstractMessage {
+
+    private List<TransientEvent> events;
+
+    public TransientEventMessage() {
+    }
+
+    public TransientEventMessage(List<TransientEvent> events) {
+        this.events = events;
+        setReliable(false);
+    }
+
+    public List<TransientEvent> getEvents() {
+        return events;
+    }
+}
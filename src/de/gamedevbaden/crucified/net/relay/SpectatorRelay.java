@@ -0,0 +1,326 @@
+package de.gamedevbaden.crucified.net.relay;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.network.*;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.service.rmi.RmiClientService;
+import com.jme3.network.service.rmi.RmiHostedService;
+import com.jme3.network.service.rpc.RpcClientService;
+import com.jme3.network.service.rpc.RpcHostedService;
+import com.jme3.network.service.serializer.ServerSerializerRegistrationsService;
+import com.jme3.scene.Node;
+import com.simsilica.es.EntityId;
+import de.gamedevbaden.crucified.appstates.SceneEntityLoader;
+import de.gamedevbaden.crucified.appstates.paging.GameWorldPagingManager;
+import de.gamedevbaden.crucified.enums.Scene;
+import de.gamedevbaden.crucified.es.utils.SceneDefaults;
+import de.gamedevbaden.crucified.game.TransientEvent;
+import de.gamedevbaden.crucified.net.NetworkUtils;
+import de.gamedevbaden.crucified.net.client.ClientEntityData;
+import de.gamedevbaden.crucified.net.client.ClockOffsetEstimator;
+import de.gamedevbaden.crucified.net.client.GameEntityDataClientService;
+import de.gamedevbaden.crucified.net.messages.GameDecidedMessage;
+import de.gamedevbaden.crucified.net.messages.LoadLevelMessage;
+import de.gamedevbaden.crucified.net.messages.PingMessage;
+import de.gamedevbaden.crucified.net.messages.SpectateMessage;
+import de.gamedevbaden.crucified.net.messages.StartGameMessage;
+import de.gamedevbaden.crucified.net.messages.TransformUpdateMessage;
+import de.gamedevbaden.crucified.net.messages.TransientEventMessage;
+import de.gamedevbaden.crucified.net.server.GameEntityDataHostedService;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lets many spectators watch a match while the game server only sends it once.
+ * <p>
+ * The relay connects to the {@link de.gamedevbaden.crucified.net.server.GameServer} as a single client which only
+ * watches (see {@link SpectateMessage}) and mirrors the entity data of the match in a {@link ClientEntityData}.
+ * It hosts this mirror for its own spectators with a {@link GameEntityDataHostedService}, so they get snapshots when
+ * they join and the same relevancy filtering, send rates and byte budgets as the players of the server get from it.
+ * The traffic of the server stays the same no matter how many spectators are connected.
+ * <p>
+ * A spectator connects to the relay like to a server and asks for a snapshot. It can send a {@link SpectateMessage}
+ * with a viewer entity to only get the movement updates near that entity. The relay runs the same code as the server,
+ * so both use the same serializer registrations.
+ */
+public class SpectatorRelay extends AbstractAppState implements ConnectionListener, MessageListener<HostedConnection> {
+
+    private static final Logger log = Logger.getLogger(SpectatorRelay.class.getName());
+
+    private final String serverAddress;
+    private final int serverPort;
+    private final int port;
+    private final int matchId;
+
+    private Server server;
+    private Client upstream;
+    private GameEntityDataHostedService entityDataService;
+    private final ClientEntityData entityData = new ClientEntityData();
+    private final ClockOffsetEstimator upstreamClock = new ClockOffsetEstimator(); // guarded by itself
+    private final UpstreamListener upstreamListener = new UpstreamListener();
+    private Application app;
+
+    private float timer;
+    private float retryTimer = -1; // seconds until the server is asked again for a match, negative if not waiting
+    private volatile int watchedMatchId = -1;
+    private volatile Scene scene; // the scene of the watched match, null until it is loaded
+    private volatile boolean started;
+
+    /**
+     * @param serverAddress the address of the game server
+     * @param serverPort    the port of the game server
+     * @param port          the port spectators connect to
+     * @param matchId       the id of the match to watch or {@link SpectateMessage#ANY_MATCH}
+     */
+    public SpectatorRelay(String serverAddress, int serverPort, int port, int matchId) {
+        this.serverAddress = serverAddress;
+        this.serverPort = serverPort;
+        this.port = port;
+        this.matchId = matchId;
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        this.app = app;
+
+        try {
+            Serializer.initialize();
+            this.server = Network.createServer(port);
+
+            NetworkUtils.initEntityDataSerializers();
+            NetworkUtils.initMessageSerializers();
+
+            this.server.addConnectionListener(this);
+            this.server.addMessageListener(this, SpectateMessage.class, PingMessage.class);
+
+            // the services are created in the same order as on the game server, so the classes they register get the same ids
+            RmiHostedService rmiService = new RmiHostedService();
+
+            // our updates are stamped with the time of the game server
+            this.entityDataService = new GameEntityDataHostedService(MessageConnection.CHANNEL_DEFAULT_RELIABLE, entityData);
+            this.entityDataService.setClock(this::getUpstreamTime);
+            this.server.getServices().addService(entityDataService);
+            this.server.getServices().addService(new RpcHostedService());
+            this.server.getServices().addService(rmiService);
+            this.server.start();
+
+            // the registrations are locked by our server now, the game server uses the same ones
+            this.upstream = Network.connectToServer(serverAddress, serverPort);
+            this.upstream.getServices().addService(new RpcClientService());
+            this.upstream.getServices().addService(new RmiClientService());
+            this.upstream.getServices().addService(new GameEntityDataClientService(MessageConnection.CHANNEL_DEFAULT_RELIABLE, entityData));
+            this.upstream.addClientStateListener(upstreamListener);
+            this.upstream.addMessageListener(upstreamListener);
+            this.upstream.start();
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Could not start the spectator relay", e);
+        }
+
+        super.initialize(stateManager, app);
+    }
+
+    @Override
+    public void update(float tpf) {
+        if (retryTimer >= 0 && (retryTimer -= tpf) < 0) {
+            requestMatch();
+        }
+
+        if ((timer += tpf) >= 1f / GameConstants.NETWORK_TICK_RATE) {
+            entityDataService.sendUpdates();
+            timer = 0;
+        }
+    }
+
+    private void requestMatch() {
+        if (upstream != null && upstream.isConnected()) {
+            upstream.send(new SpectateMessage(matchId, SpectateMessage.NO_VIEWER, false));
+        }
+    }
+
+    private long getUpstreamTime() {
+        long localTime = System.nanoTime() / 1000000;
+        synchronized (upstreamClock) {
+            return upstreamClock.toServerTime(localTime);
+        }
+    }
+
+    /**
+     * Loads the scene of the match, only to create its scene entities and the chunk grid, it's never attached.
+     * Called on the update thread, so no update is sent while the scene entities are applied.
+     */
+    private void loadScene(Scene scene) {
+        Node gameWorld = (Node) app.getAssetManager().loadModel(scene.getScenePath());
+        SceneDefaults defaults = SceneEntityLoader.createSceneDefaults(gameWorld);
+        int applied = entityData.applySceneDefaults(defaults);
+        entityDataService.setSceneDefaults(entityData, defaults);
+        entityDataService.setChunkGrid(GameWorldPagingManager.createChunkGrid(gameWorld, GameConstants.AMOUNT_OF_CHUNKS_PER_ROW));
+        this.scene = scene;
+        log.info("Loaded scene " + scene + " with " + applied + " scene components");
+    }
+
+    @Override
+    public void connectionAdded(Server server, HostedConnection conn) {
+        // spectators which join a running match load its scene right away
+        Scene scene = this.scene;
+        if (scene != null) {
+            conn.send(new LoadLevelMessage(scene));
+            if (started) {
+                conn.send(new StartGameMessage());
+            }
+        }
+        log.info("Spectator #" + conn.getId() + " has connected, " + server.getConnections().size() + " spectators");
+    }
+
+    @Override
+    public void connectionRemoved(Server server, HostedConnection conn) {
+        log.info("Spectator #" + conn.getId() + " has disconnected, " + server.getConnections().size() + " spectators");
+    }
+
+    @Override
+    public void messageReceived(HostedConnection source, Message m) {
+        if (m instanceof PingMessage) {
+            if (!((PingMessage) m).isReply()) {
+                PingMessage reply = new PingMessage(((PingMessage) m).getTime(), true);
+                reply.setReliable(m.isReliable());
+                source.send(reply);
+            }
+            return;
+        }
+
+        // spectators can only watch the match of the relay, but they can follow an entity of it
+        long viewer = ((SpectateMessage) m).getViewer();
+        if (viewer != SpectateMessage.NO_VIEWER) {
+            entityDataService.setViewer(source, new EntityId(viewer));
+        }
+        source.send(new SpectateMessage(watchedMatchId, viewer, watchedMatchId >= 0));
+    }
+
+    /**
+     * @return the port spectators connect to
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return the mirrored entity data of the watched match
+     */
+    public ClientEntityData getEntityData() {
+        return entityData;
+    }
+
+    /**
+     * @return true as long as the relay is connected to the game server
+     */
+    public boolean isConnected() {
+        return upstream != null && upstream.isConnected();
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    @Override
+    public void cleanup() {
+        if (upstream != null && upstream.isConnected()) {
+            upstream.close();
+        }
+        if (server != null && server.isRunning()) {
+            for (HostedConnection conn : server.getConnections()) {
+                conn.close("The relay is shutting down!");
+            }
+            server.getServices().removeService(server.getServices().getService(ServerSerializerRegistrationsService.class));
+            server.close();
+        }
+        entityData.close();
+        super.cleanup();
+    }
+
+    private class UpstreamListener implements MessageListener<Client>, ClientStateListener {
+
+        @Override
+        public void clientConnected(Client c) {
+            log.info("Connected to " + serverAddress + ":" + serverPort);
+            requestMatch();
+        }
+
+        @Override
+        public void clientDisconnected(Client c, DisconnectInfo info) {
+            log.info("Lost the connection to the game server" + (info != null ? ": " + info.reason : ""));
+            app.enqueue(() -> {
+                if (server.isRunning()) {
+                    for (HostedConnection conn : server.getConnections()) {
+                        conn.close("The match has ended!");
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void messageReceived(Client source, Message m) {
+            if (m instanceof TransformUpdateMessage) {
+                // the unreliable updates have the least delay, so they are the best samples
+                synchronized (upstreamClock) {
+                    upstreamClock.addSample(((TransformUpdateMessage) m).getTime(), System.nanoTime() / 1000000);
+                }
+                return;
+            }
+
+            if (m instanceof PingMessage && !((PingMessage) m).isReply()) {
+                PingMessage reply = new PingMessage(((PingMessage) m).getTime(), true);
+                reply.setReliable(m.isReliable());
+                source.send(reply);
+                return;
+            }
+
+            if (m instanceof SpectateMessage) {
+                SpectateMessage sm = (SpectateMessage) m;
+                app.enqueue(() -> {
+                    if (sm.isAccepted()) {
+                        watchedMatchId = sm.getMatchId();
+                        source.getServices().getService(GameEntityDataClientService.class).getRemoteEntityData().requestSnapshot();
+                        log.info("Watching match " + sm.getMatchId());
+                    } else {
+                        retryTimer = GameConstants.NETWORK_SPECTATE_RETRY_INTERVAL;
+                    }
+                });
+                return;
+            }
+
+            if (m instanceof LoadLevelMessage) {
+                app.enqueue(() -> {
+                    loadScene(((LoadLevelMessage) m).getScene());
+                    server.broadcast(m);
+                });
+                return;
+            }
+
+            if (m instanceof StartGameMessage) {
+                app.enqueue(() -> {
+                    started = true;
+                    server.broadcast(m);
+                });
+                return;
+            }
+
+            if (m instanceof GameDecidedMessage) {
+                server.broadcast(m);
+                return;
+            }
+
+            if (m instanceof TransientEventMessage) {
+                // events are queued on the thread which sends the updates
+                app.enqueue(() -> {
+                    for (TransientEvent event : ((TransientEventMessage) m).getEvents()) {
+                        entityDataService.broadcastEvent(entityData, event);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package de.gamedevbaden.crucified.net.replay;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.math.Vector3f;
+import com.jme3.network.Message;
+import com.jme3.network.serializing.Serializer;
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityComponentListener;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.ObservableEntityData;
+import de.gamedevbaden.crucified.appstates.EntityDataState;
+import de.gamedevbaden.crucified.appstates.GameCommanderHolder;
+import de.gamedevbaden.crucified.appstates.TransientEventAppState;
+import de.gamedevbaden.crucified.appstates.game.GameSessionManager;
+import de.gamedevbaden.crucified.enums.ActionType;
+import de.gamedevbaden.crucified.game.GameCommander;
+import de.gamedevbaden.crucified.game.GameEventListener;
+import de.gamedevbaden.crucified.game.TransientEvent;
+import de.gamedevbaden.crucified.game.TransientEventListener;
+import de.gamedevbaden.crucified.net.messages.TransientEventMessage;
+import de.gamedevbaden.crucified.net.serializers.VarIntCodec;
+import de.gamedevbaden.crucified.net.server.ServerGameCommander;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static de.gamedevbaden.crucified.net.replay.ReplayFormat.*;
+
+/**
+ * Records a match on the server: every component change of the entity data, every game session command
+ * of the players and every message the server game commanders send. Transient events are recorded
+ * as messages to all players. The records are appended to a binary file
+ * (see {@link ReplayFormat}) which can be played with the {@link ReplayReader}.
+ * <p>
+ * The records are collected in a buffer and written once per frame, so the recording costs about one
+ * write call per frame. Components which are never sent to clients have no serializer and are not recorded.
+ * <p>
+ * The recorder has to be attached to the state manager of the match before the scene entities are created.
+ */
+public class MatchRecorder extends AbstractAppState implements EntityComponentListener, GameEventListener, TransientEventListener {
+
+    private static final Logger log = Logger.getLogger(MatchRecorder.class.getName());
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(BUFFER_SIZE); // one record is serialized here first
+    private final Set<Class> skippedTypes = ConcurrentHashMap.newKeySet();
+
+    private FileChannel channel;
+    private ObservableEntityData entityData;
+    private GameSessionManager sessionManager;
+    private TransientEventAppState transientEvents;
+
+    private long startTime;
+    private int tick;
+    private long tickTime;
+    private int writtenTick = -1;
+    private long writtenTickTime;
+    private long recordCount;
+
+    /**
+     * @param file the file to record to, an existing file is overwritten
+     */
+    public MatchRecorder(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not open recording " + file, e);
+            return;
+        }
+
+        this.startTime = System.nanoTime();
+        writeHeader();
+
+        this.entityData = (ObservableEntityData) stateManager.getState(EntityDataState.class).getEntityData();
+        this.entityData.addEntityComponentListener(this);
+
+        this.sessionManager = stateManager.getState(GameSessionManager.class);
+        if (sessionManager != null) {
+            sessionManager.addGameEventListener(this);
+        }
+
+        this.transientEvents = stateManager.getState(TransientEventAppState.class);
+        if (transientEvents != null) {
+            transientEvents.addListener(this);
+        }
+
+        // the messages to the players are sent by their game commanders
+        GameCommanderHolder commanderHolder = stateManager.getState(GameCommanderHolder.class);
+        if (commanderHolder != null) {
+            for (EntityId player : commanderHolder.getPlayers()) {
+                GameCommander commander = commanderHolder.get(player);
+                if (commander instanceof ServerGameCommander) {
+                    ((ServerGameCommander) commander).setRecorder(this, player);
+                }
+            }
+        }
+
+        log.info("Recording to " + file);
+    }
+
+    @Override
+    public void update(float tpf) {
+        synchronized (this) {
+            tick++;
+            tickTime = (System.nanoTime() - startTime) / 1000000;
+            flush();
+        }
+    }
+
+    @Override
+    public void componentChange(EntityChange change) {
+        Class type = change.getComponentType();
+        if (Serializer.getExactSerializerRegistration(type) == null) {
+            if (skippedTypes.add(type)) {
+                log.fine(type.getSimpleName() + " is not registered for the network and won't be recorded");
+            }
+            return;
+        }
+
+        record(ENTITY_CHANGE, buffer -> {
+            buffer.putLong(change.getEntityId().getId());
+            Serializer.writeClass(buffer, type);
+            Serializer.writeClassAndObject(buffer, change.getComponent());
+        });
+    }
+
+    @Override
+    public void onEvent(TransientEvent event) {
+        recordMessage(null, new TransientEventMessage(Collections.singletonList(event)));
+    }
+
+    /**
+     * Records a message which has been sent to a player.
+     *
+     * @param player  the player entity of the receiver or null if it was sent to everyone
+     * @param message the message
+     */
+    public void recordMessage(EntityId player, Message message) {
+        record(MESSAGE, buffer -> {
+            buffer.putLong(player != null ? player.getId() : NO_PLAYER);
+            Serializer.writeClassAndObject(buffer, message);
+        });
+    }
+
+    private void recordCommand(byte command, Object... args) {
+        record(SESSION_COMMAND, buffer -> {
+            buffer.put(command);
+            buffer.put((byte) args.length);
+            for (Object arg : args) {
+                Serializer.writeClassAndObject(buffer, arg);
+            }
+        });
+    }
+
+    private synchronized void record(byte type, RecordWriter writer) {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            recordBuffer.clear();
+            writer.write(recordBuffer);
+            recordBuffer.flip();
+        } catch (IOException | BufferOverflowException e) {
+            log.log(Level.WARNING, "Could not record " + type, e);
+            return;
+        }
+
+        // the first record of a tick starts it
+        if (writtenTick != tick) {
+            ensureSpace(11);
+            writeBuffer.put(TICK);
+            VarIntCodec.writeVarInt(writeBuffer, tick - Math.max(0, writtenTick));
+            VarIntCodec.writeVarLong(writeBuffer, tickTime - writtenTickTime);
+            writtenTick = tick;
+            writtenTickTime = tickTime;
+        }
+
+        ensureSpace(6 + recordBuffer.remaining());
+        writeBuffer.put(type);
+        VarIntCodec.writeVarInt(writeBuffer, recordBuffer.remaining());
+        writeBuffer.put(recordBuffer);
+        recordCount++;
+    }
+
+    private void writeHeader() {
+        writeBuffer.putInt(MAGIC);
+        writeBuffer.putShort(VERSION);
+        writeBuffer.putLong(System.currentTimeMillis());
+        ReplayFormat.writeRegistrations(writeBuffer);
+        flush();
+    }
+
+    private void ensureSpace(int bytes) {
+        if (writeBuffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private synchronized void flush() {
+        if (channel == null || writeBuffer.position() == 0) {
+            return;
+        }
+
+        writeBuffer.flip();
+        try {
+            while (writeBuffer.hasRemaining()) {
+                channel.write(writeBuffer);
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not write recording, stopping it", e);
+            closeChannel();
+        }
+        writeBuffer.clear();
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not close recording", e);
+        }
+        channel = null;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of records written so far
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void cleanup() {
+        if (entityData != null) {
+            entityData.removeEntityComponentListener(this);
+        }
+        if (sessionManager != null) {
+            sessionManager.removeGameEventListener(this);
+        }
+        if (transientEvents != null) {
+            transientEvents.removeListener(this);
+        }
+
+        synchronized (this) {
+            if (channel != null) {
+                flush();
+                if (channel != null) {
+                    closeChannel();
+                }
+                log.info("Recorded " + recordCount + " records to " + file);
+            }
+        }
+        super.cleanup();
+    }
+
+    // the game session commands
+
+    @Override
+    public void onItemPickup(EntityId actor, EntityId itemToPickup) {
+        recordCommand(ITEM_PICKUP, actor, itemToPickup);
+    }
+
+    @Override
+    public void onItemDrop(EntityId playerId, EntityId itemToDrop) {
+        recordCommand(ITEM_DROP, playerId, itemToDrop);
+    }
+
+    @Override
+    public void onItemEquipped(EntityId player, EntityId itemToEquip) {
+        recordCommand(ITEM_EQUIPPED, player, itemToEquip);
+    }
+
+    @Override
+    public void onItemUnequipped(EntityId player, EntityId itemToRemove, EntityId containerId) {
+        recordCommand(ITEM_UNEQUIPPED, player, itemToRemove, containerId);
+    }
+
+    @Override
+    public void onInputChange(EntityId entityId, String mappingName, boolean isPressed) {
+        recordCommand(INPUT_CHANGE, entityId, mappingName, isPressed);
+    }
+
+    @Override
+    public void onViewDirectionChange(EntityId entityId, Vector3f newViewDirection) {
+        recordCommand(VIEW_DIRECTION_CHANGE, entityId, newViewDirection);
+    }
+
+    @Override
+    public void onInteraction(EntityId playerId, EntityId interactedEntity) {
+        recordCommand(INTERACTION, playerId, interactedEntity);
+    }
+
+    @Override
+    public void onFlashLightToggled(EntityId playerId, EntityId flashLightId) {
+        recordCommand(FLASH_LIGHT_TOGGLED, playerId, flashLightId);
+    }
+
+    @Override
+    public void onItemPutForCraft(EntityId itemToCraft, EntityId ingredient) {
+        recordCommand(ITEM_PUT_FOR_CRAFT, itemToCraft, ingredient);
+    }
+
+    @Override
+    public void onPutArtifactIntoContainer(EntityId containerId, EntityId artifactId) {
+        recordCommand(PUT_ARTIFACT_INTO_CONTAINER, containerId, artifactId);
+    }
+
+    @Override
+    public void onPerformAction(EntityId performerId, ActionType actionType, int spawnId) {
+        recordCommand(PERFORM_ACTION, performerId, actionType, spawnId);
+    }
+
+    @Override
+    public void onSettingCurse(EntityId player) {
+        recordCommand(SETTING_CURSE, player);
+    }
+
+    private interface RecordWriter {
+        void write(ByteBuffer buffer) throws IOException;
+    }
+}
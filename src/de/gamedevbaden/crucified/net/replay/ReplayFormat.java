@@ -0,0 +1,110 @@
+package de.gamedevbaden.crucified.net.replay;
+
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.SerializerRegistration;
+import com.jme3.network.serializing.serializers.FieldSerializer;
+import de.gamedevbaden.crucified.net.stats.StatsSerializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The format of a match recording.
+ * <p>
+ * The file starts with a header: magic number, version, the system time the recording has started and all
+ * serializer registrations of the server (id, class name and serializer class name). The replay registers
+ * the same ids, so values can be written with the class ids of the network serializers.
+ * <p>
+ * After the header there are only records: a type byte, a var int length and the payload.
+ * A {@link #TICK} record starts a new frame of the server and contains the tick number and the
+ * milliseconds since the start of the recording (both as difference to the previous tick).
+ * All following records belong to that tick.
+ */
+final class ReplayFormat {
+
+    static final int MAGIC = 0x43524543; // "CREC"
+    static final short VERSION = 2;
+
+    static final byte TICK = 0;
+    static final byte ENTITY_CHANGE = 1; // entity id, component class, component (null if removed)
+    static final byte SESSION_COMMAND = 2; // command, argument count, arguments
+    static final byte MESSAGE = 3; // player entity id (or -1), message
+
+    // the session commands, one for each method of the GameEventListener
+    static final byte ITEM_PICKUP = 0;
+    static final byte ITEM_DROP = 1;
+    static final byte ITEM_EQUIPPED = 2;
+    static final byte ITEM_UNEQUIPPED = 3;
+    static final byte INPUT_CHANGE = 4;
+    static final byte VIEW_DIRECTION_CHANGE = 5;
+    static final byte INTERACTION = 6;
+    static final byte FLASH_LIGHT_TOGGLED = 7;
+    static final byte ITEM_PUT_FOR_CRAFT = 8;
+    static final byte PUT_ARTIFACT_INTO_CONTAINER = 9;
+    static final byte PERFORM_ACTION = 10;
+    static final byte SETTING_CURSE = 11;
+
+    static final long NO_PLAYER = -1;
+
+    private ReplayFormat() {
+    }
+
+    static void writeRegistrations(ByteBuffer buffer) {
+        // primitives are registered by jME itself and can't be looked up by their name
+        List<SerializerRegistration> registrations = new ArrayList<>();
+        for (SerializerRegistration registration : Serializer.getSerializerRegistrations()) {
+            if (!registration.getType().isPrimitive()) {
+                registrations.add(registration);
+            }
+        }
+        buffer.putInt(registrations.size());
+        for (SerializerRegistration registration : registrations) {
+            Serializer serializer = registration.getSerializer();
+            if (serializer instanceof StatsSerializer) {
+                serializer = ((StatsSerializer) serializer).getDelegate(); // we don't want to count replayed messages
+            }
+            buffer.putShort(registration.getId());
+            writeString(buffer, registration.getType().getName());
+            writeString(buffer, serializer == null || serializer.getClass() == FieldSerializer.class ? "" : serializer.getClass().getName());
+        }
+    }
+
+    /**
+     * Registers the classes of the recording with the same ids the server has used.
+     */
+    static void readRegistrations(ByteBuffer buffer) throws IOException {
+        boolean readOnly = Serializer.isReadOnly();
+        Serializer.setReadOnly(false);
+        try {
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                short id = buffer.getShort();
+                String className = readString(buffer);
+                String serializerName = readString(buffer);
+
+                Class type = Class.forName(className);
+                Serializer serializer = serializerName.isEmpty() ? new FieldSerializer() : Class.forName(serializerName).asSubclass(Serializer.class).getDeclaredConstructor().newInstance();
+                Serializer.registerClassForId(id, type, serializer);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("The recording contains a class which doesn't exist", e);
+        } finally {
+            Serializer.setReadOnly(readOnly);
+        }
+    }
+
+    static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,325 @@
+package de.gamedevbaden.crucified.net.replay;
+
+import com.jme3.math.Vector3f;
+import com.jme3.network.Message;
+import com.jme3.network.serializing.Serializer;
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityComponent;
+import com.simsilica.es.EntityId;
+import de.gamedevbaden.crucified.enums.ActionType;
+import de.gamedevbaden.crucified.game.GameEventListener;
+import de.gamedevbaden.crucified.net.serializers.VarIntCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static de.gamedevbaden.crucified.net.replay.ReplayFormat.*;
+
+/**
+ * Reads a recording of the {@link MatchRecorder} tick by tick and hands the records to a {@link ReplayHandler}.
+ * The classes of the recording are registered with the ids the server has used when the reader is created,
+ * so a replay can't run in the same process as a server or client.
+ * <p>
+ * A recording which ends in the middle of a record (e.g. because the server has crashed) is read up to that record.
+ */
+public class ReplayReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 17;
+    private static final int MAX_TICK_HEADER_SIZE = 1 + 5 + 10;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final long recordingTime;
+    private final long dataStart;
+    private boolean endOfFile;
+
+    private int tick;
+    private long time;
+
+    public ReplayReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer.flip();
+
+        if (!ensure(6) || buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is no recording");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException(file + " has version " + version + " but we can only read version " + VERSION);
+        }
+
+        // the header has no length, but it's small enough to be in the first buffer
+        ensure(BUFFER_SIZE);
+        this.recordingTime = buffer.getLong();
+        ReplayFormat.readRegistrations(buffer);
+        this.dataStart = channel.position() - buffer.remaining();
+    }
+
+    /**
+     * Reads the next tick.
+     *
+     * @param handler gets all records of the tick
+     * @return false if there are no more ticks
+     * @throws IOException if the file can't be read or a record can't be deserialized
+     */
+    public boolean readTick(ReplayHandler handler) throws IOException {
+        if (!readTickHeader(true)) {
+            return false;
+        }
+
+        while (ensure(1) && buffer.get(buffer.position()) != TICK) {
+            if (!readRecord(handler)) {
+                return true; // the rest of the file is incomplete
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the time of the next tick in milliseconds since the start of the recording, or -1 if there is none
+     * @throws IOException if the file can't be read
+     */
+    public long peekNextTime() throws IOException {
+        ensure(MAX_TICK_HEADER_SIZE);
+        int position = buffer.position();
+        int previousTick = tick;
+        long previousTime = time;
+        try {
+            return readTickHeader(false) ? time : -1;
+        } finally {
+            buffer.position(position);
+            tick = previousTick;
+            time = previousTime;
+        }
+    }
+
+    /**
+     * Reads till the end of the recording without handling the records.
+     *
+     * @return the time of the last tick in milliseconds since the start of the recording
+     * @throws IOException if the file can't be read
+     */
+    public long skipToEnd() throws IOException {
+        while (readTickHeader(true)) {
+            while (ensure(1) && buffer.get(buffer.position()) != TICK) {
+                if (!skipRecord()) {
+                    return time;
+                }
+            }
+        }
+        return time;
+    }
+
+    /**
+     * Starts reading from the first tick again.
+     *
+     * @throws IOException if the file can't be read
+     */
+    public void rewind() throws IOException {
+        channel.position(dataStart);
+        buffer.clear().flip();
+        endOfFile = false;
+        tick = 0;
+        time = 0;
+    }
+
+    private boolean readTickHeader(boolean consume) throws IOException {
+        ensure(MAX_TICK_HEADER_SIZE);
+        if (!buffer.hasRemaining() || buffer.get(buffer.position()) != TICK) {
+            return false;
+        }
+        int position = buffer.position();
+        try {
+            buffer.get();
+            tick += VarIntCodec.readVarInt(buffer);
+            time += VarIntCodec.readVarLong(buffer);
+            return true;
+        } catch (RuntimeException e) {
+            buffer.position(position); // an incomplete tick at the end of the file
+            return false;
+        } finally {
+            if (!consume) {
+                buffer.position(position);
+            }
+        }
+    }
+
+    private boolean readRecord(ReplayHandler handler) throws IOException {
+        ensure(6);
+        long position = channel.position() - buffer.remaining();
+        byte type = buffer.get();
+        int length = VarIntCodec.readVarInt(buffer);
+        if (!ensure(length)) {
+            buffer.position(buffer.limit());
+            return false;
+        }
+
+        ByteBuffer payload = buffer.slice();
+        payload.limit(length);
+        buffer.position(buffer.position() + length);
+
+        try {
+            switch (type) {
+                case ENTITY_CHANGE:
+                    EntityId entityId = new EntityId(payload.getLong());
+                    Class componentType = Serializer.readClass(payload).getType();
+                    EntityComponent component = (EntityComponent) Serializer.readClassAndObject(payload);
+                    handler.onEntityChange(new EntityChange(entityId, componentType, component));
+                    break;
+                case SESSION_COMMAND:
+                    byte command = payload.get();
+                    Object[] args = new Object[payload.get()];
+                    for (int i = 0; i < args.length; i++) {
+                        args[i] = Serializer.readClassAndObject(payload);
+                    }
+                    handler.onSessionCommand(command, args);
+                    break;
+                case MESSAGE:
+                    long player = payload.getLong();
+                    Message message = (Message) Serializer.readClassAndObject(payload);
+                    handler.onMessage(player != NO_PLAYER ? new EntityId(player) : null, message);
+                    break;
+                default:
+                    break; // written by a newer version, we skip it
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Could not read record " + type + " at " + position, e);
+        }
+        return true;
+    }
+
+    private boolean skipRecord() throws IOException {
+        ensure(6);
+        buffer.get();
+        int length = VarIntCodec.readVarInt(buffer);
+        if (!ensure(length)) {
+            buffer.position(buffer.limit());
+            return false;
+        }
+        buffer.position(buffer.position() + length);
+        return true;
+    }
+
+    /**
+     * Reads from the file until the buffer has at least the given number of bytes or the file has ended.
+     *
+     * @return true if there are enough bytes
+     */
+    private boolean ensure(int bytes) throws IOException {
+        bytes = Math.min(bytes, BUFFER_SIZE);
+        if (buffer.remaining() >= bytes || endOfFile) {
+            return buffer.remaining() >= bytes;
+        }
+        buffer.compact();
+        while (!endOfFile && buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                endOfFile = true;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= bytes;
+    }
+
+    /**
+     * Calls the method of the listener which belongs to a recorded session command.
+     *
+     * @param command  the command
+     * @param args     the arguments of the command
+     * @param listener the listener
+     */
+    public static void dispatchSessionCommand(int command, Object[] args, GameEventListener listener) {
+        switch (command) {
+            case ITEM_PICKUP:
+                listener.onItemPickup((EntityId) args[0], (EntityId) args[1]);
+                break;
+            case ITEM_DROP:
+                listener.onItemDrop((EntityId) args[0], (EntityId) args[1]);
+                break;
+            case ITEM_EQUIPPED:
+                listener.onItemEquipped((EntityId) args[0], (EntityId) args[1]);
+                break;
+            case ITEM_UNEQUIPPED:
+                listener.onItemUnequipped((EntityId) args[0], (EntityId) args[1], (EntityId) args[2]);
+                break;
+            case INPUT_CHANGE:
+                listener.onInputChange((EntityId) args[0], (String) args[1], (Boolean) args[2]);
+                break;
+            case VIEW_DIRECTION_CHANGE:
+                listener.onViewDirectionChange((EntityId) args[0], (Vector3f) args[1]);
+                break;
+            case INTERACTION:
+                listener.onInteraction((EntityId) args[0], (EntityId) args[1]);
+                break;
+            case FLASH_LIGHT_TOGGLED:
+                listener.onFlashLightToggled((EntityId) args[0], (EntityId) args[1]);
+                break;
+            case ITEM_PUT_FOR_CRAFT:
+                listener.onItemPutForCraft((EntityId) args[0], (EntityId) args[1]);
+                break;
+            case PUT_ARTIFACT_INTO_CONTAINER:
+                listener.onPutArtifactIntoContainer((EntityId) args[0], (EntityId) args[1]);
+                break;
+            case PERFORM_ACTION:
+                // the spawn id has been added later, older recordings don't have it
+                listener.onPerformAction((EntityId) args[0], (ActionType) args[1], args.length > 2 ? (Integer) args[2] : 0);
+                break;
+            case SETTING_CURSE:
+                listener.onSettingCurse((EntityId) args[0]);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return the number of the last read tick
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * @return the time of the last read tick in milliseconds since the start of the recording
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the system time in milliseconds the recording has been started at
+     */
+    public long getRecordingTime() {
+        return recordingTime;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Gets the records of a recording.
+     */
+    public interface ReplayHandler {
+
+        void onEntityChange(EntityChange change);
+
+        /**
+         * A game session command of a player, see {@link #dispatchSessionCommand(int, Object[], GameEventListener)}.
+         *
+         * @param command the command
+         * @param args    the arguments of the command
+         */
+        void onSessionCommand(int command, Object[] args);
+
+        /**
+         * @param player  the player the message has been sent to or null if it was sent to all players
+         * @param message the message
+         */
+        void onMessage(EntityId player, Message message);
+    }
+}
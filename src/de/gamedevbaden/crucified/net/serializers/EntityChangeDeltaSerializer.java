@@ -0,0 +1,82 @@
+package de.gamedevbaden.crucified.net.serializers;
+
+import com.jme3.network.serializing.Serializer;
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityComponent;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.net.TransientUtils;
+import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.net.stats.NetworkStats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Replaces the EntityChangeSerializer of Zay-ES.
+ * The format is the same, but we tell the {@link TransformSerializer} which entity it is
+ * writing or reading right now, so it can encode the transform as a delta (see {@link TransformBaselines}).
+ * The size of each change is recorded for its component type in the {@link NetworkStats}.
+ */
+public class EntityChangeDeltaSerializer extends Serializer {
+
+    private Serializer idSerializer;
+    private Serializer classSerializer;
+
+    @Override
+    public void initialize(Class type) {
+        idSerializer = Serializer.getSerializer(EntityId.class, false);
+        classSerializer = Serializer.getSerializer(Class.class, true);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        int start = data.position();
+        EntityId id = idSerializer.readObject(data, EntityId.class);
+        Class type = classSerializer.readObject(data, Class.class);
+
+        TransformBaselines baselines = TransformBaselines.forReading();
+        baselines.setCurrentEntity(id.getId());
+        Object component;
+        try {
+            component = Serializer.readClassAndObject(data);
+        } finally {
+            baselines.setCurrentEntity(TransformBaselines.NO_ENTITY);
+        }
+
+        if (component == null && type == Transform.class) {
+            baselines.remove(id.getId());
+        }
+
+        NetworkStats.recordComponentReceived(type, data.position() - start);
+        return (T) new EntityChange(id, type, (EntityComponent) component);
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        EntityChange change = (EntityChange) object;
+        int start = buffer.position();
+
+        idSerializer.writeObject(buffer, change.getEntityId());
+        classSerializer.writeObject(buffer, change.getComponentType());
+
+        TransformBaselines baselines = TransformBaselines.forWriting();
+        if (baselines == null) {
+            Serializer.writeClassAndObject(buffer, TransientUtils.clean(change.getComponent()));
+        } else {
+            long id = change.getEntityId().getId();
+            baselines.setCurrentEntity(id);
+            try {
+                Serializer.writeClassAndObject(buffer, TransientUtils.clean(change.getComponent()));
+            } finally {
+                baselines.setCurrentEntity(TransformBaselines.NO_ENTITY);
+            }
+
+            if (change.getComponent() == null && change.getComponentType() == Transform.class) {
+                baselines.remove(id);
+            }
+        }
+
+        NetworkStats.recordComponentSent(change.getComponentType(), buffer.position() - start);
+    }
+}
@@ -0,0 +1,552 @@
+package de.gamedevbaden.crucified.net.serializers;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializer;
+import com.simsilica.es.EntityId;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A serializer which is generated at startup for a component or message class. It replaces the reflective
+ * FieldSerializer of jME: the fields are looked up once and are accessed through method handles afterwards.
+ * <p>
+ * Every field gets a codec for its type:
+ * <ul>
+ * <li>entity ids are written as varints</li>
+ * <li>enums as their ordinal in a byte</li>
+ * <li>ints and longs as zigzag varints, floats, vectors and quaternions as raw floats</li>
+ * <li>strings as UTF-8 with a varint length</li>
+ * <li>fields of other types with {@link Serializer#writeClassAndObject(ByteBuffer, Object)}</li>
+ * </ul>
+ * The object is prefixed with a bitmap: one bit per boolean field for its value and one bit per object field
+ * that tells if it isn't null, so booleans and null values take no further space.
+ * <p>
+ * Static and transient fields are skipped like the FieldSerializer does and the fields are written in the order of
+ * their names, so server and client need the same versions of the classes.
+ */
+public class GeneratedSerializer extends Serializer {
+
+    private static final int MAX_FLAGS = 63;
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private Class<?> type;
+    private MethodHandle constructor;
+    private FieldCodec[] codecs;
+
+    @Override
+    public void initialize(Class type) {
+        this.type = type;
+        try {
+            Constructor<?> defaultConstructor = this.type.getDeclaredConstructor();
+            defaultConstructor.setAccessible(true);
+            this.constructor = LOOKUP.unreflectConstructor(defaultConstructor).asType(MethodType.methodType(Object.class));
+
+            List<Field> fields = new ArrayList<>();
+            for (Class c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        fields.add(field);
+                    }
+                }
+            }
+            fields.sort(Comparator.comparing(Field::getName));
+
+            this.codecs = new FieldCodec[fields.size()];
+            int flags = 0;
+            for (int i = 0; i < codecs.length; i++) {
+                codecs[i] = createCodec(fields.get(i));
+                if (codecs[i].usesFlag()) {
+                    codecs[i].flag = 1L << flags++;
+                }
+            }
+            if (flags > MAX_FLAGS) {
+                throw new IllegalArgumentException(type + " has more than " + MAX_FLAGS + " boolean and object fields");
+            }
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Can't generate a serializer for " + type, e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        try {
+            Object object = constructor.invokeExact();
+            long flags = VarIntCodec.readVarLong(data);
+            for (FieldCodec codec : codecs) {
+                codec.read(data, object, flags);
+            }
+            return (T) object;
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("Can't read " + type, t);
+        }
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        try {
+            long flags = 0;
+            for (FieldCodec codec : codecs) {
+                flags |= codec.getFlag(object);
+            }
+            VarIntCodec.writeVarLong(buffer, flags);
+            for (FieldCodec codec : codecs) {
+                codec.write(buffer, object, flags);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("Can't write " + type, t);
+        }
+    }
+
+    /**
+     * @return the amount of fields which are written
+     */
+    public int getFieldCount() {
+        return codecs.length;
+    }
+
+    private static FieldCodec createCodec(Field field) throws IllegalAccessException {
+        field.setAccessible(true);
+        MethodHandle getter = LOOKUP.unreflectGetter(field);
+        MethodHandle setter = LOOKUP.unreflectSetter(field);
+        Class<?> fieldType = field.getType();
+
+        if (fieldType.isPrimitive()) {
+            getter = getter.asType(MethodType.methodType(fieldType, Object.class));
+            setter = setter.asType(MethodType.methodType(void.class, Object.class, fieldType));
+            if (fieldType == boolean.class) return new BooleanCodec(getter, setter);
+            if (fieldType == int.class) return new IntCodec(getter, setter);
+            if (fieldType == long.class) return new LongCodec(getter, setter);
+            if (fieldType == float.class) return new FloatCodec(getter, setter);
+            if (fieldType == double.class) return new DoubleCodec(getter, setter);
+            if (fieldType == byte.class) return new ByteCodec(getter, setter);
+            if (fieldType == short.class) return new ShortCodec(getter, setter);
+            return new CharCodec(getter, setter);
+        }
+
+        getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+        setter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        if (fieldType == EntityId.class) return new EntityIdCodec(getter, setter);
+        if (fieldType.isEnum()) return new EnumCodec(getter, setter, fieldType.getEnumConstants());
+        if (fieldType == String.class) return new StringCodec(getter, setter);
+        if (fieldType == Vector3f.class) return new Vector3fCodec(getter, setter);
+        if (fieldType == Quaternion.class) return new QuaternionCodec(getter, setter);
+        if (fieldType == byte[].class) return new ByteArrayCodec(getter, setter);
+        if (fieldType.isArray() && fieldType.getComponentType().isEnum()) {
+            return new EnumArrayCodec(getter, setter, fieldType.getComponentType());
+        }
+        return new ObjectCodec(getter, setter);
+    }
+
+    /**
+     * Writes and reads a single field.
+     */
+    private static abstract class FieldCodec {
+
+        final MethodHandle getter;
+        final MethodHandle setter;
+        long flag; // the bit of this field in the flags, 0 if it doesn't use one
+
+        FieldCodec(MethodHandle getter, MethodHandle setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        /**
+         * @return true if the field needs a bit in the flags
+         */
+        boolean usesFlag() {
+            return false;
+        }
+
+        /**
+         * @return the bit of this field if it's set for the object, else 0
+         */
+        long getFlag(Object object) throws Throwable {
+            return 0;
+        }
+
+        abstract void write(ByteBuffer buffer, Object object, long flags) throws Throwable;
+
+        abstract void read(ByteBuffer buffer, Object object, long flags) throws Throwable;
+    }
+
+    private static class BooleanCodec extends FieldCodec {
+
+        BooleanCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        boolean usesFlag() {
+            return true;
+        }
+
+        @Override
+        long getFlag(Object object) throws Throwable {
+            return (boolean) getter.invokeExact(object) ? flag : 0;
+        }
+
+        @Override
+        void write(ByteBuffer buffer, Object object, long flags) {
+            // the value is the flag
+        }
+
+        @Override
+        void read(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            setter.invokeExact(object, (flags & flag) != 0);
+        }
+    }
+
+    private static class IntCodec extends FieldCodec {
+
+        IntCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            VarIntCodec.writeSignedVarInt(buffer, (int) getter.invokeExact(object));
+        }
+
+        @Override
+        void read(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            setter.invokeExact(object, VarIntCodec.readSignedVarInt(buffer));
+        }
+    }
+
+    private static class LongCodec extends FieldCodec {
+
+        LongCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            VarIntCodec.writeSignedVarLong(buffer, (long) getter.invokeExact(object));
+        }
+
+        @Override
+        void read(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            setter.invokeExact(object, VarIntCodec.readSignedVarLong(buffer));
+        }
+    }
+
+    private static class FloatCodec extends FieldCodec {
+
+        FloatCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            buffer.putFloat((float) getter.invokeExact(object));
+        }
+
+        @Override
+        void read(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            setter.invokeExact(object, buffer.getFloat());
+        }
+    }
+
+    private static class DoubleCodec extends FieldCodec {
+
+        DoubleCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            buffer.putDouble((double) getter.invokeExact(object));
+        }
+
+        @Override
+        void read(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            setter.invokeExact(object, buffer.getDouble());
+        }
+    }
+
+    private static class ByteCodec extends FieldCodec {
+
+        ByteCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            buffer.put((byte) getter.invokeExact(object));
+        }
+
+        @Override
+        void read(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            setter.invokeExact(object, buffer.get());
+        }
+    }
+
+    private static class ShortCodec extends FieldCodec {
+
+        ShortCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            VarIntCodec.writeSignedVarInt(buffer, (short) getter.invokeExact(object));
+        }
+
+        @Override
+        void read(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            setter.invokeExact(object, (short) VarIntCodec.readSignedVarInt(buffer));
+        }
+    }
+
+    private static class CharCodec extends FieldCodec {
+
+        CharCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void write(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            VarIntCodec.writeVarInt(buffer, (char) getter.invokeExact(object));
+        }
+
+        @Override
+        void read(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            setter.invokeExact(object, (char) VarIntCodec.readVarInt(buffer));
+        }
+    }
+
+    /**
+     * Object fields use their flag to mark that they aren't null, only values which aren't null are written.
+     */
+    private static abstract class NullableCodec extends FieldCodec {
+
+        NullableCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        boolean usesFlag() {
+            return true;
+        }
+
+        @Override
+        long getFlag(Object object) throws Throwable {
+            return (Object) getter.invokeExact(object) != null ? flag : 0;
+        }
+
+        @Override
+        void write(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            if ((flags & flag) != 0) {
+                writeValue(buffer, (Object) getter.invokeExact(object));
+            }
+        }
+
+        @Override
+        void read(ByteBuffer buffer, Object object, long flags) throws Throwable {
+            Object value = (flags & flag) != 0 ? readValue(buffer) : null;
+            setter.invokeExact(object, value);
+        }
+
+        abstract void writeValue(ByteBuffer buffer, Object value) throws IOException;
+
+        abstract Object readValue(ByteBuffer buffer) throws IOException;
+    }
+
+    private static class EntityIdCodec extends NullableCodec {
+
+        EntityIdCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void writeValue(ByteBuffer buffer, Object value) {
+            VarIntCodec.writeVarLong(buffer, ((EntityId) value).getId());
+        }
+
+        @Override
+        Object readValue(ByteBuffer buffer) {
+            return new EntityId(VarIntCodec.readVarLong(buffer));
+        }
+    }
+
+    private static class EnumCodec extends NullableCodec {
+
+        private final Object[] constants;
+
+        EnumCodec(MethodHandle getter, MethodHandle setter, Object[] constants) {
+            super(getter, setter);
+            this.constants = constants;
+        }
+
+        @Override
+        void writeValue(ByteBuffer buffer, Object value) {
+            writeOrdinal(buffer, ((Enum) value).ordinal(), constants.length);
+        }
+
+        @Override
+        Object readValue(ByteBuffer buffer) {
+            return constants[readOrdinal(buffer, constants.length)];
+        }
+    }
+
+    private static class EnumArrayCodec extends NullableCodec {
+
+        private final Class<?> enumType;
+        private final Object[] constants;
+
+        EnumArrayCodec(MethodHandle getter, MethodHandle setter, Class<?> enumType) {
+            super(getter, setter);
+            this.enumType = enumType;
+            this.constants = enumType.getEnumConstants();
+        }
+
+        @Override
+        void writeValue(ByteBuffer buffer, Object value) {
+            Object[] array = (Object[]) value;
+            VarIntCodec.writeVarInt(buffer, array.length);
+            for (Object element : array) {
+                // null elements are written as the ordinal after the last constant
+                writeOrdinal(buffer, element != null ? ((Enum) element).ordinal() : constants.length, constants.length + 1);
+            }
+        }
+
+        @Override
+        Object readValue(ByteBuffer buffer) {
+            Object[] array = (Object[]) java.lang.reflect.Array.newInstance(enumType, VarIntCodec.readVarInt(buffer));
+            for (int i = 0; i < array.length; i++) {
+                int ordinal = readOrdinal(buffer, constants.length + 1);
+                array[i] = ordinal < constants.length ? constants[ordinal] : null;
+            }
+            return array;
+        }
+    }
+
+    private static class StringCodec extends NullableCodec {
+
+        StringCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void writeValue(ByteBuffer buffer, Object value) {
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            VarIntCodec.writeVarInt(buffer, bytes.length);
+            buffer.put(bytes);
+        }
+
+        @Override
+        Object readValue(ByteBuffer buffer) {
+            byte[] bytes = new byte[VarIntCodec.readVarInt(buffer)];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class Vector3fCodec extends NullableCodec {
+
+        Vector3fCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void writeValue(ByteBuffer buffer, Object value) {
+            Vector3f vector = (Vector3f) value;
+            buffer.putFloat(vector.x).putFloat(vector.y).putFloat(vector.z);
+        }
+
+        @Override
+        Object readValue(ByteBuffer buffer) {
+            return new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        }
+    }
+
+    private static class QuaternionCodec extends NullableCodec {
+
+        QuaternionCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void writeValue(ByteBuffer buffer, Object value) {
+            Quaternion rotation = (Quaternion) value;
+            buffer.putFloat(rotation.getX()).putFloat(rotation.getY()).putFloat(rotation.getZ()).putFloat(rotation.getW());
+        }
+
+        @Override
+        Object readValue(ByteBuffer buffer) {
+            return new Quaternion(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        }
+    }
+
+    private static class ByteArrayCodec extends NullableCodec {
+
+        ByteArrayCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void writeValue(ByteBuffer buffer, Object value) {
+            byte[] bytes = (byte[]) value;
+            VarIntCodec.writeVarInt(buffer, bytes.length);
+            buffer.put(bytes);
+        }
+
+        @Override
+        Object readValue(ByteBuffer buffer) {
+            byte[] bytes = new byte[VarIntCodec.readVarInt(buffer)];
+            buffer.get(bytes);
+            return bytes;
+        }
+    }
+
+    /**
+     * Fields of any other type are written with the serializer registered for the class of their value.
+     */
+    private static class ObjectCodec extends NullableCodec {
+
+        ObjectCodec(MethodHandle getter, MethodHandle setter) {
+            super(getter, setter);
+        }
+
+        @Override
+        void writeValue(ByteBuffer buffer, Object value) throws IOException {
+            Serializer.writeClassAndObject(buffer, value);
+        }
+
+        @Override
+        Object readValue(ByteBuffer buffer) throws IOException {
+            return Serializer.readClassAndObject(buffer);
+        }
+    }
+
+    private static void writeOrdinal(ByteBuffer buffer, int ordinal, int count) {
+        if (count <= 256) {
+            buffer.put((byte) ordinal);
+        } else {
+            VarIntCodec.writeVarInt(buffer, ordinal);
+        }
+    }
+
+    private static int readOrdinal(ByteBuffer buffer, int count) {
+        return count <= 256 ? buffer.get() & 0xFF : VarIntCodec.readVarInt(buffer);
+    }
+}
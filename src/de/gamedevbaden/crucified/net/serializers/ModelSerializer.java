@@ -0,0 +1,25 @@
+package de.gamedevbaden.crucified.net.serializers;
+
+import com.jme3.network.serializing.Serializer;
+import de.gamedevbaden.crucified.es.components.Model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the path of a {@link Model} only the first time for a connection, afterwards a small id
+ * (see {@link SessionStrings}).
+ */
+public class ModelSerializer extends Serializer {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        return (T) new Model(SessionStrings.read(data));
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        SessionStrings.write(buffer, ((Model) object).getAssetId());
+    }
+}
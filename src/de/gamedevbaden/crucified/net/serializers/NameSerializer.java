@@ -0,0 +1,24 @@
+package de.gamedevbaden.crucified.net.serializers;
+
+import com.jme3.network.serializing.Serializer;
+import de.gamedevbaden.crucified.es.components.Name;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the interned name of a {@link Name} like the {@link ModelSerializer} writes paths (see {@link SessionStrings}).
+ */
+public class NameSerializer extends Serializer {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        return (T) new Name(SessionStrings.read(data));
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        SessionStrings.write(buffer, ((Name) object).getNameId());
+    }
+}
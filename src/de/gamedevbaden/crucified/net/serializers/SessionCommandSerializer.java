@@ -0,0 +1,87 @@
+package de.gamedevbaden.crucified.net.serializers;
+
+import com.jme3.network.serializing.Serializer;
+import com.simsilica.es.EntityId;
+import de.gamedevbaden.crucified.enums.ActionType;
+import de.gamedevbaden.crucified.game.SessionCommand;
+import de.gamedevbaden.crucified.net.messages.SessionCommandMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes a {@link SessionCommandMessage}: the first sequence number and the number of commands, then the type
+ * of each command as one byte followed by its arguments. Entity ids are written as varints, one higher than
+ * the id so 0 stands for null. Only the arguments a command type uses are written,
+ * actions also have their spawn id.
+ */
+public class SessionCommandSerializer extends Serializer {
+
+    private static final SessionCommand.Type[] TYPES = SessionCommand.Type.values();
+    private static final ActionType[] ACTION_TYPES = ActionType.values();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        int firstSequence = VarIntCodec.readVarInt(data);
+        SessionCommand[] commands = new SessionCommand[VarIntCodec.readVarInt(data)];
+
+        for (int i = 0; i < commands.length; i++) {
+            SessionCommand.Type type = TYPES[data.get() & 0xFF];
+            EntityId first = usesFirst(type) ? readEntityId(data) : null;
+            EntityId second = usesSecond(type) ? readEntityId(data) : null;
+            ActionType actionType = null;
+            int spawnId = 0;
+            if (type == SessionCommand.Type.PerformAction) {
+                int ordinal = data.get() & 0xFF;
+                actionType = ordinal > 0 ? ACTION_TYPES[ordinal - 1] : null;
+                spawnId = VarIntCodec.readVarInt(data);
+            }
+            commands[i] = new SessionCommand(type, first, second, actionType, spawnId);
+        }
+        return (T) new SessionCommandMessage(firstSequence, commands);
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        SessionCommandMessage message = (SessionCommandMessage) object;
+        SessionCommand[] commands = message.getCommands();
+        VarIntCodec.writeVarInt(buffer, message.getFirstSequence());
+        VarIntCodec.writeVarInt(buffer, commands.length);
+
+        for (SessionCommand command : commands) {
+            SessionCommand.Type type = command.getType();
+            buffer.put((byte) type.ordinal());
+            if (usesFirst(type)) {
+                writeEntityId(buffer, command.getFirst());
+            }
+            if (usesSecond(type)) {
+                writeEntityId(buffer, command.getSecond());
+            }
+            if (type == SessionCommand.Type.PerformAction) {
+                ActionType actionType = command.getActionType();
+                buffer.put((byte) (actionType != null ? actionType.ordinal() + 1 : 0));
+                VarIntCodec.writeVarInt(buffer, command.getSpawnId());
+            }
+        }
+    }
+
+    private static boolean usesFirst(SessionCommand.Type type) {
+        return type != SessionCommand.Type.PerformAction && type != SessionCommand.Type.SetCurse;
+    }
+
+    private static boolean usesSecond(SessionCommand.Type type) {
+        return type == SessionCommand.Type.UnequipItem
+                || type == SessionCommand.Type.PutArtifactIntoContainer
+                || type == SessionCommand.Type.PutItemToCraft;
+    }
+
+    private static void writeEntityId(ByteBuffer buffer, EntityId id) {
+        VarIntCodec.writeVarLong(buffer, id != null ? id.getId() + 1 : 0);
+    }
+
+    private static EntityId readEntityId(ByteBuffer data) {
+        long id = VarIntCodec.readVarLong(data);
+        return id != 0 ? new EntityId(id - 1) : null;
+    }
+}
@@ -0,0 +1,115 @@
+package de.gamedevbaden.crucified.net.serializers;
+
+import de.gamedevbaden.crucified.es.utils.StringIds;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * The string dictionary both sides of a connection agree on. A string is sent once with the id it gets
+ * for this connection, afterwards only that id is sent. Both sides map the ids of the connection
+ * to the ids of their own process (see {@link StringIds}).
+ * <p>
+ * Like the {@link TransformBaselines} the dictionary of a connection is bound to the thread which writes
+ * the reliable entity changes on server side and to the thread which reads them on client side. Strings written
+ * without a dictionary, e.g. in answers to entity set requests or in recordings, are written in full.
+ */
+public class SessionStrings {
+
+    private static final ThreadLocal<SessionStrings> writeContext = new ThreadLocal<>();
+    private static final ThreadLocal<SessionStrings> readContext = ThreadLocal.withInitial(SessionStrings::new);
+
+    private static final int INLINE = 0;
+
+    private final HashMap<Integer, Integer> sessionIds = new HashMap<>(); // local id -> id of this connection
+    private final HashMap<Integer, Integer> localIds = new HashMap<>(); // id of this connection -> local id
+
+    /**
+     * Binds the dictionary of a connection to the current (sending) thread.
+     * Call {@link #endWrite()} once the messages have been written.
+     *
+     * @param strings the dictionary of the connection messages are sent to
+     */
+    public static void beginWrite(SessionStrings strings) {
+        writeContext.set(strings);
+    }
+
+    public static void endWrite() {
+        writeContext.remove();
+    }
+
+    /**
+     * Writes the interned string with that id. The first time it is written for a connection the string is added,
+     * afterwards just its id.
+     * <p>
+     * Format: a var int header. 0 means that the string follows without an id, an odd value is the known id
+     * <code>header >> 1</code>, any other value is the new id <code>header >> 1</code> followed by the string.
+     *
+     * @param buffer the buffer
+     * @param id     the local id of the string
+     */
+    static void write(ByteBuffer buffer, int id) {
+        SessionStrings strings = writeContext.get();
+        if (strings == null) {
+            VarIntCodec.writeVarInt(buffer, INLINE);
+            writeString(buffer, StringIds.getString(id));
+            return;
+        }
+
+        Integer sessionId = strings.sessionIds.get(id);
+        if (sessionId != null) {
+            VarIntCodec.writeVarInt(buffer, (sessionId << 1) | 1);
+            return;
+        }
+        sessionId = strings.sessionIds.size() + 1;
+        strings.sessionIds.put(id, sessionId);
+        VarIntCodec.writeVarInt(buffer, sessionId << 1);
+        writeString(buffer, StringIds.getString(id));
+    }
+
+    /**
+     * Reads a string written by {@link #write(ByteBuffer, int)}.
+     *
+     * @param buffer the buffer
+     * @return the local id of the string
+     */
+    static int read(ByteBuffer buffer) {
+        int header = VarIntCodec.readVarInt(buffer);
+        if (header == INLINE) {
+            return StringIds.getId(readString(buffer));
+        }
+
+        HashMap<Integer, Integer> localIds = readContext.get().localIds;
+        if ((header & 1) != 0) {
+            Integer id = localIds.get(header >> 1);
+            if (id == null) {
+                throw new IllegalStateException("Unknown string #" + (header >> 1));
+            }
+            return id;
+        }
+        int id = StringIds.getId(readString(buffer));
+        localIds.put(header >> 1, id);
+        return id;
+    }
+
+    private static void writeString(ByteBuffer buffer, String string) {
+        if (string == null) {
+            VarIntCodec.writeVarInt(buffer, 0);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        VarIntCodec.writeVarInt(buffer, bytes.length + 1);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = VarIntCodec.readVarInt(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
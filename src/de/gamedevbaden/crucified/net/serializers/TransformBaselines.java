@@ -0,0 +1,124 @@
+package de.gamedevbaden.crucified.net.serializers;
+
+import java.util.HashMap;
+
+/**
+ * Stores the last quantized {@link de.gamedevbaden.crucified.es.components.Transform} per entity
+ * which both sides of a connection agree on. The {@link TransformSerializer} encodes new values as
+ * deltas against these baselines.
+ * <p>
+ * On server side every connection has its own baselines (see the GameHostedEntityData).
+ * Entity changes are sent over the reliable channel, so the last value written for a connection
+ * is exactly the value the client holds when it decodes the next one. Transforms which are sent unreliable
+ * (see {@link TransformUpdateSerializer}) neither use nor change the baselines.
+ * On client side the baselines are bound to the reading thread. jME reads every connection on its
+ * own thread, so this is the client-side counterpart of the per connection server table.
+ */
+public class TransformBaselines {
+
+    private static final ThreadLocal<TransformBaselines> writeContext = new ThreadLocal<>();
+    private static final ThreadLocal<TransformBaselines> readContext = ThreadLocal.withInitial(TransformBaselines::new);
+
+    static final long NO_ENTITY = Long.MIN_VALUE;
+
+    private HashMap<Long, Baseline> baselines = new HashMap<>();
+    private long currentEntity = NO_ENTITY;
+    private long time; // the server time which is written with the transforms, 0 if none
+
+    /**
+     * Binds the baselines of a connection to the current (sending) thread.
+     * Call {@link #endWrite()} once the messages have been written.
+     *
+     * @param baselines the baselines of the connection messages are sent to
+     */
+    public static void beginWrite(TransformBaselines baselines) {
+        beginWrite(baselines, 0);
+    }
+
+    /**
+     * Like {@link #beginWrite(TransformBaselines)}, but all transforms are stamped with the given server time.
+     *
+     * @param baselines the baselines of the connection messages are sent to
+     * @param time      the server time in milliseconds
+     */
+    public static void beginWrite(TransformBaselines baselines, long time) {
+        baselines.time = time;
+        writeContext.set(baselines);
+    }
+
+    public static void endWrite() {
+        TransformBaselines baselines = writeContext.get();
+        if (baselines != null) {
+            baselines.currentEntity = NO_ENTITY;
+            baselines.time = 0;
+        }
+        writeContext.remove();
+    }
+
+    /**
+     * @return the baselines of the connection which is currently written to or null
+     * if the thread does not write entity changes right now.
+     */
+    static TransformBaselines forWriting() {
+        return writeContext.get();
+    }
+
+    /**
+     * @return the baselines of the connection which is read on this thread
+     */
+    static TransformBaselines forReading() {
+        return readContext.get();
+    }
+
+    void setCurrentEntity(long entityId) {
+        this.currentEntity = entityId;
+    }
+
+    long getCurrentEntity() {
+        return currentEntity;
+    }
+
+    long getTime() {
+        return time;
+    }
+
+    Baseline get(long entityId) {
+        return baselines.get(entityId);
+    }
+
+    Baseline getOrCreate(long entityId) {
+        Baseline baseline = baselines.get(entityId);
+        if (baseline == null) {
+            baseline = new Baseline();
+            baselines.put(entityId, baseline);
+        }
+        return baseline;
+    }
+
+    /**
+     * @param entityId the entity
+     * @return true if both sides have a baseline for the entity, i.e. the client has received a transform of it
+     */
+    public boolean contains(long entityId) {
+        return baselines.containsKey(entityId);
+    }
+
+    void remove(long entityId) {
+        baselines.remove(entityId);
+    }
+
+    public void clear() {
+        baselines.clear();
+    }
+
+    /**
+     * The quantized state of one entity's transform.
+     */
+    static class Baseline {
+        boolean inBounds;
+        int x, y, z;
+        int rotation;
+        float scaleX = 1, scaleY = 1, scaleZ = 1;
+        long time;
+    }
+}
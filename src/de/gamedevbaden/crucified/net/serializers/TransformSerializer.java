@@ -0,0 +1,316 @@
+package de.gamedevbaden.crucified.net.serializers;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializer;
+import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A compact serializer for the {@link Transform} component.
+ * <ul>
+ * <li>Positions are quantized to {@link #POSITION_BITS} bits per axis relative to the world bounds</li>
+ * <li>Rotations are written with the "smallest three" encoding in a single int</li>
+ * <li>Scale is only written when it isn't (1,1,1)</li>
+ * <li>If a baseline for the entity exists (see {@link TransformBaselines}) only the difference is written</li>
+ * <li>The server time of the tick is written if the server sets one, as difference to the baseline time</li>
+ * </ul>
+ * A full transform takes about 14 bytes instead of 40, a typical movement update 4 to 7 bytes.
+ * Positions outside of the world bounds are written as raw floats.
+ * <p>
+ * Note that server and client need to use the same world bounds!
+ */
+public class TransformSerializer extends Serializer {
+
+    public static final int POSITION_BITS = 20;
+
+    private static final int MAX_QUANTIZED_POSITION = (1 << POSITION_BITS) - 1;
+    private static final int MAX_QUANTIZED_ROTATION = (1 << 10) - 1;
+    private static final float ROTATION_RANGE = 1f / FastMath.sqrt(2f); // the smallest three components are in [-range, range]
+    private static final int IDENTITY_ROTATION = packRotation(Quaternion.IDENTITY);
+
+    // flags which are written in the first byte
+    private static final int DELTA = 0x01; // the values are relative to the baseline
+    private static final int STORE = 0x02; // the values become the new baseline of the entity
+    private static final int POSITION = 0x04;
+    private static final int ROTATION = 0x08;
+    private static final int SCALE = 0x10;
+    private static final int RAW_POSITION = 0x20; // position is out of bounds and written as floats
+    private static final int TIME = 0x40; // the server time of the update is written
+
+    private static Vector3f worldMin = GameConstants.NETWORK_WORLD_MIN.clone();
+    private static Vector3f worldMax = GameConstants.NETWORK_WORLD_MAX.clone();
+
+    // holds the quantized values while reading or writing, so we don't need a new object every time
+    private final ThreadLocal<TransformBaselines.Baseline> tempBaseline = ThreadLocal.withInitial(TransformBaselines.Baseline::new);
+
+    /**
+     * Sets the bounds positions are quantized in. Use this if a level is bigger than the default bounds.
+     * This needs to be set on server and client side before any transform is sent.
+     *
+     * @param min the minimum corner of the level
+     * @param max the maximum corner of the level
+     */
+    public static void setWorldBounds(Vector3f min, Vector3f max) {
+        worldMin.set(min);
+        worldMax.set(max);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        int flags = data.get() & 0xFF;
+
+        TransformBaselines context = TransformBaselines.forReading();
+        long entityId = context.getCurrentEntity();
+
+        TransformBaselines.Baseline baseline = null;
+        if ((flags & DELTA) != 0) {
+            baseline = context.get(entityId);
+            if (baseline == null) {
+                throw new IOException("No transform baseline for entity " + entityId);
+            }
+        }
+
+        TransformBaselines.Baseline value = tempBaseline.get();
+        Vector3f location = new Vector3f();
+
+        // position
+        if ((flags & RAW_POSITION) != 0) {
+            location.set(data.getFloat(), data.getFloat(), data.getFloat());
+            value.inBounds = false;
+        } else {
+            if (baseline != null) {
+                value.x = baseline.x;
+                value.y = baseline.y;
+                value.z = baseline.z;
+                if ((flags & POSITION) != 0) {
+                    value.x += VarIntCodec.readSignedVarInt(data);
+                    value.y += VarIntCodec.readSignedVarInt(data);
+                    value.z += VarIntCodec.readSignedVarInt(data);
+                }
+            } else {
+                value.x = VarIntCodec.readVarInt(data);
+                value.y = VarIntCodec.readVarInt(data);
+                value.z = VarIntCodec.readVarInt(data);
+            }
+            value.inBounds = true;
+            location.set(dequantize(value.x, worldMin.x, worldMax.x),
+                    dequantize(value.y, worldMin.y, worldMax.y),
+                    dequantize(value.z, worldMin.z, worldMax.z));
+        }
+
+        // rotation
+        if ((flags & ROTATION) != 0) {
+            value.rotation = data.getInt();
+        } else {
+            value.rotation = baseline != null ? baseline.rotation : IDENTITY_ROTATION;
+        }
+        Quaternion rotation = unpackRotation(value.rotation, new Quaternion());
+
+        // scale
+        if ((flags & SCALE) != 0) {
+            value.scaleX = data.getFloat();
+            value.scaleY = data.getFloat();
+            value.scaleZ = data.getFloat();
+        } else if (baseline != null) {
+            value.scaleX = baseline.scaleX;
+            value.scaleY = baseline.scaleY;
+            value.scaleZ = baseline.scaleZ;
+        } else {
+            value.scaleX = value.scaleY = value.scaleZ = 1;
+        }
+        Vector3f scale = new Vector3f(value.scaleX, value.scaleY, value.scaleZ);
+
+        // time
+        if ((flags & TIME) != 0) {
+            value.time = VarIntCodec.readVarLong(data);
+            if (baseline != null) {
+                value.time += baseline.time;
+            }
+        } else {
+            value.time = 0;
+        }
+
+        if ((flags & STORE) != 0 && entityId != TransformBaselines.NO_ENTITY) {
+            copy(value, context.getOrCreate(entityId));
+        }
+
+        return (T) new Transform(location, rotation, scale, value.time);
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        Transform transform = (Transform) object;
+        Vector3f location = transform.getTranslation() != null ? transform.getTranslation() : Vector3f.ZERO;
+        Quaternion rotation = transform.getRotation() != null ? transform.getRotation() : Quaternion.IDENTITY;
+        Vector3f scale = transform.getScale() != null ? transform.getScale() : Vector3f.UNIT_XYZ;
+
+        // find the baseline of the entity, if we are writing an entity change right now
+        TransformBaselines context = TransformBaselines.forWriting();
+        long entityId = context != null ? context.getCurrentEntity() : TransformBaselines.NO_ENTITY;
+        TransformBaselines.Baseline baseline = entityId != TransformBaselines.NO_ENTITY ? context.get(entityId) : null;
+
+        // quantize the new values
+        TransformBaselines.Baseline value = tempBaseline.get();
+        value.inBounds = isInBounds(location);
+        if (value.inBounds) {
+            value.x = quantize(location.x, worldMin.x, worldMax.x);
+            value.y = quantize(location.y, worldMin.y, worldMax.y);
+            value.z = quantize(location.z, worldMin.z, worldMax.z);
+        }
+        value.rotation = packRotation(rotation);
+        value.scaleX = scale.x;
+        value.scaleY = scale.y;
+        value.scaleZ = scale.z;
+        value.time = context != null ? context.getTime() : 0;
+
+        int flags = entityId != TransformBaselines.NO_ENTITY ? STORE : 0;
+        boolean delta = baseline != null && baseline.inBounds && value.inBounds;
+        if (delta) {
+            flags |= DELTA;
+            if (value.x != baseline.x || value.y != baseline.y || value.z != baseline.z) flags |= POSITION;
+            if (value.rotation != baseline.rotation) flags |= ROTATION;
+            if (value.scaleX != baseline.scaleX || value.scaleY != baseline.scaleY || value.scaleZ != baseline.scaleZ) flags |= SCALE;
+        } else {
+            flags |= value.inBounds ? POSITION : RAW_POSITION;
+            if (value.rotation != IDENTITY_ROTATION) flags |= ROTATION;
+            if (!Vector3f.UNIT_XYZ.equals(scale)) flags |= SCALE;
+        }
+        // server times only grow, so the difference to the baseline is never negative
+        if (value.time != 0 && (!delta || value.time >= baseline.time)) {
+            flags |= TIME;
+        } else {
+            value.time = 0; // that's what the client will store as well
+        }
+
+        buffer.put((byte) flags);
+
+        if ((flags & RAW_POSITION) != 0) {
+            buffer.putFloat(location.x);
+            buffer.putFloat(location.y);
+            buffer.putFloat(location.z);
+        } else if ((flags & POSITION) != 0) {
+            if (delta) {
+                VarIntCodec.writeSignedVarInt(buffer, value.x - baseline.x);
+                VarIntCodec.writeSignedVarInt(buffer, value.y - baseline.y);
+                VarIntCodec.writeSignedVarInt(buffer, value.z - baseline.z);
+            } else {
+                VarIntCodec.writeVarInt(buffer, value.x);
+                VarIntCodec.writeVarInt(buffer, value.y);
+                VarIntCodec.writeVarInt(buffer, value.z);
+            }
+        }
+
+        if ((flags & ROTATION) != 0) {
+            buffer.putInt(value.rotation);
+        }
+
+        if ((flags & SCALE) != 0) {
+            buffer.putFloat(value.scaleX);
+            buffer.putFloat(value.scaleY);
+            buffer.putFloat(value.scaleZ);
+        }
+
+        if ((flags & TIME) != 0) {
+            VarIntCodec.writeVarLong(buffer, delta ? value.time - baseline.time : value.time);
+        }
+
+        if ((flags & STORE) != 0) {
+            copy(value, context.getOrCreate(entityId));
+        }
+    }
+
+    private static boolean isInBounds(Vector3f location) {
+        return location.x >= worldMin.x && location.x <= worldMax.x
+                && location.y >= worldMin.y && location.y <= worldMax.y
+                && location.z >= worldMin.z && location.z <= worldMax.z;
+    }
+
+    private static int quantize(float value, float min, float max) {
+        return Math.round((value - min) / (max - min) * MAX_QUANTIZED_POSITION);
+    }
+
+    private static float dequantize(int value, float min, float max) {
+        return min + (value / (float) MAX_QUANTIZED_POSITION) * (max - min);
+    }
+
+    /**
+     * Packs the quaternion with the "smallest three" method: the index of the largest component is stored
+     * in the two highest bits, the other three components use 10 bits each.
+     * The largest component can be restored since the quaternion is normalized.
+     */
+    static int packRotation(Quaternion q) {
+        float x = q.getX(), y = q.getY(), z = q.getZ(), w = q.getW();
+        float length = FastMath.sqrt(x * x + y * y + z * z + w * w);
+        if (length == 0) {
+            x = y = z = 0;
+            w = length = 1;
+        }
+        x /= length;
+        y /= length;
+        z /= length;
+        w /= length;
+
+        // find largest component
+        int largest = 0;
+        float max = FastMath.abs(x);
+        if (FastMath.abs(y) > max) { largest = 1; max = FastMath.abs(y); }
+        if (FastMath.abs(z) > max) { largest = 2; max = FastMath.abs(z); }
+        if (FastMath.abs(w) > max) { largest = 3; }
+
+        // q and -q are the same rotation, we make the largest component positive
+        float sign = (largest == 0 ? x : largest == 1 ? y : largest == 2 ? z : w) < 0 ? -1 : 1;
+
+        int packed = largest << 30;
+        int shift = 20;
+        for (int i = 0; i < 4; i++) {
+            if (i == largest) continue;
+            float component = (i == 0 ? x : i == 1 ? y : i == 2 ? z : w) * sign;
+            int quantized = Math.round((component + ROTATION_RANGE) / (2 * ROTATION_RANGE) * MAX_QUANTIZED_ROTATION);
+            quantized = Math.max(0, Math.min(MAX_QUANTIZED_ROTATION, quantized));
+            packed |= quantized << shift;
+            shift -= 10;
+        }
+        return packed;
+    }
+
+    static Quaternion unpackRotation(int packed, Quaternion store) {
+        int largest = packed >>> 30;
+        float a = unpackComponent(packed >>> 20);
+        float b = unpackComponent(packed >>> 10);
+        float c = unpackComponent(packed);
+        float d = FastMath.sqrt(Math.max(0, 1 - a * a - b * b - c * c));
+        switch (largest) {
+            case 0:
+                return store.set(d, a, b, c);
+            case 1:
+                return store.set(a, d, b, c);
+            case 2:
+                return store.set(a, b, d, c);
+            default:
+                return store.set(a, b, c, d);
+        }
+    }
+
+    private static float unpackComponent(int bits) {
+        int quantized = bits & MAX_QUANTIZED_ROTATION;
+        return quantized / (float) MAX_QUANTIZED_ROTATION * (2 * ROTATION_RANGE) - ROTATION_RANGE;
+    }
+
+    private static void copy(TransformBaselines.Baseline from, TransformBaselines.Baseline to) {
+        to.inBounds = from.inBounds;
+        to.x = from.x;
+        to.y = from.y;
+        to.z = from.z;
+        to.rotation = from.rotation;
+        to.scaleX = from.scaleX;
+        to.scaleY = from.scaleY;
+        to.scaleZ = from.scaleZ;
+        to.time = from.time;
+    }
+}
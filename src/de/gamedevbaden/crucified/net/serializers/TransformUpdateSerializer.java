@@ -0,0 +1,53 @@
+package de.gamedevbaden.crucified.net.serializers;
+
+import com.jme3.network.serializing.Serializer;
+import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.net.messages.TransformUpdateMessage;
+import de.gamedevbaden.crucified.net.stats.NetworkStats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes a {@link TransformUpdateMessage}: the server time once, then entity id, sequence number and
+ * transform of each entry. The transforms are written with the {@link TransformSerializer} but never as delta,
+ * because an unreliable message can't rely on a baseline the client might not have received.
+ * The read transforms are stamped with the time of the message.
+ */
+public class TransformUpdateSerializer extends Serializer {
+
+    private final TransformSerializer transformSerializer = new TransformSerializer();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        long time = VarIntCodec.readVarLong(data);
+        int size = VarIntCodec.readVarInt(data);
+
+        TransformUpdateMessage message = new TransformUpdateMessage(time, size);
+        for (int i = 0; i < size; i++) {
+            int start = data.position();
+            long entityId = VarIntCodec.readVarLong(data);
+            int sequence = VarIntCodec.readVarInt(data);
+            Transform transform = transformSerializer.readObject(data, Transform.class);
+            message.add(entityId, sequence, new Transform(transform.getTranslation(), transform.getRotation(), transform.getScale(), time));
+            NetworkStats.recordComponentReceived(Transform.class, data.position() - start);
+        }
+        return (T) message;
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        TransformUpdateMessage message = (TransformUpdateMessage) object;
+        VarIntCodec.writeVarLong(buffer, message.getTime());
+        VarIntCodec.writeVarInt(buffer, message.size());
+
+        for (int i = 0; i < message.size(); i++) {
+            int start = buffer.position();
+            VarIntCodec.writeVarLong(buffer, message.getEntityId(i));
+            VarIntCodec.writeVarInt(buffer, message.getSequence(i));
+            transformSerializer.writeObject(buffer, message.getTransform(i));
+            NetworkStats.recordComponentSent(Transform.class, buffer.position() - start);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package de.gamedevbaden.crucified.net.serializers;
+
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializer;
+import de.gamedevbaden.crucified.enums.Sound;
+import de.gamedevbaden.crucified.game.TransientEvent;
+import de.gamedevbaden.crucified.net.messages.TransientEventMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a {@link TransientEventMessage}: the number of events, then for each event one byte with its type
+ * (the highest bit is set if it has a location), one byte with the sound or hit type and the location as three floats.
+ */
+public class TransientEventSerializer extends Serializer {
+
+    private static final TransientEvent.Type[] TYPES = TransientEvent.Type.values();
+    private static final Sound[] SOUNDS = Sound.values();
+    private static final int POSITIONAL = 0x80;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        int count = VarIntCodec.readVarInt(data);
+        List<TransientEvent> events = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            int header = data.get() & 0xFF;
+            TransientEvent.Type type = TYPES[header & ~POSITIONAL];
+            int value = data.get() & 0xFF;
+            Vector3f location = null;
+            if ((header & POSITIONAL) != 0) {
+                location = new Vector3f(data.getFloat(), data.getFloat(), data.getFloat());
+            }
+
+            TransientEvent event = new TransientEvent();
+            if (type == TransientEvent.Type.Sound) {
+                event.setSound(SOUNDS[value], location);
+            } else {
+                event.setHit(value, location);
+            }
+            events.add(event);
+        }
+        return (T) new TransientEventMessage(events);
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        List<TransientEvent> events = ((TransientEventMessage) object).getEvents();
+        VarIntCodec.writeVarInt(buffer, events.size());
+
+        for (TransientEvent event : events) {
+            buffer.put((byte) (event.getType().ordinal() | (event.isPositional() ? POSITIONAL : 0)));
+            buffer.put((byte) (event.getType() == TransientEvent.Type.Sound ? event.getSound().ordinal() : event.getHitType()));
+            if (event.isPositional()) {
+                Vector3f location = event.getLocation();
+                buffer.putFloat(location.x);
+                buffer.putFloat(location.y);
+                buffer.putFloat(location.z);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package de.gamedevbaden.crucified.net.server;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import de.gamedevbaden.crucified.es.components.OnMovement;
+import de.gamedevbaden.crucified.es.components.Transform;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Decides which of the pending transform updates of a connection are sent in the current tick.
+ * <p>
+ * Every entity with a pending update has a priority which grows each tick. The growth depends on the
+ * distance to the viewer and on whether the entity is moving. Each tick the updates with the highest
+ * priority are sent until the byte budget is used up, the others wait with their (now higher) priority.
+ * Updates below the {@link #SEND_THRESHOLD} are never sent, so far away entities are updated less often
+ * even if there is enough bandwidth left. A resting entity next to the viewer reaches the threshold after
+ * 0.1 seconds (10 Hz), a moving one after a third of that (30 Hz).
+ * Only the newest transform of an entity is kept, older ones are simply replaced.
+ */
+class EntityUpdateScheduler {
+
+    // rough size of a transform change on the wire (entity id, class id, compressed transform)
+    static final int ESTIMATED_TRANSFORM_CHANGE_SIZE = 20;
+
+    private static final float MOVING_WEIGHT = 3f; // moving entities gain priority faster
+    private static final float DISTANCE_FALLOFF = 16f; // the weight is halved at this distance
+    private static final float SEND_THRESHOLD = 0.095f; // slightly below 0.1 so a bit of tick jitter doesn't delay updates
+
+    private final HashMap<EntityId, PendingUpdate> pendingUpdates = new HashMap<>();
+    private final List<PendingUpdate> sortList = new ArrayList<>();
+    private final List<PendingUpdate> pool = new ArrayList<>();
+
+    void offer(EntityChange change) {
+        PendingUpdate update = pendingUpdates.get(change.getEntityId());
+        if (update == null) {
+            update = pool.isEmpty() ? new PendingUpdate() : pool.remove(pool.size() - 1);
+            update.priority = 0;
+            pendingUpdates.put(change.getEntityId(), update);
+        }
+        update.change = change; // we only need the latest value
+    }
+
+    void remove(EntityId entityId) {
+        PendingUpdate update = pendingUpdates.remove(entityId);
+        if (update != null) {
+            free(update);
+        }
+    }
+
+    boolean isEmpty() {
+        return pendingUpdates.isEmpty();
+    }
+
+    /**
+     * @return the number of updates which wait for being sent
+     */
+    int size() {
+        return pendingUpdates.size();
+    }
+
+    /**
+     * Raises the priority of all pending updates and moves the most important ones into the given list.
+     *
+     * @param elapsed        the time since the last tick of this connection in seconds
+     * @param viewerLocation the location of the player of this connection, or null if unknown
+     * @param entityData     the entity data used to look up whether an entity is moving
+     * @param byteBudget     the amount of bytes which can be used in this tick
+     * @param store          the list the changes to send are added to
+     */
+    void schedule(float elapsed, Vector3f viewerLocation, EntityData entityData, int byteBudget, List<EntityChange> store) {
+        if (pendingUpdates.isEmpty()) {
+            return;
+        }
+
+        sortList.clear();
+        for (PendingUpdate update : pendingUpdates.values()) {
+            update.priority += elapsed * getWeight(update.change, viewerLocation, entityData);
+            sortList.add(update);
+        }
+        sortList.sort((a, b) -> Float.compare(b.priority, a.priority));
+
+        int maxUpdates = Math.max(1, byteBudget / ESTIMATED_TRANSFORM_CHANGE_SIZE);
+        for (int i = 0; i < sortList.size() && i < maxUpdates; i++) {
+            PendingUpdate update = sortList.get(i);
+            if (update.priority < SEND_THRESHOLD) {
+                break; // the list is sorted so all other updates can wait as well
+            }
+            store.add(update.change);
+
+            // sent updates are removed, so the entity starts with a priority of zero next time
+            pendingUpdates.remove(update.change.getEntityId());
+            free(update);
+        }
+        sortList.clear();
+    }
+
+    void clear() {
+        pendingUpdates.clear();
+        sortList.clear();
+        pool.clear();
+    }
+
+    private float getWeight(EntityChange change, Vector3f viewerLocation, EntityData entityData) {
+        float weight = entityData.getComponent(change.getEntityId(), OnMovement.class) != null ? MOVING_WEIGHT : 1f;
+        Transform transform = (Transform) change.getComponent();
+        if (viewerLocation != null && transform != null && transform.getTranslation() != null) {
+            float distance = viewerLocation.distance(transform.getTranslation());
+            weight /= 1f + distance / DISTANCE_FALLOFF;
+        }
+        return weight;
+    }
+
+    private void free(PendingUpdate update) {
+        update.change = null;
+        pool.add(update);
+    }
+
+    private static class PendingUpdate {
+        EntityChange change;
+        float priority;
+    }
+}
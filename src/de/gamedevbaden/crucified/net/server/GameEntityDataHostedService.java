@@ -0,0 +1,293 @@
+package de.gamedevbaden.crucified.net.server;
+
+import com.jme3.network.HostedConnection;
+import com.jme3.network.Message;
+import com.jme3.network.MessageListener;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.service.HostedServiceManager;
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.ObservableEntityData;
+import com.simsilica.es.server.EntityDataHostedService;
+import com.simsilica.es.server.HostedEntityData;
+import de.gamedevbaden.crucified.appstates.paging.ChunkGrid;
+import de.gamedevbaden.crucified.es.utils.SceneDefaults;
+import de.gamedevbaden.crucified.game.ProcessedInput;
+import de.gamedevbaden.crucified.game.TransientEvent;
+import de.gamedevbaden.crucified.net.messages.EntitySnapshotRequestMessage;
+import de.gamedevbaden.crucified.net.serializers.EntityChangeDeltaSerializer;
+import de.gamedevbaden.crucified.net.stats.NetworkStats;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Our own version of the {@link EntityDataHostedService}.
+ * Each connection is hosted by a {@link GameHostedEntityData} which is able to send entity changes
+ * in a more compact way than the default implementation.
+ * <p>
+ * It also knows the player entity of each connection (the "viewer") and the chunk grid of the level,
+ * so a connection only gets movement and sound updates of entities near its player.
+ * The same applies to transient events (see {@link #broadcastEvent(EntityData, TransientEvent)}).
+ * <p>
+ * {@link #sendUpdates()} can be called as often as wanted, each connection is only updated with its own send rate.
+ * The byte budget limits how many transform updates a connection gets per update.
+ * All transform updates are stamped with the server time of the tick they are sent in,
+ * so clients can interpolate between them in the right pace.
+ * Transforms of moving entities are sent unreliable unless this is turned off with {@link #setUnreliableTransforms(boolean)}.
+ * <p>
+ * Clients which keep a local copy of the entity data send an {@link EntitySnapshotRequestMessage}. They get a snapshot
+ * whenever hosting starts on their connection, e.g. again after they have reconnected.
+ */
+public class GameEntityDataHostedService extends EntityDataHostedService {
+
+    private static final String SNAPSHOT_ATTRIBUTE = "entitySnapshots";
+
+    private final ObservableEntityData entityData;
+    private final SnapshotRequestListener snapshotRequestListener = new SnapshotRequestListener();
+    private final Map<HostedConnection, EntityId> viewers = new ConcurrentHashMap<>();
+    private final Map<HostedConnection, Float> sendRates = new ConcurrentHashMap<>();
+    private final Map<HostedConnection, Supplier<ProcessedInput>> processedInputs = new ConcurrentHashMap<>();
+    private final Map<EntityData, SceneDefaults> sceneDefaults = new ConcurrentHashMap<>();
+    private volatile float defaultSendRate = GameConstants.NETWORK_DEFAULT_SEND_RATE;
+    private volatile int maxBytesPerTick = GameConstants.NETWORK_BYTES_PER_TICK;
+    private volatile boolean unreliableTransforms = true;
+    private volatile ChunkGrid chunkGrid = new ChunkGrid(0, 0, GameConstants.NETWORK_CHUNK_SIZE, GameConstants.NETWORK_CHUNK_SIZE);
+    private final long startTime = System.nanoTime();
+    private volatile LongSupplier clock;
+    private volatile long tickTime;
+
+    public GameEntityDataHostedService(int channel, ObservableEntityData entityData) {
+        super(channel, entityData);
+        this.entityData = entityData;
+
+        // the super constructor registers the default entity change serializer
+        // so we need to replace it afterwards
+        Serializer.registerClass(EntityChange.class, new EntityChangeDeltaSerializer());
+    }
+
+    @Override
+    public void startHostingOnConnection(HostedConnection hc) {
+        startHostingOnConnection(hc, entityData);
+    }
+
+    /**
+     * Hosts the given entity data on that connection. This is used if the server runs
+     * several matches, each with its own entity data.
+     *
+     * @param hc         the connection
+     * @param entityData the entity data the client of this connection shall see
+     */
+    public void startHostingOnConnection(HostedConnection hc, ObservableEntityData entityData) {
+        GameHostedEntityData hostedEntityData = new GameHostedEntityData(this, hc, entityData);
+        hc.setAttribute(HostedEntityData.ATTRIBUTE_NAME, hostedEntityData);
+        if (Boolean.TRUE.equals(hc.getAttribute(SNAPSHOT_ATTRIBUTE))) {
+            hostedEntityData.requestSnapshot();
+        }
+    }
+
+    @Override
+    protected void onInitialize(HostedServiceManager services) {
+        super.onInitialize(services);
+        getServer().addMessageListener(snapshotRequestListener, EntitySnapshotRequestMessage.class);
+    }
+
+    @Override
+    public void terminate(HostedServiceManager hsm) {
+        getServer().removeMessageListener(snapshotRequestListener, EntitySnapshotRequestMessage.class);
+        super.terminate(hsm);
+    }
+
+    @Override
+    public void sendUpdates() {
+        long start = System.nanoTime();
+        this.tickTime = getServerTime();
+        super.sendUpdates();
+        NetworkStats.recordSendUpdates(System.nanoTime() - start);
+    }
+
+    @Override
+    public void stopHostingOnConnection(HostedConnection hc) {
+        super.stopHostingOnConnection(hc);
+        viewers.remove(hc);
+        sendRates.remove(hc);
+        processedInputs.remove(hc);
+    }
+
+    /**
+     * Sets the player entity of the connection. Relevancy of entities is calculated
+     * relative to the position of this entity.
+     *
+     * @param conn   the connection
+     * @param viewer the player entity of that connection
+     */
+    public void setViewer(HostedConnection conn, EntityId viewer) {
+        viewers.put(conn, viewer);
+    }
+
+    public EntityId getViewer(HostedConnection conn) {
+        return viewers.get(conn);
+    }
+
+    /**
+     * Sets where the state of the connection's player after its last simulated input command comes from.
+     * If set, the connection gets this state in every update
+     * (see {@link de.gamedevbaden.crucified.net.messages.PlayerStateMessage}).
+     *
+     * @param conn           the connection
+     * @param processedInput returns the state of the player or null if no command has been simulated yet
+     */
+    public void setProcessedInput(HostedConnection conn, Supplier<ProcessedInput> processedInput) {
+        processedInputs.put(conn, processedInput);
+    }
+
+    public Supplier<ProcessedInput> getProcessedInput(HostedConnection conn) {
+        return processedInputs.get(conn);
+    }
+
+    /**
+     * Sets how many updates per second the connection gets.
+     *
+     * @param conn     the connection
+     * @param sendRate updates per second
+     */
+    public void setSendRate(HostedConnection conn, float sendRate) {
+        sendRates.put(conn, sendRate);
+    }
+
+    public float getSendRate(HostedConnection conn) {
+        Float sendRate = sendRates.get(conn);
+        return sendRate != null ? sendRate : defaultSendRate;
+    }
+
+    /**
+     * Sets the send rate of all connections which don't have their own rate.
+     *
+     * @param defaultSendRate updates per second
+     */
+    public void setDefaultSendRate(float defaultSendRate) {
+        this.defaultSendRate = defaultSendRate;
+    }
+
+    public float getDefaultSendRate() {
+        return defaultSendRate;
+    }
+
+    /**
+     * Sets the amount of bytes which can be used for transform updates per connection and update.
+     * Transform updates which don't fit are sent in one of the next updates.
+     *
+     * @param maxBytesPerTick the byte budget
+     */
+    public void setMaxBytesPerTick(int maxBytesPerTick) {
+        this.maxBytesPerTick = maxBytesPerTick;
+    }
+
+    public int getMaxBytesPerTick() {
+        return maxBytesPerTick;
+    }
+
+    /**
+     * Sets whether transforms of moving entities are sent over the unreliable channel (UDP).
+     * If not, they are sent with all other changes over the channel of this service.
+     *
+     * @param unreliableTransforms true to send them unreliable
+     */
+    public void setUnreliableTransforms(boolean unreliableTransforms) {
+        this.unreliableTransforms = unreliableTransforms;
+    }
+
+    public boolean isUnreliableTransforms() {
+        return unreliableTransforms;
+    }
+
+    /**
+     * @return the server time in milliseconds (at least 1), by default the time since the service has been created
+     */
+    public long getServerTime() {
+        LongSupplier clock = this.clock;
+        return Math.max(1, clock != null ? clock.getAsLong() : (System.nanoTime() - startTime) / 1000000);
+    }
+
+    /**
+     * Replaces the clock updates are stamped with. A relay stamps its updates with the time of the server
+     * it mirrors, so the times of the mirrored components (e.g. {@link de.gamedevbaden.crucified.es.components.Velocity})
+     * fit to the times of its own updates.
+     *
+     * @param clock returns the time in milliseconds, it must not go backwards, or null for the own clock
+     */
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return the server time of the current (or last) call of {@link #sendUpdates()}
+     */
+    public long getTickTime() {
+        return tickTime;
+    }
+
+    public void setChunkGrid(ChunkGrid chunkGrid) {
+        this.chunkGrid = chunkGrid;
+    }
+
+    public ChunkGrid getChunkGrid() {
+        return chunkGrid;
+    }
+
+    /**
+     * Sets the scene entities of a game. Clients with a local entity data create them themselves when they load
+     * the scene, so only the components which differ from these defaults are sent to them.
+     *
+     * @param entityData the entity data of the game
+     * @param defaults   the scene entities or null if the game has ended
+     */
+    public void setSceneDefaults(EntityData entityData, SceneDefaults defaults) {
+        if (defaults != null) {
+            sceneDefaults.put(entityData, defaults);
+        } else {
+            sceneDefaults.remove(entityData);
+        }
+    }
+
+    /**
+     * @return the scene entities of that game or null if it has no scene yet
+     */
+    public SceneDefaults getSceneDefaults(EntityData entityData) {
+        return sceneDefaults.get(entityData);
+    }
+
+    /**
+     * Sends the event with the next update to all connections which are hosted with that entity data
+     * and whose player is near the event. Events without a location are sent to all of them.
+     * Must be called on the thread which calls {@link #sendUpdates()}.
+     *
+     * @param entityData the entity data of the game the event has happened in
+     * @param event      the event, it is copied
+     */
+    public void broadcastEvent(EntityData entityData, TransientEvent event) {
+        for (HostedConnection conn : getServer().getConnections()) {
+            HostedEntityData hostedEntityData = conn.getAttribute(HostedEntityData.ATTRIBUTE_NAME);
+            if (hostedEntityData instanceof GameHostedEntityData && ((GameHostedEntityData) hostedEntityData).getEntityData() == entityData) {
+                ((GameHostedEntityData) hostedEntityData).queueEvent(event);
+            }
+        }
+    }
+
+    private class SnapshotRequestListener implements MessageListener<HostedConnection> {
+        @Override
+        public void messageReceived(HostedConnection source, Message m) {
+            // if hosting hasn't started yet, the snapshot is sent once it starts
+            source.setAttribute(SNAPSHOT_ATTRIBUTE, true);
+            HostedEntityData hostedEntityData = source.getAttribute(HostedEntityData.ATTRIBUTE_NAME);
+            if (hostedEntityData instanceof GameHostedEntityData) {
+                ((GameHostedEntityData) hostedEntityData).requestSnapshot();
+            }
+        }
+    }
+
+}
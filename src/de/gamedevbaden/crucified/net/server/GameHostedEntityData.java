@@ -0,0 +1,595 @@
+package de.gamedevbaden.crucified.net.server;
+
+import com.jme3.math.Vector3f;
+import com.jme3.network.HostedConnection;
+import com.jme3.network.serializing.Serializer;
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityComponent;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.ObservableEntityData;
+import com.simsilica.es.net.EntityDataMessage;
+import com.simsilica.es.net.GetEntitySetMessage;
+import com.simsilica.es.net.ResetEntitySetFilterMessage;
+import com.simsilica.es.server.HostedEntityData;
+import de.gamedevbaden.crucified.appstates.paging.ChunkGrid;
+import de.gamedevbaden.crucified.es.components.ChildOf;
+import de.gamedevbaden.crucified.es.components.OnMovement;
+import de.gamedevbaden.crucified.es.components.SoundComponent;
+import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.es.components.Velocity;
+import de.gamedevbaden.crucified.es.utils.SceneDefaults;
+import de.gamedevbaden.crucified.game.ProcessedInput;
+import de.gamedevbaden.crucified.game.TransientEvent;
+import de.gamedevbaden.crucified.net.NetworkUtils;
+import de.gamedevbaden.crucified.net.messages.EntitySnapshotMessage;
+import de.gamedevbaden.crucified.net.messages.PlayerStateMessage;
+import de.gamedevbaden.crucified.net.messages.TransformUpdateMessage;
+import de.gamedevbaden.crucified.net.messages.TransientEventMessage;
+import de.gamedevbaden.crucified.net.serializers.SessionStrings;
+import de.gamedevbaden.crucified.net.serializers.TransformBaselines;
+import de.gamedevbaden.crucified.net.stats.NetworkStats;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * The per connection part of the {@link GameEntityDataHostedService}.
+ * It keeps the transform baselines of this connection, so Transform changes
+ * can be sent as deltas, and the strings which have already been sent to the client (see {@link SessionStrings}).
+ * <p>
+ * Changes of the {@link #RELEVANCY_FILTERED_TYPES} are only sent for entities which are in the chunk of the
+ * viewer (the player of this connection) or in one of the surrounding chunks. Once a hidden entity becomes
+ * relevant again, the current values of all filtered components are sent.
+ * <p>
+ * Updates are sent with the send rate configured for this connection. Transform changes are not sent right away,
+ * an {@link EntityUpdateScheduler} decides which of them fit into the byte budget of the current tick.
+ * Each update also sends the position of the viewer with the last applied input command to the client.
+ * <p>
+ * Transforms of moving entities (see {@link OnMovement}) are sent unreliable in a {@link TransformUpdateMessage},
+ * so a lost packet doesn't hold back the updates behind it. Only the first transform of an entity and the last one
+ * before it stops moving are sent reliable, together with all other changes.
+ * <p>
+ * A client which keeps a local copy of the entity data asks for a snapshot (see {@link #requestSnapshot()}) instead
+ * of requesting entity sets. The snapshot contains all relevant components of all network component types and is
+ * sent compressed in a few {@link EntitySnapshotMessage}s. Afterwards the client gets every change of those types,
+ * like it would for entity sets which contain all entities.
+ * <p>
+ * Such a client creates the entities of the scene itself (see {@link SceneDefaults}). Components of scene entities
+ * are left out of the snapshot and the changes as long as they are the default ones, a default component which has
+ * been removed is sent as a removal with the snapshot. Once a component of a scene entity has been sent,
+ * all its later changes are sent, even if the component is the default one again.
+ * <p>
+ * Transient events near the viewer are queued (see {@link #queueEvent(TransientEvent)}) and sent unreliable
+ * with the next update in one {@link TransientEventMessage}.
+ */
+public class GameHostedEntityData extends HostedEntityData {
+
+    private static final Logger log = Logger.getLogger(GameHostedEntityData.class.getName());
+
+    private static final Class[] RELEVANCY_FILTERED_TYPES = {Transform.class, OnMovement.class, Velocity.class, SoundComponent.class};
+    private static final int MIRROR_SET_ID = -1; // the sets of a snapshot count down from here, clients count up from 0
+
+    private final GameEntityDataHostedService service;
+    private final HostedConnection conn;
+    private final ObservableEntityData entityData;
+    private final TransformBaselines transformBaselines = new TransformBaselines();
+    private final SessionStrings sessionStrings = new SessionStrings();
+
+    private final Set<EntityId> hiddenEntities = new HashSet<>(); // entities whose filtered components are outdated on the client
+    private final List<EntityChange> relevantChanges = new ArrayList<>();
+    private final List<EntityChange> sendBuffer = new ArrayList<>();
+    private final EntityUpdateScheduler scheduler = new EntityUpdateScheduler();
+    private final List<EntityChange> scheduledChanges = new ArrayList<>();
+    private final HashMap<EntityId, Integer> transformSequences = new HashMap<>();
+    private final Set<EntityId> unsettledEntities = new HashSet<>(); // the last transform was sent unreliable
+    private final HashMap<EntityId, Set<Class>> overriddenSceneComponents = new HashMap<>(); // sent to the client once
+
+    private volatile boolean snapshotRequested;
+    private boolean mirrored; // the client has a snapshot and gets all changes
+    private ByteArrayOutputStream snapshotData;
+    private DeflaterOutputStream snapshotStream;
+    private final ByteBuffer snapshotBuffer = ByteBuffer.allocate(GameConstants.NETWORK_SNAPSHOT_CHUNK_SIZE);
+    private int snapshotSize;
+
+    private final List<TransientEvent> queuedEvents = new ArrayList<>(); // reused, only the first ones are queued
+    private int queuedEventCount;
+
+    private long lastSendTime;
+
+    private boolean viewerKnown;
+    private int viewerChunkX;
+    private int viewerChunkY;
+    private final Vector3f viewerLocation = new Vector3f();
+
+    public GameHostedEntityData(GameEntityDataHostedService service, HostedConnection conn, ObservableEntityData ed) {
+        super(service, conn, ed);
+        this.service = service;
+        this.conn = conn;
+        this.entityData = ed;
+    }
+
+    @Override
+    public void sendUpdates() {
+        if (snapshotRequested) {
+            // the snapshot is sent right away, the updates follow with the send rate
+            snapshotRequested = false;
+            int previous = NetworkStats.beginSend(conn.getId());
+            try {
+                sendSnapshot();
+            } finally {
+                NetworkStats.endSend(previous);
+            }
+        }
+
+        // check if it's time for the next update of this connection
+        long now = System.nanoTime();
+        float interval = 1f / service.getSendRate(conn);
+        if (lastSendTime != 0 && (now - lastSendTime) / 1000000000f < interval) {
+            return;
+        }
+        float elapsed = lastSendTime != 0 ? (now - lastSendTime) / 1000000000f : interval;
+        lastSendTime = now;
+
+        // everything we send now is counted for this connection
+        int previous = NetworkStats.beginSend(conn.getId());
+        try {
+            boolean viewerChunkChanged = updateViewerChunk();
+
+            super.sendUpdates();
+
+            // the viewer entered a new chunk, so some of the hidden entities might be relevant now
+            if (viewerChunkChanged && !hiddenEntities.isEmpty()) {
+                Iterator<EntityId> iterator = hiddenEntities.iterator();
+                while (iterator.hasNext()) {
+                    EntityId entityId = iterator.next();
+                    if (isRelevant(entityId, entityData.getComponent(entityId, Transform.class))) {
+                        iterator.remove();
+                        addCurrentState(entityId, null);
+                    }
+                }
+            }
+
+            // now send the most important transform updates
+            scheduler.schedule(elapsed, viewerKnown ? viewerLocation : null, entityData, service.getMaxBytesPerTick(), scheduledChanges);
+            sendScheduledChanges();
+            flushRelevantChanges();
+
+            sendPlayerState();
+            sendEvents();
+
+            NetworkStats.recordSendQueueDepth(conn.getId(), scheduler.size());
+        } finally {
+            NetworkStats.endSend(previous);
+        }
+    }
+
+    /**
+     * Lets the next update send a snapshot of all relevant components to the client. Can be called from any thread.
+     */
+    public void requestSnapshot() {
+        this.snapshotRequested = true;
+    }
+
+    /**
+     * Sends the current values of all relevant components. We request an entity set for each network component type,
+     * the initial content of these sets is the snapshot and the sets make sure that all later changes are sent.
+     */
+    private void sendSnapshot() {
+        if (mirrored) {
+            log.warning("Client #" + conn.getId() + " has already got a snapshot");
+            return;
+        }
+        mirrored = true;
+        updateViewerChunk();
+
+        snapshotData = new ByteArrayOutputStream();
+        snapshotStream = new DeflaterOutputStream(snapshotData);
+        snapshotSize = 0;
+
+        // the transforms are written as the baselines of the following deltas
+        TransformBaselines.beginWrite(transformBaselines, service.getTickTime());
+        SessionStrings.beginWrite(sessionStrings);
+        try {
+            List<Class<? extends EntityComponent>> types = NetworkUtils.getComponentTypes();
+            for (int i = 0; i < types.size(); i++) {
+                getEntitySet(conn, new GetEntitySetMessage(MIRROR_SET_ID - i, null, types.get(i)));
+            }
+            // the usage of new sets is only tracked in frames with changes, a filter reset forces the next one
+            // so changes of entities which have been unchanged since the snapshot are sent as well
+            resetEntitySetFilter(conn, new ResetEntitySetFilterMessage(MIRROR_SET_ID, null));
+            writeRemovedSceneComponents(types);
+            snapshotStream.close();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not write snapshot for client #" + conn.getId(), e);
+            return;
+        } finally {
+            TransformBaselines.endWrite();
+            SessionStrings.endWrite();
+            snapshotStream = null;
+        }
+
+        byte[] data = snapshotData.toByteArray();
+        snapshotData = null;
+        int chunkSize = GameConstants.NETWORK_SNAPSHOT_CHUNK_SIZE;
+        for (int offset = 0; offset < data.length || offset == 0; offset += chunkSize) {
+            int end = Math.min(data.length, offset + chunkSize);
+            conn.send(new EntitySnapshotMessage(Arrays.copyOfRange(data, offset, end), end == data.length));
+        }
+        log.info("Sent snapshot of " + snapshotSize + " components in " + data.length + " bytes to client #" + conn.getId());
+    }
+
+    /**
+     * Adds the entities of a snapshot set to the snapshot, apart from the filtered components of entities
+     * which aren't relevant for the viewer.
+     */
+    @SuppressWarnings("unchecked")
+    private void writeSnapshot(List<EntityDataMessage.ComponentData> buffer) throws IOException {
+        for (EntityDataMessage.ComponentData data : buffer) {
+            EntityId entityId = data.getEntityId();
+            for (EntityComponent component : data.getComponents()) {
+                Class type = component.getClass();
+                if (isRelevancyFiltered(type) && !isRelevant(entityId, entityData.getComponent(entityId, Transform.class))) {
+                    hiddenEntities.add(entityId);
+                    continue;
+                }
+                if (isSceneDefault(entityId, component)) {
+                    continue;
+                }
+                writeSnapshotChange(new EntityChange(entityId, type, component));
+            }
+        }
+    }
+
+    /**
+     * Adds removals for all default components of scene entities which don't exist anymore.
+     */
+    @SuppressWarnings("unchecked")
+    private void writeRemovedSceneComponents(List<Class<? extends EntityComponent>> types) throws IOException {
+        SceneDefaults defaults = service.getSceneDefaults(entityData);
+        if (defaults == null) {
+            return;
+        }
+        for (EntityId entityId : defaults.getEntityIds()) {
+            for (EntityComponent component : defaults.getComponents(entityId)) {
+                Class type = component.getClass();
+                if (types.contains(type) && entityData.getComponent(entityId, type) == null) {
+                    writeSnapshotChange(new EntityChange(entityId, type, null));
+                }
+            }
+        }
+    }
+
+    private void writeSnapshotChange(EntityChange change) throws IOException {
+        markOverridden(change);
+        snapshotBuffer.clear();
+        Serializer.writeClassAndObject(snapshotBuffer, change);
+        snapshotStream.write(snapshotBuffer.array(), 0, snapshotBuffer.position());
+        snapshotSize++;
+    }
+
+    /**
+     * Sends the scheduled transforms of moving entities unreliable, the others are added to the relevant changes.
+     */
+    private void sendScheduledChanges() {
+        TransformUpdateMessage message = null;
+        for (EntityChange change : scheduledChanges) {
+            if (!isSentUnreliable(change)) {
+                relevantChanges.add(change);
+                continue;
+            }
+
+            if (message == null) {
+                message = new TransformUpdateMessage(service.getTickTime(), GameConstants.NETWORK_TRANSFORMS_PER_MESSAGE);
+            }
+            EntityId entityId = change.getEntityId();
+            int sequence = transformSequences.merge(entityId, 1, Integer::sum);
+            message.add(entityId.getId(), sequence, (Transform) change.getComponent());
+            unsettledEntities.add(entityId);
+
+            if (message.isFull()) {
+                conn.send(message);
+                message = null;
+            }
+        }
+        if (message != null) {
+            conn.send(message);
+        }
+        scheduledChanges.clear();
+    }
+
+    private boolean isSentUnreliable(EntityChange change) {
+        // the client needs a reliable transform first, unreliable ones are dropped if it doesn't know the entity
+        return service.isUnreliableTransforms()
+                && change.getComponent() != null
+                && transformBaselines.contains(change.getEntityId().getId())
+                && entityData.getComponent(change.getEntityId(), OnMovement.class) != null;
+    }
+
+    /**
+     * Sends the state of the player after the last physics step together with the input command this step has
+     * simulated, so the client can replay its later commands from there.
+     */
+    private void sendPlayerState() {
+        Supplier<ProcessedInput> processedInput = service.getProcessedInput(conn);
+        ProcessedInput input = processedInput != null ? processedInput.get() : null;
+        if (input == null) {
+            return; // no command of the client has been simulated yet
+        }
+        conn.send(new PlayerStateMessage(input.getSequence(), input.getTime(), input.getLocation(), input.getVelocity()));
+    }
+
+    @Override
+    protected void sendAndClear(int setId, List<EntityDataMessage.ComponentData> buffer) {
+        if (setId <= MIRROR_SET_ID) {
+            // entities added later to a snapshot set are sent with their component changes anyway
+            try {
+                if (snapshotStream != null) {
+                    writeSnapshot(buffer);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write snapshot", e);
+            } finally {
+                buffer.clear();
+            }
+            return;
+        }
+
+        // answers to entity set requests are sent from the network thread
+        int previous = NetworkStats.beginSend(conn.getId());
+        try {
+            super.sendAndClear(setId, buffer);
+        } finally {
+            NetworkStats.endSend(previous);
+        }
+    }
+
+    @Override
+    protected void sendAndClear(List<EntityChange> buffer) {
+        for (EntityChange change : buffer) {
+            if (change.getComponent() != null && isSceneDefault(change.getEntityId(), change.getComponent())) {
+                continue;
+            }
+            markOverridden(change);
+
+            if (!isRelevancyFiltered(change.getComponentType()) || change.getComponent() == null) {
+                // removals are always sent
+                if (change.getComponentType() == Transform.class) {
+                    hiddenEntities.remove(change.getEntityId());
+                    scheduler.remove(change.getEntityId());
+                    transformSequences.remove(change.getEntityId());
+                    unsettledEntities.remove(change.getEntityId());
+                } else if (change.getComponentType() == OnMovement.class && change.getComponent() == null) {
+                    settle(change.getEntityId());
+                }
+                relevantChanges.add(change);
+                continue;
+            }
+
+            EntityId entityId = change.getEntityId();
+            Transform transform = change.getComponentType() == Transform.class
+                    ? (Transform) change.getComponent() : entityData.getComponent(entityId, Transform.class);
+
+            if (isRelevant(entityId, transform)) {
+                if (hiddenEntities.remove(entityId)) {
+                    // the entity became relevant, the client needs all the values it has missed
+                    addCurrentState(entityId, change.getComponentType());
+                    relevantChanges.add(change);
+                } else if (change.getComponentType() == Transform.class) {
+                    scheduler.offer(change);
+                } else {
+                    relevantChanges.add(change);
+                }
+            } else {
+                hiddenEntities.add(entityId);
+                scheduler.remove(entityId);
+            }
+        }
+        buffer.clear();
+
+        flushRelevantChanges();
+    }
+
+    /**
+     * The entity has stopped moving. If its last transform was sent unreliable it might be lost,
+     * so the current transform is sent reliable.
+     */
+    @SuppressWarnings("unchecked")
+    private void settle(EntityId entityId) {
+        if (!unsettledEntities.remove(entityId) || hiddenEntities.contains(entityId)) {
+            return;
+        }
+        Transform transform = entityData.getComponent(entityId, Transform.class);
+        if (transform != null) {
+            scheduler.remove(entityId);
+            relevantChanges.add(new EntityChange(entityId, Transform.class, transform));
+        }
+    }
+
+    private void flushRelevantChanges() {
+        if (relevantChanges.isEmpty()) {
+            return;
+        }
+
+        // messages are serialized while sending, so the serializer will use the baselines of this connection
+        // and stamps the transforms with the time of this tick
+        TransformBaselines.beginWrite(transformBaselines, service.getTickTime());
+        SessionStrings.beginWrite(sessionStrings);
+        try {
+            int changeMax = service.getMaxChangeBatchSize();
+            for (EntityChange change : relevantChanges) {
+                if (change.getComponentType() == Transform.class) {
+                    unsettledEntities.remove(change.getEntityId()); // the client gets the newest transform reliable
+                }
+                sendBuffer.add(change);
+                if (sendBuffer.size() > changeMax) {
+                    super.sendAndClear(sendBuffer);
+                }
+            }
+            if (!sendBuffer.isEmpty()) {
+                super.sendAndClear(sendBuffer);
+            }
+        } finally {
+            TransformBaselines.endWrite();
+            SessionStrings.endWrite();
+            relevantChanges.clear();
+            sendBuffer.clear();
+        }
+    }
+
+    /**
+     * Adds changes with the current values of all filtered components of that entity.
+     *
+     * @param entityId the entity
+     * @param skipType a type which does not need to be added, because its change is sent anyway (can be null)
+     */
+    @SuppressWarnings("unchecked")
+    private void addCurrentState(EntityId entityId, Class skipType) {
+        scheduler.remove(entityId); // the current transform is sent now anyway
+        for (Class type : RELEVANCY_FILTERED_TYPES) {
+            if (type == skipType) continue;
+            EntityComponent component = entityData.getComponent(entityId, type);
+            if (component != null && !isSceneDefault(entityId, component)) {
+                relevantChanges.add(new EntityChange(entityId, type, component));
+            }
+        }
+    }
+
+    /**
+     * @return true if the client has created that component from the scene itself and doesn't need it
+     */
+    private boolean isSceneDefault(EntityId entityId, EntityComponent component) {
+        if (!mirrored || entityId.getId() < GameConstants.SCENE_ENTITY_ID_BASE) {
+            return false;
+        }
+        SceneDefaults defaults = service.getSceneDefaults(entityData);
+        if (defaults == null || !defaults.isDefault(entityId, component)) {
+            return false;
+        }
+        Set<Class> overridden = overriddenSceneComponents.get(entityId);
+        return overridden == null || !overridden.contains(component.getClass());
+    }
+
+    /**
+     * Remembers that the client gets a value of a scene component which might not be the default one.
+     */
+    private void markOverridden(EntityChange change) {
+        if (mirrored && change.getEntityId().getId() >= GameConstants.SCENE_ENTITY_ID_BASE) {
+            overriddenSceneComponents.computeIfAbsent(change.getEntityId(), id -> new HashSet<>()).add(change.getComponentType());
+        }
+    }
+
+    /**
+     * @return true if the chunk of the viewer has changed since the last call
+     */
+    private boolean updateViewerChunk() {
+        EntityId viewer = service.getViewer(conn);
+        Transform transform = viewer != null ? entityData.getComponent(viewer, Transform.class) : null;
+        if (transform == null || transform.getTranslation() == null) {
+            boolean changed = viewerKnown;
+            viewerKnown = false;
+            return changed;
+        }
+
+        ChunkGrid grid = service.getChunkGrid();
+        int chunkX = grid.getChunkX(transform.getTranslation().x);
+        int chunkY = grid.getChunkY(transform.getTranslation().z);
+        this.viewerLocation.set(transform.getTranslation());
+        boolean changed = !viewerKnown || chunkX != viewerChunkX || chunkY != viewerChunkY;
+        this.viewerKnown = true;
+        this.viewerChunkX = chunkX;
+        this.viewerChunkY = chunkY;
+        return changed;
+    }
+
+    /**
+     * Queues a copy of the event if it is relevant for the viewer, it is sent with the next update.
+     *
+     * @param event the event
+     */
+    void queueEvent(TransientEvent event) {
+        if (event.isPositional() && !isRelevant(event.getLocation())) {
+            return;
+        }
+        if (queuedEventCount == GameConstants.NETWORK_MAX_QUEUED_EVENTS) {
+            return; // it's only an effect, the client won't miss it much
+        }
+        if (queuedEventCount == queuedEvents.size()) {
+            queuedEvents.add(new TransientEvent());
+        }
+        queuedEvents.get(queuedEventCount++).set(event);
+    }
+
+    private void sendEvents() {
+        if (queuedEventCount == 0) {
+            return;
+        }
+        // the message is serialized while sending, so the events can be reused afterwards
+        conn.send(new TransientEventMessage(queuedEvents.subList(0, queuedEventCount)));
+        queuedEventCount = 0;
+    }
+
+    private boolean isRelevant(EntityId entityId, Transform transform) {
+        if (entityId.equals(service.getViewer(conn))) {
+            return true;
+        }
+
+        // entities without a position can't be filtered
+        if (transform == null || transform.getTranslation() == null) {
+            return true;
+        }
+        // the transform of an attached entity is only set once, the client places it at its parent
+        if (entityData.getComponent(entityId, ChildOf.class) != null) {
+            return true;
+        }
+        return isRelevant(transform.getTranslation());
+    }
+
+    private boolean isRelevant(Vector3f location) {
+        if (!viewerKnown) {
+            return true;
+        }
+        ChunkGrid grid = service.getChunkGrid();
+        return ChunkGrid.isNeighbour(viewerChunkX, viewerChunkY, grid.getChunkX(location.x), grid.getChunkY(location.z));
+    }
+
+    private static boolean isRelevancyFiltered(Class type) {
+        for (Class filtered : RELEVANCY_FILTERED_TYPES) {
+            if (filtered == type) return true;
+        }
+        return false;
+    }
+
+    public HostedConnection getConnection() {
+        return conn;
+    }
+
+    ObservableEntityData getEntityData() {
+        return entityData;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        transformBaselines.clear();
+        snapshotRequested = false;
+        hiddenEntities.clear();
+        scheduler.clear();
+        scheduledChanges.clear();
+        transformSequences.clear();
+        unsettledEntities.clear();
+        queuedEventCount = 0;
+    }
+}
@@ -9,24 +9,34 @@ import com.jme3.network.service.rmi.RmiHostedService;
 import com.jme3.network.service.rmi.RmiRegistry;
 import com.jme3.network.service.rpc.RpcHostedService;
 import com.jme3.network.service.serializer.ServerSerializerRegistrationsService;
+import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.es.ObservableEntityData;
-import com.simsilica.es.server.EntityDataHostedService;
 import de.gamedevbaden.crucified.MainGameAppState;
 import de.gamedevbaden.crucified.appstates.EntityDataState;
 import de.gamedevbaden.crucified.appstates.GameCommanderHolder;
-import de.gamedevbaden.crucified.appstates.SceneEntityLoader;
 import de.gamedevbaden.crucified.appstates.game.GameSessionManager;
 import de.gamedevbaden.crucified.appstates.gui.NetworkGameScreenController;
 import de.gamedevbaden.crucified.appstates.gui.NiftyAppState;
+import de.gamedevbaden.crucified.appstates.paging.ChunkGrid;
 import de.gamedevbaden.crucified.game.GameCommander;
 import de.gamedevbaden.crucified.game.GameSession;
 import de.gamedevbaden.crucified.net.NetworkUtils;
+import de.gamedevbaden.crucified.net.messages.PingMessage;
 import de.gamedevbaden.crucified.net.messages.ReadyForGameStartMessage;
+import de.gamedevbaden.crucified.net.messages.ReconnectMessage;
+import de.gamedevbaden.crucified.net.messages.SessionCommandAckMessage;
+import de.gamedevbaden.crucified.net.messages.SessionCommandMessage;
+import de.gamedevbaden.crucified.net.messages.SpectateMessage;
+import de.gamedevbaden.crucified.net.stats.NetworkStats;
+import de.gamedevbaden.crucified.utils.GameConstants;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * This class manages the server.
@@ -41,11 +51,13 @@ public class GameServer extends AbstractAppState implements ConnectionListener,
     private ObservableEntityData entityData;
     private GameSessionManager gameSessionManager;
     private GameCommanderHolder commanderHolder;
-    private HashMap<HostedConnection, GameSession> gameSessionHashMap = new HashMap<>();
+    private Map<HostedConnection, GameSession> gameSessionHashMap = new ConcurrentHashMap<>();
     private RmiHostedService rmiService;
+    private GameEntityDataHostedService entityDataService;
     private AppStateManager stateManager;
 
     private EntityId secondPlayer;
+    private List<EntityId> players = new CopyOnWriteArrayList<>(); // player entities of all connections in connection order
 
     private Application app;
 
@@ -57,7 +69,9 @@ public class GameServer extends AbstractAppState implements ConnectionListener,
     public void initialize(AppStateManager stateManager, Application app) {
         this.app = app;
         this.stateManager = stateManager;
-        this.entityData = (ObservableEntityData) stateManager.getState(EntityDataState.class).getEntityData();
+        // if the server runs several matches, there is no entity data state, the matches have their own ones
+        EntityDataState entityDataState = stateManager.getState(EntityDataState.class);
+        this.entityData = entityDataState != null ? (ObservableEntityData) entityDataState.getEntityData() : null;
         this.gameSessionManager = stateManager.getState(GameSessionManager.class);
         this.commanderHolder = stateManager.getState(GameCommanderHolder.class);
 
@@ -74,9 +88,14 @@ public class GameServer extends AbstractAppState implements ConnectionListener,
 
             this.rmiService = new RmiHostedService();
 
-            this.server.getServices().addService(new EntityDataHostedService(MessageConnection.CHANNEL_DEFAULT_RELIABLE, entityData));
+            this.entityDataService = new GameEntityDataHostedService(MessageConnection.CHANNEL_DEFAULT_RELIABLE, entityData);
+            this.entityDataService.setAutoHost(entityData != null); // matches host their entity data themselves
+            this.server.getServices().addService(entityDataService);
             this.server.getServices().addService(new RpcHostedService());
             this.server.getServices().addService(rmiService);
+
+            // all message classes are registered now, so we can measure their sizes
+            NetworkStats.instrumentSerializers(true);
             this.server.start();
 
 
@@ -89,8 +108,9 @@ public class GameServer extends AbstractAppState implements ConnectionListener,
 
     @Override
     public void update(float tpf) {
-        if ((timer += tpf) >= 0.1f) { // 10 updates per second
-            getServer().getServices().getService(EntityDataHostedService.class).sendUpdates();
+        // the entity data service decides which connection gets which updates
+        if ((timer += tpf) >= 1f / GameConstants.NETWORK_TICK_RATE) {
+            entityDataService.sendUpdates();
             timer = 0;
         }
     }
@@ -99,52 +119,165 @@ public class GameServer extends AbstractAppState implements ConnectionListener,
         return server;
     }
 
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return port;
+    }
+
     private int playerCounter = 0;
     @Override
     public void connectionAdded(Server server, HostedConnection conn) {
 
         System.out.println("Client #" + conn.getId() + " has connected!");
 
-        this.secondPlayer = entityData.createEntity(); //(playerCounter++ % 2 == 0) ? EntityFactory.createDemon(entityData) : EntityFactory.createPlayer(entityData);
+        // if we run several matches, the match manager decides which match the client joins
+        MatchManager matchManager = stateManager.getState(MatchManager.class);
+        if (matchManager != null) {
+            matchManager.connectionAdded(conn);
+            return;
+        }
+
+        this.secondPlayer = joinGame(conn, entityData, gameSessionManager, commanderHolder); //(playerCounter++ % 2 == 0) ? EntityFactory.createDemon(entityData) : EntityFactory.createPlayer(entityData);
 
         System.out.println(secondPlayer);
 
+        players.add(secondPlayer);
+
+        NiftyAppState niftyAppState = stateManager.getState(NiftyAppState.class);
+        if (niftyAppState != null) {
+            niftyAppState.getController(NetworkGameScreenController.class).setSecondPlayerConnected(true);
+        }
+    }
+
+    /**
+     * Creates the player entity and the game session for a new client and shares the session with it.
+     *
+     * @param conn             the connection of the client
+     * @param entityData       the entity data of the game the client joins
+     * @param sessionManager   the session manager of that game
+     * @param commanderHolder  the commander holder of that game
+     * @return the player entity of the client
+     */
+    EntityId joinGame(HostedConnection conn, EntityData entityData, GameSessionManager sessionManager, GameCommanderHolder commanderHolder) {
+        EntityId player = entityData.createEntity();
+
         // create a game session for this player
-        GameSession session = gameSessionManager.createSession(secondPlayer);
+        GameSession session = sessionManager.createSession(player);
+        bindConnection(conn, session, GameSession.class.getName(), sessionManager, commanderHolder);
+        return player;
+    }
+
+    /**
+     * Lets the connection control the player of the game session. This is used for new players
+     * and for clients which reconnect to their player.
+     *
+     * @param conn            the connection of the client
+     * @param session         the game session of the player
+     * @param sessionName     the name the session is shared with, a name can only be shared once per connection
+     * @param sessionManager  the session manager of the game
+     * @param commanderHolder the commander holder of the game
+     */
+    void bindConnection(HostedConnection conn, GameSession session, String sessionName, GameSessionManager sessionManager, GameCommanderHolder commanderHolder) {
+        EntityId player = session.getPlayer();
 
         // share this GameSession object so the client can access it
         RmiRegistry rmi = rmiService.getRmiRegistry(conn);
-        rmi.share(session, GameSession.class);
+        rmi.share(sessionName, session, GameSession.class);
 
         // create a server side game commander which basically sends commands to the client
         // the client also has one
         GameCommander commander = new ServerGameCommander(conn);
-        commanderHolder.add(secondPlayer, commander);
+        commanderHolder.add(player, commander);
 
         gameSessionHashMap.put(conn, session);
 
-        NiftyAppState niftyAppState = stateManager.getState(NiftyAppState.class);
-        if (niftyAppState != null) {
-            niftyAppState.getController(NetworkGameScreenController.class).setSecondPlayerConnected(true);
+        // entity updates for this connection are filtered relative to its player
+        entityDataService.setViewer(conn, player);
+        entityDataService.setProcessedInput(conn, () -> sessionManager.getProcessedInput(player));
+        sessionManager.setServerClock(entityDataService::getServerTime);
+    }
+
+    /**
+     * Takes the player away from the connection, it can't send game session commands anymore.
+     * This is used for connections which only watch a match.
+     *
+     * @param conn the connection
+     */
+    void releaseConnection(HostedConnection conn) {
+        gameSessionHashMap.remove(conn);
+    }
+
+    /**
+     * Sets the chunk grid of the current level. Clients only receive movement and sound
+     * updates of entities in the chunk of their player and the surrounding chunks.
+     *
+     * @param chunkGrid the grid of the level
+     */
+    public void setChunkGrid(ChunkGrid chunkGrid) {
+        if (entityDataService != null && chunkGrid != null) {
+            entityDataService.setChunkGrid(chunkGrid);
         }
     }
 
+    /**
+     * @return the service which sends entity updates to the clients
+     */
+    public GameEntityDataHostedService getEntityDataService() {
+        return entityDataService;
+    }
+
+    /**
+     * @return the player entities of all connected clients in the order they have connected
+     */
+    public List<EntityId> getPlayers() {
+        return players;
+    }
+
+    /**
+     * @param conn a connection
+     * @return the player entity of the connection or null if it hasn't joined a game
+     */
+    EntityId getPlayer(HostedConnection conn) {
+        GameSession session = gameSessionHashMap.get(conn);
+        return session != null ? session.getPlayer() : null;
+    }
+
     public EntityId getSecondPlayer() {
         return secondPlayer;
     }
 
     @Override
     public void connectionRemoved(Server server, HostedConnection conn) {
-        entityData.removeEntity(gameSessionHashMap.get(conn).getPlayer());
+        GameSession session = gameSessionHashMap.remove(conn);
+        NetworkStats.removeConnection(conn.getId());
+
+        MatchManager matchManager = stateManager.getState(MatchManager.class);
+        if (matchManager != null) {
+            matchManager.connectionRemoved(conn, session != null ? session.getPlayer() : null);
+            return;
+        }
+
+        if (session == null) {
+            return; // the client never joined the game
+        }
+
+        EntityId player = session.getPlayer();
+        entityData.removeEntity(player);
+        players.remove(player);
 
         NiftyAppState niftyAppState = stateManager.getState(NiftyAppState.class);
         if (niftyAppState != null) {
             niftyAppState.getController(NetworkGameScreenController.class).setSecondPlayerConnected(false);
         }
 
-        // we close the game
+        // we close the game (a dedicated server has no game to close)
         app.enqueue((Callable) () -> {
-            stateManager.getState(MainGameAppState.class).closeExistingGame();
+            MainGameAppState mainGameAppState = stateManager.getState(MainGameAppState.class);
+            if (mainGameAppState != null) {
+                mainGameAppState.closeExistingGame();
+            }
             return null;
         });
 
@@ -152,11 +285,53 @@ public class GameServer extends AbstractAppState implements ConnectionListener,
 
     @Override
     public void messageReceived(HostedConnection source, Message m) {
-        if (false && m instanceof ReadyForGameStartMessage) {
-            ReadyForGameStartMessage rm = (ReadyForGameStartMessage) m;
-            if (rm.isReady()) {
-                EntityId playerId = gameSessionHashMap.get(source).getPlayer();
-                commanderHolder.get(playerId).loadScene(SceneEntityLoader.sceneToLoad);
+        // we listen to all messages, so this is the place where we know where received messages came from
+        NetworkStats.onMessageDispatched(source, m);
+
+        if (m instanceof ReconnectMessage) {
+            // only matches of a dedicated server keep the players of dropped clients
+            MatchManager matchManager = stateManager.getState(MatchManager.class);
+            long token = ((ReconnectMessage) m).getToken();
+            if (matchManager == null || !matchManager.reconnect(source, token)) {
+                source.send(new ReconnectMessage(token, false));
+            }
+            return;
+        }
+
+        if (m instanceof SpectateMessage) {
+            // only a server which runs matches has something to watch
+            MatchManager matchManager = stateManager.getState(MatchManager.class);
+            SpectateMessage sm = (SpectateMessage) m;
+            if (matchManager == null || !matchManager.spectate(source, sm.getMatchId(), sm.getViewer())) {
+                source.send(new SpectateMessage(sm.getMatchId(), sm.getViewer(), false));
+            }
+            return;
+        }
+
+        if (m instanceof SessionCommandMessage) {
+            // the commands of a frame arrive together, the client runs its callbacks when we acknowledge them
+            GameSession session = gameSessionHashMap.get(source);
+            if (session != null) {
+                SessionCommandMessage cm = (SessionCommandMessage) m;
+                source.send(new SessionCommandAckMessage(session.executeCommands(cm.getFirstSequence(), cm.getCommands())));
+            }
+            return;
+        }
+
+        if (m instanceof PingMessage && !((PingMessage) m).isReply()) {
+            int previous = NetworkStats.beginSend(source.getId());
+            PingMessage reply = new PingMessage(((PingMessage) m).getTime(), true);
+            reply.setReliable(m.isReliable()); // so unreliable pings measure the loss as well
+            source.send(reply);
+            NetworkStats.endSend(previous);
+            return;
+        }
+
+        if (m instanceof ReadyForGameStartMessage) {
+            // players of an open match spawn once their client is ready
+            MatchManager matchManager = stateManager.getState(MatchManager.class);
+            if (matchManager != null && ((ReadyForGameStartMessage) m).isReady()) {
+                matchManager.playerReady(source);
             }
         }
     }
@@ -173,6 +348,7 @@ public class GameServer extends AbstractAppState implements ConnectionListener,
 
         this.gameSessionHashMap.clear();
         this.gameSessionHashMap = null;
+        this.players.clear();
 
         super.cleanup();
     }
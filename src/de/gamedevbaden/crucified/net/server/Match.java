@@ -0,0 +1,491 @@
+package de.gamedevbaden.crucified.net.server;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.network.Filters;
+import com.jme3.math.Vector3f;
+import com.jme3.network.HostedConnection;
+import com.jme3.scene.Node;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.ObservableEntityData;
+import com.simsilica.es.base.DefaultEntityData;
+import com.simsilica.es.base.EntityIdGenerator;
+import de.gamedevbaden.crucified.appstates.EntityDataState;
+import de.gamedevbaden.crucified.appstates.GameCommanderHolder;
+import de.gamedevbaden.crucified.appstates.SceneEntityLoader;
+import de.gamedevbaden.crucified.appstates.TransientEventAppState;
+import de.gamedevbaden.crucified.appstates.game.GameEventHandler;
+import de.gamedevbaden.crucified.appstates.game.GameSessionManager;
+import de.gamedevbaden.crucified.appstates.gamelogic.GameStartupAppState;
+import de.gamedevbaden.crucified.appstates.gamelogic.PlayerHolderAppState;
+import de.gamedevbaden.crucified.appstates.paging.GameWorldPagingManager;
+import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.es.utils.EntityFactory;
+import de.gamedevbaden.crucified.game.GameCommander;
+import de.gamedevbaden.crucified.net.messages.LoadLevelMessage;
+import de.gamedevbaden.crucified.net.messages.ReconnectMessage;
+import de.gamedevbaden.crucified.net.messages.ReconnectTokenMessage;
+import de.gamedevbaden.crucified.net.messages.SpectateMessage;
+import de.gamedevbaden.crucified.net.messages.StartGameMessage;
+import de.gamedevbaden.crucified.net.replay.MatchRecorder;
+import de.gamedevbaden.crucified.net.shard.ShardIdGenerator;
+import de.gamedevbaden.crucified.utils.GameConstants;
+import de.gamedevbaden.crucified.utils.GameInitializer;
+import de.gamedevbaden.crucified.utils.GameOptions;
+
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import static de.gamedevbaden.crucified.appstates.SceneEntityLoader.sceneToLoad;
+
+/**
+ * One match on a server which runs several matches at once (see {@link MatchManager}).
+ * A match has its own {@link AppStateManager} with its own entity data, physics space, session manager
+ * and game logic states. Only the network port and the asset and collision shape caches are shared.
+ * <p>
+ * The match starts as soon as all players have joined and is closed once all players have left.
+ * <p>
+ * Every player gets a reconnect token when it joins. If the connection of a client drops after the match has started,
+ * its player is kept for {@link GameConstants#NETWORK_RECONNECT_TIMEOUT} seconds. A client which connects again with
+ * the token gets its player back (see {@link #rejoin(HostedConnection, long)}).
+ * <p>
+ * Spectators get the entity updates of the match without a player (see {@link #addSpectator(HostedConnection, long)}).
+ * They don't keep a match open.
+ * <p>
+ * An open match runs the island of a region shard (see {@link RegionShard}): it starts right away, is never closed
+ * and players join and leave it at any time. There are no roles, every player spawns as a survivor once its client
+ * is ready. Players can also be handed over from and to the matches of other shards.
+ */
+public class Match {
+
+    private static final Logger log = Logger.getLogger(Match.class.getName());
+    private static final SecureRandom random = new SecureRandom();
+
+    private final int id;
+    private final int playersPerMatch;
+    private final boolean open;
+    private final GameServer server;
+    private final MatchStateManager stateManager;
+    private final EntityData entityData;
+
+    private final List<HostedConnection> connections = new CopyOnWriteArrayList<>();
+    private final List<HostedConnection> spectators = new CopyOnWriteArrayList<>();
+    private final List<EntityId> players = new CopyOnWriteArrayList<>();
+    private final Map<EntityId, HostedConnection> playerConnections = new ConcurrentHashMap<>();
+    private final Map<Long, EntityId> reconnectTokens = new ConcurrentHashMap<>();
+    private final Map<EntityId, Float> heldPlayers = new ConcurrentHashMap<>(); // seconds left to reconnect
+    private final List<EntityId> pendingSpawns = new ArrayList<>(); // players which are ready before the scene, guarded by itself
+    private volatile Vector3f spawnLocation = Vector3f.ZERO;
+
+    private volatile boolean started;
+    private volatile boolean loaded;
+    private volatile boolean closed;
+
+    Match(int id, int playersPerMatch, Application app, GameServer server) {
+        this(id, playersPerMatch, app, server, null);
+    }
+
+    /**
+     * @param id              the id of the match
+     * @param playersPerMatch the amount of players the match starts with, 0 for an open match
+     * @param app             the application
+     * @param server          the game server
+     * @param idGenerator     creates the entity ids of the match or null for the ids of a single shard
+     */
+    Match(int id, int playersPerMatch, Application app, GameServer server, EntityIdGenerator idGenerator) {
+        this.id = id;
+        this.playersPerMatch = playersPerMatch;
+        this.open = playersPerMatch <= 0;
+        this.server = server;
+        this.stateManager = new MatchStateManager(app);
+
+        // the ids of the entities have to stay below the ones of the scene entities, which the clients derive themselves
+        EntityDataState entityDataState = new EntityDataState(new DefaultEntityData(idGenerator != null ? idGenerator : new ShardIdGenerator(0, 1)));
+        this.entityData = entityDataState.getEntityData();
+        this.stateManager.attach(entityDataState);
+        this.stateManager.attach(new GameSessionManager());
+        this.stateManager.attach(new GameCommanderHolder());
+        this.stateManager.attach(new SceneEntityLoader());
+
+        GameInitializer.initEssentialAppStates(stateManager);
+        // the sounds and hits of this match are only sent to its players
+        stateManager.getState(TransientEventAppState.class).addListener(event -> server.getEntityDataService().broadcastEvent(entityData, event));
+    }
+
+    /**
+     * Lets the client join this match.
+     *
+     * @param conn the connection of the client
+     */
+    void addPlayer(HostedConnection conn) {
+        EntityId player = server.joinGame(conn, entityData,
+                stateManager.getState(GameSessionManager.class), stateManager.getState(GameCommanderHolder.class));
+        server.getEntityDataService().startHostingOnConnection(conn, (ObservableEntityData) entityData);
+
+        connections.add(conn);
+        players.add(player);
+        playerConnections.put(player, conn);
+
+        long token;
+        do {
+            token = random.nextLong();
+        } while (token == 0 || reconnectTokens.putIfAbsent(token, player) != null);
+        conn.send(new ReconnectTokenMessage(token));
+
+        log.info("Client #" + conn.getId() + " joined match " + id + " (" + players.size() + "/" + playersPerMatch + ")");
+    }
+
+    /**
+     * Lets a player join an open match which is running already, its client is ready to load the scene.
+     * The player spawns right away. Clients which connect again to take over their player aren't ready again,
+     * they have loaded the scene before.
+     * Players of other matches get their characters when the match starts.
+     *
+     * @param player the player entity
+     */
+    void spawnPlayer(EntityId player) {
+        if (!open || !players.contains(player) || entityData.getComponent(player, Transform.class) != null) {
+            return;
+        }
+        synchronized (pendingSpawns) {
+            if (!loaded) {
+                pendingSpawns.add(player); // the loader tells the client to load the scene
+                return;
+            }
+        }
+        HostedConnection conn = playerConnections.get(player);
+        if (conn != null) {
+            conn.send(new LoadLevelMessage(sceneToLoad));
+            conn.send(new StartGameMessage());
+        }
+        EntityFactory.createPlayer(entityData, player, spawnLocation);
+        log.info("Player " + player + " spawned in match " + id);
+    }
+
+    /**
+     * Takes over a player whose entity is handed over from another match. The player is kept like one whose client
+     * has lost the connection, until the client connects with its token (see {@link #rejoin(HostedConnection, long)}).
+     *
+     * @param player the player entity, its components are set separately
+     * @param token  the reconnect token of the client
+     */
+    void adoptPlayer(EntityId player, long token) {
+        stateManager.getState(GameSessionManager.class).createSession(player);
+        players.add(player);
+        reconnectTokens.put(token, player);
+        heldPlayers.put(player, GameConstants.NETWORK_RECONNECT_TIMEOUT);
+        log.info("Player " + player + " is handed over to match " + id);
+    }
+
+    /**
+     * Lets go of a player whose entity is handed over to another match. Its entity isn't removed here.
+     *
+     * @param player the player entity
+     * @return the reconnect token of the player or 0 if it isn't a player of this match
+     */
+    long releasePlayer(EntityId player) {
+        long token = 0;
+        for (Map.Entry<Long, EntityId> entry : reconnectTokens.entrySet()) {
+            if (entry.getValue().equals(player)) {
+                token = entry.getKey();
+            }
+        }
+        reconnectTokens.values().remove(player);
+        players.remove(player);
+        heldPlayers.remove(player);
+        HostedConnection conn = playerConnections.remove(player);
+        if (conn != null) {
+            connections.remove(conn);
+        }
+        stateManager.getState(GameSessionManager.class).removeSession(player);
+        return token;
+    }
+
+    /**
+     * @param player a player entity
+     * @return the connection of the player or null if it has none at the moment
+     */
+    HostedConnection getConnection(EntityId player) {
+        return playerConnections.get(player);
+    }
+
+    void removePlayer(HostedConnection conn, EntityId player) {
+        connections.remove(conn);
+        // the player might have been taken over by a new connection already
+        if (player != null && playerConnections.remove(player, conn)) {
+            // a player of an open match which has never spawned has nothing to keep
+            if (started && !closed && (!open || entityData.getComponent(player, Transform.class) != null)) {
+                heldPlayers.put(player, GameConstants.NETWORK_RECONNECT_TIMEOUT);
+                stateManager.getState(GameSessionManager.class).releaseInputs(player);
+                log.info("Client #" + conn.getId() + " lost the connection to match " + id + ", keeping its player");
+                return;
+            }
+            removePlayerEntity(player);
+        }
+        log.info("Client #" + conn.getId() + " left match " + id);
+
+        if (!open && connections.isEmpty() && heldPlayers.isEmpty()) {
+            closed = true;
+        }
+    }
+
+    /**
+     * Lets a client which has connected again take over its player.
+     *
+     * @param conn  the new connection of the client, it must not be part of a match
+     * @param token the reconnect token the client got when it joined
+     * @return true if the client has its player again
+     */
+    boolean rejoin(HostedConnection conn, long token) {
+        EntityId player = reconnectTokens.get(token);
+        if (player == null || closed) {
+            return false;
+        }
+        // the server might not have noticed yet that the old connection is dead
+        HostedConnection previous = playerConnections.get(player);
+        if (heldPlayers.remove(player) == null && previous == null) {
+            return false; // the player has just been removed
+        }
+        if (previous != null) {
+            connections.remove(previous);
+            previous.close("Your client has connected again");
+        }
+        playerConnections.put(player, conn);
+        connections.add(conn);
+
+        GameSessionManager sessionManager = stateManager.getState(GameSessionManager.class);
+        GameCommanderHolder commanderHolder = stateManager.getState(GameCommanderHolder.class);
+        // the connection has already got the session of the match it has joined first
+        server.bindConnection(conn, sessionManager.getGameSession(player), ReconnectMessage.SESSION_NAME, sessionManager, commanderHolder);
+        server.getEntityDataService().startHostingOnConnection(conn, (ObservableEntityData) entityData);
+
+        MatchRecorder recorder = stateManager.getState(MatchRecorder.class);
+        if (recorder != null) {
+            ((ServerGameCommander) commanderHolder.get(player)).setRecorder(recorder, player);
+        }
+
+        // the game session has been shared again, so the client can use it once it gets the answer
+        conn.send(new ReconnectMessage(token, true));
+        log.info("Client #" + conn.getId() + " has reconnected to match " + id);
+        return true;
+    }
+
+    /**
+     * Lets the client watch this match. If the match has already started, it's told to load the scene right away,
+     * otherwise it's told when the match starts.
+     *
+     * @param conn   the connection of the client, it must not be part of a match
+     * @param viewer the id of the entity the client follows or {@link SpectateMessage#NO_VIEWER}
+     */
+    void addSpectator(HostedConnection conn, long viewer) {
+        spectators.add(conn);
+        if (viewer != SpectateMessage.NO_VIEWER) {
+            server.getEntityDataService().setViewer(conn, new EntityId(viewer));
+        }
+        // a snapshot the client has asked for before is sent again for this entity data
+        server.getEntityDataService().startHostingOnConnection(conn, (ObservableEntityData) entityData);
+
+        conn.send(new SpectateMessage(id, viewer, true));
+        if (started) {
+            conn.send(new LoadLevelMessage(sceneToLoad));
+            conn.send(new StartGameMessage());
+        }
+        log.info("Client #" + conn.getId() + " watches match " + id);
+    }
+
+    void removeSpectator(HostedConnection conn) {
+        if (spectators.remove(conn)) {
+            log.info("Client #" + conn.getId() + " stopped watching match " + id);
+        }
+    }
+
+    /**
+     * @param token a reconnect token
+     * @return true if the token belongs to a player of this match
+     */
+    boolean hasReconnectToken(long token) {
+        return reconnectTokens.containsKey(token);
+    }
+
+    private void removePlayerEntity(EntityId player) {
+        reconnectTokens.values().remove(player);
+        players.remove(player);
+        synchronized (pendingSpawns) {
+            pendingSpawns.remove(player);
+        }
+        entityData.removeEntity(player);
+    }
+
+    private void removeExpiredPlayers(float tpf) {
+        for (Map.Entry<EntityId, Float> entry : heldPlayers.entrySet()) {
+            EntityId player = entry.getKey();
+            float timeLeft = entry.getValue() - tpf;
+            if (timeLeft > 0) {
+                heldPlayers.replace(player, entry.getValue(), timeLeft);
+            } else if (heldPlayers.remove(player, entry.getValue())) {
+                removePlayerEntity(player);
+                log.info("Player " + player + " has not reconnected to match " + id);
+            }
+        }
+        if (!open && connections.isEmpty() && heldPlayers.isEmpty()) {
+            closed = true;
+        }
+    }
+
+    void update(float tpf) {
+        if (!started && players.size() >= playersPerMatch) {
+            start();
+        }
+        if (!heldPlayers.isEmpty()) {
+            removeExpiredPlayers(tpf);
+        }
+
+        // we run the states of this match like the application runs its own states
+        stateManager.update(tpf);
+        stateManager.render(stateManager.getApplication().getRenderManager());
+        stateManager.postRender();
+    }
+
+    private void start() {
+        started = true;
+
+        stateManager.attach(new GameEventHandler(stateManager.getState(GameSessionManager.class)));
+        if (GameOptions.RECORD_MATCHES) {
+            // attached before the loader, so the scene entities are recorded as well
+            String fileName = "match-" + id + "-" + System.currentTimeMillis() + ".rec";
+            stateManager.attach(new MatchRecorder(Paths.get(GameConstants.RECORDINGS_DIRECTORY, fileName)));
+        }
+        if (open) {
+            stateManager.attach(new PlayerHolderAppState());
+        } else {
+            stateManager.attach(new PlayerHolderAppState(players.get(0), players.size() > 1 ? players.get(1) : null));
+        }
+
+        GameInitializer.initGameLogicAppStates(stateManager);
+
+        stateManager.attach(new Loader());
+    }
+
+    private class Loader extends AbstractAppState {
+        @Override
+        public void initialize(AppStateManager stateManager, Application app) {
+            if (!open) {
+                stateManager.attach(new GameStartupAppState());
+            }
+
+            for (GameCommander commander : stateManager.getState(GameCommanderHolder.class).getAll()) {
+                commander.loadScene(sceneToLoad);
+            }
+
+            // the scene is only used to create entities and static collision shapes, it's never attached
+            SceneEntityLoader sceneEntityLoader = stateManager.getState(SceneEntityLoader.class);
+            Node gameWorld = sceneEntityLoader.createEntitiesFromScene(sceneToLoad);
+            server.getEntityDataService().setSceneDefaults(entityData, sceneEntityLoader.getSceneDefaults());
+            server.setChunkGrid(GameWorldPagingManager.createChunkGrid(gameWorld, GameConstants.AMOUNT_OF_CHUNKS_PER_ROW));
+
+            // spectators don't have a game commander
+            server.getServer().broadcast(Filters.in(spectators), new LoadLevelMessage(sceneToLoad));
+
+            List<HostedConnection> receivers = new ArrayList<>(connections);
+            receivers.addAll(spectators);
+            server.getServer().broadcast(Filters.in(receivers), new StartGameMessage());
+            synchronized (pendingSpawns) {
+                loaded = true;
+                for (EntityId player : pendingSpawns) {
+                    EntityFactory.createPlayer(entityData, player, spawnLocation);
+                }
+                pendingSpawns.clear();
+            }
+            log.info("Match " + id + " started");
+        }
+    }
+
+    void close() {
+        closed = true;
+        server.getEntityDataService().setSceneDefaults(entityData, null);
+        for (HostedConnection conn : connections) {
+            conn.close("The match has ended!");
+        }
+        for (HostedConnection conn : spectators) {
+            conn.close("The match has ended!");
+        }
+
+        // detach all states of this match and let the state manager clean them up
+        stateManager.detachAll();
+        stateManager.update(0);
+        log.info("Match " + id + " closed");
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public boolean isFull() {
+        return !open && players.size() >= playersPerMatch;
+    }
+
+    /**
+     * @return true if this match runs the island of a region shard
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @return true once the scene of the match has been loaded
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Sets where the players of an open match spawn.
+     *
+     * @param spawnLocation the location
+     */
+    public void setSpawnLocation(Vector3f spawnLocation) {
+        this.spawnLocation = spawnLocation.clone();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public List<EntityId> getPlayers() {
+        return players;
+    }
+
+    public AppStateManager getStateManager() {
+        return stateManager;
+    }
+
+    public EntityData getEntityData() {
+        return entityData;
+    }
+
+    private static class MatchStateManager extends AppStateManager {
+
+        MatchStateManager(Application app) {
+            super(app);
+        }
+
+        void detachAll() {
+            for (AppState state : getStates()) {
+                detach(state);
+            }
+        }
+    }
+}
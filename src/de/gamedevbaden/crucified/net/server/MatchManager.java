@@ -0,0 +1,263 @@
+package de.gamedevbaden.crucified.net.server;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.network.HostedConnection;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.base.EntityIdGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Runs several {@link Match}es in one application. All matches share the port of the {@link GameServer}.
+ * New clients join the first match which is still waiting for players, if there is none a new match is created.
+ * <p>
+ * If this state is attached, the {@link GameServer} hands all new connections to it.
+ * <p>
+ * A region shard runs a single open match instead (see {@link #createOpenMatch(EntityIdGenerator)}),
+ * all clients join that one.
+ */
+public class MatchManager extends AbstractAppState {
+
+    private static final Logger log = Logger.getLogger(MatchManager.class.getName());
+
+    private int playersPerMatch;
+    private int maxMatches;
+
+    private List<Match> matches = new CopyOnWriteArrayList<>();
+    private Map<HostedConnection, Match> connectionMatches = new ConcurrentHashMap<>();
+    private Map<HostedConnection, Match> spectatorMatches = new ConcurrentHashMap<>();
+    private List<Match> closedMatches = new ArrayList<>();
+    private int nextMatchId;
+
+    private Application app;
+    private GameServer server;
+
+    /**
+     * @param playersPerMatch the amount of players a match starts with
+     * @param maxMatches      the maximum amount of matches running at the same time
+     */
+    public MatchManager(int playersPerMatch, int maxMatches) {
+        this.playersPerMatch = playersPerMatch;
+        this.maxMatches = maxMatches;
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        this.app = app;
+        this.server = stateManager.getState(GameServer.class);
+        super.initialize(stateManager, app);
+    }
+
+    synchronized void connectionAdded(HostedConnection conn) {
+        // find a match which is waiting for players
+        Match match = null;
+        for (Match m : matches) {
+            if ((!m.isStarted() || m.isOpen()) && !m.isFull() && !m.isClosed()) {
+                match = m;
+                break;
+            }
+        }
+
+        if (match == null) {
+            if (matches.size() >= maxMatches) {
+                log.info("Client #" + conn.getId() + " rejected, no free match");
+                conn.close("The server is full!");
+                return;
+            }
+            match = new Match(nextMatchId++, playersPerMatch, app, server);
+            matches.add(match);
+            log.info("Created match " + match.getId());
+        }
+
+        match.addPlayer(conn);
+        connectionMatches.put(conn, match);
+    }
+
+    /**
+     * Creates a match which starts right away and which all new clients join (see {@link Match}).
+     *
+     * @param idGenerator creates the entity ids of the match
+     * @return the match
+     */
+    synchronized Match createOpenMatch(EntityIdGenerator idGenerator) {
+        Match match = new Match(nextMatchId++, 0, app, server, idGenerator);
+        matches.add(match);
+        log.info("Created open match " + match.getId());
+        return match;
+    }
+
+    /**
+     * The client of the connection has loaded the scene, in an open match its player spawns now.
+     *
+     * @param conn the connection
+     */
+    synchronized void playerReady(HostedConnection conn) {
+        Match match = connectionMatches.get(conn);
+        EntityId player = server.getPlayer(conn);
+        if (match != null && player != null) {
+            match.spawnPlayer(player);
+        }
+    }
+
+    /**
+     * Takes the player of a match away from its connection, because its entity is handed over to another server.
+     * The connection isn't closed, it can still get the redirect to the other server.
+     *
+     * @param match  the match
+     * @param player the player entity
+     * @return the reconnect token of the player or 0 if it isn't a player of the match
+     */
+    synchronized long handOffPlayer(Match match, EntityId player) {
+        HostedConnection conn = match.getConnection(player);
+        long token = match.releasePlayer(player);
+        if (conn != null) {
+            connectionMatches.remove(conn);
+            server.releaseConnection(conn);
+            server.getEntityDataService().stopHostingOnConnection(conn);
+        }
+        return token;
+    }
+
+    /**
+     * Moves the connection of a client which has connected again from the match it has just joined
+     * to the match of its former player.
+     *
+     * @param conn  the connection
+     * @param token the reconnect token of the former player
+     * @return true if the client has its player again
+     */
+    synchronized boolean reconnect(HostedConnection conn, long token) {
+        Match match = null;
+        for (Match m : matches) {
+            if (m.hasReconnectToken(token) && !m.isClosed()) {
+                match = m;
+                break;
+            }
+        }
+        if (match == null) {
+            return false;
+        }
+
+        // the connection has joined a waiting match like any new one, it leaves it again
+        Match current = connectionMatches.remove(conn);
+        if (current != null) {
+            current.removePlayer(conn, server.getPlayer(conn));
+        }
+        server.getEntityDataService().stopHostingOnConnection(conn);
+
+        if (!match.rejoin(conn, token)) {
+            return false;
+        }
+        connectionMatches.put(conn, match);
+        return true;
+    }
+
+    /**
+     * Lets the connection watch a match instead of playing. The connection leaves the match it has joined
+     * as a player, even if there is no match to watch, so it can't start a match by accident.
+     * It may ask again later.
+     * <p>
+     * Like a reconnecting client, a spectator might get the first updates of the match it has joined before.
+     *
+     * @param conn    the connection
+     * @param matchId the id of the match or {@link de.gamedevbaden.crucified.net.messages.SpectateMessage#ANY_MATCH}
+     *                for the first match which has started
+     * @param viewer  the id of the entity the spectator follows
+     *                or {@link de.gamedevbaden.crucified.net.messages.SpectateMessage#NO_VIEWER}
+     * @return true if the connection watches the match now
+     */
+    synchronized boolean spectate(HostedConnection conn, int matchId, long viewer) {
+        releaseConnection(conn);
+
+        Match match = null;
+        for (Match m : matches) {
+            if (!m.isClosed() && (matchId < 0 ? m.isStarted() : m.getId() == matchId)) {
+                match = m;
+                break;
+            }
+        }
+        if (match == null) {
+            return false;
+        }
+
+        match.addSpectator(conn, viewer);
+        spectatorMatches.put(conn, match);
+        return true;
+    }
+
+    /**
+     * Lets the connection leave the match it plays or watches, it stays connected without getting any updates.
+     *
+     * @param conn the connection
+     */
+    synchronized void releaseConnection(HostedConnection conn) {
+        Match current = connectionMatches.remove(conn);
+        if (current != null) {
+            current.removePlayer(conn, server.getPlayer(conn));
+        }
+        current = spectatorMatches.remove(conn);
+        if (current != null) {
+            current.removeSpectator(conn);
+        }
+        server.releaseConnection(conn);
+        server.getEntityDataService().stopHostingOnConnection(conn);
+    }
+
+    synchronized void connectionRemoved(HostedConnection conn, EntityId player) {
+        Match match = connectionMatches.remove(conn);
+        if (match != null) {
+            match.removePlayer(conn, player);
+        }
+        match = spectatorMatches.remove(conn);
+        if (match != null) {
+            match.removeSpectator(conn);
+        }
+    }
+
+    @Override
+    public void update(float tpf) {
+        for (Match match : matches) {
+            if (match.isClosed()) {
+                closedMatches.add(match);
+            } else {
+                match.update(tpf);
+            }
+        }
+
+        if (!closedMatches.isEmpty()) {
+            synchronized (this) {
+                matches.removeAll(closedMatches);
+                spectatorMatches.values().removeAll(closedMatches);
+            }
+            for (Match match : closedMatches) {
+                match.close();
+            }
+            closedMatches.clear();
+        }
+    }
+
+    /**
+     * @return all matches which are running or waiting for players
+     */
+    public List<Match> getMatches() {
+        return matches;
+    }
+
+    @Override
+    public void cleanup() {
+        for (Match match : matches) {
+            match.close();
+        }
+        matches.clear();
+        connectionMatches.clear();
+        spectatorMatches.clear();
+        super.cleanup();
+    }
+}
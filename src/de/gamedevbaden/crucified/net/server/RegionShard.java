@@ -0,0 +1,536 @@
+package de.gamedevbaden.crucified.net.server;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.math.Vector3f;
+import com.jme3.network.*;
+import com.jme3.network.service.rmi.RmiClientService;
+import com.jme3.network.service.rpc.RpcClientService;
+import com.simsilica.es.Entity;
+import com.simsilica.es.EntityChange;
+import com.simsilica.es.EntityComponent;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.EntitySet;
+import de.gamedevbaden.crucified.appstates.gamelogic.GameStartupAppState;
+import de.gamedevbaden.crucified.es.components.*;
+import de.gamedevbaden.crucified.net.NetworkUtils;
+import de.gamedevbaden.crucified.net.messages.BorderUpdateMessage;
+import de.gamedevbaden.crucified.net.messages.EntityHandoffMessage;
+import de.gamedevbaden.crucified.net.messages.PingMessage;
+import de.gamedevbaden.crucified.net.messages.ShardLinkMessage;
+import de.gamedevbaden.crucified.net.messages.ShardRedirectMessage;
+import de.gamedevbaden.crucified.net.messages.ShardStatusMessage;
+import de.gamedevbaden.crucified.net.shard.RegionMap;
+import de.gamedevbaden.crucified.net.shard.ShardCoordinator;
+import de.gamedevbaden.crucified.net.shard.ShardIdGenerator;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs one region of the island, several shards in their own processes run the whole island together.
+ * The chunk columns of the scene are split into regions by a {@link RegionMap}.
+ * <p>
+ * The shard runs an open {@link Match} which all its clients join. Its entity ids are unique over all shards
+ * (see {@link ShardIdGenerator}), so entities keep their ids when they move to another shard:
+ * <ul>
+ * <li>Once a character or a physical body has moved into the region of a neighbour, it's handed off: all its
+ * components and the entities attached to it are sent to the neighbour and removed here. If it's a player,
+ * its client is told to connect to the neighbour, where it takes over its player with its reconnect token.</li>
+ * <li>Entities in the border zone are mirrored to the neighbour, which keeps them as ghosts without simulating them.
+ * So clients near the border see what happens on the other side.</li>
+ * </ul>
+ * The shard reports to the {@link ShardCoordinator}, which routes new clients and tells the shards where their
+ * neighbours are. Each shard connects to its eastern neighbour, the link carries the messages of both directions.
+ * <p>
+ * The shards only agree on the dynamic entities. Scene entities (doors, fires, ...) and random game logic
+ * run on each shard on their own, and entities can't interact across a border.
+ */
+public class RegionShard extends AbstractAppState implements ConnectionListener, MessageListener<HostedConnection> {
+
+    private static final Logger log = Logger.getLogger(RegionShard.class.getName());
+    private static final String REGION_ATTRIBUTE = "shardRegion";
+
+    // the components clients need to show an entity, ghosts don't get anything the game logic would act on
+    private static final List<Class<? extends EntityComponent>> GHOST_TYPES = Arrays.asList(
+            Transform.class, Model.class, SkeletonComponent.class, CharacterMovementState.class, FireState.class);
+
+    private final int region;
+    private final int regions;
+    private final String address;
+    private final String coordinatorAddress;
+    private final int coordinatorPort;
+    private Vector3f spawnLocation;
+
+    private GameServer server;
+    private MatchManager matchManager;
+    private Match match;
+    private EntityData entityData;
+    private RegionMap regionMap;
+    private Application app;
+
+    private Client coordinator;
+    private final LinkListener linkListener = new LinkListener();
+    private final Map<Integer, ShardStatusMessage> shards = new ConcurrentHashMap<>();
+    private final Map<Integer, MessageConnection> links = new ConcurrentHashMap<>();
+    private final Map<Client, Integer> linkClients = new ConcurrentHashMap<>();
+    private final Map<Integer, Map<EntityId, Map<Class, EntityComponent>>> mirrored = new HashMap<>(); // what each neighbour has got
+    private final Map<Integer, Set<EntityId>> ghosts = new HashMap<>(); // the ghosts each neighbour has sent us
+    private volatile long epoch;
+
+    private EntitySet characters;
+    private EntitySet bodies;
+    private EntitySet models;
+    private float statusTimer;
+    private float borderTimer;
+
+    /**
+     * @param region             the region of this shard, from 0 (west) to regions - 1 (east)
+     * @param regions            the amount of regions
+     * @param address            the address clients and other shards reach this shard at
+     * @param coordinatorAddress the address of the coordinator
+     * @param coordinatorPort    the port of the coordinator
+     */
+    public RegionShard(int region, int regions, String address, String coordinatorAddress, int coordinatorPort) {
+        this.region = region;
+        this.regions = regions;
+        this.address = address;
+        this.coordinatorAddress = coordinatorAddress;
+        this.coordinatorPort = coordinatorPort;
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        this.app = app;
+        this.server = stateManager.getState(GameServer.class);
+        this.matchManager = stateManager.getState(MatchManager.class);
+        this.match = matchManager.createOpenMatch(new ShardIdGenerator(region, regions));
+        this.entityData = match.getEntityData();
+
+        this.characters = entityData.getEntities(Transform.class, PhysicsCharacterControl.class);
+        this.bodies = entityData.getEntities(Transform.class, PhysicsRigidBody.class);
+        this.models = entityData.getEntities(Transform.class, Model.class);
+
+        server.getServer().addConnectionListener(this);
+        server.getServer().addMessageListener(this, ShardLinkMessage.class, EntityHandoffMessage.class, BorderUpdateMessage.class);
+
+        try {
+            // our server has locked the serializer registrations, the coordinator uses the same ones for its messages
+            this.coordinator = Network.connectToServer(coordinatorAddress, coordinatorPort);
+            this.coordinator.addMessageListener((source, m) -> onShardStatus((ShardStatusMessage) m), ShardStatusMessage.class);
+            this.coordinator.start();
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Could not connect to the shard coordinator", e);
+        }
+
+        super.initialize(stateManager, app);
+    }
+
+    @Override
+    public void update(float tpf) {
+        if (!match.isLoaded()) {
+            return;
+        }
+        if (regionMap == null) {
+            this.regionMap = new RegionMap(server.getEntityDataService().getChunkGrid(), GameConstants.AMOUNT_OF_CHUNKS_PER_ROW, regions);
+            match.setSpawnLocation(spawnLocation != null ? spawnLocation : findSpawnLocation());
+            log.info("Region " + region + " reaches from x = " + regionMap.getMinX(region) + " to x = " + regionMap.getMaxX(region));
+        }
+
+        if ((statusTimer -= tpf) <= 0) {
+            statusTimer = GameConstants.SHARD_STATUS_INTERVAL;
+            if (coordinator != null && coordinator.isConnected()) {
+                coordinator.send(new ShardStatusMessage(region, address, server.getPort(), match.getPlayers().size(), 0));
+            }
+            connectToNeighbour();
+        }
+
+        characters.applyChanges();
+        bodies.applyChanges();
+        models.applyChanges();
+        handOffEntities(characters);
+        handOffEntities(bodies);
+
+        if ((borderTimer += tpf) >= 1f / GameConstants.NETWORK_TICK_RATE) {
+            borderTimer = 0;
+            for (Map.Entry<Integer, MessageConnection> link : links.entrySet()) {
+                sendBorderUpdate(link.getKey(), link.getValue());
+            }
+        }
+    }
+
+    private Vector3f findSpawnLocation() {
+        for (Vector3f[] positions : GameStartupAppState.START_POSITIONS) {
+            for (Vector3f position : positions) {
+                if (regionMap.getRegion(position.x) == region) {
+                    return position;
+                }
+            }
+        }
+        // the player is handed off right away then
+        return GameStartupAppState.START_POSITIONS[0][0];
+    }
+
+    private void onShardStatus(ShardStatusMessage status) {
+        if (epoch == 0 && status.getEpoch() != 0) {
+            // all shards count their time from the start of the coordinator, so the clocks of the clients stay valid
+            this.epoch = status.getEpoch();
+            server.getEntityDataService().setClock(() -> System.currentTimeMillis() - epoch);
+        }
+        shards.put(status.getRegion(), status);
+    }
+
+    /**
+     * Connects to the eastern neighbour, the western one connects to us.
+     */
+    private void connectToNeighbour() {
+        int neighbour = region + 1;
+        ShardStatusMessage status = shards.get(neighbour);
+        if (status == null || links.containsKey(neighbour)) {
+            return;
+        }
+        try {
+            Client link = Network.connectToServer(status.getAddress(), status.getPort());
+            link.getServices().addService(new RpcClientService());
+            link.getServices().addService(new RmiClientService());
+            link.addMessageListener(linkListener, EntityHandoffMessage.class, BorderUpdateMessage.class, PingMessage.class);
+            link.addClientStateListener(linkListener);
+            linkClients.put(link, neighbour);
+            links.put(neighbour, link);
+            link.start();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not connect to the shard of region " + neighbour, e);
+        }
+    }
+
+    private void handOffEntities(EntitySet entities) {
+        List<EntityId> leaving = new ArrayList<>();
+        for (Entity entity : entities) {
+            // decaying entities (e.g. fireballs) count their time locally, they stay until they are gone
+            if (entity.getId().getId() >= GameConstants.SCENE_ENTITY_ID_BASE || entityData.getComponent(entity.getId(), Decay.class) != null) {
+                continue;
+            }
+            float x = entity.get(Transform.class).getTranslation().x;
+            int target = regionMap.getRegion(x);
+            if (target != region && regionMap.getDistance(region, x) >= GameConstants.SHARD_HANDOFF_MARGIN
+                    && links.containsKey(target) && shards.containsKey(target)) {
+                // a western neighbour can be linked before we know its address to redirect the players to
+                leaving.add(entity.getId());
+            }
+        }
+        for (EntityId id : leaving) {
+            Vector3f location = entityData.getComponent(id, Transform.class).getTranslation();
+            handOff(id, regionMap.getRegion(location.x));
+        }
+    }
+
+    /**
+     * Sends the entity and all entities attached to it to the shard of the target region and removes them here.
+     */
+    private void handOff(EntityId id, int target) {
+        List<EntityId> family = collectAttached(id);
+        ArrayList<EntityChange> changes = new ArrayList<>();
+        for (EntityId member : family) {
+            for (Class<? extends EntityComponent> type : NetworkUtils.getHandoffComponentTypes()) {
+                EntityComponent component = entityData.getComponent(member, type);
+                if (component != null) {
+                    changes.add(new EntityChange(member, component));
+                }
+            }
+        }
+
+        long token = 0;
+        HostedConnection conn = null;
+        if (match.getPlayers().contains(id)) {
+            conn = match.getConnection(id);
+            token = matchManager.handOffPlayer(match, id);
+        }
+
+        // the neighbour gets the entity before the client connects to it
+        links.get(target).send(new EntityHandoffMessage(changes, token));
+        ShardStatusMessage status = shards.get(target);
+        if (conn != null) {
+            conn.send(new ShardRedirectMessage(status.getAddress(), status.getPort()));
+        }
+
+        // the neighbour has the real entities now, so they aren't removed there like a ghost
+        Map<EntityId, Map<Class, EntityComponent>> sent = mirrored.get(target);
+        for (EntityId member : family) {
+            if (sent != null) {
+                sent.remove(member);
+            }
+            entityData.removeEntity(member);
+        }
+        log.info("Handed off " + id + " (" + family.size() + " entities" + (token != 0 ? ", a player" : "") + ") to region " + target);
+    }
+
+    private List<EntityId> collectAttached(EntityId id) {
+        List<EntityId> family = new ArrayList<>();
+        family.add(id);
+        for (int i = 0; i < family.size(); i++) {
+            EntityId parent = family.get(i);
+            addAttached(family, parent, StoredIn.class, StoredIn::getContainer);
+            addAttached(family, parent, EquippedBy.class, EquippedBy::getPlayer);
+            addAttached(family, parent, ChildOf.class, ChildOf::getParentId);
+        }
+        return family;
+    }
+
+    private <T extends EntityComponent> void addAttached(List<EntityId> family, EntityId parent, Class<T> type, Function<T, EntityId> getParent) {
+        EntitySet attached = entityData.getEntities(type);
+        try {
+            for (Entity entity : attached) {
+                if (parent.equals(getParent.apply(entity.get(type))) && !family.contains(entity.getId())) {
+                    family.add(entity.getId());
+                }
+            }
+        } finally {
+            attached.release();
+        }
+    }
+
+    /**
+     * Sends the neighbour the components of our entities in its border zone which have changed since the last update.
+     */
+    private void sendBorderUpdate(int neighbour, MessageConnection link) {
+        Map<EntityId, Map<Class, EntityComponent>> sent = mirrored.computeIfAbsent(neighbour, r -> new HashMap<>());
+        Set<EntityId> received = ghosts.getOrDefault(neighbour, Collections.emptySet());
+        Set<EntityId> visible = new HashSet<>();
+        ArrayList<EntityChange> changes = new ArrayList<>();
+
+        for (Entity entity : models) {
+            EntityId id = entity.getId();
+            // attached entities are placed by the clients, ghosts belong to another shard
+            if (id.getId() >= GameConstants.SCENE_ENTITY_ID_BASE || isGhost(id)
+                    || entityData.getComponent(id, StoredIn.class) != null || entityData.getComponent(id, ChildOf.class) != null
+                    || regionMap.getBorderRegion(entity.get(Transform.class).getTranslation().x) != neighbour) {
+                continue;
+            }
+            visible.add(id);
+            Map<Class, EntityComponent> last = sent.computeIfAbsent(id, i -> new HashMap<>());
+            for (Class<? extends EntityComponent> type : GHOST_TYPES) {
+                // components are replaced on every change, so comparing the instances is enough
+                EntityComponent component = entityData.getComponent(id, type);
+                if (component != last.get(type)) {
+                    changes.add(new EntityChange(id, type, component));
+                    if (component != null) {
+                        last.put(type, component);
+                    } else {
+                        last.remove(type);
+                    }
+                }
+            }
+        }
+
+        List<EntityId> removed = new ArrayList<>();
+        for (Iterator<EntityId> it = sent.keySet().iterator(); it.hasNext(); ) {
+            EntityId id = it.next();
+            if (!visible.contains(id) && !received.contains(id)) {
+                removed.add(id);
+                it.remove();
+            }
+        }
+
+        if (!changes.isEmpty() || !removed.isEmpty()) {
+            long[] removedIds = new long[removed.size()];
+            for (int i = 0; i < removedIds.length; i++) {
+                removedIds[i] = removed.get(i).getId();
+            }
+            link.send(new BorderUpdateMessage(changes, removedIds));
+        }
+    }
+
+    private boolean isGhost(EntityId id) {
+        for (Set<EntityId> received : ghosts.values()) {
+            if (received.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onHandoff(int neighbour, EntityHandoffMessage m) {
+        if (m.getChanges().isEmpty()) {
+            return;
+        }
+        EntityId id = m.getChanges().get(0).getEntityId();
+        if (m.getToken() != 0) {
+            // the client might connect before the components are applied
+            match.adoptPlayer(id, m.getToken());
+        }
+        app.enqueue(() -> {
+            Set<EntityId> received = ghosts.get(neighbour);
+            for (EntityChange change : m.getChanges()) {
+                if (received != null) {
+                    received.remove(change.getEntityId());
+                }
+                entityData.setComponent(change.getEntityId(), change.getComponent());
+            }
+            log.info("Took over " + id + " from region " + neighbour);
+        });
+    }
+
+    private void onBorderUpdate(int neighbour, BorderUpdateMessage m) {
+        app.enqueue(() -> {
+            Set<EntityId> received = ghosts.computeIfAbsent(neighbour, r -> new HashSet<>());
+            for (EntityChange change : m.getChanges()) {
+                EntityId id = change.getEntityId();
+                if (!received.contains(id) && entityData.getComponent(id, Transform.class) != null) {
+                    continue; // it has been handed off to us meanwhile
+                }
+                received.add(id);
+                if (change.getComponent() != null) {
+                    entityData.setComponent(id, change.getComponent());
+                } else {
+                    entityData.removeComponent(id, change.getComponentType());
+                }
+            }
+            for (long removed : m.getRemoved()) {
+                EntityId id = new EntityId(removed);
+                if (received.remove(id)) {
+                    entityData.removeEntity(id);
+                }
+            }
+        });
+    }
+
+    private void onLinkLost(int neighbour) {
+        log.info("Lost the link to region " + neighbour);
+        app.enqueue(() -> {
+            mirrored.remove(neighbour);
+            Set<EntityId> received = ghosts.remove(neighbour);
+            if (received != null) {
+                for (EntityId id : received) {
+                    entityData.removeEntity(id);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void connectionAdded(Server server, HostedConnection conn) {
+    }
+
+    @Override
+    public void connectionRemoved(Server server, HostedConnection conn) {
+        Integer neighbour = conn.getAttribute(REGION_ATTRIBUTE);
+        if (neighbour != null && links.remove(neighbour, conn)) {
+            onLinkLost(neighbour);
+        }
+    }
+
+    @Override
+    public void messageReceived(HostedConnection source, Message m) {
+        if (m instanceof ShardLinkMessage) {
+            // our western neighbour has connected, the connection has joined our match like a client
+            int neighbour = ((ShardLinkMessage) m).getRegion();
+            matchManager.releaseConnection(source);
+            source.setAttribute(REGION_ATTRIBUTE, neighbour);
+            links.put(neighbour, source);
+            log.info("Region " + neighbour + " has linked to us");
+            return;
+        }
+
+        Integer neighbour = source.getAttribute(REGION_ATTRIBUTE);
+        if (neighbour == null) {
+            return; // only linked shards hand off entities
+        }
+        if (m instanceof EntityHandoffMessage) {
+            onHandoff(neighbour, (EntityHandoffMessage) m);
+        } else if (m instanceof BorderUpdateMessage) {
+            onBorderUpdate(neighbour, (BorderUpdateMessage) m);
+        }
+    }
+
+    /**
+     * Lets the players spawn at that location instead of a start position in this region.
+     *
+     * @param spawnLocation the location or null for a start position
+     */
+    public void setSpawnLocation(Vector3f spawnLocation) {
+        this.spawnLocation = spawnLocation;
+    }
+
+    public int getRegion() {
+        return region;
+    }
+
+    public RegionMap getRegionMap() {
+        return regionMap;
+    }
+
+    public Match getMatch() {
+        return match;
+    }
+
+    /**
+     * @return the regions which are linked to this shard right now
+     */
+    public Set<Integer> getLinkedRegions() {
+        return links.keySet();
+    }
+
+    @Override
+    public void cleanup() {
+        server.getServer().removeConnectionListener(this);
+        server.getServer().removeMessageListener(this, ShardLinkMessage.class, EntityHandoffMessage.class, BorderUpdateMessage.class);
+        for (Client link : linkClients.keySet()) {
+            link.removeClientStateListener(linkListener);
+            if (link.isConnected()) {
+                link.close();
+            }
+        }
+        linkClients.clear();
+        links.clear();
+        if (coordinator != null && coordinator.isConnected()) {
+            coordinator.close();
+        }
+        characters.release();
+        bodies.release();
+        models.release();
+        super.cleanup();
+    }
+
+    private class LinkListener implements MessageListener<Client>, ClientStateListener {
+
+        @Override
+        public void clientConnected(Client c) {
+            c.send(new ShardLinkMessage(region));
+            log.info("Linked to region " + linkClients.get(c));
+        }
+
+        @Override
+        public void clientDisconnected(Client c, DisconnectInfo info) {
+            Integer neighbour = linkClients.remove(c);
+            if (neighbour != null && links.remove(neighbour, c)) {
+                onLinkLost(neighbour);
+            }
+        }
+
+        @Override
+        public void messageReceived(Client source, Message m) {
+            if (m instanceof PingMessage) {
+                if (!((PingMessage) m).isReply()) {
+                    source.send(new PingMessage(((PingMessage) m).getTime(), true));
+                }
+                return;
+            }
+            Integer neighbour = linkClients.get(source);
+            if (neighbour == null) {
+                return;
+            }
+            if (m instanceof EntityHandoffMessage) {
+                onHandoff(neighbour, (EntityHandoffMessage) m);
+            } else if (m instanceof BorderUpdateMessage) {
+                onBorderUpdate(neighbour, (BorderUpdateMessage) m);
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package de.gamedevbaden.crucified.net.server;
 
 import com.jme3.network.HostedConnection;
+import com.jme3.network.Message;
+import com.simsilica.es.EntityId;
 import de.gamedevbaden.crucified.appstates.SceneEntityLoader;
 import de.gamedevbaden.crucified.enums.GameDecisionType;
 import de.gamedevbaden.crucified.enums.PaperScript;
@@ -9,6 +11,8 @@ import de.gamedevbaden.crucified.game.GameCommander;
 import de.gamedevbaden.crucified.net.messages.GameDecidedMessage;
 import de.gamedevbaden.crucified.net.messages.LoadLevelMessage;
 import de.gamedevbaden.crucified.net.messages.ReadNoteMessage;
+import de.gamedevbaden.crucified.net.messages.SpawnRejectedMessage;
+import de.gamedevbaden.crucified.net.replay.MatchRecorder;
 
 /**
  * This is the server-side implementation of the game commander.
@@ -19,23 +23,48 @@ import de.gamedevbaden.crucified.net.messages.ReadNoteMessage;
 public class ServerGameCommander implements GameCommander {
 
     private HostedConnection conn;
+    private MatchRecorder recorder;
+    private EntityId player;
 
     ServerGameCommander(HostedConnection conn) {
         this.conn = conn;
     }
 
+    /**
+     * Lets the recorder record all messages which are sent to the client.
+     *
+     * @param recorder the recorder or null to stop recording
+     * @param player   the player entity of the client
+     */
+    public void setRecorder(MatchRecorder recorder, EntityId player) {
+        this.recorder = recorder;
+        this.player = player;
+    }
+
     @Override
     public void loadScene(Scene scene) {
-        conn.send(new LoadLevelMessage(SceneEntityLoader.sceneToLoad));
+        send(new LoadLevelMessage(SceneEntityLoader.sceneToLoad));
     }
 
     @Override
     public void readNote(PaperScript script) {
-        conn.send(new ReadNoteMessage(script));
+        send(new ReadNoteMessage(script));
     }
 
     @Override
     public void onGameDecided(GameDecisionType decisionType) {
-        conn.send(new GameDecidedMessage(decisionType));
+        send(new GameDecidedMessage(decisionType));
+    }
+
+    @Override
+    public void onSpawnRejected(int spawnId) {
+        send(new SpawnRejectedMessage(spawnId));
+    }
+
+    private void send(Message message) {
+        conn.send(message);
+        if (recorder != null) {
+            recorder.recordMessage(player, message);
+        }
     }
 }
@@ -0,0 +1,92 @@
+package de.gamedevbaden.crucified.net.shard;
+
+import com.jme3.math.FastMath;
+import de.gamedevbaden.crucified.appstates.paging.ChunkGrid;
+
+/**
+ * Splits the chunk grid of the island into regions, one per shard. The regions are strips of whole chunk columns
+ * from west to east, so each region has at most two neighbours.
+ * <p>
+ * The border zone of a region is one chunk wide. Clients see the entities of the chunk their player is in and of the
+ * surrounding chunks, so a client near the border can't see further into the neighbour region than that.
+ */
+public class RegionMap {
+
+    private final ChunkGrid chunkGrid;
+    private final int columns;
+    private final int regions;
+
+    /**
+     * @param chunkGrid the chunk grid of the scene
+     * @param columns   the amount of chunk columns of the scene
+     * @param regions   the amount of regions, at most one per column
+     */
+    public RegionMap(ChunkGrid chunkGrid, int columns, int regions) {
+        if (regions < 1 || regions > columns) {
+            throw new IllegalArgumentException("Can't split " + columns + " chunk columns into " + regions + " regions");
+        }
+        this.chunkGrid = chunkGrid;
+        this.columns = columns;
+        this.regions = regions;
+    }
+
+    /**
+     * @param x the world x coordinate
+     * @return the region of that location, locations outside of the grid belong to the outer regions
+     */
+    public int getRegion(float x) {
+        int column = Math.max(0, Math.min(columns - 1, chunkGrid.getChunkX(x)));
+        return column * regions / columns;
+    }
+
+    /**
+     * @param x the world x coordinate
+     * @return the neighbour region whose border zone contains that location or -1 if it isn't near a border
+     */
+    public int getBorderRegion(float x) {
+        int region = getRegion(x);
+        int west = getRegion(x - chunkGrid.getChunkWidth());
+        if (west != region) {
+            return west;
+        }
+        int east = getRegion(x + chunkGrid.getChunkWidth());
+        return east != region ? east : -1;
+    }
+
+    /**
+     * @param region the region
+     * @return the world x coordinate the region starts at, negative infinity for the first one
+     */
+    public float getMinX(int region) {
+        if (region <= 0) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        int column = (region * columns + regions - 1) / regions;
+        return chunkGrid.getOriginX() + column * chunkGrid.getChunkWidth();
+    }
+
+    /**
+     * @param region the region
+     * @return the world x coordinate the region ends at, positive infinity for the last one
+     */
+    public float getMaxX(int region) {
+        return region >= regions - 1 ? Float.POSITIVE_INFINITY : getMinX(region + 1);
+    }
+
+    /**
+     * @param region the region
+     * @param x      the world x coordinate
+     * @return the distance of the location to the region, 0 if it's inside
+     */
+    public float getDistance(int region, float x) {
+        return FastMath.abs(x - Math.max(getMinX(region), Math.min(getMaxX(region), x)));
+    }
+
+    public int getRegions() {
+        return regions;
+    }
+
+    public ChunkGrid getChunkGrid() {
+        return chunkGrid;
+    }
+}
@@ -0,0 +1,156 @@
+package de.gamedevbaden.crucified.net.shard;
+
+import com.jme3.network.*;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.service.rmi.RmiHostedService;
+import com.jme3.network.service.rpc.RpcHostedService;
+import com.jme3.network.service.serializer.ServerSerializerRegistrationsService;
+import de.gamedevbaden.crucified.net.NetworkUtils;
+import de.gamedevbaden.crucified.net.messages.ShardRedirectMessage;
+import de.gamedevbaden.crucified.net.messages.ShardStatusMessage;
+import de.gamedevbaden.crucified.net.server.GameEntityDataHostedService;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Knows all region shards of the island and routes clients to them.
+ * <p>
+ * Every shard connects to the coordinator and reports its status regularly (see {@link ShardStatusMessage}).
+ * It gets the status of all shards back, that's how the shards find their neighbours. A client asks the coordinator
+ * with an empty {@link ShardRedirectMessage} and is sent to the shard with the fewest players
+ * (see {@link #findShard(String, int)}). Once the player walks into another region, the shards hand it off themselves.
+ * <p>
+ * A client adopts the serializer registrations of the first server it connects to, so the coordinator registers
+ * the same classes as a game server, including the ones of its services, even though it doesn't use them.
+ */
+public class ShardCoordinator implements ConnectionListener, MessageListener<HostedConnection> {
+
+    private static final Logger log = Logger.getLogger(ShardCoordinator.class.getName());
+    private static final long FIND_SHARD_TIMEOUT = 5000;
+
+    private final int port;
+    private final long epoch = System.currentTimeMillis();
+    private final Map<HostedConnection, ShardStatusMessage> shards = new ConcurrentHashMap<>();
+    private Server server;
+
+    public ShardCoordinator(int port) {
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        Serializer.initialize();
+        this.server = Network.createServer(port);
+
+        NetworkUtils.initEntityDataSerializers();
+        NetworkUtils.initMessageSerializers();
+
+        this.server.addConnectionListener(this);
+        this.server.addMessageListener(this, ShardStatusMessage.class, ShardRedirectMessage.class);
+
+        // the services are created in the same order as on the game server, so the classes they register get the same ids
+        RmiHostedService rmiService = new RmiHostedService();
+        GameEntityDataHostedService entityDataService = new GameEntityDataHostedService(MessageConnection.CHANNEL_DEFAULT_RELIABLE, null);
+        entityDataService.setAutoHost(false);
+        this.server.getServices().addService(entityDataService);
+        this.server.getServices().addService(new RpcHostedService());
+        this.server.getServices().addService(rmiService);
+        this.server.start();
+        log.info("Shard coordinator started on port " + port);
+    }
+
+    @Override
+    public void connectionAdded(Server server, HostedConnection conn) {
+    }
+
+    @Override
+    public void connectionRemoved(Server server, HostedConnection conn) {
+        ShardStatusMessage status = shards.remove(conn);
+        if (status != null) {
+            log.info("Shard of region " + status.getRegion() + " has disconnected");
+        }
+    }
+
+    @Override
+    public void messageReceived(HostedConnection source, Message m) {
+        if (m instanceof ShardStatusMessage) {
+            ShardStatusMessage status = (ShardStatusMessage) m;
+            if (shards.put(source, status) == null) {
+                log.info("Shard of region " + status.getRegion() + " is running on " + status.getAddress() + ":" + status.getPort());
+            }
+            // the shard gets the status of all shards back, its own one included
+            for (ShardStatusMessage shard : shards.values()) {
+                source.send(new ShardStatusMessage(shard.getRegion(), shard.getAddress(), shard.getPort(), shard.getPlayers(), epoch));
+            }
+            return;
+        }
+
+        ShardStatusMessage target = null;
+        for (ShardStatusMessage shard : shards.values()) {
+            if (target == null || shard.getPlayers() < target.getPlayers()) {
+                target = shard;
+            }
+        }
+        source.send(target != null ? new ShardRedirectMessage(target.getAddress(), target.getPort()) : new ShardRedirectMessage());
+    }
+
+    public boolean isRunning() {
+        return server != null && server.isRunning();
+    }
+
+    public void close() {
+        if (server != null && server.isRunning()) {
+            server.getServices().removeService(server.getServices().getService(ServerSerializerRegistrationsService.class));
+            server.close();
+        }
+        shards.clear();
+    }
+
+    /**
+     * Asks the coordinator which shard to join. This blocks until the coordinator has answered.
+     *
+     * @param address the address of the coordinator
+     * @param port    the port of the coordinator
+     * @return the address of the shard or null if no shard is running or the coordinator hasn't answered
+     * @throws IOException if the coordinator can't be reached
+     */
+    public static ShardRedirectMessage findShard(String address, int port) throws IOException {
+        CountDownLatch answered = new CountDownLatch(1);
+        AtomicReference<ShardRedirectMessage> answer = new AtomicReference<>();
+
+        Client client = Network.connectToServer(address, port);
+        client.addMessageListener((source, m) -> {
+            answer.set((ShardRedirectMessage) m);
+            answered.countDown();
+        }, ShardRedirectMessage.class);
+        client.addClientStateListener(new ClientStateListener() {
+            @Override
+            public void clientConnected(Client c) {
+                c.send(new ShardRedirectMessage());
+            }
+
+            @Override
+            public void clientDisconnected(Client c, DisconnectInfo info) {
+                answered.countDown();
+            }
+        });
+        client.start();
+
+        try {
+            answered.await(FIND_SHARD_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (client.isConnected()) {
+                client.close();
+            }
+        }
+        ShardRedirectMessage redirect = answer.get();
+        return redirect != null && redirect.getAddress() != null ? redirect : null;
+    }
+}
@@ -0,0 +1,32 @@
+package de.gamedevbaden.crucified.net.shard;
+
+import com.simsilica.es.base.EntityIdGenerator;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates entity ids which are unique over all region shards: the shard of region r creates the ids
+ * r, r + regions, r + 2 * regions, ... So an entity keeps its id when it is handed off to another shard.
+ * Like all dynamic entities the ids stay below {@link GameConstants#SCENE_ENTITY_ID_BASE}, a match which isn't
+ * split into shards uses it as the only shard (region 0 of 1).
+ */
+public class ShardIdGenerator implements EntityIdGenerator {
+
+    private final AtomicLong nextId;
+    private final int regions;
+
+    public ShardIdGenerator(int region, int regions) {
+        this.nextId = new AtomicLong(region);
+        this.regions = regions;
+    }
+
+    @Override
+    public long nextEntityId() {
+        long id = nextId.getAndAdd(regions);
+        if (id >= GameConstants.SCENE_ENTITY_ID_BASE) {
+            throw new IllegalStateException("The shard has run out of entity ids below the scene entities");
+        }
+        return id;
+    }
+}
@@ -0,0 +1,327 @@
+package de.gamedevbaden.crucified.net.simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A proxy which runs in the same process as the client (or the server) and forwards the TCP and UDP traffic
+ * of a jME connection to the real server. On the way it applies the {@link NetworkConditions}, so we can
+ * test the net code with a bad network on loopback.
+ * <p>
+ * Both TCP and UDP use the same local port, like the server does. Reliable (TCP) data is delayed and limited
+ * in throughput but never lost or reordered. Unreliable (UDP) packets can also be lost, reordered and dropped
+ * if they wait too long for bandwidth. Each connection has its own links in both directions, so the bandwidth
+ * limit applies to each client and direction on their own.
+ */
+public class NetworkConditionProxy {
+
+    private static final Logger log = Logger.getLogger(NetworkConditionProxy.class.getName());
+
+    private static final int REORDER_DELAY = 30; // ms a reordered packet is held back, so the following ones overtake it
+    private static final int MAX_QUEUE_TIME = 1000; // ms an unreliable packet may wait for bandwidth before it's dropped
+    private static final int BUFFER_SIZE = 65536;
+
+    private final NetworkConditions conditions;
+    private final DelayQueue<Delivery> deliveries = new DelayQueue<>();
+    private final AtomicLong deliveryCounter = new AtomicLong();
+    private final Random random = new Random();
+
+    private final List<Closeable> sockets = new CopyOnWriteArrayList<>();
+    private final Map<SocketAddress, UdpPeer> udpPeers = new ConcurrentHashMap<>();
+
+    private ServerSocket tcpSocket;
+    private DatagramSocket udpSocket;
+    private InetSocketAddress target;
+    private volatile boolean running;
+
+    public NetworkConditionProxy(NetworkConditions conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * Starts the proxy.
+     *
+     * @param localPort  the port the clients connect to, 0 to pick a free one
+     * @param targetHost the host of the server
+     * @param targetPort the port of the server
+     * @throws IOException if the ports can't be opened
+     */
+    public void start(int localPort, String targetHost, int targetPort) throws IOException {
+        this.target = new InetSocketAddress(InetAddress.getByName(targetHost), targetPort);
+        this.tcpSocket = new ServerSocket(localPort);
+        this.udpSocket = new DatagramSocket(tcpSocket.getLocalPort()); // jME expects both on the same port
+        this.sockets.add(tcpSocket);
+        this.sockets.add(udpSocket);
+        this.running = true;
+
+        startThread("accept", this::acceptConnections);
+        startThread("udp", this::receiveFromClients);
+        startThread("delivery", this::deliver);
+
+        log.info("Network condition proxy on port " + getLocalPort() + " -> " + target + " with " + conditions);
+    }
+
+    /**
+     * @return the port the clients have to connect to
+     */
+    public int getLocalPort() {
+        return tcpSocket.getLocalPort();
+    }
+
+    public NetworkConditions getConditions() {
+        return conditions;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void close() {
+        running = false;
+        for (Closeable socket : sockets) {
+            closeQuietly(socket);
+        }
+        sockets.clear();
+        udpPeers.clear();
+        deliveries.clear();
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                Socket client = tcpSocket.accept();
+                Socket server = new Socket(target.getAddress(), target.getPort());
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                sockets.add(client);
+                sockets.add(server);
+
+                Link up = new Link();
+                Link down = new Link();
+                startThread("tcp-up", () -> pump(client, server, up));
+                startThread("tcp-down", () -> pump(server, client, down));
+            } catch (IOException e) {
+                if (running) {
+                    log.log(Level.WARNING, "Could not accept connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the stream from one socket and delivers it to the other one when the link allows it.
+     */
+    private void pump(Socket from, Socket to, Link link) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            InputStream in = from.getInputStream();
+            OutputStream out = to.getOutputStream();
+            int read;
+            while (running && (read = in.read(buffer)) >= 0) {
+                byte[] data = new byte[read];
+                System.arraycopy(buffer, 0, data, 0, read);
+                schedule(link.schedule(read, true), () -> {
+                    out.write(data);
+                    out.flush();
+                });
+            }
+        } catch (IOException e) {
+            // the socket has been closed
+        }
+
+        // the other side gets the pending data before it's closed as well
+        long time = link.schedule(0, true);
+        schedule(time, () -> {
+            closeQuietly(from);
+            closeQuietly(to);
+            sockets.remove(from);
+            sockets.remove(to);
+        });
+    }
+
+    private void receiveFromClients() {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (running) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                udpSocket.receive(packet);
+                SocketAddress client = packet.getSocketAddress();
+
+                UdpPeer peer = udpPeers.get(client);
+                if (peer == null) {
+                    peer = new UdpPeer(client);
+                    udpPeers.put(client, peer);
+                }
+
+                UdpPeer sender = peer;
+                byte[] data = copy(packet);
+                schedule(peer.up.schedule(data.length, false), () -> sender.upstream.send(new DatagramPacket(data, data.length, target)));
+            } catch (IOException e) {
+                if (running) {
+                    log.log(Level.WARNING, "Could not receive packet", e);
+                }
+            }
+        }
+    }
+
+    private void schedule(long time, Delivery.Action action) {
+        if (time >= 0) {
+            deliveries.add(new Delivery(time, deliveryCounter.incrementAndGet(), action));
+        }
+    }
+
+    private void deliver() {
+        while (running) {
+            try {
+                deliveries.take().action.run();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                // the socket has been closed in the meantime
+            }
+        }
+    }
+
+    private void startThread(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, "NetworkConditionProxy-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static byte[] copy(DatagramPacket packet) {
+        byte[] data = new byte[packet.getLength()];
+        System.arraycopy(packet.getData(), packet.getOffset(), data, 0, data.length);
+        return data;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // we are closing anyway
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * The UDP traffic of one client. The server sees each client with the port of its own upstream socket.
+     */
+    private class UdpPeer {
+
+        final DatagramSocket upstream;
+        final Link up = new Link();
+        final Link down = new Link();
+
+        UdpPeer(SocketAddress client) throws IOException {
+            this.upstream = new DatagramSocket();
+            sockets.add(upstream);
+            startThread("udp-down", () -> receiveFromServer(client));
+        }
+
+        private void receiveFromServer(SocketAddress client) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (running && !upstream.isClosed()) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    upstream.receive(packet);
+                    byte[] data = copy(packet);
+                    schedule(down.schedule(data.length, false), () -> udpSocket.send(new DatagramPacket(data, data.length, client)));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * One direction of a connection. It decides when data arrives on the other side.
+     */
+    private class Link {
+
+        private long freeAt; // the time the bandwidth is available again
+        private long lastDelivery;
+
+        /**
+         * @return the time the data arrives on the other side or -1 if it's lost
+         */
+        synchronized long schedule(int bytes, boolean reliable) {
+            long now = now();
+            if (!reliable && random.nextFloat() < conditions.getLossChance()) {
+                return -1;
+            }
+
+            long start = Math.max(now, freeAt);
+            int bandwidth = conditions.getBandwidth();
+            if (bandwidth > 0) {
+                if (!reliable && start - now > MAX_QUEUE_TIME) {
+                    return -1; // the queue in front of the bottleneck is full
+                }
+                freeAt = start + bytes * 1000L / bandwidth;
+            } else {
+                freeAt = now;
+            }
+
+            int jitter = conditions.getJitter();
+            long time = freeAt + conditions.getLatency() + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+            time = Math.max(time, lastDelivery); // jitter alone doesn't change the order
+            lastDelivery = time;
+
+            if (!reliable && random.nextFloat() < conditions.getReorderChance()) {
+                time += REORDER_DELAY;
+            }
+            return time;
+        }
+    }
+
+    private static class Delivery implements Delayed {
+
+        interface Action {
+            void run() throws IOException;
+        }
+
+        final long time;
+        final long order; // keeps the order of deliveries with the same time
+        final Action action;
+
+        Delivery(long time, long order, Action action) {
+            this.time = time;
+            this.order = order;
+            this.action = action;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - now(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            Delivery other = (Delivery) o;
+            int result = Long.compare(time, other.time);
+            return result != 0 ? result : Long.compare(order, other.order);
+        }
+    }
+}
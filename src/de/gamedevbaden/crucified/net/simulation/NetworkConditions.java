@@ -0,0 +1,113 @@
+package de.gamedevbaden.crucified.net.simulation;
+
+/**
+ * Describes how bad the network simulated by a {@link NetworkConditionProxy} is.
+ * All values apply to each direction on their own and can be changed while the proxy is running.
+ * <p>
+ * The values can also be read from system properties, e.g.
+ * <code>-Dcrucified.net.latency=80 -Dcrucified.net.jitter=20 -Dcrucified.net.loss=0.05</code>
+ */
+public class NetworkConditions {
+
+    private static final String PROPERTY_PREFIX = "crucified.net.";
+
+    private volatile int latency; // ms
+    private volatile int jitter; // ms
+    private volatile float lossChance;
+    private volatile float reorderChance;
+    private volatile int bandwidth; // bytes per second
+
+    /**
+     * Creates a perfect network, nothing is delayed or lost.
+     */
+    public NetworkConditions() {
+    }
+
+    /**
+     * @param latency       the one way delay in milliseconds
+     * @param jitter        a random delay between 0 and this many milliseconds which is added to the latency
+     * @param lossChance    the chance that an unreliable packet is lost (0 to 1)
+     * @param reorderChance the chance that an unreliable packet is overtaken by the next ones (0 to 1)
+     * @param bandwidth     the bytes per second which can be sent, 0 for no limit
+     */
+    public NetworkConditions(int latency, int jitter, float lossChance, float reorderChance, int bandwidth) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.lossChance = lossChance;
+        this.reorderChance = reorderChance;
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Reads the conditions from the system properties <code>crucified.net.latency</code>, <code>jitter</code>,
+     * <code>loss</code>, <code>reorder</code> and <code>bandwidth</code>. Missing properties are zero.
+     *
+     * @return the conditions
+     */
+    public static NetworkConditions fromSystemProperties() {
+        return new NetworkConditions(
+                Integer.getInteger(PROPERTY_PREFIX + "latency", 0),
+                Integer.getInteger(PROPERTY_PREFIX + "jitter", 0),
+                Float.parseFloat(System.getProperty(PROPERTY_PREFIX + "loss", "0")),
+                Float.parseFloat(System.getProperty(PROPERTY_PREFIX + "reorder", "0")),
+                Integer.getInteger(PROPERTY_PREFIX + "bandwidth", 0));
+    }
+
+    /**
+     * @return true if this network doesn't delay, lose or limit anything
+     */
+    public boolean isPerfect() {
+        return latency <= 0 && jitter <= 0 && lossChance <= 0 && reorderChance <= 0 && bandwidth <= 0;
+    }
+
+    public int getLatency() {
+        return latency;
+    }
+
+    public void setLatency(int latency) {
+        this.latency = latency;
+    }
+
+    public int getJitter() {
+        return jitter;
+    }
+
+    public void setJitter(int jitter) {
+        this.jitter = jitter;
+    }
+
+    public float getLossChance() {
+        return lossChance;
+    }
+
+    /**
+     * Sets the chance that an unreliable packet is lost. Reliable data is never lost, it's only delayed.
+     *
+     * @param lossChance the chance between 0 and 1
+     */
+    public void setLossChance(float lossChance) {
+        this.lossChance = lossChance;
+    }
+
+    public float getReorderChance() {
+        return reorderChance;
+    }
+
+    public void setReorderChance(float reorderChance) {
+        this.reorderChance = reorderChance;
+    }
+
+    public int getBandwidth() {
+        return bandwidth;
+    }
+
+    public void setBandwidth(int bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkConditions[latency=" + latency + "ms, jitter=" + jitter + "ms, loss=" + lossChance
+                + ", reorder=" + reorderChance + ", bandwidth=" + (bandwidth > 0 ? bandwidth + "B/s" : "unlimited") + "]";
+    }
+}
@@ -0,0 +1,58 @@
+package de.gamedevbaden.crucified.net.stats;
+
+/**
+ * The statistics of one connection: its traffic, the round trip time and the depth of its send queue.
+ */
+public class ConnectionStats {
+
+    private final int connectionId;
+    private final TrafficCounter traffic = new TrafficCounter();
+    private final Histogram roundTripTimes = new Histogram();
+    private final Histogram sendQueueDepths = new Histogram();
+    private volatile long roundTripTime = -1;
+    private volatile int sendQueueDepth;
+
+    ConnectionStats(int connectionId) {
+        this.connectionId = connectionId;
+    }
+
+    void recordRoundTripTime(long millis) {
+        this.roundTripTime = millis;
+        this.roundTripTimes.record(millis);
+    }
+
+    void recordSendQueueDepth(int depth) {
+        this.sendQueueDepth = depth;
+        this.sendQueueDepths.record(depth);
+    }
+
+    public int getConnectionId() {
+        return connectionId;
+    }
+
+    public TrafficCounter getTraffic() {
+        return traffic;
+    }
+
+    /**
+     * @return the last measured round trip time in milliseconds or -1 if it hasn't been measured yet
+     */
+    public long getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    public Histogram getRoundTripTimes() {
+        return roundTripTimes;
+    }
+
+    /**
+     * @return the number of updates which waited for being sent after the last update of this connection
+     */
+    public int getSendQueueDepth() {
+        return sendQueueDepth;
+    }
+
+    public Histogram getSendQueueDepths() {
+        return sendQueueDepths;
+    }
+}
@@ -0,0 +1,63 @@
+package de.gamedevbaden.crucified.net.stats;
+
+import java.util.Arrays;
+
+/**
+ * A histogram with power of two buckets, bucket n counts the values in [2^(n-1), 2^n) and bucket 0 the zeros.
+ * It's cheap enough to record values every frame, but percentiles are only estimates.
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    public synchronized void record(long value) {
+        value = Math.max(0, value);
+        counts[BUCKETS - Long.numberOfLeadingZeros(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Returns an estimate of the given percentile: the upper bound of the bucket the percentile lies in,
+     * but not more than the largest recorded value.
+     *
+     * @param percentile the percentile between 0 and 1, e.g. 0.99
+     * @return the estimated value or 0 if nothing has been recorded
+     */
+    public synchronized long getPercentile(double percentile) {
+        long target = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target && seen > 0) {
+                return i == 0 ? 0 : Math.min(max, (1L << i) - 1);
+            }
+        }
+        return max;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return count > 0 ? sum / (double) count : 0;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+}
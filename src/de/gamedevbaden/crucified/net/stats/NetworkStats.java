@@ -0,0 +1,308 @@
+package de.gamedevbaden.crucified.net.stats;
+
+import com.jme3.network.HostedConnection;
+import com.jme3.network.Message;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.SerializerRegistration;
+import com.jme3.network.serializing.serializers.FieldSerializer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects statistics about the network traffic: bytes and messages per second of each connection,
+ * of each message type and of each component type, the round trip time and send queue depth of each connection
+ * and how long {@link de.gamedevbaden.crucified.net.server.GameEntityDataHostedService#sendUpdates()} takes.
+ * <p>
+ * The sizes are measured by the {@link StatsSerializer}s which wrap the serializers of our message classes,
+ * see {@link #instrumentSerializers(boolean)}. Sent messages are counted for the connection set with
+ * {@link #beginSend(int)} on the sending thread, all others for the {@link #getDefaultConnection() default connection}.
+ * On the client the default connection is the connection to the server.
+ * <p>
+ * Nothing is recorded until the stats are enabled, {@link de.gamedevbaden.crucified.appstates.net.NetworkStatsAppState}
+ * does this and rolls the per second values over.
+ */
+public final class NetworkStats {
+
+    /**
+     * The id messages are counted for if we don't know the connection.
+     */
+    public static final int UNKNOWN_CONNECTION = -1;
+
+    /**
+     * The bytes jME adds to every message (message size and class id).
+     */
+    public static final int FRAME_HEADER_SIZE = 4;
+
+    // keeps received sizes until the message is dispatched, we don't want to grow without an end if that never happens
+    private static final int MAX_PENDING_RECEIVES = 64;
+
+    private static volatile boolean enabled;
+    private static volatile boolean attributeReceives;
+    private static volatile int defaultConnection = UNKNOWN_CONNECTION;
+
+    private static final TrafficCounter total = new TrafficCounter();
+    private static final Map<Integer, ConnectionStats> connections = new ConcurrentHashMap<>();
+    private static final Map<Class, TrafficCounter> messageTypes = new ConcurrentHashMap<>();
+    private static final Map<Class, TrafficCounter> componentTypes = new ConcurrentHashMap<>();
+    private static final Histogram sendUpdatesDurations = new Histogram();
+
+    private static final ThreadLocal<int[]> sendContext = ThreadLocal.withInitial(() -> new int[]{UNKNOWN_CONNECTION});
+    private static final ThreadLocal<ArrayDeque<Integer>> pendingReceives = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private NetworkStats() {
+    }
+
+    /**
+     * Wraps the serializers of all registered message classes, so their sizes can be measured.
+     * This needs to be called on the server after all classes are registered and before the server is started.
+     * The clients get the wrapped serializers with the serializer registrations of the server.
+     *
+     * @param attributeReceives true if received messages shall be counted for the connection they came from.
+     *                          In that case {@link #onMessageDispatched(HostedConnection, Message)} has to be called for every
+     *                          dispatched message.
+     */
+    public static void instrumentSerializers(boolean attributeReceives) {
+        NetworkStats.attributeReceives = attributeReceives;
+
+        // the registration list grows while we register, so we need a copy
+        List<SerializerRegistration> registrations = new ArrayList<>(Serializer.getSerializerRegistrations());
+        for (SerializerRegistration registration : registrations) {
+            Class type = registration.getType();
+            if (type == null || !Message.class.isAssignableFrom(type)) {
+                continue;
+            }
+
+            // the clients only know how to create a field serializer, and the internal
+            // messages of jME are used before the clients have our registrations
+            if (registration.getSerializer().getClass() != FieldSerializer.class
+                    || type.getName().startsWith("com.jme3.network.message.")) {
+                continue;
+            }
+
+            Serializer.registerClass(type, new StatsSerializer(registration.getSerializer()));
+        }
+    }
+
+    public static void setEnabled(boolean enabled) {
+        NetworkStats.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the connection everything is counted for if nothing else is known.
+     * On the client that's the id of the client.
+     *
+     * @param connectionId the connection id
+     */
+    public static void setDefaultConnection(int connectionId) {
+        defaultConnection = connectionId;
+    }
+
+    public static int getDefaultConnection() {
+        return defaultConnection;
+    }
+
+    /**
+     * All messages which are sent by the current thread until {@link #endSend(int)} are counted for that connection.
+     *
+     * @param connectionId the id of the connection the messages are sent to
+     * @return the connection which has been set before, it has to be passed to {@link #endSend(int)}
+     */
+    public static int beginSend(int connectionId) {
+        int[] context = sendContext.get();
+        int previous = context[0];
+        context[0] = connectionId;
+        return previous;
+    }
+
+    public static void endSend(int previousConnectionId) {
+        sendContext.get()[0] = previousConnectionId;
+    }
+
+    public static void recordMessageSent(Class type, int bytes) {
+        if (!enabled) {
+            return;
+        }
+        bytes += FRAME_HEADER_SIZE;
+        int connectionId = sendContext.get()[0];
+
+        total.recordSent(bytes);
+        getCounter(messageTypes, type).recordSent(bytes);
+        getConnectionStats(connectionId != UNKNOWN_CONNECTION ? connectionId : defaultConnection).getTraffic().recordSent(bytes);
+    }
+
+    public static void recordMessageReceived(Class type, int bytes) {
+        if (!enabled) {
+            return;
+        }
+        bytes += FRAME_HEADER_SIZE;
+
+        total.recordReceived(bytes);
+        getCounter(messageTypes, type).recordReceived(bytes);
+
+        if (attributeReceives) {
+            // we don't know the connection yet, it's known when the message is dispatched on this thread
+            ArrayDeque<Integer> pending = pendingReceives.get();
+            if (pending.size() >= MAX_PENDING_RECEIVES) {
+                pending.clear();
+            }
+            pending.add(bytes);
+        } else {
+            getConnectionStats(defaultConnection).getTraffic().recordReceived(bytes);
+        }
+    }
+
+    /**
+     * Counts the oldest received message of this thread for the connection.
+     * Must be called by a listener for all messages if received messages are attributed.
+     *
+     * @param source  the connection the dispatched message came from
+     * @param message the dispatched message
+     */
+    public static void onMessageDispatched(HostedConnection source, Message message) {
+        if (!enabled || !attributeReceives) {
+            return;
+        }
+        if (!(Serializer.getExactSerializer(message.getClass()) instanceof StatsSerializer)) {
+            return; // we haven't measured this one
+        }
+        Integer bytes = pendingReceives.get().poll();
+        if (bytes != null) {
+            getConnectionStats(source.getId()).getTraffic().recordReceived(bytes);
+        }
+    }
+
+    public static void recordComponentSent(Class type, int bytes) {
+        if (enabled) {
+            getCounter(componentTypes, type).recordSent(bytes);
+        }
+    }
+
+    public static void recordComponentReceived(Class type, int bytes) {
+        if (enabled) {
+            getCounter(componentTypes, type).recordReceived(bytes);
+        }
+    }
+
+    public static void recordRoundTripTime(int connectionId, long millis) {
+        if (enabled) {
+            getConnectionStats(connectionId).recordRoundTripTime(millis);
+        }
+    }
+
+    public static void recordSendQueueDepth(int connectionId, int depth) {
+        if (enabled) {
+            getConnectionStats(connectionId).recordSendQueueDepth(depth);
+        }
+    }
+
+    public static void recordSendUpdates(long nanos) {
+        if (enabled) {
+            sendUpdatesDurations.record(nanos / 1000);
+        }
+    }
+
+    /**
+     * Makes the values of the last second available through the per second getters and starts a new second.
+     */
+    public static void nextSecond() {
+        total.nextSecond();
+        for (ConnectionStats stats : connections.values()) {
+            stats.getTraffic().nextSecond();
+        }
+        for (TrafficCounter counter : messageTypes.values()) {
+            counter.nextSecond();
+        }
+        for (TrafficCounter counter : componentTypes.values()) {
+            counter.nextSecond();
+        }
+    }
+
+    public static void removeConnection(int connectionId) {
+        connections.remove(connectionId);
+    }
+
+    public static void reset() {
+        total.reset();
+        connections.clear();
+        messageTypes.clear();
+        componentTypes.clear();
+        sendUpdatesDurations.reset();
+    }
+
+    public static TrafficCounter getTotal() {
+        return total;
+    }
+
+    public static ConnectionStats getConnectionStats(int connectionId) {
+        return connections.computeIfAbsent(connectionId, ConnectionStats::new);
+    }
+
+    public static Collection<ConnectionStats> getConnections() {
+        return Collections.unmodifiableCollection(connections.values());
+    }
+
+    public static Map<Class, TrafficCounter> getMessageTypes() {
+        return Collections.unmodifiableMap(messageTypes);
+    }
+
+    public static Map<Class, TrafficCounter> getComponentTypes() {
+        return Collections.unmodifiableMap(componentTypes);
+    }
+
+    /**
+     * @return the durations of sendUpdates() in microseconds
+     */
+    public static Histogram getSendUpdatesDurations() {
+        return sendUpdatesDurations;
+    }
+
+    /**
+     * @return a few lines with the most important values, e.g. for an overlay or the log
+     */
+    public static String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Net: out ").append(total.getBytesSentPerSecond()).append(" B/s (").append(total.getMessagesSentPerSecond())
+                .append(" msg/s), in ").append(total.getBytesReceivedPerSecond()).append(" B/s (")
+                .append(total.getMessagesReceivedPerSecond()).append(" msg/s)");
+        if (sendUpdatesDurations.getCount() > 0) {
+            sb.append(", sendUpdates p99 ").append(sendUpdatesDurations.getPercentile(0.99)).append(" us");
+        }
+        for (ConnectionStats stats : connections.values()) {
+            TrafficCounter traffic = stats.getTraffic();
+            sb.append(stats.getConnectionId() != UNKNOWN_CONNECTION ? "\n #" + stats.getConnectionId() : "\n other")
+                    .append(": out ").append(traffic.getBytesSentPerSecond()).append(" B/s")
+                    .append(", in ").append(traffic.getBytesReceivedPerSecond()).append(" B/s")
+                    .append(", rtt ").append(stats.getRoundTripTime()).append(" ms")
+                    .append(", queue ").append(stats.getSendQueueDepth());
+        }
+        appendTop(sb, "messages", messageTypes);
+        appendTop(sb, "components", componentTypes);
+        return sb.toString();
+    }
+
+    private static void appendTop(StringBuilder sb, String title, Map<Class, TrafficCounter> counters) {
+        List<Map.Entry<Class, TrafficCounter>> entries = new ArrayList<>(counters.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().getBytesSentPerSecond() + b.getValue().getBytesReceivedPerSecond(),
+                a.getValue().getBytesSentPerSecond() + a.getValue().getBytesReceivedPerSecond()));
+        sb.append("\n ").append(title).append(":");
+        for (int i = 0; i < entries.size() && i < 5; i++) {
+            TrafficCounter counter = entries.get(i).getValue();
+            sb.append(" ").append(entries.get(i).getKey().getSimpleName()).append(" ")
+                    .append(counter.getBytesSentPerSecond() + counter.getBytesReceivedPerSecond()).append(" B/s");
+        }
+    }
+
+    private static TrafficCounter getCounter(Map<Class, TrafficCounter> counters, Class type) {
+        return counters.computeIfAbsent(type, t -> new TrafficCounter());
+    }
+}
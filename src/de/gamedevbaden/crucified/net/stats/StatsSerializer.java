@@ -0,0 +1,53 @@
+package de.gamedevbaden.crucified.net.stats;
+
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.serializers.FieldSerializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Wraps the serializer of a message class and records the size of every written and read message
+ * in the {@link NetworkStats}.
+ * <p>
+ * The server sends the name of this class to its clients, so they create it with the no-arg constructor.
+ * In that case the messages are serialized by a {@link FieldSerializer} like before.
+ */
+public class StatsSerializer extends Serializer {
+
+    private Serializer delegate;
+
+    public StatsSerializer() {
+    }
+
+    public StatsSerializer(Serializer delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void initialize(Class clazz) {
+        if (delegate == null) {
+            delegate = new FieldSerializer();
+            delegate.initialize(clazz);
+        }
+    }
+
+    @Override
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        int start = data.position();
+        T object = delegate.readObject(data, c);
+        NetworkStats.recordMessageReceived(c, data.position() - start);
+        return object;
+    }
+
+    @Override
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        int start = buffer.position();
+        delegate.writeObject(buffer, object);
+        NetworkStats.recordMessageSent(object.getClass(), buffer.position() - start);
+    }
+
+    public Serializer getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,84 @@
+package de.gamedevbaden.crucified.net.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes and messages sent and received for one connection, message type or component type.
+ * The per second values are updated by {@link NetworkStats#nextSecond()}.
+ */
+public class TrafficCounter {
+
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong messagesReceived = new AtomicLong();
+
+    private volatile long bytesSentPerSecond;
+    private volatile long bytesReceivedPerSecond;
+    private volatile long messagesSentPerSecond;
+    private volatile long messagesReceivedPerSecond;
+
+    private final AtomicLong totalBytesSent = new AtomicLong();
+    private final AtomicLong totalBytesReceived = new AtomicLong();
+
+    private final Histogram sentSizes = new Histogram();
+
+    void recordSent(int bytes) {
+        bytesSent.addAndGet(bytes);
+        messagesSent.incrementAndGet();
+        totalBytesSent.addAndGet(bytes);
+        sentSizes.record(bytes);
+    }
+
+    void recordReceived(int bytes) {
+        bytesReceived.addAndGet(bytes);
+        messagesReceived.incrementAndGet();
+        totalBytesReceived.addAndGet(bytes);
+    }
+
+    void nextSecond() {
+        bytesSentPerSecond = bytesSent.getAndSet(0);
+        bytesReceivedPerSecond = bytesReceived.getAndSet(0);
+        messagesSentPerSecond = messagesSent.getAndSet(0);
+        messagesReceivedPerSecond = messagesReceived.getAndSet(0);
+    }
+
+    void reset() {
+        nextSecond();
+        nextSecond();
+        totalBytesSent.set(0);
+        totalBytesReceived.set(0);
+        sentSizes.reset();
+    }
+
+    public long getBytesSentPerSecond() {
+        return bytesSentPerSecond;
+    }
+
+    public long getBytesReceivedPerSecond() {
+        return bytesReceivedPerSecond;
+    }
+
+    public long getMessagesSentPerSecond() {
+        return messagesSentPerSecond;
+    }
+
+    public long getMessagesReceivedPerSecond() {
+        return messagesReceivedPerSecond;
+    }
+
+    public long getTotalBytesSent() {
+        return totalBytesSent.get();
+    }
+
+    public long getTotalBytesReceived() {
+        return totalBytesReceived.get();
+    }
+
+    /**
+     * @return the sizes of the sent messages (or components) in bytes
+     */
+    public Histogram getSentSizes() {
+        return sentSizes;
+    }
+}
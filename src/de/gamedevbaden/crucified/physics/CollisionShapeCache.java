@@ -0,0 +1,65 @@
+package de.gamedevbaden.crucified.physics;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Caches collision shapes so they are only created once per model and scale.
+ * Creating mesh shapes of big scene objects is expensive and every match on a server would create
+ * exactly the same shapes. Shapes can be shared between several physics objects and physics spaces.
+ * Every physics space which takes shapes from here holds the cache, the shapes are dropped when the last
+ * one has released it, e.g. when the last match of a server has closed.
+ */
+public class CollisionShapeCache {
+
+    private static final Map<String, CollisionShape> shapes = new ConcurrentHashMap<>();
+    private static int holders; // guarded by the class
+
+    /**
+     * Returns the cached shape for that key or creates and caches it with the given factory.
+     *
+     * @param key     the key of the shape, see the <code>createKey()</code> methods
+     * @param factory creates the shape if it isn't cached yet, may return null
+     * @return the collision shape or null if the factory could not create one
+     */
+    public static CollisionShape getCollisionShape(String key, Supplier<CollisionShape> factory) {
+        return shapes.computeIfAbsent(key, k -> factory.get());
+    }
+
+    /**
+     * @return the key for a shape created out of a model file
+     */
+    public static String createKey(int collisionShapeType, String modelPath, Vector3f scale) {
+        return collisionShapeType + ":" + modelPath + ":" + scale;
+    }
+
+    /**
+     * @return the key for a shape created out of a scene object. The object is identified by its name and
+     * world transform, which is the same each time the scene is loaded.
+     */
+    public static String createKey(int collisionShapeType, Spatial sceneObject) {
+        return collisionShapeType + ":" + sceneObject.getName() + "@" + sceneObject.getWorldTranslation()
+                + sceneObject.getWorldRotation() + sceneObject.getWorldScale();
+    }
+
+    /**
+     * Call this before taking shapes from the cache.
+     */
+    public static synchronized void hold() {
+        holders++;
+    }
+
+    /**
+     * Call this when the shapes aren't used anymore. The cache is cleared when nobody holds it.
+     */
+    public static synchronized void release() {
+        if (holders > 0 && --holders == 0) {
+            shapes.clear();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package de.gamedevbaden.crucified.physics;
 import com.jme3.bullet.control.BetterCharacterControl;
 import com.jme3.bullet.objects.PhysicsRigidBody;
 import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
 
 /**
  * This class is used to make some methods publicly available.
@@ -26,4 +27,18 @@ public class CustomCharacterControl extends BetterCharacterControl {
         return rotation.clone();
     }
 
+    /**
+     * Moves the character like {@link #warp(Vector3f)}, but keeps the given velocity.
+     * The next physics tick starts from this state.
+     *
+     * @param location the new location
+     * @param velocity the new linear velocity
+     */
+    public void setPhysicsState(Vector3f location, Vector3f velocity) {
+        rigidBody.setPhysicsLocation(location);
+        rigidBody.setLinearVelocity(velocity);
+        this.location.set(location);
+        this.velocity.set(velocity);
+    }
+
 }
@@ -0,0 +1,138 @@
+package de.gamedevbaden.crucified.physics;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Keeps a short history of the character positions on the server, so hits can be checked against the positions
+ * a shooter has seen on the screen. A client sees the other characters one round trip plus the interpolation delay
+ * in the past, so without rewinding players have to aim ahead of them at higher pings.
+ * <p>
+ * How far a hit test can go back is limited by the max rewind. Otherwise a player with a very bad connection
+ * could hit others long after they have taken cover.
+ */
+public class LagCompensator {
+
+    private static final long RECORD_INTERVAL = 10; // at most one position per character every this many milliseconds
+
+    private final HashMap<EntityId, PositionHistory> histories = new HashMap<>();
+    private final ArrayList<PositionHistory> unusedHistories = new ArrayList<>();
+    private long maxRewind;
+    private int capacity;
+
+    private final Vector3f tempLocation = new Vector3f();
+
+    /**
+     * @param maxRewind the maximum time in milliseconds hit tests can go back
+     */
+    public LagCompensator(long maxRewind) {
+        setMaxRewind(maxRewind);
+    }
+
+    /**
+     * Records the current position of a character.
+     *
+     * @param entityId the character
+     * @param time     the current time in milliseconds
+     * @param location the position of the character (its feet)
+     */
+    public void record(EntityId entityId, long time, Vector3f location) {
+        PositionHistory history = histories.get(entityId);
+        if (history == null) {
+            history = unusedHistories.isEmpty() ? new PositionHistory(capacity) : unusedHistories.remove(unusedHistories.size() - 1);
+            histories.put(entityId, history);
+        } else if (time - history.getNewestTime() < RECORD_INTERVAL) {
+            return;
+        }
+        history.record(time, location);
+    }
+
+    public void remove(EntityId entityId) {
+        PositionHistory history = histories.remove(entityId);
+        if (history != null) {
+            history.clear();
+            unusedHistories.add(history);
+        }
+    }
+
+    /**
+     * Gets the position of the character as it was the given time ago. The time is limited by the max rewind.
+     *
+     * @param entityId the character
+     * @param now      the current time in milliseconds
+     * @param rewind   how many milliseconds to go back
+     * @param store    the position is stored here
+     * @return false if there is no history for the character
+     */
+    public boolean getPosition(EntityId entityId, long now, long rewind, Vector3f store) {
+        PositionHistory history = histories.get(entityId);
+        return history != null && history.sample(now - clampRewind(rewind), store);
+    }
+
+    /**
+     * Checks if a sphere moving from one point to another touches the rewound character.
+     * Characters are tested as upright capsules with the size of a human.
+     *
+     * @param entityId the character
+     * @param now      the current time in milliseconds
+     * @param rewind   how many milliseconds to go back
+     * @param from     the start of the movement
+     * @param to       the end of the movement
+     * @param radius   the radius of the sphere
+     * @return true if the character is hit
+     */
+    public boolean sweepTest(EntityId entityId, long now, long rewind, Vector3f from, Vector3f to, float radius) {
+        if (!getPosition(entityId, now, rewind, tempLocation)) {
+            return false;
+        }
+
+        // the closest point of the movement to the axis of the capsule
+        float bottom = tempLocation.y + PhysicConstants.HUMAN_RADIUS;
+        float top = tempLocation.y + PhysicConstants.HUMAN_HEIGHT - PhysicConstants.HUMAN_RADIUS;
+        float reach = PhysicConstants.HUMAN_RADIUS + radius;
+
+        float length = from.distance(to);
+        int steps = Math.max(1, (int) FastMath.ceil(length / (reach * 0.5f)));
+        for (int i = 0; i <= steps; i++) {
+            float t = i / (float) steps;
+            float x = from.x + (to.x - from.x) * t;
+            float y = from.y + (to.y - from.y) * t;
+            float z = from.z + (to.z - from.z) * t;
+            float dx = x - tempLocation.x;
+            float dy = y - Math.max(bottom, Math.min(top, y));
+            float dz = z - tempLocation.z;
+            if (dx * dx + dy * dy + dz * dz <= reach * reach) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long clampRewind(long rewind) {
+        return Math.max(0, Math.min(rewind, maxRewind));
+    }
+
+    /**
+     * Sets how far hit tests can go back. Histories which already exist keep their size.
+     *
+     * @param maxRewind the time in milliseconds
+     */
+    public void setMaxRewind(long maxRewind) {
+        this.maxRewind = maxRewind;
+        this.capacity = (int) (maxRewind / RECORD_INTERVAL) + 2;
+        this.unusedHistories.clear();
+    }
+
+    public long getMaxRewind() {
+        return maxRewind;
+    }
+
+    public void clear() {
+        histories.clear();
+        unusedHistories.clear();
+    }
+}
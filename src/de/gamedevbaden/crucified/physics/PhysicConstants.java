@@ -10,4 +10,11 @@ public class PhysicConstants {
     public static final float HUMAN_HEIGHT = 1.8f;
     public static final float HUMAN_WEIGHT = 80f;
 
+    // used for the lag compensated hit tests of fireballs
+    public static final float FIREBALL_RADIUS = 0.25f;
+    // fireballs fly straight with this speed, clients use it to predict their own fireballs
+    public static final float FIREBALL_SPEED = 25f;
+    // fireballs are spawned this high above the location of the shooter (and one unit in view direction)
+    public static final float FIREBALL_SPAWN_HEIGHT = 1.7f;
+
 }
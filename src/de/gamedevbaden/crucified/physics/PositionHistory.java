@@ -0,0 +1,84 @@
+package de.gamedevbaden.crucified.physics;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * A ring buffer with the recent positions of one entity. Times and positions are kept in primitive arrays,
+ * so recording a position every frame creates no garbage.
+ */
+public class PositionHistory {
+
+    private final long[] times;
+    private final float[] positions; // x, y, z of each entry
+    private int next; // index the next entry is written to
+    private int size;
+
+    /**
+     * @param capacity the number of positions which are kept, older ones are overwritten
+     */
+    public PositionHistory(int capacity) {
+        this.times = new long[capacity];
+        this.positions = new float[capacity * 3];
+    }
+
+    /**
+     * Adds a position. The times have to grow.
+     *
+     * @param time     the time in milliseconds
+     * @param location the position at that time
+     */
+    public void record(long time, Vector3f location) {
+        times[next] = time;
+        positions[next * 3] = location.x;
+        positions[next * 3 + 1] = location.y;
+        positions[next * 3 + 2] = location.z;
+        next = (next + 1) % times.length;
+        size = Math.min(size + 1, times.length);
+    }
+
+    /**
+     * Gets the position at the given time, interpolated between the recorded positions.
+     * Times before the oldest or after the newest entry get the oldest or newest position.
+     *
+     * @param time  the time in milliseconds
+     * @param store the position is stored here
+     * @return false if nothing has been recorded yet
+     */
+    public boolean sample(long time, Vector3f store) {
+        if (size == 0) {
+            return false;
+        }
+
+        // we go back from the newest entry, usually the time is only a few entries in the past
+        int newer = -1;
+        for (int i = 0; i < size; i++) {
+            int index = (next - 1 - i + times.length) % times.length;
+            if (times[index] <= time) {
+                if (newer == -1) {
+                    return get(index, store); // newer than the newest entry
+                }
+                float t = (time - times[index]) / (float) (times[newer] - times[index]);
+                store.x = positions[index * 3] + (positions[newer * 3] - positions[index * 3]) * t;
+                store.y = positions[index * 3 + 1] + (positions[newer * 3 + 1] - positions[index * 3 + 1]) * t;
+                store.z = positions[index * 3 + 2] + (positions[newer * 3 + 2] - positions[index * 3 + 2]) * t;
+                return true;
+            }
+            newer = index;
+        }
+        return get(newer, store); // older than the oldest entry
+    }
+
+    private boolean get(int index, Vector3f store) {
+        store.set(positions[index * 3], positions[index * 3 + 1], positions[index * 3 + 2]);
+        return true;
+    }
+
+    public long getNewestTime() {
+        return size > 0 ? times[(next - 1 + times.length) % times.length] : 0;
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+    }
+}
@@ -15,6 +15,69 @@ public class GameConstants {
     // ------------- MULTIPLAYER --------------------- //
 
     public static final int DEFAULT_PORT = 5555;
+    // the shards of a region sharded island report to the coordinator on this port, clients ask it which shard to join
+    public static final int DEFAULT_COORDINATOR_PORT = 5557;
+    // spectators connect to a spectator relay on this port, 5556 is taken by the network condition proxy of the tests
+    public static final int DEFAULT_RELAY_PORT = 5558;
+
+    // frames per second of the dedicated server
+    public static final int SERVER_TICK_RATE = 60;
+    // the dedicated server starts the game as soon as this amount of players have connected
+    public static final int PLAYERS_PER_GAME = 2;
+    // the dedicated server runs at most this amount of matches at the same time
+    public static final int MAX_MATCHES_PER_SERVER = 8;
+    // the game world is divided into this amount of chunks per row (and column)
+    public static final int AMOUNT_OF_CHUNKS_PER_ROW = 7;
+
+    // positions of transforms are quantized within these bounds when sent over the network
+    public static final Vector3f NETWORK_WORLD_MIN = new Vector3f(-1024, -256, -1024);
+    public static final Vector3f NETWORK_WORLD_MAX = new Vector3f(1024, 256, 1024);
+
+    // size of the chunks used for relevancy filtering if no chunk grid was created for the level
+    public static final float NETWORK_CHUNK_SIZE = 64;
+    // the entities of a scene get the ids from here on, so clients can derive them from the scene with the same ids
+    public static final long SCENE_ENTITY_ID_BASE = 1 << 20;
+
+    // how often the server checks for entity updates (per second)
+    public static final float NETWORK_TICK_RATE = 30;
+    // default amount of entity updates a connection gets per second, can be changed per connection
+    public static final float NETWORK_DEFAULT_SEND_RATE = 30;
+    // amount of bytes used for transform updates per connection and update
+    public static final int NETWORK_BYTES_PER_TICK = 1200;
+    // transforms of moving entities per unreliable message, so a message fits into one datagram
+    public static final int NETWORK_TRANSFORMS_PER_MESSAGE = 48;
+    // input commands per second a client sends while the player moves or looks around
+    public static final float INPUT_COMMAND_RATE = 30;
+    // remote entities are shown this many milliseconds in the past, so there are snapshots to interpolate between
+    public static final long NETWORK_INTERPOLATION_DELAY = 100;
+    // if snapshots are missing, positions are extrapolated at most this many milliseconds
+    public static final long NETWORK_MAX_EXTRAPOLATION = 200;
+    // the server corrects the velocity of a dead reckoned body if the clients extrapolate it further off than this
+    public static final float NETWORK_DEAD_RECKONING_THRESHOLD = 0.1f;
+    // ... or if the dot product of the extrapolated and the real rotation falls below this (about 5 degrees)
+    public static final float NETWORK_DEAD_RECKONING_MIN_DOT = 0.999f;
+    // hit tests are rewound at most this many milliseconds to the view of the shooter
+    public static final long NETWORK_MAX_REWIND = 300;
+    // a client removes its predicted entities (e.g. own fireballs) if the server hasn't confirmed them within this many milliseconds
+    public static final long NETWORK_PREDICTED_SPAWN_TIMEOUT = 1000;
+    // a confirmed entity moves from the predicted location onto the server's path within this many milliseconds
+    public static final long NETWORK_SPAWN_HANDOVER_TIME = 200;
+    // transient events (sounds, hits) a connection keeps until its next update, further events are dropped
+    public static final int NETWORK_MAX_QUEUED_EVENTS = 64;
+    // bytes of a compressed entity snapshot per message, jME messages must stay below 32k
+    public static final int NETWORK_SNAPSHOT_CHUNK_SIZE = 16000;
+    // a started match keeps the player of a dropped client this many seconds, so the client can reconnect
+    public static final float NETWORK_RECONNECT_TIMEOUT = 30f;
+    // a spectator relay asks the server again after this many seconds if there was no match to watch
+    public static final float NETWORK_SPECTATE_RETRY_INTERVAL = 5f;
+    // a shard tells the coordinator its address and load every this many seconds
+    public static final float SHARD_STATUS_INTERVAL = 1f;
+    // an entity is handed off to the neighbour shard once it is this far inside its region, so it doesn't bounce back and forth
+    public static final float SHARD_HANDOFF_MARGIN = 2f;
+    // a dedicated server logs its network stats every this many seconds
+    public static final float NETWORK_STATS_LOG_INTERVAL = 10f;
+    // match recordings are written to this directory
+    public static final String RECORDINGS_DIRECTORY = "recordings";
 
     //------------ USER DATA NAMES ---------------------//
 
@@ -35,4 +98,7 @@ public class GameConstants {
     public static final Vector3f FIRST_PERSON_CAM_OFFSET = new Vector3f(0.0f, 0.1f, 0.20f); // 0.2f, 1.8f, -1.0f
     public static final Vector3f THIRD_PERSON_CAM_OFFSET = new Vector3f(0.0f, 2.3f, -2f);
 
+    // doors need this amount of milliseconds to swing open or closed
+    public static final long DOOR_SWING_DURATION = 400;
+
 }
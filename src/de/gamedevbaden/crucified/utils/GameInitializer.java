@@ -11,6 +11,8 @@ import de.gamedevbaden.crucified.appstates.game.GameSessionAppState;
 import de.gamedevbaden.crucified.appstates.gamelogic.ArtifactContainerAppState;
 import de.gamedevbaden.crucified.appstates.gamelogic.GameLogicAppState;
 import de.gamedevbaden.crucified.appstates.gui.HudAppState;
+import de.gamedevbaden.crucified.appstates.net.DeadReckoningAppState;
+import de.gamedevbaden.crucified.appstates.net.FireballPredictionAppState;
 import de.gamedevbaden.crucified.appstates.net.MovementInterpolator;
 import de.gamedevbaden.crucified.appstates.net.PredictionAppState;
 import de.gamedevbaden.crucified.appstates.paging.GameWorldPagingManager;
@@ -26,10 +28,12 @@ public class GameInitializer {
 
     public static void initEssentialAppStates(AppStateManager stateManager) {
         stateManager.attach(new ModelLoaderAppState());
+        stateManager.attach(new TransientEventAppState());
     }
 
     public static void removeEssentialAppStates(AppStateManager stateManager) {
         stateManager.detach(stateManager.getState(ModelLoaderAppState.class));
+        stateManager.detach(stateManager.getState(TransientEventAppState.class));
     }
 
     public static void initClientAppStates(AppStateManager stateManager) {
@@ -58,6 +62,9 @@ public class GameInitializer {
         stateManager.attach(new CameraAppState());
         stateManager.attach(new DemonAnimationAppState());
         stateManager.attach(new CharacterAnimationAppState());
+        stateManager.attach(new DoorAnimationAppState());
+        stateManager.attach(new DeadReckoningAppState());
+        stateManager.attach(new AttachmentViewAppState());
 
         stateManager.attach(new ShadowRendererAppState(stateManager.getApplication().getAssetManager(), stateManager.getApplication().getViewPort()));
         stateManager.attach(new VisualFlashLightAppState());
@@ -86,6 +93,9 @@ public class GameInitializer {
         stateManager.detach(stateManager.getState(CameraAppState.class));
         stateManager.detach(stateManager.getState(DemonAnimationAppState.class));
         stateManager.detach(stateManager.getState(CharacterAnimationAppState.class));
+        stateManager.detach(stateManager.getState(DoorAnimationAppState.class));
+        stateManager.detach(stateManager.getState(DeadReckoningAppState.class));
+        stateManager.detach(stateManager.getState(AttachmentViewAppState.class));
 
         stateManager.detach(stateManager.getState(ShadowRendererAppState.class));
         stateManager.detach(stateManager.getState(VisualFlashLightAppState.class));
@@ -145,10 +155,12 @@ public class GameInitializer {
 
     public static void initClientStatesWithGameSessionDependency(AppStateManager stateManager, GameSession gameSession) {
         stateManager.attach(new PredictionAppState(gameSession.getPlayer()));
+        stateManager.attach(new FireballPredictionAppState(gameSession.getPlayer()));
     }
 
     public static void removeClientStatesWithGameSessionDependency(AppStateManager stateManager) {
         stateManager.detach(stateManager.getState(PredictionAppState.class));
+        stateManager.detach(stateManager.getState(FireballPredictionAppState.class));
     }
 
     public static void initGameLogicAppStates(AppStateManager stateManager) {
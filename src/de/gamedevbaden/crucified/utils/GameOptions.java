@@ -7,4 +7,15 @@ public class GameOptions {
 
     public static boolean ENABLE_PHYSICS_DEBUG = false;
 
+    // servers record their matches to GameConstants.RECORDINGS_DIRECTORY, enable with -Dcrucified.record=true
+    public static boolean RECORD_MATCHES = Boolean.getBoolean("crucified.record");
+
+    // clients keep a local copy of the entity data which is built from a snapshot, disable with -Dcrucified.snapshots=false
+    // a client needs it to reconnect to a running match
+    public static boolean ENTITY_SNAPSHOTS = Boolean.parseBoolean(System.getProperty("crucified.snapshots", "true"));
+
+    // components and messages are written by serializers generated at startup instead of jME's reflective FieldSerializer,
+    // disable with -Dcrucified.generatedSerializers=false (server and client need the same setting)
+    public static boolean GENERATED_SERIALIZERS = Boolean.parseBoolean(System.getProperty("crucified.generatedSerializers", "true"));
+
 }
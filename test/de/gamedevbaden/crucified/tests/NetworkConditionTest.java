@@ -0,0 +1,82 @@
+package de.gamedevbaden.crucified.tests;
+
+import com.jme3.network.Client;
+import com.jme3.network.HostedConnection;
+import com.jme3.network.MessageListener;
+import com.jme3.network.Network;
+import com.jme3.network.Server;
+import com.jme3.network.serializing.Serializer;
+import de.gamedevbaden.crucified.net.NetworkUtils;
+import de.gamedevbaden.crucified.net.messages.PingMessage;
+import de.gamedevbaden.crucified.net.simulation.NetworkConditionProxy;
+import de.gamedevbaden.crucified.net.simulation.NetworkConditions;
+import de.gamedevbaden.crucified.net.stats.Histogram;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends unreliable pings through a {@link NetworkConditionProxy} on loopback and prints the round trip times
+ * and the loss. It needs no window, so it can run on a build server to see how the proxy behaves.
+ * <p>
+ * Usage: <code>NetworkConditionTest [latency] [jitter] [loss] [reorder] [bandwidth] [seconds]</code>,
+ * without arguments the conditions are read from the system properties.
+ */
+public class NetworkConditionTest {
+
+    private static final int PORT = 5590;
+    private static final int PINGS_PER_SECOND = 30;
+
+    public static void main(String[] args) throws Exception {
+        NetworkConditions conditions = args.length >= 5
+                ? new NetworkConditions(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Float.parseFloat(args[2]), Float.parseFloat(args[3]), Integer.parseInt(args[4]))
+                : NetworkConditions.fromSystemProperties();
+        int seconds = args.length >= 6 ? Integer.parseInt(args[5]) : 10;
+
+        Serializer.initialize();
+        Server server = Network.createServer(PORT);
+        NetworkUtils.initMessageSerializers();
+        server.addMessageListener((MessageListener<HostedConnection>) (source, m) -> {
+            PingMessage reply = new PingMessage(((PingMessage) m).getTime(), true);
+            reply.setReliable(m.isReliable());
+            source.send(reply);
+        }, PingMessage.class);
+        server.start();
+
+        NetworkConditionProxy proxy = new NetworkConditionProxy(conditions);
+        proxy.start(0, "localhost", PORT);
+
+        Histogram roundTripTimes = new Histogram();
+        AtomicInteger received = new AtomicInteger();
+        Client client = Network.connectToServer("localhost", proxy.getLocalPort());
+        client.addMessageListener((source, m) -> {
+            roundTripTimes.record(System.nanoTime() / 1000000 - ((PingMessage) m).getTime());
+            received.incrementAndGet();
+        }, PingMessage.class);
+        client.start();
+        while (!client.isConnected()) {
+            Thread.sleep(10);
+        }
+
+        int sent = 0;
+        for (int i = 0; i < seconds * PINGS_PER_SECOND; i++) {
+            PingMessage ping = new PingMessage(System.nanoTime() / 1000000, false);
+            ping.setReliable(false);
+            client.send(ping);
+            sent++;
+            Thread.sleep(1000 / PINGS_PER_SECOND);
+        }
+        Thread.sleep(2000); // wait for the late ones
+
+        System.out.println(conditions);
+        System.out.println("Pings: " + sent + " sent, " + received.get() + " received ("
+                + String.format("%.1f", 100f * (sent - received.get()) / sent) + "% lost)");
+        System.out.println("Round trip time: mean " + String.format("%.1f", roundTripTimes.getMean())
+                + " ms, p50 " + roundTripTimes.getPercentile(0.5) + " ms, p99 " + roundTripTimes.getPercentile(0.99)
+                + " ms, max " + roundTripTimes.getMax() + " ms");
+
+        client.close();
+        proxy.close();
+        server.close();
+    }
+}
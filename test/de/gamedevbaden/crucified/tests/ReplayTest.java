@@ -0,0 +1,89 @@
+package de.gamedevbaden.crucified.tests;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.input.KeyInput;
+import com.jme3.input.controls.ActionListener;
+import com.jme3.input.controls.KeyTrigger;
+import de.gamedevbaden.crucified.appstates.EntityDataState;
+import de.gamedevbaden.crucified.appstates.game.GameCommanderAppState;
+import de.gamedevbaden.crucified.appstates.net.ReplayAppState;
+import de.gamedevbaden.crucified.net.client.ClientMessageListener;
+import de.gamedevbaden.crucified.utils.GameConstants;
+import de.gamedevbaden.crucified.utils.GameInitializer;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Plays a match recording without a server. Fly around with the default fly cam.
+ * <p>
+ * Space pauses, left and right jump 5 seconds, up and down change the speed.
+ * <p>
+ * Usage: <code>ReplayTest [recording]</code>
+ */
+public class ReplayTest extends SimpleApplication {
+
+    private final String file;
+    private ReplayAppState replay;
+
+    public ReplayTest(String file) {
+        this.file = file;
+    }
+
+    public static void main(String[] args) {
+        new ReplayTest(args.length > 0 ? args[0] : Paths.get(GameConstants.RECORDINGS_DIRECTORY, "server-test.rec").toString()).start();
+    }
+
+    @Override
+    public void simpleInitApp() {
+        setPauseOnLostFocus(false);
+        flyCam.setMoveSpeed(10);
+
+        try {
+            replay = new ReplayAppState(Paths.get(file));
+        } catch (IOException e) {
+            e.printStackTrace();
+            stop();
+            return;
+        }
+
+        // the recorded messages load the scene like on a client
+        GameCommanderAppState gameCommander = new GameCommanderAppState(this);
+        stateManager.attach(gameCommander);
+        replay.setMessageListener(new ClientMessageListener(this, gameCommander));
+        stateManager.attach(replay);
+
+        stateManager.attach(new EntityDataState(replay.getEntityData()));
+        GameInitializer.initEssentialAppStates(stateManager);
+        GameInitializer.initViewAppStates(stateManager);
+        GameInitializer.initClientAppStates(stateManager);
+
+        inputManager.addMapping("Pause", new KeyTrigger(KeyInput.KEY_SPACE));
+        inputManager.addMapping("Back", new KeyTrigger(KeyInput.KEY_LEFT));
+        inputManager.addMapping("Forward", new KeyTrigger(KeyInput.KEY_RIGHT));
+        inputManager.addMapping("Faster", new KeyTrigger(KeyInput.KEY_UP));
+        inputManager.addMapping("Slower", new KeyTrigger(KeyInput.KEY_DOWN));
+        inputManager.addListener((ActionListener) (name, isPressed, tpf) -> {
+            if (!isPressed) {
+                return;
+            }
+            switch (name) {
+                case "Pause":
+                    replay.setPaused(!replay.isPaused());
+                    break;
+                case "Back":
+                    replay.seek(replay.getTime() - 5000);
+                    break;
+                case "Forward":
+                    replay.seek(replay.getTime() + 5000);
+                    break;
+                case "Faster":
+                    replay.setSpeed(replay.getSpeed() * 2);
+                    break;
+                case "Slower":
+                    replay.setSpeed(replay.getSpeed() / 2);
+                    break;
+            }
+        }, "Pause", "Back", "Forward", "Faster", "Slower");
+    }
+}
@@ -0,0 +1,114 @@
+package de.gamedevbaden.crucified.tests;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.serializers.EnumSerializer;
+import com.jme3.network.serializing.serializers.FieldSerializer;
+import com.simsilica.es.EntityId;
+import de.gamedevbaden.crucified.enums.*;
+import de.gamedevbaden.crucified.es.components.*;
+import de.gamedevbaden.crucified.es.utils.physics.CollisionShapeType;
+import de.gamedevbaden.crucified.net.NetworkUtils;
+import de.gamedevbaden.crucified.net.messages.PingMessage;
+import de.gamedevbaden.crucified.net.messages.PlayerStateMessage;
+import de.gamedevbaden.crucified.net.serializers.GeneratedSerializer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compares the throughput and the size of jME's reflective FieldSerializer with the {@link GeneratedSerializer}
+ * for some typical components and messages. Each object is written and read again in a loop.
+ */
+public class SerializerBenchmark {
+
+    private static final int WARMUP_ROUNDS = 200000;
+    private static final int ROUNDS = 1000000;
+
+    public static void main(String[] args) throws Exception {
+        NetworkUtils.initMessageSerializers(); // also initializes jME's serializer registry
+
+        // the reflective serializer writes the values of object fields with their registered serializers
+        Serializer.registerClass(EntityId.class, new FieldSerializer());
+        for (Class enumType : new Class[]{Sound.class, InteractionType.class, ItemType.class, ActionType.class}) {
+            Serializer.registerClass(enumType, new EnumSerializer());
+        }
+
+        Object[] samples = {
+                new StoredIn(new EntityId(1234)),
+                new Container(8, ItemType.Firewood),
+                new InteractionComponent(InteractionType.OpenDoor, true),
+                new SoundComponent(Sound.Miss, false, true),
+                new PhysicsRigidBody(1, false, CollisionShapeType.BOX_COLLISION_SHAPE),
+                new Model("Models/Fireball/Fireball.j3o"),
+                new ActionGroupComponent(ActionType.Scream, ActionType.ShootFireball, ActionType.ShowPlayer),
+                new Fireball(new Vector3f(0.3f, 0.1f, 0.9f), new EntityId(42)),
+                new Velocity(new Vector3f(10, 2, 30), new Quaternion(), new Vector3f(0, 0, 25), new Vector3f(), 123456),
+                new OpenedClosedState(true, 98765),
+                new PingMessage(123456, false),
+                new PlayerStateMessage(77, 0.05f, new Vector3f(10, 2, 30), new Vector3f(4, 0, 1))
+        };
+
+        System.out.printf("%-24s %10s %10s %14s %14s%n", "class", "bytes", "generated", "ops/s", "generated ops/s");
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        for (Object sample : samples) {
+            Serializer reflective = new FieldSerializer();
+            reflective.initialize(sample.getClass());
+            Serializer generated = new GeneratedSerializer();
+            generated.initialize(sample.getClass());
+
+            int reflectiveBytes = measureSize(reflective, sample, buffer);
+            int generatedBytes = measureSize(generated, sample, buffer);
+
+            run(reflective, sample, buffer, WARMUP_ROUNDS);
+            double reflectiveOps = run(reflective, sample, buffer, ROUNDS);
+            run(generated, sample, buffer, WARMUP_ROUNDS);
+            double generatedOps = run(generated, sample, buffer, ROUNDS);
+
+            System.out.printf("%-24s %10d %10d %14.0f %14.0f%n", sample.getClass().getSimpleName(),
+                    reflectiveBytes, generatedBytes, reflectiveOps, generatedOps);
+        }
+    }
+
+    /**
+     * Writes the sample, reads it and writes it again to check that the copy is written the same way.
+     *
+     * @return the size of the sample in bytes
+     */
+    private static int measureSize(Serializer serializer, Object sample, ByteBuffer buffer) throws Exception {
+        buffer.clear();
+        serializer.writeObject(buffer, sample);
+        buffer.flip();
+        byte[] written = new byte[buffer.remaining()];
+        buffer.get(written);
+
+        buffer.rewind();
+        Object copy = serializer.readObject(buffer, sample.getClass());
+        buffer.clear();
+        serializer.writeObject(buffer, copy);
+        buffer.flip();
+        byte[] rewritten = new byte[buffer.remaining()];
+        buffer.get(rewritten);
+
+        if (!Arrays.equals(written, rewritten)) {
+            throw new IllegalStateException(serializer.getClass().getSimpleName() + " changed " + sample);
+        }
+        return written.length;
+    }
+
+    /**
+     * @return the writes and reads per second
+     */
+    private static double run(Serializer serializer, Object sample, ByteBuffer buffer, int rounds) throws Exception {
+        Class<?> type = sample.getClass();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            buffer.clear();
+            serializer.writeObject(buffer, sample);
+            buffer.flip();
+            serializer.readObject(buffer, type);
+        }
+        return rounds / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,277 @@
+package de.gamedevbaden.crucified.tests;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AppState;
+import com.jme3.math.Vector3f;
+import com.jme3.network.Client;
+import com.jme3.network.Message;
+import com.jme3.network.MessageConnection;
+import com.jme3.network.MessageListener;
+import com.jme3.network.Network;
+import com.jme3.network.service.rmi.RmiClientService;
+import com.jme3.network.service.rpc.RpcClientService;
+import com.jme3.scene.Node;
+import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import com.simsilica.es.Entity;
+import com.simsilica.es.EntitySet;
+import de.gamedevbaden.crucified.CoordinatorServer;
+import de.gamedevbaden.crucified.ShardServer;
+import de.gamedevbaden.crucified.appstates.SceneEntityLoader;
+import de.gamedevbaden.crucified.appstates.paging.ChunkGrid;
+import de.gamedevbaden.crucified.appstates.paging.GameWorldPagingManager;
+import de.gamedevbaden.crucified.enums.Scene;
+import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.es.utils.SceneDefaults;
+import de.gamedevbaden.crucified.net.client.ClientEntityData;
+import de.gamedevbaden.crucified.net.client.GameEntityDataClientService;
+import de.gamedevbaden.crucified.net.messages.*;
+import de.gamedevbaden.crucified.net.shard.RegionMap;
+import de.gamedevbaden.crucified.net.shard.ShardCoordinator;
+import de.gamedevbaden.crucified.utils.GameConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a shard coordinator and two region shards of the island in their own processes on loopback.
+ * <p>
+ * A player connects to the eastern shard, which lets it spawn in the western region close to the border.
+ * The eastern shard hands it off to the western one right away and the client follows its player there with its
+ * reconnect token. A spectator stays on the eastern shard, it sees the player as a ghost of the western shard.
+ * The entities both clients see are printed regularly.
+ * <p>
+ * Usage: <code>ShardTest [seconds]</code>
+ */
+public class ShardTest extends SimpleApplication {
+
+    private static final int COORDINATOR_PORT = 5593;
+    private static final int[] SHARD_PORTS = {5594, 5595};
+    private static final float CONNECT_DELAY = 6f; // seconds until the clients connect, the shards need to link first
+    private static final float PRINT_INTERVAL = 2f;
+
+    private final float seconds;
+    private final List<Process> processes = new ArrayList<>();
+    private final Map<Scene, SceneDefaults> sceneDefaults = new EnumMap<>(Scene.class);
+
+    private Vector3f spawnLocation;
+    private Player player;
+    private Spectator spectator;
+    private float time;
+    private float printTimer;
+
+    public ShardTest(float seconds) {
+        super(new AppState[0]);
+        this.seconds = seconds;
+    }
+
+    public static void main(String[] args) {
+        float seconds = args.length > 0 ? Float.parseFloat(args[0]) : 30;
+
+        AppSettings settings = new AppSettings(true);
+        settings.setFrameRate(60);
+        settings.setAudioRenderer(null);
+
+        ShardTest test = new ShardTest(seconds);
+        test.setSettings(settings);
+        test.setShowSettings(false);
+        test.setPauseOnLostFocus(false);
+        test.start(JmeContext.Type.Headless);
+    }
+
+    @Override
+    public void simpleInitApp() {
+        // the spawn location is in the western region, one chunk away from the border, so it's in the border zone
+        Node gameWorld = (Node) assetManager.loadModel(Scene.FinalIslandScene.getScenePath());
+        ChunkGrid chunkGrid = GameWorldPagingManager.createChunkGrid(gameWorld, GameConstants.AMOUNT_OF_CHUNKS_PER_ROW);
+        RegionMap regionMap = new RegionMap(chunkGrid, GameConstants.AMOUNT_OF_CHUNKS_PER_ROW, SHARD_PORTS.length);
+        float z = chunkGrid.getOriginZ() + chunkGrid.getChunkHeight() * GameConstants.AMOUNT_OF_CHUNKS_PER_ROW / 2;
+        spawnLocation = new Vector3f(regionMap.getMinX(1) - chunkGrid.getChunkWidth() / 2, 20, z);
+        System.out.println("Player spawns at " + spawnLocation + ", the border is at x = " + regionMap.getMinX(1));
+
+        try {
+            start(CoordinatorServer.class.getName(), String.valueOf(COORDINATOR_PORT));
+            for (int region = 0; region < SHARD_PORTS.length; region++) {
+                start(ShardServer.class.getName(), String.valueOf(region), String.valueOf(SHARD_PORTS.length),
+                        String.valueOf(SHARD_PORTS[region]), "localhost", "localhost", String.valueOf(COORDINATOR_PORT),
+                        String.valueOf(spawnLocation.x), String.valueOf(spawnLocation.y), String.valueOf(spawnLocation.z));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            stop();
+        }
+    }
+
+    private void start(String mainClass, String... args) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        for (String arg : args) {
+            command.add(arg);
+        }
+        processes.add(new ProcessBuilder(command).inheritIO().start());
+    }
+
+    @Override
+    public void simpleUpdate(float tpf) {
+        time += tpf;
+        if (time >= seconds) {
+            stop();
+            return;
+        }
+        if (time < CONNECT_DELAY) {
+            return;
+        }
+
+        if (player == null) {
+            try {
+                ShardRedirectMessage shard = ShardCoordinator.findShard("localhost", COORDINATOR_PORT);
+                System.out.println("The coordinator routes new clients to " + (shard != null ? shard.getAddress() + ":" + shard.getPort() : "nowhere"));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            // the player joins the eastern shard, no matter where the coordinator would send it
+            player = new Player(SHARD_PORTS[1]);
+            spectator = new Spectator(SHARD_PORTS[1]);
+            return;
+        }
+
+        player.entities.applyChanges();
+        spectator.entities.applyChanges();
+        if ((printTimer += tpf) >= PRINT_INTERVAL) {
+            printTimer = 0;
+            System.out.println(String.format("%.0f s: the player is on port %d and sees %s, the spectator of port %d sees %s",
+                    time, player.port, describe(player.entities), SHARD_PORTS[1], describe(spectator.entities)));
+        }
+    }
+
+    private static String describe(EntitySet entities) {
+        StringBuilder sb = new StringBuilder();
+        for (Entity entity : entities) {
+            if (entity.getId().getId() < GameConstants.SCENE_ENTITY_ID_BASE) {
+                sb.append(sb.length() > 0 ? ", " : "").append(entity.getId().getId()).append(" at ").append(entity.get(Transform.class).getTranslation());
+            }
+        }
+        return entities.size() + " entities [" + sb + "]";
+    }
+
+    private Client connect(int port, ClientEntityData entityData, MessageListener<Client> listener) {
+        try {
+            Client client = Network.connectToServer("localhost", port);
+            client.getServices().addService(new RpcClientService());
+            client.getServices().addService(new RmiClientService());
+            client.getServices().addService(new GameEntityDataClientService(MessageConnection.CHANNEL_DEFAULT_RELIABLE, entityData));
+            client.addMessageListener(listener);
+            client.start();
+            while (!client.isConnected()) {
+                Thread.yield();
+            }
+            return client;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not connect to port " + port, e);
+        }
+    }
+
+    private void loadScene(ClientEntityData entityData, Scene scene) {
+        // like a client, we create the scene entities ourselves
+        enqueue(() -> {
+            SceneDefaults defaults = sceneDefaults.computeIfAbsent(scene,
+                    s -> SceneEntityLoader.createSceneDefaults((Node) assetManager.loadModel(s.getScenePath())));
+            entityData.applySceneDefaults(defaults);
+        });
+    }
+
+    private static void answerPing(Client source, Message m) {
+        if (!((PingMessage) m).isReply()) {
+            source.send(new PingMessage(((PingMessage) m).getTime(), true));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (player != null) {
+            player.client.close();
+            spectator.client.close();
+        }
+        for (Process process : processes) {
+            process.destroy();
+        }
+        super.destroy();
+    }
+
+    /**
+     * A client which plays and follows its player like the {@link de.gamedevbaden.crucified.net.client.GameClient} does.
+     */
+    private class Player implements MessageListener<Client> {
+
+        final ClientEntityData entityData = new ClientEntityData();
+        final EntitySet entities = entityData.getEntities(Transform.class);
+        volatile Client client;
+        volatile int port;
+        volatile long token;
+
+        Player(int port) {
+            this.port = port;
+            this.client = connect(port, entityData, this);
+            client.getServices().getService(GameEntityDataClientService.class).getRemoteEntityData().requestSnapshot();
+            client.send(new ReadyForGameStartMessage(true));
+        }
+
+        @Override
+        public void messageReceived(Client source, Message m) {
+            if (m instanceof PingMessage) {
+                answerPing(source, m);
+            } else if (m instanceof ReconnectTokenMessage) {
+                if (token == 0) {
+                    token = ((ReconnectTokenMessage) m).getToken();
+                }
+            } else if (m instanceof LoadLevelMessage) {
+                loadScene(entityData, ((LoadLevelMessage) m).getScene());
+            } else if (m instanceof ReconnectMessage) {
+                System.out.println("The shard on port " + port + " has " + (((ReconnectMessage) m).isAccepted() ? "accepted" : "rejected") + " the player");
+            } else if (m instanceof ShardRedirectMessage) {
+                ShardRedirectMessage redirect = (ShardRedirectMessage) m;
+                System.out.println("The player has been sent to " + redirect.getAddress() + ":" + redirect.getPort());
+                new Thread(() -> {
+                    source.close();
+                    port = redirect.getPort();
+                    client = connect(port, entityData, this);
+                    client.send(new ReconnectMessage(token, false));
+                    client.getServices().getService(GameEntityDataClientService.class).getRemoteEntityData().requestSnapshot();
+                }, "Redirect").start();
+            }
+        }
+    }
+
+    /**
+     * A client which watches the open match of a shard.
+     */
+    private class Spectator implements MessageListener<Client> {
+
+        final ClientEntityData entityData = new ClientEntityData();
+        final EntitySet entities = entityData.getEntities(Transform.class);
+        final Client client;
+
+        Spectator(int port) {
+            this.client = connect(port, entityData, this);
+            client.getServices().getService(GameEntityDataClientService.class).getRemoteEntityData().requestSnapshot();
+            client.send(new SpectateMessage(SpectateMessage.ANY_MATCH, SpectateMessage.NO_VIEWER, false));
+        }
+
+        @Override
+        public void messageReceived(Client source, Message m) {
+            if (m instanceof PingMessage) {
+                answerPing(source, m);
+            } else if (m instanceof LoadLevelMessage) {
+                loadScene(entityData, ((LoadLevelMessage) m).getScene());
+            }
+        }
+    }
+}
@@ -6,9 +6,11 @@ import de.gamedevbaden.crucified.appstates.EntityDataState;
 import de.gamedevbaden.crucified.appstates.PlayerInteractionState;
 import de.gamedevbaden.crucified.appstates.game.GameCommanderAppState;
 import de.gamedevbaden.crucified.appstates.game.GameEventAppState;
+import de.gamedevbaden.crucified.appstates.net.NetworkStatsAppState;
 import de.gamedevbaden.crucified.game.GameSession;
 import de.gamedevbaden.crucified.net.client.GameClient;
 import de.gamedevbaden.crucified.net.messages.ReadyForGameStartMessage;
+import de.gamedevbaden.crucified.net.simulation.NetworkConditions;
 import de.gamedevbaden.crucified.utils.GameInitializer;
 import de.gamedevbaden.crucified.utils.GameOptions;
 
@@ -38,6 +40,12 @@ public class ClientTest extends SimpleApplication {
         // init game client
         GameClient client = new GameClient();
         stateManager.attach(client);
+
+        // start with e.g. -Dcrucified.net.latency=80 -Dcrucified.net.jitter=20 -Dcrucified.net.loss=0.05 to test a bad network
+        NetworkConditions conditions = NetworkConditions.fromSystemProperties();
+        if (!conditions.isPerfect()) {
+            client.setNetworkConditions(conditions);
+        }
         client.connect("localhost", 5555, this, gameCommander);
 
         EntityData entityData = client.getEntityData();
@@ -61,6 +69,9 @@ public class ClientTest extends SimpleApplication {
         GameInitializer.initPlayerStates(stateManager);
         GameInitializer.initFirstPersonCameraView(stateManager);
 
+        // shows the network traffic and round trip time
+        stateManager.attach(new NetworkStatsAppState(true, 0));
+
 
         client.sendMessage(new ReadyForGameStartMessage(true));
 
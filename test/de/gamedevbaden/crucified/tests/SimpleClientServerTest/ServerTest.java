@@ -18,13 +18,20 @@ import de.gamedevbaden.crucified.appstates.GameCommanderHolder;
 import de.gamedevbaden.crucified.appstates.SceneEntityLoader;
 import de.gamedevbaden.crucified.appstates.game.GameEventHandler;
 import de.gamedevbaden.crucified.appstates.game.GameSessionManager;
+import de.gamedevbaden.crucified.appstates.net.NetworkStatsAppState;
 import de.gamedevbaden.crucified.enums.ModelType;
 import de.gamedevbaden.crucified.es.components.*;
 import de.gamedevbaden.crucified.es.utils.physics.CollisionShapeType;
+import de.gamedevbaden.crucified.net.replay.MatchRecorder;
 import de.gamedevbaden.crucified.net.server.GameServer;
+import de.gamedevbaden.crucified.net.simulation.NetworkConditionProxy;
+import de.gamedevbaden.crucified.net.simulation.NetworkConditions;
+import de.gamedevbaden.crucified.utils.GameConstants;
 import de.gamedevbaden.crucified.utils.GameInitializer;
 import de.gamedevbaden.crucified.utils.GameOptions;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,6 +45,7 @@ public class ServerTest extends SimpleApplication {
     private float time;
     private EntityId cube;
     private EntityData entityData;
+    private NetworkConditionProxy proxy;
 
     public static void main(String[] args) {
         new ServerTest().start(JmeContext.Type.Headless);
@@ -64,6 +72,20 @@ public class ServerTest extends SimpleApplication {
         GameServer server = new GameServer(5555);
         stateManager.attach(server);
 
+        // start with e.g. -Dcrucified.net.latency=80 -Dcrucified.net.loss=0.05, clients connecting to port 5556 get a bad network
+        NetworkConditions conditions = NetworkConditions.fromSystemProperties();
+        if (!conditions.isPerfect()) {
+            try {
+                proxy = new NetworkConditionProxy(conditions);
+                proxy.start(5556, "localhost", 5555);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // logs the network traffic every few seconds
+        stateManager.attach(new NetworkStatsAppState(false, 5));
+
         // attach the default GameEventHandler
         stateManager.attach(new GameEventHandler(gameSessionManager));
 
@@ -74,6 +96,11 @@ public class ServerTest extends SimpleApplication {
         GameInitializer.initEssentialAppStates(stateManager);
         GameInitializer.initGameLogicAppStates(stateManager);
 
+        // start with -Dcrucified.record=true to record the test, it can be watched with the ReplayTest
+        if (GameOptions.RECORD_MATCHES) {
+            stateManager.attach(new MatchRecorder(Paths.get(GameConstants.RECORDINGS_DIRECTORY, "server-test.rec")));
+        }
+
         // load scene
         stateManager.attach(new SceneEntityLoader());
 
@@ -119,6 +146,14 @@ public class ServerTest extends SimpleApplication {
         }
     }
 
+    @Override
+    public void destroy() {
+        if (proxy != null) {
+            proxy.close();
+        }
+        super.destroy();
+    }
+
     @Override
     public void simpleUpdate(float tpf) {
         time += tpf;
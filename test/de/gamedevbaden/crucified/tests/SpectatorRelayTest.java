@@ -0,0 +1,215 @@
+package de.gamedevbaden.crucified.tests;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AppState;
+import com.jme3.network.Client;
+import com.jme3.network.Message;
+import com.jme3.network.MessageConnection;
+import com.jme3.network.MessageListener;
+import com.jme3.network.Network;
+import com.jme3.network.service.rmi.RmiClientService;
+import com.jme3.network.service.rpc.RpcClientService;
+import com.jme3.scene.Node;
+import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import com.simsilica.es.EntitySet;
+import de.gamedevbaden.crucified.DedicatedServer;
+import de.gamedevbaden.crucified.appstates.SceneEntityLoader;
+import de.gamedevbaden.crucified.enums.Scene;
+import de.gamedevbaden.crucified.es.components.Transform;
+import de.gamedevbaden.crucified.es.utils.SceneDefaults;
+import de.gamedevbaden.crucified.net.client.ClientEntityData;
+import de.gamedevbaden.crucified.net.client.GameEntityDataClientService;
+import de.gamedevbaden.crucified.net.messages.LoadLevelMessage;
+import de.gamedevbaden.crucified.net.messages.PingMessage;
+import de.gamedevbaden.crucified.net.messages.SpectateMessage;
+import de.gamedevbaden.crucified.net.relay.SpectatorRelay;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a dedicated server, a {@link SpectatorRelay} and a growing amount of spectators on loopback.
+ * The server runs in its own process and logs its traffic, which has to stay the same while spectators join the relay.
+ * Two idle clients join the server, so a match starts. The spectators mirror the match from the relay
+ * and the amount of entities they see is printed next to the amount of the relay.
+ * <p>
+ * Usage: <code>SpectatorRelayTest [max spectators] [seconds]</code>
+ */
+public class SpectatorRelayTest extends SimpleApplication {
+
+    private static final int SERVER_PORT = 5591;
+    private static final int RELAY_PORT = 5592;
+    private static final float RELAY_DELAY = 3f; // seconds until the relay connects, the server needs to start first
+    private static final float PLAYERS_DELAY = 2f; // seconds until the players join, the relay has to leave its match first
+    private static final float SPECTATORS_INTERVAL = 10f; // the amount of spectators doubles every this many seconds
+    private static final float PRINT_INTERVAL = 5f;
+
+    private final int maxSpectators;
+    private final float seconds;
+
+    private Process serverProcess;
+    private SpectatorRelay relay;
+    private EntitySet relayEntities;
+    private final List<Client> players = new ArrayList<>();
+    private final List<Spectator> spectators = new ArrayList<>();
+    private final Map<Scene, SceneDefaults> sceneDefaults = new EnumMap<>(Scene.class);
+
+    private float time;
+    private float playersTimer = PLAYERS_DELAY;
+    private float spectatorsTimer;
+    private float printTimer;
+
+    public SpectatorRelayTest(int maxSpectators, float seconds) {
+        super(new AppState[0]);
+        this.maxSpectators = maxSpectators;
+        this.seconds = seconds;
+    }
+
+    public static void main(String[] args) {
+        int maxSpectators = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        float seconds = args.length > 1 ? Float.parseFloat(args[1]) : 60;
+
+        AppSettings settings = new AppSettings(true);
+        settings.setFrameRate(60);
+        settings.setAudioRenderer(null);
+
+        SpectatorRelayTest test = new SpectatorRelayTest(maxSpectators, seconds);
+        test.setSettings(settings);
+        test.setShowSettings(false);
+        test.setPauseOnLostFocus(false);
+        test.start(JmeContext.Type.Headless);
+    }
+
+    @Override
+    public void simpleInitApp() {
+        try {
+            // two players per match, so the relay can't start a match by joining it
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            serverProcess = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    DedicatedServer.class.getName(), String.valueOf(SERVER_PORT), "2", "2").inheritIO().start();
+        } catch (IOException e) {
+            e.printStackTrace();
+            stop();
+        }
+    }
+
+    @Override
+    public void simpleUpdate(float tpf) {
+        time += tpf;
+        if (time >= seconds) {
+            stop();
+            return;
+        }
+        if (relay == null) {
+            if (time >= RELAY_DELAY) {
+                // the relay asks again until the match has started
+                relay = new SpectatorRelay("localhost", SERVER_PORT, RELAY_PORT, SpectateMessage.ANY_MATCH);
+                stateManager.attach(relay);
+            }
+            return;
+        }
+        if (!relay.isConnected() || (playersTimer -= tpf) > 0) {
+            return;
+        }
+
+        if (players.isEmpty()) {
+            // the relay has joined a match of its own first and left it again, so it can't be one of the players
+            relayEntities = relay.getEntityData().getEntities(Transform.class);
+            for (int i = 0; i < 2; i++) {
+                Client player = connect(SERVER_PORT);
+                player.start();
+                players.add(player);
+            }
+            return;
+        }
+
+        if ((spectatorsTimer -= tpf) <= 0 && spectators.size() < maxSpectators) {
+            spectatorsTimer = SPECTATORS_INTERVAL;
+            int amount = Math.min(Math.max(1, spectators.size()), maxSpectators - spectators.size());
+            for (int i = 0; i < amount; i++) {
+                spectators.add(new Spectator(connect(RELAY_PORT)));
+            }
+        }
+
+        relayEntities.applyChanges();
+        for (Spectator spectator : spectators) {
+            spectator.entities.applyChanges();
+        }
+        if ((printTimer += tpf) >= PRINT_INTERVAL) {
+            printTimer = 0;
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for (Spectator spectator : spectators) {
+                min = Math.min(min, spectator.entities.size());
+                max = Math.max(max, spectator.entities.size());
+            }
+            System.out.println(String.format("%.0f s: %d spectators, relay sees %d entities, spectators see %d - %d",
+                    time, spectators.size(), relayEntities.size(), spectators.isEmpty() ? 0 : min, max));
+        }
+    }
+
+    private Client connect(int port) {
+        try {
+            Client client = Network.connectToServer("localhost", port);
+            client.getServices().addService(new RpcClientService());
+            client.getServices().addService(new RmiClientService());
+            client.addMessageListener((MessageListener<Client>) (source, m) -> {
+                if (!((PingMessage) m).isReply()) {
+                    source.send(new PingMessage(((PingMessage) m).getTime(), true));
+                }
+            }, PingMessage.class);
+            return client;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not connect to port " + port, e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (Spectator spectator : spectators) {
+            spectator.client.close();
+        }
+        for (Client player : players) {
+            player.close();
+        }
+        if (serverProcess != null) {
+            serverProcess.destroy();
+        }
+        super.destroy();
+    }
+
+    private class Spectator implements MessageListener<Client> {
+
+        final Client client;
+        final ClientEntityData entityData = new ClientEntityData();
+        final EntitySet entities;
+
+        Spectator(Client client) {
+            this.client = client;
+            client.getServices().addService(new GameEntityDataClientService(MessageConnection.CHANNEL_DEFAULT_RELIABLE, entityData));
+            client.addMessageListener(this, LoadLevelMessage.class);
+            client.start();
+            this.entities = entityData.getEntities(Transform.class);
+            while (!client.isConnected()) {
+                Thread.yield();
+            }
+            client.getServices().getService(GameEntityDataClientService.class).getRemoteEntityData().requestSnapshot();
+        }
+
+        @Override
+        public void messageReceived(Client source, Message m) {
+            // like a client, the spectator creates the scene entities itself
+            enqueue(() -> {
+                Scene scene = ((LoadLevelMessage) m).getScene();
+                SceneDefaults defaults = sceneDefaults.computeIfAbsent(scene,
+                        s -> SceneEntityLoader.createSceneDefaults((Node) assetManager.loadModel(s.getScenePath())));
+                entityData.applySceneDefaults(defaults);
+            });
+        }
+    }
+}